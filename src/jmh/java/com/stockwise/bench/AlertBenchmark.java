@@ -0,0 +1,97 @@
+package com.stockwise.bench;
+
+import com.stockwise.service.AlertIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx2g"})
+public class AlertBenchmark {
+
+    @Param({"100000"})
+    int alerts;
+
+    @Param({"500"})
+    int symbols;
+
+    String[] syms;
+    double[] base;
+    AlertIndex index;
+    AlertIndex.Fired fired = new AlertIndex.Fired();
+
+    // a refresh round: every symbol moves within +-1%, which crosses no threshold
+    List<Map<String, Double>> rounds = new ArrayList<>();
+    int round;
+
+    // one symbol swinging between base and +3%, re-arming what fired on the opposite side
+    int crossingSymbol;
+    boolean up;
+    Map<Long, Double> thresholds = new HashMap<>();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random r = new Random(42);
+        syms = new String[symbols];
+        base = new double[symbols];
+        for (int s = 0; s < symbols; s++) {
+            syms[s] = String.format("SYM%03d", s);
+            base[s] = 100 + r.nextInt(3000);
+        }
+        // thresholds 2-30% away from today's price, "above" over it and "below" under it
+        index = new AlertIndex();
+        for (long id = 1; id <= alerts; id++) {
+            int s = r.nextInt(symbols);
+            boolean above = r.nextBoolean();
+            double away = 0.02 + r.nextDouble() * 0.28;
+            double t = base[s] * (above ? 1 + away : 1 - away);
+            index.add(syms[s], above, t, id);
+            thresholds.put(id, t);
+        }
+        for (int k = 0; k < 64; k++) {
+            Map<String, Double> m = new LinkedHashMap<>();
+            for (int s = 0; s < symbols; s++) m.put(syms[s], base[s] * (0.99 + r.nextDouble() * 0.02));
+            rounds.add(m);
+        }
+        crossingSymbol = 0;
+    }
+
+    @Benchmark
+    public int fullRefreshTick() {
+        Map<String, Double> changed = rounds.get(round++ & 63);
+        for (Map.Entry<String, Double> e : changed.entrySet()) index.fire(e.getKey(), e.getValue(), fired);
+        int n = fired.size();
+        fired.clear();
+        return n;
+    }
+
+    @Benchmark
+    public int singleSymbolTick() {
+        int s = round++ % symbols;
+        index.fire(syms[s], base[s] * 1.001, fired);
+        int n = fired.size();
+        fired.clear();
+        return n;
+    }
+
+    // fires the alerts between +2% and +3% of one symbol, then arms them again the other way
+    @Benchmark
+    public int crossingTick() {
+        String sym = syms[crossingSymbol];
+        up = !up;
+        double px = base[crossingSymbol] * (up ? 1.03 : 1.0);
+        index.fire(sym, px, fired);
+        int n = fired.size();
+        for (int i = 0; i < n; i++) {
+            long id = fired.id(i);
+            index.add(sym, !up, thresholds.get(id), id);
+        }
+        fired.clear();
+        return n;
+    }
+}
@@ -0,0 +1,56 @@
+package com.stockwise.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.stockwise.model.CompactPortfolio;
+import com.stockwise.model.Portfolio;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding /api/portfolio: the full Portfolio JSON (every derived getter and
+ * aggregate) against the compact column layout as JSON and as CBOR.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+public class ApiFormatBenchmark {
+
+    @Param({"1000", "100000"})
+    int size;
+
+    Portfolio portfolio;
+    ObjectWriter full;
+    ObjectWriter compactJson;
+    ObjectWriter compactCbor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        portfolio = BenchData.portfolio(size);
+        portfolio.setId("bench");
+        ObjectMapper mapper = new ObjectMapper();
+        full = mapper.writerFor(Portfolio.class);
+        compactJson = mapper.writerFor(CompactPortfolio.class);
+        compactCbor = new CBORMapper().writerFor(CompactPortfolio.class);
+    }
+
+    @Benchmark
+    public byte[] fullJson() throws Exception {
+        return full.writeValueAsBytes(portfolio);
+    }
+
+    @Benchmark
+    public byte[] compactJson() throws Exception {
+        return compactJson.writeValueAsBytes(CompactPortfolio.of(portfolio));
+    }
+
+    @Benchmark
+    public byte[] compactCbor() throws Exception {
+        return compactCbor.writeValueAsBytes(CompactPortfolio.of(portfolio));
+    }
+}
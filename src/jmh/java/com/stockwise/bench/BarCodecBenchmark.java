@@ -0,0 +1,52 @@
+package com.stockwise.bench;
+
+import com.stockwise.model.PriceBars;
+import com.stockwise.util.BarCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding one block of price history: a trading day of 1m
+ * bars (375) and a year of daily bars (250) look alike to the codec, so
+ * the sizes below cover both.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BarCodecBenchmark {
+
+    @Param({"375", "5000"})
+    int size;
+
+    PriceBars bars;
+    byte[] encoded;
+
+    @Setup
+    public void setup() {
+        SplittableRandom rnd = new SplittableRandom(42);
+        bars = new PriceBars(size);
+        long t = 1_700_000_000L;
+        double p = 1500.00;
+        for (int i = 0; i < size; i++) {
+            t += 60;
+            p = Math.max(1, Math.round((p + (rnd.nextInt(21) - 10) * 0.05) * 100) / 100.0);
+            bars.add(t, p, p + rnd.nextInt(5) * 0.05, p - rnd.nextInt(5) * 0.05, p, 1000 + rnd.nextInt(50_000));
+        }
+        encoded = BarCodec.encode(bars);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return BarCodec.encode(bars);
+    }
+
+    @Benchmark
+    public PriceBars decode() {
+        return BarCodec.decode(encoded);
+    }
+}
@@ -0,0 +1,62 @@
+package com.stockwise.bench;
+
+import com.stockwise.model.Portfolio;
+import com.stockwise.model.Stock;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic portfolios for the benchmarks.
+ * Same size -> same holdings, so runs are comparable across commits.
+ */
+final class BenchData {
+
+    private static final String[] SECTORS = {
+            "IT", "Banking", "Energy", "Pharma", "FMCG", "Auto", "Metals", "Telecom", "Unknown"
+    };
+
+    private BenchData() {}
+
+    static List<Stock> holdings(int n) {
+        SplittableRandom rnd = new SplittableRandom(42);
+        LocalDate start = LocalDate.of(2020, 1, 1);
+        List<Stock> out = new ArrayList<>(n);
+
+        for (int i = 0; i < n; i++) {
+            double buy = 50 + rnd.nextDouble() * 3000;
+            Stock s = new Stock(
+                    "SYM" + i,
+                    1 + rnd.nextInt(500),
+                    buy,
+                    start.plusDays(rnd.nextInt(1800)).toString(),
+                    SECTORS[rnd.nextInt(SECTORS.length)]);
+            s.setCurrentPrice(buy * (0.7 + rnd.nextDouble() * 0.6));
+            out.add(s);
+        }
+        return out;
+    }
+
+    static Portfolio portfolio(int n) {
+        Portfolio p = new Portfolio();
+        p.setStocks(holdings(n));
+        return p;
+    }
+
+    // Upload-style CSV (symbol,quantity,buy_price,buy_date,sector)
+    static byte[] csv(int n) {
+        StringBuilder sb = new StringBuilder(n * 48);
+        sb.append("symbol,quantity,buy_price,buy_date,sector\n");
+        for (Stock s : holdings(n)) {
+            sb.append(s.getSymbol()).append(',')
+              .append(s.getQuantity()).append(',')
+              .append(s.getBuyPrice()).append(',')
+              .append(s.getBuyDate()).append(',')
+              .append(s.getSector()).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
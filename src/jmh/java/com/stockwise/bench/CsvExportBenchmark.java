@@ -0,0 +1,48 @@
+package com.stockwise.bench;
+
+import com.stockwise.model.Stock;
+import com.stockwise.util.CSVUtil;
+import com.stockwise.util.CsvStreamWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** The /export/csv formatting path, minus the HTTP layer. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+public class CsvExportBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    int size;
+
+    List<Stock> stocks;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        stocks = BenchData.holdings(size);
+    }
+
+    @Benchmark
+    public byte[] formatPortfolioCSV() {
+        return CSVUtil.formatPortfolioCSV(stocks).getBytes();
+    }
+
+    // streaming path: fixed buffer, hand-rolled number formatting
+    @Benchmark
+    public void streamPortfolioCSV(Blackhole bh) throws Exception {
+        CsvStreamWriter w = new CsvStreamWriter(new OutputStream() {
+            @Override public void write(int b) { bh.consume(b); }
+            @Override public void write(byte[] b, int off, int len) { bh.consume(b); }
+        });
+        w.writeHeader();
+        for (Stock s : stocks) w.writeRow(s);
+        w.flush();
+    }
+}
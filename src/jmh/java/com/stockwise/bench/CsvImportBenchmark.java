@@ -0,0 +1,40 @@
+package com.stockwise.bench;
+
+import com.stockwise.model.Stock;
+import com.stockwise.util.CSVUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+public class CsvImportBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    int size;
+
+    byte[] csv;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        csv = BenchData.csv(size);
+    }
+
+    @Benchmark
+    public List<Stock> parsePortfolioCSV() throws Exception {
+        return CSVUtil.parsePortfolioCSV(new ByteArrayInputStream(csv));
+    }
+
+    // streaming path used by the upload: rows are handed off, never collected
+    @Benchmark
+    public long readPortfolioCSV(Blackhole bh) throws Exception {
+        return CSVUtil.readPortfolioCSV(new ByteArrayInputStream(csv), bh::consume);
+    }
+}
@@ -0,0 +1,201 @@
+package com.stockwise.bench;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local stand-in for the Yahoo quote endpoints with injectable faults, for
+ * trying the market data rate limiter, circuit breaker and bulkhead by hand.
+ *
+ *   mvn -Pbench -DskipTests test-compile
+ *   java -cp target/test-classes com.stockwise.bench.FaultyQuoteStub 8098
+ *   (app) --stockwise.market.yahoo.base-url=http://127.0.0.1:8098
+ *
+ * Serves /v8/finance/chart/{symbol} and /v8/finance/spark with a minute-bar
+ * random walk per symbol. Faults are changed at runtime; each is the share
+ * of requests it hits, checked in this order:
+ *
+ *   curl 'localhost:8098/faults?drop=0&error=0.5&throttle=0&latency-ms=0&slow=0'
+ *
+ * - drop: the connection is closed without a response
+ * - error: HTTP 500
+ * - throttle: HTTP 429 with Retry-After
+ * - slow: the response is held back latency-ms first
+ * Also: limit=N answers 429 above N requests a second, whatever else is set.
+ * GET /faults shows the settings and what was served so far.
+ */
+public class FaultyQuoteStub {
+
+    private static volatile double drop, error, throttle, slow;
+    private static volatile long latencyMs = 5000;
+    private static volatile int limit;
+
+    private static final Map<String, LongAdder> served = new TreeMap<>();
+    private static long second;
+    private static int inSecond;
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8098;
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 256);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/faults", FaultyQuoteStub::faults);
+        server.createContext("/v8/finance/", FaultyQuoteStub::quote);
+        server.start();
+        System.out.println("Faulty quote stub on http://127.0.0.1:" + port);
+    }
+
+    // ---------------- CONTROL -------------------
+
+    private static void faults(HttpExchange ex) throws IOException {
+        Map<String, String> q = query(ex);
+        if (q.containsKey("drop")) drop = Double.parseDouble(q.get("drop"));
+        if (q.containsKey("error")) error = Double.parseDouble(q.get("error"));
+        if (q.containsKey("throttle")) throttle = Double.parseDouble(q.get("throttle"));
+        if (q.containsKey("slow")) slow = Double.parseDouble(q.get("slow"));
+        if (q.containsKey("latency-ms")) latencyMs = Long.parseLong(q.get("latency-ms"));
+        if (q.containsKey("limit")) limit = Integer.parseInt(q.get("limit"));
+
+        StringBuilder sb = new StringBuilder("{\"drop\":").append(drop)
+                .append(",\"error\":").append(error)
+                .append(",\"throttle\":").append(throttle)
+                .append(",\"slow\":").append(slow)
+                .append(",\"latencyMs\":").append(latencyMs)
+                .append(",\"limit\":").append(limit)
+                .append(",\"served\":{");
+        synchronized (served) {
+            String sep = "";
+            for (Map.Entry<String, LongAdder> e : served.entrySet()) {
+                sb.append(sep).append('"').append(e.getKey()).append("\":").append(e.getValue().sum());
+                sep = ",";
+            }
+        }
+        respond(ex, 200, sb.append("}}\n").toString());
+    }
+
+    // ---------------- QUOTES -------------------
+
+    private static void quote(HttpExchange ex) throws IOException {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        if (overLimit()) {
+            count("limited");
+            ex.getResponseHeaders().add("Retry-After", "1");
+            respond(ex, 429, "{\"finance\":{\"error\":\"Too Many Requests\"}}");
+            return;
+        }
+        if (rnd.nextDouble() < drop) {
+            count("dropped");
+            ex.close();
+            return;
+        }
+        if (rnd.nextDouble() < error) {
+            count("error");
+            respond(ex, 500, "{\"finance\":{\"error\":\"Internal Server Error\"}}");
+            return;
+        }
+        if (rnd.nextDouble() < throttle) {
+            count("throttled");
+            ex.getResponseHeaders().add("Retry-After", "1");
+            respond(ex, 429, "{\"finance\":{\"error\":\"Too Many Requests\"}}");
+            return;
+        }
+        if (rnd.nextDouble() < slow) {
+            count("slow");
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        String path = ex.getRequestURI().getPath();
+        Map<String, String> q = query(ex);
+        String body;
+        if (path.startsWith("/v8/finance/chart/")) {
+            String sym = URLDecoder.decode(path.substring(path.lastIndexOf('/') + 1), StandardCharsets.UTF_8);
+            body = "{\"chart\":{\"result\":[" + chart(sym) + "]}}";
+        } else if (path.startsWith("/v8/finance/spark") && q.containsKey("symbols")) {
+            StringBuilder sb = new StringBuilder("{\"spark\":{\"result\":[");
+            String sep = "";
+            for (String sym : q.get("symbols").split(",")) {
+                sb.append(sep).append("{\"symbol\":\"").append(sym).append("\",\"response\":[").append(chart(sym)).append("]}");
+                sep = ",";
+            }
+            body = sb.append("]}}").toString();
+        } else {
+            count("not-found");
+            respond(ex, 404, "{}");
+            return;
+        }
+        count("ok");
+        respond(ex, 200, body);
+    }
+
+    // The last 30 one-minute bars of a random walk seeded by symbol and minute
+    private static String chart(String sym) {
+        long minute = System.currentTimeMillis() / 60_000;
+        Random r = new Random(sym.hashCode() * 31L + minute);
+        double price = 100 + Math.abs(sym.hashCode() % 3000);
+        StringBuilder ts = new StringBuilder(), close = new StringBuilder();
+        for (int i = 30; i > 0; i--) {
+            price = Math.max(1, price * Math.exp(r.nextGaussian() * 0.002));
+            if (i < 30) {
+                ts.append(',');
+                close.append(',');
+            }
+            ts.append((minute - i + 1) * 60);
+            close.append(Math.round(price * 100) / 100.0);
+        }
+        return "{\"meta\":{\"symbol\":\"" + sym + "\",\"regularMarketPrice\":" + Math.round(price * 100) / 100.0 + "},"
+                + "\"timestamp\":[" + ts + "],"
+                + "\"indicators\":{\"quote\":[{\"open\":[" + close + "],\"high\":[" + close + "],\"low\":[" + close
+                + "],\"close\":[" + close + "]}]}}";
+    }
+
+    // ---------------- HELPERS -------------------
+
+    private static synchronized boolean overLimit() {
+        if (limit <= 0) return false;
+        long now = System.currentTimeMillis() / 1000;
+        if (now != second) {
+            second = now;
+            inSecond = 0;
+        }
+        return ++inSecond > limit;
+    }
+
+    private static void count(String what) {
+        synchronized (served) {
+            served.computeIfAbsent(what, k -> new LongAdder()).increment();
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange ex) {
+        Map<String, String> out = new HashMap<>();
+        String raw = ex.getRequestURI().getRawQuery();
+        if (raw == null) return out;
+        for (String kv : raw.split("&")) {
+            int eq = kv.indexOf('=');
+            if (eq > 0) out.put(kv.substring(0, eq), URLDecoder.decode(kv.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return out;
+    }
+
+    private static void respond(HttpExchange ex, int status, String body) throws IOException {
+        byte[] b = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().add("Content-Type", "application/json");
+        ex.sendResponseHeaders(status, b.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(b);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.stockwise.bench;
+
+import com.stockwise.model.Stock;
+import com.stockwise.repository.LedgerRepository;
+import com.stockwise.repository.PortfolioRepository;
+import com.stockwise.repository.SqliteDataSource;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Rebuilding positions from the trade ledger: "full" folds every trade
+ * since the opening RESET, "catchUp" only the trades after the checkpoint
+ * on top of the current positions (the usual startup case).
+ * findAll is there to show reads don't grow with the ledger.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx2g"})
+public class LedgerReplayBenchmark {
+
+    static final String PORTFOLIO = PortfolioRepository.DEFAULT_PORTFOLIO;
+    static final int POSITIONS = 1000;
+
+    @Param({"10000", "200000"})
+    int trades;
+
+    Path dir;
+    SqliteDataSource db;
+    PortfolioRepository repo;
+    LedgerRepository ledger;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("stockwise-bench");
+        db = new SqliteDataSource("jdbc:sqlite:" + dir.resolve("bench.db"), 4, 268435456L, 16384, 5000);
+        repo = new PortfolioRepository(db);
+        ledger = new LedgerRepository(db);
+
+        List<Stock> opening = BenchData.holdings(POSITIONS);
+        repo.replaceAll(PORTFOLIO, opening);
+
+        // buys only, so every trade lands on an open lot; written straight to the ledger in one go
+        db.writeInTransaction(session -> {
+            PreparedStatement ps = session.prepare(
+                    "INSERT INTO trade_ledger(portfolio_id, side, symbol, quantity, price, trade_date, sector) VALUES(?,'BUY',?,?,?,?,?)");
+            SplittableRandom rnd = new SplittableRandom(7);
+            for (int i = 0; i < trades; i++) {
+                Stock s = opening.get(rnd.nextInt(POSITIONS));
+                ps.setString(1, PORTFOLIO);
+                ps.setString(2, s.getSymbol());
+                ps.setDouble(3, 1 + rnd.nextInt(20));
+                ps.setDouble(4, s.getBuyPrice() * (0.8 + rnd.nextDouble() * 0.4));
+                ps.setString(5, s.getBuyDate());
+                ps.setString(6, s.getSector());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            return null;
+        });
+        ledger.replay(PORTFOLIO, true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        db.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long full() throws Exception {
+        return ledger.replay(PORTFOLIO, true);
+    }
+
+    @Benchmark
+    public long catchUp() throws Exception {
+        return ledger.replay(PORTFOLIO, false);
+    }
+
+    @Benchmark
+    public List<Stock> findAll() throws Exception {
+        return repo.findAll(PORTFOLIO);
+    }
+}
@@ -0,0 +1,63 @@
+package com.stockwise.bench;
+
+import com.stockwise.model.MonteCarloSimulation;
+import com.stockwise.model.RiskModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Monte Carlo over a 100-holding portfolio, one year ahead. Cost is
+ * paths * steps * holdings^2 / 2 for the correlation plus a normal draw
+ * and an exp per holding and step; scale by paths for the 1M-path case.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class MonteCarloBenchmark {
+
+    @Param({"100"})
+    int holdings;
+
+    @Param({"100000"})
+    int paths;
+
+    @Param({"12", "52"})
+    int steps;
+
+    MonteCarloSimulation simulation;
+    ForkJoinPool pool;
+
+    @Setup
+    public void setup() {
+        SplittableRandom rnd = new SplittableRandom(42);
+        int days = RiskModel.TRADING_DAYS;
+        String[] names = new String[holdings];
+        double[][] returns = new double[holdings][days];
+        double[] index = new double[days];
+        double[] values = new double[holdings];
+        for (int d = 0; d < days; d++) index[d] = (rnd.nextDouble() - 0.5) * 0.02;
+        for (int i = 0; i < holdings; i++) {
+            names[i] = "SYM" + i;
+            values[i] = 1000 + rnd.nextInt(100_000);
+            for (int d = 0; d < days; d++) returns[i][d] = index[d] + (rnd.nextDouble() - 0.5) * 0.03;
+        }
+        pool = new ForkJoinPool();
+        simulation = new MonteCarloSimulation(RiskModel.build(names, returns, index, pool), values, 0, true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public MonteCarloSimulation.Result simulate() {
+        return simulation.run(paths, steps, (double) RiskModel.TRADING_DAYS / steps, 7, pool);
+    }
+}
@@ -0,0 +1,118 @@
+package com.stockwise.bench;
+
+import com.stockwise.model.ColumnarHoldings;
+import com.stockwise.model.Portfolio;
+import com.stockwise.model.PortfolioSnapshot;
+import com.stockwise.model.Stock;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Portfolio aggregates: the per-getter path (what JSON serialization of
+ * Portfolio does), one snapshot for everything, and a single price tick.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+public class PortfolioBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    int size;
+
+    Portfolio portfolio;
+    ColumnarHoldings columns;
+    PortfolioSnapshot snapshot;
+    int tick;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        portfolio = BenchData.portfolio(size);
+        columns = ColumnarHoldings.of(portfolio.getStocks());
+        snapshot = portfolio.snapshot();
+    }
+
+    @Benchmark
+    public void portfolioGetters(Blackhole bh) {
+        bh.consume(portfolio.getTotalInvested());
+        bh.consume(portfolio.getCurrentValue());
+        bh.consume(portfolio.getUnrealizedPL());
+        bh.consume(portfolio.getUnrealizedPLPercent());
+        bh.consume(portfolio.getAllocationPercent());
+        bh.consume(portfolio.getSectorWeights());
+        bh.consume(portfolio.getRiskRating());
+        bh.consume(portfolio.getVolatilityScore());
+        bh.consume(portfolio.getDiversificationScore());
+    }
+
+    // same aggregates, built from the columnar store instead of List<Stock>
+    @Benchmark
+    public void columnarSnapshotAll(Blackhole bh) {
+        PortfolioSnapshot s = PortfolioSnapshot.of(columns);
+        bh.consume(s.getTotalInvested());
+        bh.consume(s.getCurrentValue());
+        bh.consume(s.getUnrealizedPL());
+        bh.consume(s.getUnrealizedPLPercent());
+        bh.consume(s.getAllocationPercent());
+        bh.consume(s.getSectorWeights());
+        bh.consume(s.getRiskRating());
+        bh.consume(s.getVolatilityScore());
+        bh.consume(s.getDiversificationScore());
+    }
+
+    @Benchmark
+    public void snapshotAll(Blackhole bh) {
+        PortfolioSnapshot s = portfolio.snapshot();
+        bh.consume(s.getTotalInvested());
+        bh.consume(s.getCurrentValue());
+        bh.consume(s.getUnrealizedPL());
+        bh.consume(s.getUnrealizedPLPercent());
+        bh.consume(s.getAllocationPercent());
+        bh.consume(s.getSectorWeights());
+        bh.consume(s.getRiskRating());
+        bh.consume(s.getVolatilityScore());
+        bh.consume(s.getDiversificationScore());
+    }
+
+    @Benchmark
+    public void snapshotScalars(Blackhole bh) {
+        PortfolioSnapshot s = portfolio.snapshot();
+        bh.consume(s.getCurrentValue());
+        bh.consume(s.getVolatilityScore());
+        bh.consume(s.getDiversificationScore());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public double incrementalTick() {
+        int i = tick++ % size;
+        snapshot.updatePrice(i, snapshot.price(i) * ((tick & 1) == 0 ? 1.001 : 0.999));
+        return snapshot.getVolatilityScore();
+    }
+
+    // /api/top before: two full boxed sorts for the first 5 each way
+    @Benchmark
+    public void topMoversSorted(Blackhole bh) {
+        List<Stock> filtered = portfolio.getStocks().stream()
+                .filter(s -> s.investedAmount() != 0).collect(Collectors.toList());
+        bh.consume(filtered.stream()
+                .sorted(Comparator.comparingDouble(Stock::unrealizedPLPercent).reversed())
+                .limit(5).collect(Collectors.toList()));
+        bh.consume(filtered.stream()
+                .sorted(Comparator.comparingDouble(Stock::unrealizedPLPercent))
+                .limit(5).collect(Collectors.toList()));
+    }
+
+    // after: both sides from one pass with bounded heaps
+    @Benchmark
+    public PortfolioSnapshot.Movers topMoversHeap() {
+        return snapshot.topMovers(5, true);
+    }
+}
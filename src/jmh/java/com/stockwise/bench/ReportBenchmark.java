@@ -0,0 +1,34 @@
+package com.stockwise.bench;
+
+import com.stockwise.model.Portfolio;
+import com.stockwise.service.PortfolioAnalysisService;
+import com.stockwise.service.ReportService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+public class ReportBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    int size;
+
+    Portfolio portfolio;
+    ReportService reports;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        portfolio = BenchData.portfolio(size);
+        reports = new ReportService(new PortfolioAnalysisService());
+    }
+
+    @Benchmark
+    public String generateTextReport() {
+        return reports.generateTextReport(portfolio);
+    }
+}
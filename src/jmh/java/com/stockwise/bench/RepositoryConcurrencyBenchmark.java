@@ -0,0 +1,78 @@
+package com.stockwise.bench;
+
+import com.stockwise.model.Stock;
+import com.stockwise.repository.PortfolioRepository;
+import com.stockwise.repository.SqliteDataSource;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * findAll throughput while saveOrUpdate runs in parallel, against a real
+ * on-disk SQLite file. "reads" is the read-only baseline; "mixed" adds one
+ * writer thread so any reader/writer blocking shows up as lost read ops.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx2g"})
+public class RepositoryConcurrencyBenchmark {
+
+    static final String PORTFOLIO = PortfolioRepository.DEFAULT_PORTFOLIO;
+
+    @Param({"100", "10000"})
+    int size;
+
+    Path dir;
+    SqliteDataSource db;
+    PortfolioRepository repo;
+    List<Stock> writes;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("stockwise-bench");
+        db = new SqliteDataSource("jdbc:sqlite:" + dir.resolve("bench.db"), 4, 268435456L, 16384, 5000);
+        repo = new PortfolioRepository(db);
+        repo.replaceAll(PORTFOLIO, BenchData.holdings(size));
+        writes = BenchData.holdings(Math.min(size, 1000));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        db.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @Group("reads")
+    @GroupThreads(4)
+    public List<Stock> readsOnly() throws Exception {
+        return repo.findAll(PORTFOLIO);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(4)
+    public List<Stock> mixedFindAll() throws Exception {
+        return repo.findAll(PORTFOLIO);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedSaveOrUpdate() throws Exception {
+        // only the single writer thread touches `next`
+        Stock s = writes.get(next++ % writes.size());
+        repo.saveOrUpdate(PORTFOLIO, new Stock(s.getSymbol(), 1, s.getBuyPrice(), s.getBuyDate(), s.getSector()));
+    }
+}
@@ -0,0 +1,65 @@
+package com.stockwise.bench;
+
+import com.stockwise.model.RiskModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A year of daily returns for a 500-symbol portfolio: building the
+ * covariance model (once per trading day) against evaluating the cached
+ * model with fresh weights (every /api/risk request).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RiskBenchmark {
+
+    @Param({"500"})
+    int symbols;
+
+    String[] names;
+    double[][] returns;
+    double[] index;
+    double[] weights;
+    RiskModel model;
+    ForkJoinPool pool;
+
+    @Setup
+    public void setup() {
+        SplittableRandom rnd = new SplittableRandom(42);
+        int days = RiskModel.TRADING_DAYS;
+        names = new String[symbols];
+        returns = new double[symbols][days];
+        index = new double[days];
+        weights = new double[symbols];
+        for (int d = 0; d < days; d++) index[d] = (rnd.nextDouble() - 0.5) * 0.02;
+        for (int i = 0; i < symbols; i++) {
+            names[i] = "SYM" + i;
+            weights[i] = 1.0 / symbols;
+            for (int d = 0; d < days; d++) returns[i][d] = index[d] + (rnd.nextDouble() - 0.5) * 0.03;
+        }
+        pool = new ForkJoinPool();
+        model = RiskModel.build(names, returns, index, pool);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public RiskModel build() {
+        return RiskModel.build(names, returns, index, pool);
+    }
+
+    @Benchmark
+    public RiskModel.Result evaluate() {
+        return model.evaluate(weights);
+    }
+}
@@ -0,0 +1,50 @@
+package com.stockwise.bench;
+
+import com.stockwise.model.Portfolio;
+import com.stockwise.model.PortfolioSnapshot;
+import com.stockwise.service.PortfolioAnalysisService;
+import com.stockwise.service.SuggestionService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+public class SuggestionBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    int size;
+
+    Portfolio portfolio;
+    SuggestionService suggestions;
+
+    // kept and re-priced in place, like the live stream's snapshot
+    PortfolioSnapshot live;
+    int tick;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        portfolio = BenchData.portfolio(size);
+        PortfolioAnalysisService analysis = new PortfolioAnalysisService();
+        suggestions = new SuggestionService(analysis);
+        live = analysis.snapshot(portfolio);
+    }
+
+    @Benchmark
+    public List<String> generateSuggestions() {
+        return suggestions.generateSuggestions(portfolio);
+    }
+
+    // one holding re-priced between calls
+    @Benchmark
+    public List<String> afterOneTick() {
+        int i = tick++ % size;
+        live.updatePrice(i, live.price(i) * (tick % 2 == 0 ? 1.001 : 0.999));
+        return suggestions.generateSuggestions(live);
+    }
+}
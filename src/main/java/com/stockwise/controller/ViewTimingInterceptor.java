@@ -0,0 +1,57 @@
+package com.stockwise.controller;
+
+import com.stockwise.util.Meters;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times template rendering per route as stockwise.view.render{uri, view,
+ * outcome}: from the handler returning its view to the response being
+ * written. http.server.requests covers the whole request; the difference
+ * is the handler's own time. Redirects and @ResponseBody routes render
+ * nothing and aren't recorded.
+ */
+@Component
+public class ViewTimingInterceptor implements HandlerInterceptor, WebMvcConfigurer {
+
+    private static final String STARTED = ViewTimingInterceptor.class.getName() + ".started";
+    private static final String VIEW = ViewTimingInterceptor.class.getName() + ".view";
+
+    private final MeterRegistry meters;
+
+    public ViewTimingInterceptor(MeterRegistry meters) {
+        this.meters = meters;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this);
+    }
+
+    // after the handler, before the view renders
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView mv) {
+        if (mv == null || mv.getViewName() == null || mv.getViewName().startsWith("redirect:")) return;
+        request.setAttribute(VIEW, mv.getViewName());
+        request.setAttribute(STARTED, System.nanoTime());
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object started = request.getAttribute(STARTED);
+        if (!(started instanceof Long)) return;
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+        Meters.viewRender(meters, uri, (String) request.getAttribute(VIEW), ex == null)
+                .record(System.nanoTime() - (Long) started, TimeUnit.NANOSECONDS);
+    }
+}
@@ -1,93 +1,151 @@
 package com.stockwise.controller;
 
+import com.stockwise.model.Alert;
 import com.stockwise.model.Portfolio;
+import com.stockwise.model.PriceBars;
+import com.stockwise.model.ReportJob;
 import com.stockwise.model.Stock;
+import com.stockwise.model.Trade;
+import com.stockwise.repository.LedgerRepository;
 import com.stockwise.repository.PortfolioRepository;
-import com.stockwise.service.MarketDataService;
-import com.stockwise.service.PortfolioAnalysisService;
+import com.stockwise.repository.PriceHistoryRepository;
+import com.stockwise.service.AlertService;
+import com.stockwise.service.CompositeMarketDataService;
+import com.stockwise.service.DashboardService;
+import com.stockwise.service.ImportService;
+import com.stockwise.service.MonteCarloService;
+import com.stockwise.service.PriceHistoryService;
+import com.stockwise.service.PriceRefreshService;
+import com.stockwise.service.PriceStreamService;
+import com.stockwise.service.ReportJobService;
 import com.stockwise.service.ReportService;
+import com.stockwise.service.RiskService;
 import com.stockwise.service.SuggestionService;
+import com.stockwise.service.SymbolMaster;
+import com.stockwise.service.YahooMarketDataService;
+import com.stockwise.util.AcceptEncoding;
+import com.stockwise.util.ApiFormat;
 import com.stockwise.util.CSVUtil;
+import com.stockwise.util.Meters;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 
 @Controller
 public class WebController {
 
     @Autowired private PortfolioRepository repo;
-    @Autowired private MarketDataService market;
-    @Autowired private PortfolioAnalysisService analysis;
+    @Autowired private LedgerRepository ledger;
     @Autowired private SuggestionService suggestionService;
     @Autowired private ReportService reportService;
+    @Autowired private ReportJobService reportJobs;
+    @Autowired private YahooMarketDataService yahoo;
+    @Autowired private CompositeMarketDataService composite;
+    @Autowired private SymbolMaster symbolMaster;
+    @Autowired private PriceRefreshService priceRefresher;
+    @Autowired private DashboardService dashboard;
+    @Autowired private PriceStreamService priceStream;
+    @Autowired private ImportService importService;
+    @Autowired private PriceHistoryService priceHistory;
+    @Autowired private RiskService risk;
+    @Autowired private MonteCarloService monteCarlo;
+    @Autowired private AlertService alerts;
+    @Autowired private MeterRegistry meters;
+
+    private static final Pattern PORTFOLIO_ID = Pattern.compile("[A-Za-z0-9_.-]{1,64}");
+
+    // Every page and API route also exists under /portfolios/{pid} (pages) or
+    // /api/portfolios/{pid} (APIs); the plain routes serve the default portfolio.
+
+    @GetMapping({"/", "/portfolios/{pid}"})
+    public String home(@PathVariable(value = "pid", required = false) String pid, Model m) {
+        m.addAttribute("base", pageBase(portfolioId(pid)));
+        return "index";
+    }
 
-    @GetMapping("/")
-    public String home() { return "index"; }
-
-    @GetMapping("/manual-add")
-    public String manualAddPage() { return "index"; }
+    @GetMapping({"/manual-add", "/portfolios/{pid}/manual-add"})
+    public String manualAddPage(@PathVariable(value = "pid", required = false) String pid, Model m) {
+        return home(pid, m);
+    }
 
     // ---------------- VIEW PORTFOLIO -------------------
-    @GetMapping("/portfolio")
-    public String viewPortfolio(Model m) {
+    // Served from the dashboard cache; 304 while the client's copy is current
+    @GetMapping({"/portfolio", "/portfolios/{pid}/portfolio"})
+    public String viewPortfolio(@PathVariable(value = "pid", required = false) String pid, Model m, WebRequest request) {
+        String portfolioId = portfolioId(pid);
+        m.addAttribute("base", pageBase(portfolioId));
+        m.addAttribute("apiBase", apiBase(portfolioId));
         try {
-            List<Stock> stocks;
+            Portfolio p;
             try {
-                stocks = repo.findAll();
-            } catch (SQLException e) {
-                e.printStackTrace();
-                m.addAttribute("error","DB error: "+e.getMessage());
-                return "index";
-            }
-
-            // If DB is empty -> load sample CSV from classpath and persist it.
-            // This ensures sample appears only when DB empty (first run).
-            if (stocks == null || stocks.isEmpty()) {
-                try (InputStream is = getClass().getResourceAsStream("/sample/sample.csv")) {
-                    if (is != null) {
-                        List<Stock> sample = CSVUtil.parsePortfolioCSV(is);
-                        if (sample != null && !sample.isEmpty()) {
-                            try {
-                                repo.replaceAll(sample); // write sample into DB
-                                stocks = repo.findAll(); // reload from DB
-                            } catch (SQLException ex) {
-                                ex.printStackTrace();
-                                // fall back to sample in-memory (do not overwrite DB)
-                                stocks = sample;
+                p = dashboard.cachedPortfolio(portfolioId);
+
+                // If the default portfolio is empty -> load sample CSV from classpath and persist it.
+                // This ensures sample appears only when DB empty (first run); other portfolios start empty.
+                if (p.getStocks().isEmpty() && PortfolioRepository.DEFAULT_PORTFOLIO.equals(portfolioId)) {
+                    try (InputStream is = getClass().getResourceAsStream("/sample/sample.csv")) {
+                        if (is != null) {
+                            List<Stock> sample = CSVUtil.parsePortfolioCSV(is);
+                            if (sample != null && !sample.isEmpty()) {
+                                repo.replaceAll(portfolioId, sample); // write sample into DB
+                                p = dashboard.cachedPortfolio(portfolioId); // reload from DB
                             }
                         }
+                    } catch (Exception ex) {
+                        // if anything fails, keep stocks empty and continue (no crash)
+                        ex.printStackTrace();
                     }
-                } catch (Exception ex) {
-                    // if anything fails, keep stocks empty and continue (no crash)
-                    ex.printStackTrace();
                 }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                m.addAttribute("error","DB error: "+e.getMessage());
+                return "index";
             }
 
-            fillCurrentPricesSafely(stocks);
+            if (request.checkNotModified(dashboard.etag(portfolioId))) return null;
 
-            Portfolio p = new Portfolio();
-            p.setStocks(stocks);
+            Timer.Sample analytics = Timer.start();
+            Map<String,Object> summary = dashboard.cachedSummary(portfolioId);
 
             m.addAttribute("portfolio", p);
-            m.addAttribute("totalInvested", analysis.totalInvested(p));
-            m.addAttribute("currentValue", analysis.currentValue(p));
-            m.addAttribute("unrealized", analysis.unrealizedPL(p));
-            m.addAttribute("volatility", analysis.volatilityScore(p));
-            m.addAttribute("diversification", analysis.diversificationIndex(p));
-            m.addAttribute("alloc", analysis.allocationPercent(p));
-            m.addAttribute("suggestions", suggestionService.generateSuggestions(p));
+            m.addAttribute("totalInvested", summary.get("totalInvested"));
+            m.addAttribute("currentValue", summary.get("currentValue"));
+            m.addAttribute("unrealized", summary.get("unrealized"));
+            m.addAttribute("volatility", summary.get("volatility"));
+            m.addAttribute("diversification", summary.get("diversification"));
+            m.addAttribute("alloc", summary.get("allocation"));
+            m.addAttribute("suggestions", summary.get("suggestions"));
+            analytics.stop(Meters.analytics(meters, "portfolio-page"));
 
             return "portfolio";
 
@@ -99,18 +157,23 @@ public class WebController {
     }
 
     // ---------------- CSV UPLOAD -------------------
-    @PostMapping("/upload")
-    public String uploadCSV(@RequestParam("file") MultipartFile file, Model m) {
+    @PostMapping({"/upload", "/portfolios/{pid}/upload"})
+    public String uploadCSV(@PathVariable(value = "pid", required = false) String pid,
+                            @RequestParam("file") MultipartFile file, Model m) {
+        String portfolioId = portfolioId(pid);
+        m.addAttribute("base", pageBase(portfolioId));
         try {
             if (file.isEmpty()) {
                 m.addAttribute("message","File is empty");
                 return "index";
             }
 
-            List<Stock> parsed = CSVUtil.parsePortfolioCSV(file.getInputStream());
-
-            try {
-                repo.replaceAll(parsed); // overwrite DB with uploaded CSV
+            try (InputStream in = file.getInputStream()) {
+                // streamed in chunks; the DB is overwritten only once the whole file is in
+                importService.importCsv(portfolioId, in, file.getSize());
+                priceRefresher.requestRefresh();
+                priceStream.portfolioChanged(portfolioId);
+                alerts.portfolioChanged(portfolioId);
             } catch (SQLException e) {
                 e.printStackTrace();
                 m.addAttribute("message","DB error: "+e.getMessage());
@@ -118,7 +181,7 @@ public class WebController {
             }
 
             // IMPORTANT: redirect to dashboard so uploaded data is shown immediately
-            return "redirect:/portfolio";
+            return "redirect:" + pageBase(portfolioId) + "/portfolio";
 
         } catch (Exception ex) {
             ex.printStackTrace();
@@ -128,22 +191,27 @@ public class WebController {
     }
 
     // ---------------- MANUAL ADD -------------------
-    @PostMapping("/manual-add")
-    public String manualAdd(@RequestParam("symbol") String symbol,
+    @PostMapping({"/manual-add", "/portfolios/{pid}/manual-add"})
+    public String manualAdd(@PathVariable(value = "pid", required = false) String pid,
+                            @RequestParam("symbol") String symbol,
                             @RequestParam("quantity") double quantity,
                             @RequestParam("averagePrice") double averagePrice) {
+        String portfolioId = portfolioId(pid);
 
         try {
             Stock s = new Stock(
-                    symbol.toUpperCase(),
+                    symbol,
                     quantity,
                     averagePrice,
-                    java.time.LocalDate.now().toString(),
+                    LocalDate.now().toString(),
                     "Unknown"
             );
 
             try {
-                repo.saveOrUpdate(s);
+                repo.saveOrUpdate(portfolioId, s);
+                priceRefresher.requestRefresh();
+                priceStream.portfolioChanged(portfolioId);
+                alerts.portfolioChanged(portfolioId);
             } catch (SQLException e) {
                 e.printStackTrace();
             }
@@ -151,183 +219,443 @@ public class WebController {
         } catch (Exception ex) {
             ex.printStackTrace();
         }
-        return "redirect:/portfolio";
+        return "redirect:" + pageBase(portfolioId) + "/portfolio";
+    }
+
+    // ---------------- SELL -------------------
+    @PostMapping({"/sell", "/portfolios/{pid}/sell"})
+    public String sell(@PathVariable(value = "pid", required = false) String pid,
+                       @RequestParam("symbol") String symbol,
+                       @RequestParam("quantity") double quantity,
+                       @RequestParam(value = "price", defaultValue = "0") double price) {
+        String portfolioId = portfolioId(pid);
+        try {
+            repo.sell(portfolioId, symbol, quantity, price, LocalDate.now().toString());
+            priceStream.portfolioChanged(portfolioId);
+            alerts.portfolioChanged(portfolioId);
+        } catch (IllegalArgumentException e) {
+            System.out.println("⚠ Sell refused: " + e.getMessage());
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return "redirect:" + pageBase(portfolioId) + "/portfolio";
     }
 
     // ---------------- DELETE STOCK -------------------
-    @PostMapping("/delete")
-    public String delete(@RequestParam("symbol") String symbol) {
+    @PostMapping({"/delete", "/portfolios/{pid}/delete"})
+    public String delete(@PathVariable(value = "pid", required = false) String pid,
+                         @RequestParam("symbol") String symbol) {
+        String portfolioId = portfolioId(pid);
         try {
-            repo.deleteBySymbol(symbol);
+            repo.deleteBySymbol(portfolioId, symbol);
+            priceStream.portfolioChanged(portfolioId);
+            alerts.portfolioChanged(portfolioId);
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return "redirect:/portfolio";
+        return "redirect:" + pageBase(portfolioId) + "/portfolio";
     }
 
 
     // ===========================================================
     //   API ENDPOINTS
     // ===========================================================
-    @GetMapping("/api/portfolio")
+    @GetMapping("/api/portfolios")
     @ResponseBody
-    public Portfolio apiPortfolio() {
-        List<Stock> stocks = new ArrayList<>();
+    public List<String> apiPortfolios() throws SQLException {
+        return repo.findPortfolioIds();
+    }
+
+    // The dashboard routes below answer from the dashboard cache, and with 304 (no body built or
+    // serialized) when If-None-Match carries the portfolio's current ETag
+
+    // format=json (default), compact (columns of stored fields) or cbor (compact, binary); or by Accept
+    @GetMapping({"/api/portfolio", "/api/portfolios/{pid}/portfolio"})
+    public ResponseEntity<byte[]> apiPortfolio(@PathVariable(value = "pid", required = false) String pid,
+                                               @RequestParam(value = "format", required = false) String format,
+                                               @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                               WebRequest request) throws SQLException, IOException {
+        String portfolioId = portfolioId(pid);
+        ApiFormat f;
         try {
-            stocks = repo.findAll();
-        } catch (SQLException e) { e.printStackTrace(); }
+            f = ApiFormat.negotiate(format, accept);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        if (request.checkNotModified(f.etag(dashboard.etag(portfolioId)))) return null;
+        return ResponseEntity.ok()
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .contentType(MediaType.parseMediaType(f.mediaType()))
+                .body(dashboard.cachedPortfolioBody(portfolioId, f));
+    }
 
-        fillCurrentPricesSafely(stocks);
 
-        Portfolio p = new Portfolio();
-        p.setStocks(stocks);
-        return p;
+    @GetMapping({"/api/summary", "/api/portfolios/{pid}/summary"})
+    @ResponseBody
+    public Map<String,Object> apiSummary(@PathVariable(value = "pid", required = false) String pid,
+                                         WebRequest request) throws SQLException {
+        String portfolioId = portfolioId(pid);
+        if (request.checkNotModified(dashboard.etag(portfolioId))) return null;
+        return dashboard.cachedSummary(portfolioId);
     }
 
-
-    @GetMapping("/api/summary")
+    @GetMapping({"/api/top", "/api/portfolios/{pid}/top"})
     @ResponseBody
-    public Map<String,Object> apiSummary() {
-        List<Stock> stocks = new ArrayList<>();
+    public Map<String,List<Stock>> apiTop(@PathVariable(value = "pid", required = false) String pid,
+                                          @RequestParam(value = "limit", defaultValue = "5") int limit,
+                                          WebRequest request) throws SQLException {
+
+        String portfolioId = portfolioId(pid);
+        if (request.checkNotModified(dashboard.etag(portfolioId))) return null;
         try {
-            stocks = repo.findAll();
-        } catch (SQLException e) { e.printStackTrace(); }
+            return dashboard.cachedTopMovers(portfolioId, limit);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
 
-        fillCurrentPricesSafely(stocks);
 
-        Portfolio p = new Portfolio();
-        p.setStocks(stocks);
+    // Live price/summary deltas; replaces polling /api/summary + /api/portfolio
+    @GetMapping(value = {"/api/stream", "/api/portfolios/{pid}/stream"}, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public SseEmitter apiStream(@PathVariable(value = "pid", required = false) String pid) {
+        return priceStream.subscribe(portfolioId(pid));
+    }
 
-        double totalInvested = analysis.totalInvested(p);
-        double currentValue = analysis.currentValue(p);
-        double unrealized = analysis.unrealizedPL(p);
+    // Newest trades first
+    @GetMapping({"/api/ledger", "/api/portfolios/{pid}/ledger"})
+    @ResponseBody
+    public List<Trade> apiLedger(@PathVariable(value = "pid", required = false) String pid,
+                                 @RequestParam(value = "limit", defaultValue = "100") int limit) throws SQLException {
+        return ledger.findRecent(portfolioId(pid), Math.max(1, Math.min(limit, 10000)));
+    }
 
-        Map<String,Object> out = new HashMap<>();
-        out.put("totalInvested", totalInvested);
-        out.put("currentValue", currentValue);
-        out.put("unrealized", unrealized);
-        out.put("unrealizedPercent", totalInvested==0?0:(unrealized/totalInvested)*100);
-        out.put("volatility", analysis.volatilityScore(p));
-        out.put("diversification", analysis.diversificationIndex(p));
-        out.put("allocation", analysis.allocationPercent(p));
-        out.put("suggestions", suggestionService.generateSuggestions(p));
-        out.put("riskRating", computeRiskRating(analysis.volatilityScore(p)));
+    @GetMapping({"/api/import/progress", "/api/portfolios/{pid}/import/progress"})
+    @ResponseBody
+    public Map<String,Object> apiImportProgress(@PathVariable(value = "pid", required = false) String pid) {
+        return importService.progress(portfolioId(pid));
+    }
 
+    // Stored bars, column by column; from/to are ISO dates (UTC), prices the upstream didn't send are null
+    @GetMapping("/api/history/{symbol}")
+    @ResponseBody
+    public Map<String,Object> apiHistory(@PathVariable("symbol") String symbol,
+                                         @RequestParam(value = "interval", defaultValue = "1d") String interval,
+                                         @RequestParam(value = "from", required = false) String from,
+                                         @RequestParam(value = "to", required = false) String to) throws SQLException {
+        boolean daily = PriceHistoryRepository.DAILY.equals(interval);
+        PriceBars b;
+        try {
+            LocalDate toDay = to != null ? LocalDate.parse(to) : LocalDate.now(ZoneOffset.UTC);
+            LocalDate fromDay = from != null ? LocalDate.parse(from) : toDay.minusDays(daily ? 365 : 1);
+            if (fromDay.isAfter(toDay)) throw new IllegalArgumentException("from is after to");
+            long fromSec = fromDay.atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+            long toSec = toDay.plusDays(1).atStartOfDay(ZoneOffset.UTC).toEpochSecond() - 1;
+            b = priceHistory.bars(symbol, interval, fromSec, toSec);
+        } catch (DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Dates must be yyyy-MM-dd: " + e.getParsedString());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+
+        int n = b.size();
+        List<Long> t = new ArrayList<>(n), v = new ArrayList<>(n);
+        List<Double> o = new ArrayList<>(n), h = new ArrayList<>(n), l = new ArrayList<>(n), c = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            t.add(b.time(i));
+            o.add(orNull(b.open(i)));
+            h.add(orNull(b.high(i)));
+            l.add(orNull(b.low(i)));
+            c.add(orNull(b.close(i)));
+            v.add(b.volume(i));
+        }
+
+        Map<String,Object> out = new LinkedHashMap<>();
+        out.put("symbol", SymbolMaster.normalize(symbol));
+        out.put("interval", interval);
+        out.put("count", n);
+        out.put("time", t);
+        out.put("open", o);
+        out.put("high", h);
+        out.put("low", l);
+        out.put("close", c);
+        out.put("volume", v);
         return out;
     }
 
-    @GetMapping("/api/top")
+    @GetMapping("/api/history")
+    @ResponseBody
+    public Map<String,Object> apiHistoryStats() throws SQLException {
+        return priceHistory.stats();
+    }
+
+    // Volatility, VaR/CVaR and beta from daily history; per-day cached, so repeat calls are cheap
+    @GetMapping({"/api/risk", "/api/portfolios/{pid}/risk"})
+    @ResponseBody
+    public Map<String,Object> apiRisk(@PathVariable(value = "pid", required = false) String pid) {
+        return risk.risk(portfolioId(pid));
+    }
+
+    @GetMapping({"/api/risk/covariance", "/api/portfolios/{pid}/risk/covariance"})
     @ResponseBody
-    public Map<String,List<Stock>> apiTop(@RequestParam(defaultValue="5") int limit) {
+    public Map<String,Object> apiRiskCovariance(@PathVariable(value = "pid", required = false) String pid) {
+        return risk.matrix(portfolioId(pid), false);
+    }
+
+    @GetMapping({"/api/risk/correlation", "/api/portfolios/{pid}/risk/correlation"})
+    @ResponseBody
+    public Map<String,Object> apiRiskCorrelation(@PathVariable(value = "pid", required = false) String pid) {
+        return risk.matrix(portfolioId(pid), true);
+    }
 
-        List<Stock> stocks = new ArrayList<>();
+    // Projected value bands over `horizon` trading days; pass a seed to get repeatable numbers
+    @GetMapping({"/api/montecarlo", "/api/portfolios/{pid}/montecarlo"})
+    @ResponseBody
+    public Map<String,Object> apiMonteCarlo(@PathVariable(value = "pid", required = false) String pid,
+                                            @RequestParam(value = "horizon", defaultValue = "252") int horizon,
+                                            @RequestParam(value = "paths", required = false) Integer paths,
+                                            @RequestParam(value = "steps", required = false) Integer steps,
+                                            @RequestParam(value = "seed", required = false) Long seed,
+                                            @RequestParam(value = "drift", defaultValue = "historical") String drift) {
         try {
-            stocks = repo.findAll();
-        } catch (SQLException e) { e.printStackTrace(); }
+            return monteCarlo.simulate(portfolioId(pid), horizon, paths, steps, seed, drift);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (RejectedExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        }
+    }
 
-        fillCurrentPricesSafely(stocks);
+    // Suggestion rules in evaluation order, with how often each ran and how long it took
+    @GetMapping("/api/suggestions/rules")
+    @ResponseBody
+    public List<Map<String,Object>> apiSuggestionRules() {
+        return suggestionService.ruleStats();
+    }
 
-        List<Stock> filtered =
-                stocks.stream().filter(s -> s.investedAmount()!=0).collect(Collectors.toList());
+    // Alerts, newest first: status active, triggered or all
+    @GetMapping({"/api/alerts", "/api/portfolios/{pid}/alerts"})
+    @ResponseBody
+    public List<Alert> apiAlerts(@PathVariable(value = "pid", required = false) String pid,
+                                 @RequestParam(value = "status", defaultValue = "all") String status,
+                                 @RequestParam(value = "limit", defaultValue = "100") int limit) throws SQLException {
+        try {
+            return alerts.list(portfolioId(pid), status, Math.max(1, Math.min(limit, 10000)));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
 
-        List<Stock> gainers = filtered.stream()
-                .sorted(Comparator.comparingDouble(Stock::unrealizedPLPercent).reversed())
-                .limit(limit)
-                .collect(Collectors.toList());
+    // e.g. alert=RELIANCE above 2600 or alert=portfolio pl below -5%; comes back triggered if it already holds
+    @PostMapping({"/api/alerts", "/api/portfolios/{pid}/alerts"})
+    @ResponseBody
+    public Alert apiCreateAlert(@PathVariable(value = "pid", required = false) String pid,
+                                @RequestParam("alert") String alert) throws SQLException {
+        try {
+            return alerts.create(portfolioId(pid), alert);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
 
-        List<Stock> losers = filtered.stream()
-                .sorted(Comparator.comparingDouble(Stock::unrealizedPLPercent))
-                .limit(limit)
-                .collect(Collectors.toList());
+    @DeleteMapping({"/api/alerts/{id}", "/api/portfolios/{pid}/alerts/{id}"})
+    @ResponseBody
+    public Map<String,Object> apiDeleteAlert(@PathVariable(value = "pid", required = false) String pid,
+                                             @PathVariable("id") long id) throws SQLException {
+        if (!alerts.delete(portfolioId(pid), id)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No alert " + id);
+        }
+        return Map.of("deleted", id);
+    }
 
-        Map<String,List<Stock>> out = new HashMap<>();
-        out.put("gainers", gainers);
-        out.put("losers", losers);
-        return out;
+    // Active alert counts and per-tick check times
+    @GetMapping("/api/alerts/stats")
+    @ResponseBody
+    public Map<String,Object> apiAlertStats() {
+        return alerts.stats();
+    }
+
+    @GetMapping("/api/market/cache")
+    @ResponseBody
+    public Map<String,Object> apiQuoteCacheStats() {
+        return yahoo.cacheStats();
+    }
+
+    // Per-provider latencies, routes and hedging counts
+    @GetMapping("/api/market/providers")
+    @ResponseBody
+    public Map<String,Object> apiMarketProviders() {
+        return composite.stats();
+    }
+
+    // Instrument list: symbols, aliases and ISINs starting with prefix
+    @GetMapping("/api/symbols")
+    @ResponseBody
+    public List<Map<String,Object>> apiSymbols(@RequestParam(value = "prefix", defaultValue = "") String prefix,
+                                               @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        return symbolMaster.search(prefix, Math.max(1, Math.min(limit, 1000)));
+    }
+
+    // Symbol, alias or ISIN -> id, listed symbol, exchange and the Yahoo symbol quotes are fetched with
+    @GetMapping("/api/symbols/resolve")
+    @ResponseBody
+    public Map<String,Object> apiResolveSymbol(@RequestParam("q") String query) {
+        return symbolMaster.resolve(query);
+    }
+
+    @GetMapping("/api/symbols/stats")
+    @ResponseBody
+    public Map<String,Object> apiSymbolStats() {
+        return symbolMaster.stats();
+    }
+
+    // Circuit breaker state and free bulkhead slots for upstream quotes
+    @GetMapping("/api/market/resilience")
+    @ResponseBody
+    public Map<String,Object> apiMarketResilience() {
+        return yahoo.resilienceStats();
     }
 
 
     // ===========================================================
     //   EXPORT
     // ===========================================================
-    @GetMapping("/export/report")
-    public ResponseEntity<InputStreamResource> downloadReport() throws Exception {
+    // Built while streaming; big portfolios are better served by a report job (/api/reports)
+    @GetMapping({"/export/report", "/portfolios/{pid}/export/report"})
+    public ResponseEntity<StreamingResponseBody> downloadReport(@PathVariable(value = "pid", required = false) String pid,
+                                                                WebRequest request) throws Exception {
+
+        String portfolioId = portfolioId(pid);
+        // tag and portfolio from the same view, so the ETag describes what is streamed
+        Map.Entry<String, Portfolio> tagged = dashboard.cachedPortfolioWithEtag(portfolioId);
+        if (request.checkNotModified(tagged.getKey())) return null;
+        Portfolio p = tagged.getValue();
+
+        StreamingResponseBody body = out -> {
+            Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+            reportService.writeTextReport(p, w);
+            w.flush();
+        };
 
-        List<Stock> stocks = new ArrayList<>();
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,"attachment;filename=portfolio_report.txt")
+                .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+                .body(body);
+    }
+
+    // Queues a report (format txt or csv); 202 with the job, or the existing job for the same holdings and prices
+    @PostMapping({"/api/reports", "/api/portfolios/{pid}/reports"})
+    @ResponseBody
+    public ResponseEntity<ReportJob> apiSubmitReport(@PathVariable(value = "pid", required = false) String pid,
+                                                     @RequestParam(value = "format", defaultValue = "txt") String format) throws SQLException {
         try {
-            stocks = repo.findAll();
-        } catch (SQLException e) { e.printStackTrace(); }
+            ReportJob job = reportJobs.submit(portfolioId(pid), format);
+            return ResponseEntity.status(job.isFinished() ? HttpStatus.OK : HttpStatus.ACCEPTED)
+                    .header(HttpHeaders.LOCATION, "/api/reports/" + job.getId())
+                    .body(job);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (RejectedExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Report queue is full, try again shortly");
+        }
+    }
 
-        fillCurrentPricesSafely(stocks);
+    // Report jobs of the portfolio, newest first
+    @GetMapping({"/api/reports", "/api/portfolios/{pid}/reports"})
+    @ResponseBody
+    public List<ReportJob> apiReports(@PathVariable(value = "pid", required = false) String pid) {
+        return reportJobs.list(portfolioId(pid));
+    }
 
-        Portfolio p = new Portfolio();
-        p.setStocks(stocks);
+    @GetMapping("/api/reports/stats")
+    @ResponseBody
+    public Map<String,Object> apiReportStats() {
+        return reportJobs.stats();
+    }
 
-        String txt = reportService.generateTextReport(p);
-        byte[] bytes = txt.getBytes();
+    @GetMapping("/api/reports/{id}")
+    @ResponseBody
+    public ReportJob apiReport(@PathVariable("id") String id) {
+        ReportJob job = reportJobs.get(id);
+        if (job == null) throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No report job " + id);
+        return job;
+    }
 
+    // The finished report; 409 while the job is still queued or running (or failed)
+    @GetMapping("/api/reports/{id}/download")
+    public ResponseEntity<Resource> downloadReportJob(@PathVariable("id") String id, WebRequest request) {
+        ReportJob job = reportJobs.get(id);
+        if (job == null) throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No report job " + id);
+        Path file = reportJobs.artifact(id);
+        if (file == null) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Report job " + id + " is " + job.getStatus());
+        }
+        // a job's artifact never changes
+        if (request.checkNotModified("\"" + id + "\"")) return null;
+
+        boolean csv = job.getFormat().equals("csv");
         return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION,"attachment;filename=portfolio_report.txt")
-                .contentType(MediaType.TEXT_PLAIN)
-                .body(new InputStreamResource(new ByteArrayInputStream(bytes)));
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment;filename=portfolio_report." + job.getFormat())
+                .contentType(new MediaType(csv ? MediaType.parseMediaType("text/csv") : MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+                .body(new FileSystemResource(file));
     }
 
 
-    @GetMapping("/export/csv")
-    public ResponseEntity<InputStreamResource> downloadCSV() throws Exception {
+    // Streamed straight from the DB cursor, gzip when the client accepts it. No ETag: the
+    // pages are read live while the body is written, so no one version describes the rows.
+    @GetMapping({"/export/csv", "/portfolios/{pid}/export/csv"})
+    public ResponseEntity<StreamingResponseBody> downloadCSV(
+            @PathVariable(value = "pid", required = false) String pid,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
 
-        List<Stock> stocks = new ArrayList<>();
-        try {
-            stocks = repo.findAll();
-        } catch (SQLException e) { e.printStackTrace(); }
-
-        fillCurrentPricesSafely(stocks);
+        String portfolioId = portfolioId(pid);
+        boolean gzip = AcceptEncoding.accepts(acceptEncoding, "gzip");
 
-        Portfolio p = new Portfolio();
-        p.setStocks(stocks);
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                GZIPOutputStream gz = new GZIPOutputStream(out, 64 * 1024);
+                dashboard.writeCsv(portfolioId, gz);
+                gz.finish();
+            } else {
+                dashboard.writeCsv(portfolioId, out);
+            }
+        };
 
-        StringBuilder sb = new StringBuilder();
-        sb.append("symbol,quantity,buy_price,buy_date,current_price,invested,current_value,unrealized_pl,unrealized_pl_percent,sector\n");
+        ResponseEntity.BodyBuilder res = ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,"attachment;filename=portfolio_export.csv")
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .contentType(MediaType.parseMediaType("text/csv"));
+        if (gzip) res.header(HttpHeaders.CONTENT_ENCODING, "gzip");
 
-        for (Stock s : p.getStocks()) {
-            sb.append(String.format(Locale.US,
-                    "%s,%.2f,%.2f,%s,%.2f,%.2f,%.2f,%.2f,%.2f,%s\n",
-                    s.getSymbol(), s.getQuantity(), s.getBuyPrice(), s.getBuyDate(),
-                    s.getCurrentPrice(), s.investedAmount(), s.currentValue(),
-                    s.unrealizedPL(), s.unrealizedPLPercent(), s.getSector()
-            ));
-        }
+        return res.body(body);
+    }
 
-        byte[] bytes = sb.toString().getBytes();
 
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION,"attachment;filename=portfolio_export.csv")
-                .contentType(MediaType.parseMediaType("text/csv"))
-                .body(new InputStreamResource(new ByteArrayInputStream(bytes)));
+    private static Double orNull(double d) {
+        return Double.isNaN(d) ? null : d;
     }
 
 
     // ===========================================================
-    //   UTILITIES
+    //   PORTFOLIO IDS
     // ===========================================================
-    private void fillCurrentPricesSafely(List<Stock> stocks) {
-        try {
-            String[] syms = stocks.stream().map(Stock::getSymbol).toArray(String[]::new);
-            Map<String,Double> prices = market.fetchPrices(syms);
-
-            for (Stock s : stocks) {
-                s.setCurrentPrice(prices.getOrDefault(s.getSymbol(), 0.0));
-            }
 
-        } catch (Exception e) {
-            for (Stock s : stocks) s.setCurrentPrice(0.0);
+    // Routes without a portfolio id serve the default portfolio
+    private static String portfolioId(String pid) {
+        if (pid == null) return PortfolioRepository.DEFAULT_PORTFOLIO;
+        if (!PORTFOLIO_ID.matcher(pid).matches()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid portfolio id: " + pid);
         }
+        return pid;
+    }
+
+    // Prefix for page links and form actions: "" for the default portfolio
+    private static String pageBase(String portfolioId) {
+        return PortfolioRepository.DEFAULT_PORTFOLIO.equals(portfolioId) ? "" : "/portfolios/" + portfolioId;
     }
 
-    private String computeRiskRating(double volatility) {
-        if (Double.isNaN(volatility)) return "Unknown";
-        if (volatility < 30) return "Low";
-        if (volatility < 60) return "Medium";
-        return "High";
+    // Prefix the dashboard script puts in front of its API calls
+    private static String apiBase(String portfolioId) {
+        return PortfolioRepository.DEFAULT_PORTFOLIO.equals(portfolioId) ? "/api" : "/api/portfolios/" + portfolioId;
     }
 }
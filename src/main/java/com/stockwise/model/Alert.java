@@ -0,0 +1,135 @@
+package com.stockwise.model;
+
+import com.stockwise.service.SymbolMaster;
+
+import java.util.Locale;
+
+/**
+ * A user alert: a symbol's price or the portfolio's unrealized P/L % going
+ * above or below a threshold. Alerts are one-shot: the first price update
+ * that meets the condition fires it, and it stays in the table as triggered.
+ *
+ * Written as text the way users say it:
+ *
+ *   RELIANCE above 2600
+ *   portfolio pl below -5%
+ */
+public class Alert {
+
+    public enum Kind {
+        PRICE,  // last price of symbol
+        PL      // unrealized P/L % of the whole portfolio
+    }
+
+    public enum Direction {
+        ABOVE,  // fires once the value is >= threshold
+        BELOW   // fires once the value is <= threshold
+    }
+
+    private long id;
+    private String portfolioId;
+    private Kind kind;
+    private String symbol;
+    private Direction direction;
+    private double threshold;
+    private long createdAt;
+    private long triggeredAt;
+    private double triggeredValue;
+
+    public Alert() {}
+
+    public Alert(String portfolioId, Kind kind, String symbol, Direction direction, double threshold) {
+        this.portfolioId = portfolioId;
+        this.kind = kind;
+        this.symbol = symbol;
+        this.direction = direction;
+        this.threshold = threshold;
+    }
+
+    /** "SYMBOL above|below number" or "portfolio pl above|below number[%]". */
+    public static Alert parse(String portfolioId, String text) {
+        String[] t = text == null ? new String[0] : text.trim().split("\\s+");
+        if (t.length == 4 && t[0].equalsIgnoreCase("portfolio")
+                && (t[1].equalsIgnoreCase("pl") || t[1].equalsIgnoreCase("p/l"))) {
+            return new Alert(portfolioId, Kind.PL, null, direction(t[2]), number(t[3], true));
+        }
+        if (t.length == 3 && !t[0].isEmpty()) {
+            return new Alert(portfolioId, Kind.PRICE, SymbolMaster.normalize(t[0]), direction(t[1]), number(t[2], false));
+        }
+        throw new IllegalArgumentException("Alert must look like 'SYMBOL above 2600' or 'portfolio pl below -5%'");
+    }
+
+    private static Direction direction(String s) {
+        if (s.equalsIgnoreCase("above")) return Direction.ABOVE;
+        if (s.equalsIgnoreCase("below")) return Direction.BELOW;
+        throw new IllegalArgumentException("Alert direction must be above or below, not '" + s + "'");
+    }
+
+    private static double number(String s, boolean percent) {
+        String n = percent && s.endsWith("%") ? s.substring(0, s.length() - 1) : s;
+        double v;
+        try {
+            v = Double.parseDouble(n);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Alert threshold is not a number: '" + s + "'");
+        }
+        if (!Double.isFinite(v)) throw new IllegalArgumentException("Alert threshold must be finite");
+        if (!percent && v <= 0) throw new IllegalArgumentException("Price alert threshold must be positive");
+        return v;
+    }
+
+    /** True when value meets the condition. */
+    public boolean isMetBy(double value) {
+        return direction == Direction.ABOVE ? value >= threshold : value <= threshold;
+    }
+
+    public boolean isActive() {
+        return triggeredAt == 0;
+    }
+
+    // The alert as it would be typed
+    public String getDescription() {
+        String dir = direction.name().toLowerCase(Locale.ROOT);
+        if (kind == Kind.PL) return "portfolio pl " + dir + " " + plain(threshold) + "%";
+        return symbol + " " + dir + " " + plain(threshold);
+    }
+
+    private static String plain(double v) {
+        return v == Math.rint(v) && Math.abs(v) < 1e15 ? Long.toString((long) v) : Double.toString(v);
+    }
+
+    /* ------------------------
+       Getters and Setters
+    ------------------------ */
+
+    public long getId() { return id; }
+    public void setId(long id) { this.id = id; }
+
+    public String getPortfolioId() { return portfolioId; }
+    public void setPortfolioId(String portfolioId) { this.portfolioId = portfolioId; }
+
+    public Kind getKind() { return kind; }
+    public void setKind(Kind kind) { this.kind = kind; }
+
+    // null for PL alerts
+    public String getSymbol() { return symbol; }
+    public void setSymbol(String symbol) { this.symbol = symbol; }
+
+    public Direction getDirection() { return direction; }
+    public void setDirection(Direction direction) { this.direction = direction; }
+
+    public double getThreshold() { return threshold; }
+    public void setThreshold(double threshold) { this.threshold = threshold; }
+
+    // epoch millis
+    public long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
+
+    // epoch millis when it fired, 0 while active
+    public long getTriggeredAt() { return triggeredAt; }
+    public void setTriggeredAt(long triggeredAt) { this.triggeredAt = triggeredAt; }
+
+    // the price (or P/L %) that fired it
+    public double getTriggeredValue() { return triggeredValue; }
+    public void setTriggeredValue(double triggeredValue) { this.triggeredValue = triggeredValue; }
+}
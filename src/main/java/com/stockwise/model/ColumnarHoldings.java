@@ -0,0 +1,252 @@
+package com.stockwise.model;
+
+import com.stockwise.service.SymbolMaster;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Holdings stored column by column instead of as a List of Stock objects.
+ *
+ * Each lot is a row across primitive arrays: quantity, buy price and current
+ * price as doubles, symbol and sector as ids, and the buy date as an epoch
+ * day. Symbol ids come from a SymbolIds (the app passes its SymbolMaster, so
+ * every portfolio and snapshot shares them); sectors use a small dictionary
+ * of their own. That is ~36 bytes per lot instead of a Stock
+ * plus its three Strings, and the aggregation loops in PortfolioSnapshot run
+ * over plain arrays.
+ *
+ * Values are normalized exactly like the Stock setters, so a snapshot built
+ * from here returns the same numbers as one built from the equivalent list.
+ */
+public class ColumnarHoldings {
+
+    // buy_date was null
+    public static final int NO_DATE = Integer.MIN_VALUE;
+    // buy_date was not an ISO date; the raw text lives in oddDates
+    private static final int RAW_DATE = Integer.MIN_VALUE + 1;
+
+    private int n;
+    private int[] symbolId;
+    private int[] sectorId;
+    private int[] buyDay;
+    private double[] quantity;
+    private double[] buyPrice;
+    private double[] currentPrice;
+
+    private final SymbolIds ids;
+    private final Dictionary sectors = new Dictionary();
+    private Map<Integer, String> oddDates; // row -> raw text, rarely used
+    // row -> symbol as held, when that isn't ids.symbol(id): an alias, or no id to be had; rarely used
+    private Map<Integer, String> oddSymbols;
+
+    public ColumnarHoldings() {
+        this(16);
+    }
+
+    public ColumnarHoldings(int capacity) {
+        this(SymbolIds.local(), capacity);
+    }
+
+    public ColumnarHoldings(SymbolIds ids, int capacity) {
+        this.ids = ids;
+        int c = Math.max(capacity, 1);
+        symbolId = new int[c];
+        sectorId = new int[c];
+        buyDay = new int[c];
+        quantity = new double[c];
+        buyPrice = new double[c];
+        currentPrice = new double[c];
+    }
+
+    public static ColumnarHoldings of(List<Stock> stocks) {
+        return of(stocks, SymbolIds.local());
+    }
+
+    public static ColumnarHoldings of(List<Stock> stocks, SymbolIds ids) {
+        ColumnarHoldings h = new ColumnarHoldings(ids, stocks.size());
+        for (Stock s : stocks) {
+            h.add(s.getSymbol(), s.getQuantity(), s.getBuyPrice(), s.getBuyDate(), s.getSector(), s.getCurrentPrice());
+        }
+        return h;
+    }
+
+    /** Appends one lot; returns its row index. */
+    public int add(String symbol, double qty, double buy, String buyDate, String sector, double price) {
+        if (n == quantity.length) grow();
+        int i = n++;
+        symbolId[i] = encodeSymbol(i, symbol);
+        sectorId[i] = sectors.id(normalizeSector(sector));
+        quantity[i] = qty;
+        buyPrice[i] = buy;
+        currentPrice[i] = price;
+        buyDay[i] = encodeDate(i, buyDate);
+        return i;
+    }
+
+    private void grow() {
+        int c = quantity.length * 2;
+        symbolId = Arrays.copyOf(symbolId, c);
+        sectorId = Arrays.copyOf(sectorId, c);
+        buyDay = Arrays.copyOf(buyDay, c);
+        quantity = Arrays.copyOf(quantity, c);
+        buyPrice = Arrays.copyOf(buyPrice, c);
+        currentPrice = Arrays.copyOf(currentPrice, c);
+    }
+
+    /* -----------------------------------------
+       PRICES
+    ----------------------------------------- */
+
+    public void setPrice(int i, double price) {
+        currentPrice[i] = price;
+    }
+
+    /** Looks each distinct symbol up once, then fills every lot from that. */
+    public void applyPrices(ToDoubleFunction<String> priceOf) {
+        Map<String, Double> bySymbol = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            currentPrice[i] = bySymbol.computeIfAbsent(symbol(i), priceOf::applyAsDouble);
+        }
+    }
+
+    /* -----------------------------------------
+       ACCESS
+    ----------------------------------------- */
+
+    public int size() { return n; }
+
+    public String symbol(int i) {
+        String odd = oddSymbols != null ? oddSymbols.get(i) : null;
+        return odd != null ? odd : ids.symbol(symbolId[i]);
+    }
+
+    /** The SymbolIds id of the row's symbol, -1 if it has none. */
+    public int symbolId(int i) { return symbolId[i]; }
+
+    public SymbolIds symbolIds() { return ids; }
+
+    public String sector(int i) { return sectors.value(sectorId[i]); }
+
+    public int sectorId(int i) { return sectorId[i]; }
+
+    public double quantity(int i) { return quantity[i]; }
+
+    public double buyPrice(int i) { return buyPrice[i]; }
+
+    public double currentPrice(int i) { return currentPrice[i]; }
+
+    /** Epoch day of the buy date, or NO_DATE when there is no parseable date. */
+    public int buyDay(int i) {
+        int d = buyDay[i];
+        return d == RAW_DATE ? NO_DATE : d;
+    }
+
+    public String buyDate(int i) {
+        int d = buyDay[i];
+        if (d == NO_DATE) return null;
+        if (d == RAW_DATE) return oddDates.get(i);
+        return LocalDate.ofEpochDay(d).toString();
+    }
+
+    // distinct symbols / sectors, in first-seen order
+    public List<String> symbols() {
+        Set<String> seen = new LinkedHashSet<>();
+        for (int i = 0; i < n; i++) seen.add(symbol(i));
+        return List.copyOf(seen);
+    }
+
+    public List<String> sectors() { return sectors.values(); }
+
+    public int sectorCount() { return sectors.size(); }
+
+    public Stock toStock(int i) {
+        Stock s = new Stock(symbol(i), quantity[i], buyPrice[i], buyDate(i), sector(i));
+        s.setCurrentPrice(currentPrice[i]);
+        return s;
+    }
+
+    public List<Stock> toStocks() {
+        List<Stock> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) out.add(toStock(i));
+        return out;
+    }
+
+    // raw columns for PortfolioSnapshot; valid up to size()
+    double[] quantityColumn() { return quantity; }
+    double[] buyPriceColumn() { return buyPrice; }
+    double[] currentPriceColumn() { return currentPrice; }
+    int[] sectorIdColumn() { return sectorId; }
+    int[] symbolIdColumn() { return symbolId; }
+
+    /* -----------------------------------------
+       HELPERS
+    ----------------------------------------- */
+
+    private int encodeSymbol(int row, String symbol) {
+        String s = SymbolMaster.normalize(symbol);
+        int id = s.isEmpty() ? -1 : ids.id(s);
+        if (id < 0 || !ids.symbol(id).equals(s)) {
+            if (oddSymbols == null) oddSymbols = new HashMap<>();
+            oddSymbols.put(row, s);
+        }
+        return id;
+    }
+
+    private int encodeDate(int row, String date) {
+        if (date == null) return NO_DATE;
+        try {
+            // fast path for the canonical yyyy-MM-dd form that round-trips through toString()
+            if (date.length() == 10 && date.charAt(4) == '-' && date.charAt(7) == '-') {
+                int y = digits(date, 0, 4), m = digits(date, 5, 7), d = digits(date, 8, 10);
+                if (y >= 0 && m >= 0 && d >= 0) return (int) LocalDate.of(y, m, d).toEpochDay();
+            }
+            return (int) LocalDate.parse(date).toEpochDay();
+        } catch (Exception e) {
+            if (oddDates == null) oddDates = new HashMap<>();
+            oddDates.put(row, date);
+            return RAW_DATE;
+        }
+    }
+
+    private static int digits(String s, int from, int to) {
+        int v = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    // same rule as Stock.setSector
+    private static String normalizeSector(String s) {
+        if (s == null || s.isEmpty()) return "Unknown";
+        return s.trim();
+    }
+
+    /** String <-> dense int id, ids handed out in first-seen order. */
+    private static class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private String[] values = new String[16];
+        private int size;
+
+        int id(String v) {
+            Integer id = ids.get(v);
+            if (id == null) {
+                if (size == values.length) values = Arrays.copyOf(values, size * 2);
+                id = size++;
+                ids.put(v, id);
+                values[id] = v;
+            }
+            return id;
+        }
+
+        String value(int id) { return values[id]; }
+
+        int size() { return size; }
+
+        List<String> values() { return Collections.unmodifiableList(Arrays.asList(values).subList(0, size)); }
+    }
+}
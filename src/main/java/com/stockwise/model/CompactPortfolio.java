@@ -0,0 +1,84 @@
+package com.stockwise.model;
+
+import java.util.*;
+
+/**
+ * The holdings of a portfolio as parallel columns, for API clients that
+ * poll many holdings (/api/portfolio with the compact JSON or CBOR format).
+ *
+ * Only the stored fields go out: no per-holding derived getters (value,
+ * P/L, formatted strings) and no portfolio aggregates, which /api/summary
+ * already serves. Field names appear once per column instead of once per
+ * holding, and sectors are sent once and referenced by index:
+ *
+ *   {"portfolioId":"default","count":2,"id":[1,2],"symbol":["TCS","INFY"],
+ *    "quantity":[..],"buyPrice":[..],"buyDate":[..],"currentPrice":[..],
+ *    "sectors":["IT"],"sector":[0,0]}
+ */
+public class CompactPortfolio {
+
+    private final String portfolioId;
+    private final int[] id;
+    private final String[] symbol;
+    private final double[] quantity;
+    private final double[] buyPrice;
+    private final String[] buyDate;
+    private final double[] currentPrice;
+    private final List<String> sectors;
+    private final int[] sector;
+
+    private CompactPortfolio(String portfolioId, int n) {
+        this.portfolioId = portfolioId;
+        this.id = new int[n];
+        this.symbol = new String[n];
+        this.quantity = new double[n];
+        this.buyPrice = new double[n];
+        this.buyDate = new String[n];
+        this.currentPrice = new double[n];
+        this.sectors = new ArrayList<>();
+        this.sector = new int[n];
+    }
+
+    public static CompactPortfolio of(Portfolio p) {
+        List<Stock> stocks = p.getStocks();
+        CompactPortfolio c = new CompactPortfolio(p.getId(), stocks.size());
+        Map<String, Integer> sectorIds = new HashMap<>();
+        for (int i = 0; i < stocks.size(); i++) {
+            Stock s = stocks.get(i);
+            c.id[i] = s.getId();
+            c.symbol[i] = s.getSymbol();
+            c.quantity[i] = s.getQuantity();
+            c.buyPrice[i] = s.getBuyPrice();
+            c.buyDate[i] = s.getBuyDate();
+            c.currentPrice[i] = s.getCurrentPrice();
+            Integer k = sectorIds.get(s.getSector());
+            if (k == null) {
+                k = c.sectors.size();
+                sectorIds.put(s.getSector(), k);
+                c.sectors.add(s.getSector());
+            }
+            c.sector[i] = k;
+        }
+        return c;
+    }
+
+    public String getPortfolioId() { return portfolioId; }
+
+    public int getCount() { return id.length; }
+
+    public int[] getId() { return id; }
+
+    public String[] getSymbol() { return symbol; }
+
+    public double[] getQuantity() { return quantity; }
+
+    public double[] getBuyPrice() { return buyPrice; }
+
+    public String[] getBuyDate() { return buyDate; }
+
+    public double[] getCurrentPrice() { return currentPrice; }
+
+    public List<String> getSectors() { return sectors; }
+
+    public int[] getSector() { return sector; }
+}
@@ -0,0 +1,36 @@
+package com.stockwise.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// SymbolIds.local(): exact strings, dense ids in first-seen order
+class LocalSymbolIds implements SymbolIds {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] values = new String[16];
+    private int size;
+
+    @Override
+    public int id(String symbol) {
+        Integer id = ids.get(symbol);
+        if (id == null) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            id = size++;
+            ids.put(symbol, id);
+            values[id] = symbol;
+        }
+        return id;
+    }
+
+    @Override
+    public int find(String symbol) {
+        Integer id = ids.get(symbol);
+        return id != null ? id : -1;
+    }
+
+    @Override
+    public String symbol(int id) {
+        return values[id];
+    }
+}
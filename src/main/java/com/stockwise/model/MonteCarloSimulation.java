@@ -0,0 +1,301 @@
+package com.stockwise.model;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Buy-and-hold value paths of a portfolio whose holdings follow correlated
+ * geometric Brownian motion, drawn from a {@link RiskModel}: each step
+ * adds drift * dt + sqrt(dt) * L * z to every holding's log price, with L
+ * the Cholesky factor of the daily covariance and z standard normals.
+ *
+ * Paths are split over a fork/join pool; each task gets its own
+ * SplittableRandom split off its parent's before forking, so a seed gives
+ * the same result on any number of threads. A leaf runs its paths in
+ * blocks of BLOCK, path index innermost, with every buffer allocated once
+ * per leaf. Value paths are never stored: each step feeds a fixed-range
+ * histogram of log(V / V0), and percentiles are read off the merged
+ * histograms.
+ */
+public class MonteCarloSimulation {
+
+    public static final double[] PERCENTILES = {1, 5, 25, 50, 75, 95, 99};
+    public static final double[] DRAWDOWNS = {0.05, 0.10, 0.20, 0.30, 0.50};
+
+    private static final int BLOCK = 128;
+    private static final int BINS = 2048;
+    private static final int DRAWDOWN_BINS = 1000;
+    private static final double RANGE_SIGMAS = 8;
+    private static final int LEAF = 16384; // paths per task; fixed so the split tree, and the result, don't depend on the pool
+
+    private final int n;
+    private final double[] share;    // holding value / portfolio value
+    private final double cashShare;  // value held flat (cash, holdings without history)
+    private final double[] drift;    // daily log drift per holding
+    private final double[] chol;
+    private final double sigma;      // daily volatility of the starting portfolio
+    private final double mu;         // daily log drift of the starting portfolio
+
+    /**
+     * @param values  current value of each of the model's symbols
+     * @param flat    value that doesn't move (left out of the model)
+     * @param drift   use the historical mean returns; otherwise zero drift
+     */
+    public MonteCarloSimulation(RiskModel model, double[] values, double flat, boolean drift) {
+        this.n = model.size();
+        double total = flat;
+        for (double v : values) total += v;
+        this.share = new double[n];
+        this.drift = new double[n];
+        for (int i = 0; i < n; i++) {
+            share[i] = total > 0 ? values[i] / total : 0;
+            this.drift[i] = drift ? model.mean(i) : 0;
+        }
+        this.cashShare = total > 0 ? flat / total : 1;
+        this.chol = model.cholesky();
+
+        double variance = 0, m = 0;
+        for (int i = 0; i < n; i++) {
+            m += share[i] * this.drift[i];
+            for (int j = 0; j < n; j++) variance += share[i] * share[j] * model.covariance(i, j);
+        }
+        this.sigma = Math.sqrt(Math.max(variance, 0));
+        this.mu = m;
+    }
+
+    /**
+     * @param steps    observation points over the horizon; drawdowns are measured on them
+     * @param stepDays trading days per step
+     */
+    public Result run(int paths, int steps, double stepDays, long seed, ForkJoinPool pool) {
+        Ranges ranges = new Ranges(steps, stepDays);
+        Tally t = pool.invoke(new Task(ranges, paths, new SplittableRandom(seed)));
+        return result(t, ranges, paths, steps, stepDays);
+    }
+
+    /* -----------------------------------------
+       RESULT
+    ----------------------------------------- */
+
+    public static class Result {
+        public int paths;
+        public int steps;
+        public double stepDays;
+        /** [percentile][step], value relative to today (1.0 = unchanged); step 0 is today. */
+        public double[][] bands;
+        public double meanFinal;
+        public double lossProbability;
+        /** Chance that the worst peak-to-trough fall reaches each of DRAWDOWNS. */
+        public double[] drawdownProbability;
+        public double medianDrawdown;
+        public double p95Drawdown;
+    }
+
+    private Result result(Tally t, Ranges ranges, int paths, int steps, double stepDays) {
+        Result r = new Result();
+        r.paths = paths;
+        r.steps = steps;
+        r.stepDays = stepDays;
+        r.bands = new double[PERCENTILES.length][steps + 1];
+        for (int p = 0; p < PERCENTILES.length; p++) {
+            r.bands[p][0] = 1;
+            for (int s = 1; s <= steps; s++) {
+                double x = quantile(t.hist, (s - 1) * BINS, BINS, paths, PERCENTILES[p] / 100,
+                        ranges.lo[s - 1], ranges.width[s - 1]);
+                r.bands[p][s] = Math.exp(x);
+            }
+        }
+        r.meanFinal = t.sumFinal / paths;
+        r.lossProbability = (double) t.losses / paths;
+        r.drawdownProbability = new double[DRAWDOWNS.length];
+        for (int d = 0; d < DRAWDOWNS.length; d++) r.drawdownProbability[d] = (double) t.drawdownsHit[d] / paths;
+        r.medianDrawdown = quantile(t.drawdowns, 0, DRAWDOWN_BINS, paths, 0.5, 0, 1.0 / DRAWDOWN_BINS);
+        r.p95Drawdown = quantile(t.drawdowns, 0, DRAWDOWN_BINS, paths, 0.95, 0, 1.0 / DRAWDOWN_BINS);
+        return r;
+    }
+
+    // value at the q-quantile of a histogram, linear within the bin
+    private static double quantile(long[] hist, int offset, int bins, long total, double q, double lo, double width) {
+        double target = q * total;
+        long cum = 0;
+        for (int b = 0; b < bins; b++) {
+            long c = hist[offset + b];
+            if (c > 0 && cum + c >= target) return lo + (b + (target - cum) / c) * width;
+            cum += c;
+        }
+        return lo + bins * width;
+    }
+
+    // histogram range of log(V / V0) per step: drift +- RANGE_SIGMAS sigmas, the ends catch the rest
+    private class Ranges {
+        final double[] lo, width;
+        final double stepDays;
+
+        Ranges(int steps, double stepDays) {
+            this.stepDays = stepDays;
+            lo = new double[steps];
+            width = new double[steps];
+            for (int s = 0; s < steps; s++) {
+                double t = (s + 1) * stepDays;
+                double half = RANGE_SIGMAS * sigma * Math.sqrt(t) + 1e-6;
+                lo[s] = mu * t - half;
+                width[s] = 2 * half / BINS;
+            }
+        }
+    }
+
+    /* -----------------------------------------
+       SIMULATION
+    ----------------------------------------- */
+
+    // Everything a group of paths adds up to; merged as tasks join
+    private static class Tally {
+        final long[] hist;
+        final long[] drawdowns = new long[DRAWDOWN_BINS];
+        final long[] drawdownsHit = new long[DRAWDOWNS.length];
+        long losses;
+        double sumFinal;
+
+        Tally(int steps) {
+            hist = new long[steps * BINS];
+        }
+
+        Tally merge(Tally o) {
+            for (int i = 0; i < hist.length; i++) hist[i] += o.hist[i];
+            for (int i = 0; i < drawdowns.length; i++) drawdowns[i] += o.drawdowns[i];
+            for (int i = 0; i < drawdownsHit.length; i++) drawdownsHit[i] += o.drawdownsHit[i];
+            losses += o.losses;
+            sumFinal += o.sumFinal;
+            return this;
+        }
+    }
+
+    private class Task extends RecursiveTask<Tally> {
+        private final Ranges ranges;
+        private final int paths;
+        private final SplittableRandom rnd;
+
+        Task(Ranges ranges, int paths, SplittableRandom rnd) {
+            this.ranges = ranges;
+            this.paths = paths;
+            this.rnd = rnd;
+        }
+
+        @Override
+        protected Tally compute() {
+            if (paths <= LEAF) return simulate(ranges, paths, rnd);
+            int half = paths / 2;
+            Task right = new Task(ranges, paths - half, rnd.split());
+            Task left = new Task(ranges, half, rnd);
+            right.fork();
+            Tally l = left.compute();
+            return l.merge(right.join());
+        }
+    }
+
+    private Tally simulate(Ranges ranges, int paths, SplittableRandom rnd) {
+        int steps = ranges.lo.length;
+        Tally t = new Tally(steps);
+        double dt = ranges.stepDays;
+        double sqrtDt = Math.sqrt(dt);
+
+        // [holding][path in block]
+        double[] z = new double[n * BLOCK];
+        double[] x = new double[n * BLOCK];
+        double[] v = new double[BLOCK];
+        double[] peak = new double[BLOCK];
+        double[] worst = new double[BLOCK];
+        double[] step = new double[n * n];
+        for (int i = 0; i < n * n; i++) step[i] = chol[i] * sqrtDt;
+
+        for (int done = 0; done < paths; done += BLOCK) {
+            int nb = Math.min(BLOCK, paths - done);
+            Arrays.fill(x, 0);
+            for (int b = 0; b < nb; b++) {
+                peak[b] = 1;
+                worst[b] = 0;
+            }
+
+            for (int s = 0; s < steps; s++) {
+                for (int k = 0; k < n; k++) {
+                    int o = k * BLOCK;
+                    for (int b = 0; b < nb; b++) z[o + b] = rnd.nextGaussian();
+                }
+
+                // x += drift * dt + L * sqrt(dt) * z
+                for (int i = 0; i < n; i++) {
+                    double m = drift[i] * dt;
+                    int o = i * BLOCK;
+                    for (int b = 0; b < nb; b++) x[o + b] += m;
+                }
+                correlate(step, z, x, nb);
+
+                // V / V0
+                for (int b = 0; b < nb; b++) v[b] = cashShare;
+                for (int i = 0; i < n; i++) {
+                    double w = share[i];
+                    if (w == 0) continue;
+                    int o = i * BLOCK;
+                    for (int b = 0; b < nb; b++) v[b] += w * Math.exp(x[o + b]);
+                }
+
+                int hist = s * BINS;
+                double lo = ranges.lo[s], width = ranges.width[s];
+                for (int b = 0; b < nb; b++) {
+                    int bin = (int) ((Math.log(v[b]) - lo) / width);
+                    t.hist[hist + Math.max(0, Math.min(BINS - 1, bin))]++;
+                    if (v[b] > peak[b]) peak[b] = v[b];
+                    double dd = 1 - v[b] / peak[b];
+                    if (dd > worst[b]) worst[b] = dd;
+                }
+            }
+
+            for (int b = 0; b < nb; b++) {
+                if (v[b] < 1) t.losses++;
+                t.sumFinal += v[b];
+                t.drawdowns[Math.min(DRAWDOWN_BINS - 1, (int) (worst[b] * DRAWDOWN_BINS))]++;
+                for (int d = 0; d < DRAWDOWNS.length; d++) {
+                    if (worst[b] >= DRAWDOWNS[d]) t.drawdownsHit[d]++;
+                }
+            }
+        }
+        return t;
+    }
+
+    /**
+     * x[i] += sum over k <= i of l[i][k] * z[k], for every path of the block.
+     * Four rows at a time, so each z value loaded serves four holdings.
+     */
+    private void correlate(double[] l, double[] z, double[] x, int nb) {
+        int i = 0;
+        for (; i + 3 < n; i += 4) {
+            int r0 = i * n, r1 = r0 + n, r2 = r1 + n, r3 = r2 + n;
+            int o0 = i * BLOCK, o1 = o0 + BLOCK, o2 = o1 + BLOCK, o3 = o2 + BLOCK;
+            for (int k = 0; k <= i + 3; k++) {
+                // past the diagonal of a row its factor is zero
+                double l0 = k <= i ? l[r0 + k] : 0;
+                double l1 = k <= i + 1 ? l[r1 + k] : 0;
+                double l2 = k <= i + 2 ? l[r2 + k] : 0;
+                double l3 = l[r3 + k];
+                int o = k * BLOCK;
+                for (int b = 0; b < nb; b++) {
+                    double zb = z[o + b];
+                    x[o0 + b] += l0 * zb;
+                    x[o1 + b] += l1 * zb;
+                    x[o2 + b] += l2 * zb;
+                    x[o3 + b] += l3 * zb;
+                }
+            }
+        }
+        for (; i < n; i++) {
+            int row = i * n, oi = i * BLOCK;
+            for (int k = 0; k <= i; k++) {
+                double li = l[row + k];
+                int o = k * BLOCK;
+                for (int b = 0; b < nb; b++) x[oi + b] += li * z[o + b];
+            }
+        }
+    }
+}
@@ -1,155 +1,141 @@
 package com.stockwise.model;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class Portfolio {
 
+    private String id;
     private List<Stock> stocks = new ArrayList<>();
 
+    // what the aggregate getters read, built on first use; setStocks/add drop it.
+    // Volatile: cached portfolios are read by many requests at once.
+    private volatile PortfolioSnapshot aggregates;
+
     public Portfolio() {}
 
+    public Portfolio(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
     public List<Stock> getStocks() {
         return stocks;
     }
 
     public void setStocks(List<Stock> stocks) {
         this.stocks = stocks != null ? stocks : new ArrayList<>();
+        this.aggregates = null;
     }
 
     public void add(Stock s) {
-        if (s != null) stocks.add(s);
+        if (s != null) {
+            stocks.add(s);
+            aggregates = null;
+        }
     }
 
     /* -----------------------------------------
        PORTFOLIO CALCULATIONS (NEW)
     ----------------------------------------- */
 
+    /**
+     * A fresh one-pass snapshot of every aggregate below, the caller's to
+     * re-price. The getters share one built on first use, so serializing a
+     * Portfolio walks the holdings once; they assume the stocks are not
+     * changed in place after that (replace them with setStocks instead).
+     */
+    public PortfolioSnapshot snapshot() {
+        return PortfolioSnapshot.of(stocks);
+    }
+
+    private PortfolioSnapshot aggregates() {
+        PortfolioSnapshot a = aggregates;
+        if (a == null) aggregates = a = snapshot();
+        return a;
+    }
+
     // Total amount invested
     public double getTotalInvested() {
-        return stocks.stream().mapToDouble(Stock::investedAmount).sum();
+        return aggregates().getTotalInvested();
     }
 
     // Current portfolio value
     public double getCurrentValue() {
-        return stocks.stream().mapToDouble(Stock::currentValue).sum();
+        return aggregates().getCurrentValue();
     }
 
     // Unrealized P/L
     public double getUnrealizedPL() {
-        return getCurrentValue() - getTotalInvested();
+        return aggregates().getUnrealizedPL();
     }
 
     // P/L percentage
     public double getUnrealizedPLPercent() {
-        double invested = getTotalInvested();
-        if (invested <= 0) return 0;
-        return (getUnrealizedPL() / invested) * 100;
+        return aggregates().getUnrealizedPLPercent();
     }
 
     /* -----------------------------------------
        ALLOCATION MAP  (Stock % of portfolio)
     ----------------------------------------- */
     public Map<String, Double> getAllocationPercent() {
-        double total = getCurrentValue();
-
-        Map<String, Double> alloc = new LinkedHashMap<>();
-        for (Stock s : stocks) {
-            double value = s.currentValue();
-            double pct = (total > 0) ? (value / total * 100) : 0;
-            alloc.put(s.getSymbol(), Math.round(pct * 100.0) / 100.0);
-        }
-        return alloc;
+        return aggregates().getAllocationPercent();
     }
 
     /* -----------------------------------------
        TOP GAINERS / LOSERS
     ----------------------------------------- */
     public List<Stock> getTopGainers(int limit) {
-        return stocks.stream()
-                .sorted(Comparator.comparingDouble(Stock::unrealizedPLPercent).reversed())
-                .limit(limit)
-                .collect(Collectors.toList());
+        return top(limit, true);
     }
 
     public List<Stock> getTopLosers(int limit) {
-        return stocks.stream()
-                .sorted(Comparator.comparingDouble(Stock::unrealizedPLPercent))
-                .limit(limit)
-                .collect(Collectors.toList());
+        return top(limit, false);
+    }
+
+    // bounded heap instead of sorting everything; same order as the stable sort
+    private List<Stock> top(int limit, boolean gainers) {
+        if (limit < 0) throw new IllegalArgumentException(Long.toString(limit));
+        TopK heap = new TopK(Math.min(limit, stocks.size()), gainers);
+        for (int i = 0; i < stocks.size(); i++) {
+            heap.offer(stocks.get(i).unrealizedPLPercent(), i);
+        }
+        List<Stock> out = new ArrayList<>(heap.size());
+        for (int i : heap.drain()) out.add(stocks.get(i));
+        return out;
     }
 
     /* -----------------------------------------
        SECTOR DIVERSIFICATION
     ----------------------------------------- */
     public Map<String, Double> getSectorWeights() {
-        double total = getCurrentValue();
-
-        Map<String, Double> sectorMap = new LinkedHashMap<>();
-
-        for (Stock s : stocks) {
-            double v = s.currentValue();
-            String sector = s.getSector() != null ? s.getSector() : "Unknown";
-
-            sectorMap.put(sector,
-                    sectorMap.getOrDefault(sector, 0.0) + v);
-        }
-
-        // Convert to %
-        for (String key : sectorMap.keySet()) {
-            double val = sectorMap.get(key);
-            sectorMap.put(key, total > 0 ? (val / total * 100) : 0);
-        }
-
-        return sectorMap;
+        return aggregates().getSectorWeights();
     }
 
     /* -----------------------------------------
        RISK RATING (Simplified heuristic)
     ----------------------------------------- */
     public String getRiskRating() {
-        double vol = getVolatilityScore();
-
-        if (vol < 10) return "Low";
-        if (vol < 25) return "Medium";
-        return "High";
+        return aggregates().getRiskRating();
     }
 
     /* -----------------------------------------
        VOLATILITY (simple dispersion measure)
     ----------------------------------------- */
     public double getVolatilityScore() {
-        if (stocks.isEmpty()) return 0;
-
-        List<Double> returns = stocks.stream()
-                .map(Stock::unrealizedPLPercent)
-                .toList();
-
-        double mean = returns.stream().mapToDouble(v -> v).average().orElse(0);
-
-        double variance = returns.stream()
-                .mapToDouble(v -> Math.pow(v - mean, 2))
-                .average()
-                .orElse(0);
-
-        return Math.sqrt(variance); // std-dev % (volatility)
+        return aggregates().getVolatilityScore();
     }
 
     /* -----------------------------------------
        DIVERSIFICATION SCORE (0–100)
     ----------------------------------------- */
     public double getDiversificationScore() {
-        Map<String, Double> sectors = getSectorWeights();
-        if (sectors.isEmpty()) return 0;
-
-        // Perfect diversification = equal weights
-        double ideal = 100.0 / sectors.size();
-
-        double score = 0;
-        for (double w : sectors.values()) {
-            score += (100 - Math.abs(w - ideal));
-        }
-
-        return Math.min(score / sectors.size(), 100); // normalized
+        return aggregates().getDiversificationScore();
     }
 }
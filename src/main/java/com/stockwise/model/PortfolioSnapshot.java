@@ -0,0 +1,387 @@
+package com.stockwise.model;
+
+import java.util.*;
+
+/**
+ * All portfolio aggregates computed in one pass over primitive arrays.
+ *
+ * Build it once per request (or keep one around) instead of calling the
+ * Portfolio getters, which each walk the holdings again. Totals and the
+ * P/L spread are kept up to date in O(1) per holding by updatePrice(),
+ * so a price tick does not need a rebuild.
+ *
+ * Sums use the same compensated summation as DoubleStream.sum(), so a
+ * freshly built snapshot returns exactly what the Portfolio getters do.
+ */
+public class PortfolioSnapshot {
+
+    private final int n;
+    private final String[] symbols;
+    private final int[] symbolId;   // SymbolIds ids, -1 where a symbol has none
+    private final SymbolIds ids;
+    private final double[] quantity;
+    private final double[] buyPrice;
+    private final double[] price;
+    private final double[] plPct;
+
+    // sectors in first-appearance order, like Portfolio.getSectorWeights()
+    private final int[] sectorId;
+    private final String[] sectorNames;
+    private final double[] sectorValue;
+
+    private final double totalInvested;
+    private double currentValue;
+
+    // P/L % spread: running mean and sum of squared deviations
+    private double plMean;
+    private double plM2;
+
+    // incremental updates drift in the last bits; resync exactly every so often (amortized O(1))
+    private int updatesSinceResync;
+
+    // bumped by every re-price; changedAt[i] is the version that last changed holding i
+    private long version;
+    private final long[] changedAt;
+
+    // built on first updatePrice(): rows by symbol id, and by text for rows without an id
+    private Map<Integer, int[]> byId;
+    private Map<String, int[]> byText;
+
+    private PortfolioSnapshot(String[] symbols, int[] symbolId, SymbolIds ids,
+                              double[] quantity, double[] buyPrice, double[] price,
+                              int[] sectorId, String[] sectorNames) {
+        this.n = symbols.length;
+        this.symbols = symbols;
+        this.symbolId = symbolId;
+        this.ids = ids;
+        this.quantity = quantity;
+        this.buyPrice = buyPrice;
+        this.price = price;
+        this.sectorId = sectorId;
+        this.sectorNames = sectorNames;
+        this.sectorValue = new double[sectorNames.length];
+        this.plPct = new double[n];
+        this.changedAt = new long[n];
+
+        double invHi = 0, invLo = 0, invSimple = 0;
+        for (int i = 0; i < n; i++) {
+            double invested = buyPrice[i] * quantity[i];
+            double t = invested - invLo, s = invHi + t;
+            invLo = (s - invHi) - t; invHi = s; invSimple += invested;
+        }
+        this.totalInvested = finalSum(invHi, invLo, invSimple);
+
+        recompute();
+    }
+
+    // single pass: value, per-sector value, P/L % and its sum; then the spread
+    private void recompute() {
+        double valHi = 0, valLo = 0, valSimple = 0;
+        double plHi = 0, plLo = 0, plSimple = 0;
+        Arrays.fill(sectorValue, 0);
+
+        for (int i = 0; i < n; i++) {
+            double invested = buyPrice[i] * quantity[i];
+            double value = price[i] * quantity[i];
+
+            double t = value - valLo, s = valHi + t;
+            valLo = (s - valHi) - t; valHi = s; valSimple += value;
+
+            sectorValue[sectorId[i]] += value;
+
+            double pl = plPercent(value, invested);
+            plPct[i] = pl;
+            t = pl - plLo; s = plHi + t;
+            plLo = (s - plHi) - t; plHi = s; plSimple += pl;
+        }
+
+        this.currentValue = finalSum(valHi, valLo, valSimple);
+        this.updatesSinceResync = 0;
+
+        if (n > 0) {
+            plMean = finalSum(plHi, plLo, plSimple) / n;
+
+            // the spread needs the mean first, so this is the one second pass
+            double dHi = 0, dLo = 0, dSimple = 0;
+            for (int i = 0; i < n; i++) {
+                double d = Math.pow(plPct[i] - plMean, 2);
+                double t = d - dLo, s = dHi + t;
+                dLo = (s - dHi) - t; dHi = s; dSimple += d;
+            }
+            plM2 = finalSum(dHi, dLo, dSimple);
+        }
+    }
+
+    public static PortfolioSnapshot of(List<Stock> stocks) {
+        int n = stocks.size();
+        String[] symbols = new String[n];
+        int[] symbolId = new int[n];
+        SymbolIds ids = SymbolIds.local();
+        double[] qty = new double[n];
+        double[] buy = new double[n];
+        double[] px = new double[n];
+        int[] sector = new int[n];
+        Map<String, Integer> sectorIds = new LinkedHashMap<>();
+
+        for (int i = 0; i < n; i++) {
+            Stock s = stocks.get(i);
+            symbols[i] = s.getSymbol();
+            symbolId[i] = ids.id(symbols[i]);
+            qty[i] = s.getQuantity();
+            buy[i] = s.getBuyPrice();
+            px[i] = s.getCurrentPrice();
+            String name = s.getSector() != null ? s.getSector() : "Unknown";
+            Integer id = sectorIds.get(name);
+            if (id == null) {
+                id = sectorIds.size();
+                sectorIds.put(name, id);
+            }
+            sector[i] = id;
+        }
+
+        return new PortfolioSnapshot(symbols, symbolId, ids, qty, buy, px, sector, sectorIds.keySet().toArray(new String[0]));
+    }
+
+    // Straight from the columns: no Stock objects involved
+    public static PortfolioSnapshot of(ColumnarHoldings h) {
+        int n = h.size();
+        String[] symbols = new String[n];
+        for (int i = 0; i < n; i++) symbols[i] = h.symbol(i);
+
+        // renumber sectors by first appearance among the lots, like of(List)
+        int[] src = h.sectorIdColumn();
+        int[] remap = new int[h.sectorCount()];
+        Arrays.fill(remap, -1);
+        List<String> names = new ArrayList<>();
+        int[] sector = new int[n];
+        for (int i = 0; i < n; i++) {
+            int id = remap[src[i]];
+            if (id < 0) {
+                id = names.size();
+                remap[src[i]] = id;
+                names.add(h.sector(i));
+            }
+            sector[i] = id;
+        }
+
+        return new PortfolioSnapshot(symbols, Arrays.copyOf(h.symbolIdColumn(), n), h.symbolIds(),
+                Arrays.copyOf(h.quantityColumn(), n),
+                Arrays.copyOf(h.buyPriceColumn(), n),
+                Arrays.copyOf(h.currentPriceColumn(), n),
+                sector, names.toArray(new String[0]));
+    }
+
+    /* -----------------------------------------
+       INCREMENTAL UPDATES
+    ----------------------------------------- */
+
+    /** Re-prices holding i in O(1). */
+    public void updatePrice(int i, double newPrice) {
+        double old = price[i];
+        if (old == newPrice) return;
+
+        double q = quantity[i];
+        double delta = (newPrice - old) * q;
+        price[i] = newPrice;
+        changedAt[i] = ++version;
+        currentValue += delta;
+        sectorValue[sectorId[i]] += delta;
+
+        // replace one sample in the running mean / M2
+        double invested = buyPrice[i] * q;
+        double oldPl = plPct[i];
+        double newPl = plPercent(newPrice * q, invested);
+        if (oldPl != newPl) {
+            double oldMean = plMean;
+            plMean = oldMean + (newPl - oldPl) / n;
+            plM2 = Math.max(0, plM2 + (newPl - oldPl) * (newPl - plMean + oldPl - oldMean));
+            plPct[i] = newPl;
+        }
+
+        if (++updatesSinceResync > Math.max(n, 4096)) recompute();
+    }
+
+    /**
+     * Re-prices every holding of the symbol; O(1) per holding. Holdings are
+     * matched by symbol id, so with the SymbolMaster's ids a tick for a
+     * listed symbol also reaches lots held under one of its aliases.
+     */
+    public void updatePrice(String symbol, double newPrice) {
+        if (byId == null) {
+            Map<Integer, int[]> idIdx = new HashMap<>();
+            Map<String, int[]> textIdx = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                if (symbolId[i] >= 0) index(idIdx, symbolId[i], i);
+                else index(textIdx, symbols[i], i);
+            }
+            byText = textIdx;
+            byId = idIdx;
+        }
+        int id = ids.find(symbol);
+        int[] rows = id >= 0 ? byId.get(id) : byText.get(symbol);
+        if (rows == null) return;
+        for (int i : rows) updatePrice(i, newPrice);
+    }
+
+    private static <K> void index(Map<K, int[]> idx, K key, int row) {
+        int[] prev = idx.get(key);
+        if (prev == null) {
+            idx.put(key, new int[]{row});
+        } else {
+            int[] next = Arrays.copyOf(prev, prev.length + 1);
+            next[prev.length] = row;
+            idx.put(key, next);
+        }
+    }
+
+    /* -----------------------------------------
+       AGGREGATES
+    ----------------------------------------- */
+
+    public int size() { return n; }
+
+    public double getTotalInvested() { return totalInvested; }
+
+    public double getCurrentValue() { return currentValue; }
+
+    public double getUnrealizedPL() { return currentValue - totalInvested; }
+
+    public double getUnrealizedPLPercent() {
+        if (totalInvested <= 0) return 0;
+        return (getUnrealizedPL() / totalInvested) * 100;
+    }
+
+    public double getVolatilityScore() {
+        if (n == 0) return 0;
+        return Math.sqrt(plM2 / n);
+    }
+
+    public String getRiskRating() {
+        double vol = getVolatilityScore();
+
+        if (vol < 10) return "Low";
+        if (vol < 25) return "Medium";
+        return "High";
+    }
+
+    // symbol -> % of current value, rounded to 2dp, holdings order
+    public Map<String, Double> getAllocationPercent() {
+        Map<String, Double> alloc = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) {
+            double value = price[i] * quantity[i];
+            double pct = (currentValue > 0) ? (value / currentValue * 100) : 0;
+            alloc.put(symbols[i], Math.round(pct * 100.0) / 100.0);
+        }
+        return alloc;
+    }
+
+    public Map<String, Double> getSectorWeights() {
+        Map<String, Double> out = new LinkedHashMap<>();
+        for (int k = 0; k < sectorNames.length; k++) {
+            out.put(sectorNames[k], currentValue > 0 ? (sectorValue[k] / currentValue * 100) : 0);
+        }
+        return out;
+    }
+
+    /**
+     * Changes so far: 0 for a fresh snapshot, then one more per re-priced
+     * holding. Consumers that keep results per holding re-check only those
+     * with changedAt(i) above the version they last saw.
+     */
+    public long version() { return version; }
+
+    public long changedAt(int i) { return changedAt[i]; }
+
+    public int sectorCount() { return sectorNames.length; }
+
+    public String sectorName(int k) { return sectorNames[k]; }
+
+    public double sectorValue(int k) { return sectorValue[k]; }
+
+    public double getDiversificationScore() {
+        int sectors = sectorNames.length;
+        if (sectors == 0) return 0;
+
+        // Perfect diversification = equal weights
+        double ideal = 100.0 / sectors;
+
+        double score = 0;
+        for (int k = 0; k < sectors; k++) {
+            double w = currentValue > 0 ? (sectorValue[k] / currentValue * 100) : 0;
+            score += (100 - Math.abs(w - ideal));
+        }
+
+        return Math.min(score / sectors, 100); // normalized
+    }
+
+    /* -----------------------------------------
+       TOP MOVERS
+    ----------------------------------------- */
+
+    /**
+     * Indices of the k highest and k lowest P/L % holdings, best first,
+     * from one pass over the current P/L % (so re-priced holdings count)
+     * with two bounded heaps: O(n log k). Ties go to the earlier holding,
+     * the order a stable sort gives. investedOnly skips zero-cost lots.
+     */
+    public Movers topMovers(int k, boolean investedOnly) {
+        k = Math.max(0, Math.min(k, n));
+        TopK gainers = new TopK(k, true);
+        TopK losers = new TopK(k, false);
+        for (int i = 0; i < n; i++) {
+            if (investedOnly && buyPrice[i] * quantity[i] == 0) continue;
+            gainers.offer(plPct[i], i);
+            losers.offer(plPct[i], i);
+        }
+        return new Movers(gainers.drain(), losers.drain());
+    }
+
+    public static class Movers {
+        public final int[] gainers;
+        public final int[] losers;
+
+        Movers(int[] gainers, int[] losers) {
+            this.gainers = gainers;
+            this.losers = losers;
+        }
+    }
+
+    /* -----------------------------------------
+       PER-HOLDING ACCESS
+    ----------------------------------------- */
+
+    public String symbol(int i) { return symbols[i]; }
+
+    public int symbolId(int i) { return symbolId[i]; }
+
+    public double quantity(int i) { return quantity[i]; }
+
+    public double buyPrice(int i) { return buyPrice[i]; }
+
+    public double price(int i) { return price[i]; }
+
+    public double value(int i) { return price[i] * quantity[i]; }
+
+    public double invested(int i) { return buyPrice[i] * quantity[i]; }
+
+    public double plPercent(int i) { return plPct[i]; }
+
+    public String sector(int i) { return sectorNames[sectorId[i]]; }
+
+    /* -----------------------------------------
+       HELPERS
+    ----------------------------------------- */
+
+    // same arithmetic as Stock.unrealizedPLPercent()
+    private static double plPercent(double value, double invested) {
+        if (invested <= 0) return 0;
+        return ((value - invested) / invested) * 100;
+    }
+
+    // same as the JDK's compensated sum finish: high bits minus the negated low bits
+    private static double finalSum(double hi, double lo, double simple) {
+        double tmp = hi - lo;
+        if (Double.isNaN(tmp) && Double.isInfinite(simple)) return simple;
+        return tmp;
+    }
+}
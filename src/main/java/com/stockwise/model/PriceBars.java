@@ -0,0 +1,134 @@
+package com.stockwise.model;
+
+import java.util.Arrays;
+
+/**
+ * A run of OHLCV bars for one symbol, column by column and in time order.
+ *
+ * Times are epoch seconds. A price the upstream did not send (spark
+ * responses carry closes only) is NaN; a missing volume is 0.
+ */
+public class PriceBars {
+
+    private int n;
+    private long[] time;
+    private double[] open;
+    private double[] high;
+    private double[] low;
+    private double[] close;
+    private long[] volume;
+
+    public PriceBars() {
+        this(16);
+    }
+
+    public PriceBars(int capacity) {
+        int c = Math.max(capacity, 1);
+        time = new long[c];
+        open = new double[c];
+        high = new double[c];
+        low = new double[c];
+        close = new double[c];
+        volume = new long[c];
+    }
+
+    /** Appends one bar; callers add in increasing time order. */
+    public void add(long t, double o, double h, double l, double c, long v) {
+        if (n == time.length) grow();
+        time[n] = t;
+        open[n] = o;
+        high[n] = h;
+        low[n] = l;
+        close[n] = c;
+        volume[n] = v;
+        n++;
+    }
+
+    private void grow() {
+        int c = time.length * 2;
+        time = Arrays.copyOf(time, c);
+        open = Arrays.copyOf(open, c);
+        high = Arrays.copyOf(high, c);
+        low = Arrays.copyOf(low, c);
+        close = Arrays.copyOf(close, c);
+        volume = Arrays.copyOf(volume, c);
+    }
+
+    public int size() { return n; }
+
+    public long time(int i) { return time[i]; }
+
+    public double open(int i) { return open[i]; }
+
+    public double high(int i) { return high[i]; }
+
+    public double low(int i) { return low[i]; }
+
+    public double close(int i) { return close[i]; }
+
+    public long volume(int i) { return volume[i]; }
+
+    public boolean isEmpty() { return n == 0; }
+
+    public long firstTime() { return time[0]; }
+
+    public long lastTime() { return time[n - 1]; }
+
+    /* -----------------------------------------
+       COMBINING
+    ----------------------------------------- */
+
+    /**
+     * Both runs merged by time. Where both have a bar for the same second
+     * the one from {@code newer} wins, except for prices it didn't send.
+     */
+    public static PriceBars merge(PriceBars older, PriceBars newer) {
+        if (older == null || older.isEmpty()) return newer;
+        if (newer == null || newer.isEmpty()) return older;
+
+        PriceBars out = new PriceBars(older.n + newer.n);
+        int i = 0, j = 0;
+        while (i < older.n || j < newer.n) {
+            if (j == newer.n || (i < older.n && older.time[i] < newer.time[j])) {
+                out.copyFrom(older, i++);
+            } else if (i == older.n || newer.time[j] < older.time[i]) {
+                out.copyFrom(newer, j++);
+            } else {
+                out.add(newer.time[j],
+                        pick(newer.open[j], older.open[i]),
+                        pick(newer.high[j], older.high[i]),
+                        pick(newer.low[j], older.low[i]),
+                        pick(newer.close[j], older.close[i]),
+                        newer.volume[j] != 0 ? newer.volume[j] : older.volume[i]);
+                i++;
+                j++;
+            }
+        }
+        return out;
+    }
+
+    /** The bars with from <= time <= to. */
+    public PriceBars slice(long from, long to) {
+        int a = 0;
+        while (a < n && time[a] < from) a++;
+        int b = a;
+        while (b < n && time[b] <= to) b++;
+        if (a == 0 && b == n) return this;
+
+        PriceBars out = new PriceBars(b - a);
+        for (int i = a; i < b; i++) out.copyFrom(this, i);
+        return out;
+    }
+
+    public void addAll(PriceBars other) {
+        for (int i = 0; i < other.n; i++) copyFrom(other, i);
+    }
+
+    private void copyFrom(PriceBars src, int i) {
+        add(src.time[i], src.open[i], src.high[i], src.low[i], src.close[i], src.volume[i]);
+    }
+
+    private static double pick(double preferred, double fallback) {
+        return Double.isNaN(preferred) ? fallback : preferred;
+    }
+}
@@ -0,0 +1,75 @@
+package com.stockwise.model;
+
+/**
+ * A queued report export. The artifact it produces lives in the report
+ * store under the job id and is downloaded from there once status is DONE.
+ *
+ * snapshot is the portfolio's dashboard ETag when the job was submitted;
+ * a second request for the same portfolio, format and snapshot gets this
+ * job back instead of a new one.
+ */
+public class ReportJob {
+
+    public enum Status {
+        QUEUED,   // waiting for a report thread
+        RUNNING,
+        DONE,     // artifact written; bytes is its size
+        FAILED    // error says why; asking again starts a new job
+    }
+
+    private String id;
+    private String portfolioId;
+    private String format;
+    private String snapshot;
+    private volatile Status status;
+    private long submittedAt;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile long bytes;
+    private volatile String error;
+
+    public ReportJob() {}
+
+    public ReportJob(String id, String portfolioId, String format, String snapshot) {
+        this.id = id;
+        this.portfolioId = portfolioId;
+        this.format = format;
+        this.snapshot = snapshot;
+        this.status = Status.QUEUED;
+        this.submittedAt = System.currentTimeMillis();
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getPortfolioId() { return portfolioId; }
+    public void setPortfolioId(String portfolioId) { this.portfolioId = portfolioId; }
+
+    public String getFormat() { return format; }
+    public void setFormat(String format) { this.format = format; }
+
+    public String getSnapshot() { return snapshot; }
+    public void setSnapshot(String snapshot) { this.snapshot = snapshot; }
+
+    public Status getStatus() { return status; }
+    public void setStatus(Status status) { this.status = status; }
+
+    public long getSubmittedAt() { return submittedAt; }
+    public void setSubmittedAt(long submittedAt) { this.submittedAt = submittedAt; }
+
+    public long getStartedAt() { return startedAt; }
+    public void setStartedAt(long startedAt) { this.startedAt = startedAt; }
+
+    public long getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(long finishedAt) { this.finishedAt = finishedAt; }
+
+    public long getBytes() { return bytes; }
+    public void setBytes(long bytes) { this.bytes = bytes; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+
+    public boolean isFinished() {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+}
@@ -0,0 +1,303 @@
+package com.stockwise.model;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Daily log returns of a set of symbols on one shared calendar, plus the
+ * covariance matrix and index betas derived from them.
+ *
+ * Building the matrix is the O(N^2 * T) part and runs on a fork/join pool;
+ * the result only depends on the symbols and the trading day, so callers
+ * cache it. Evaluating a set of weights against it (volatility, VaR/CVaR,
+ * beta) is O(N^2 + N * T) and cheap enough to do per request.
+ */
+public class RiskModel {
+
+    public static final int TRADING_DAYS = 252;
+
+    // one-sided normal quantiles for the parametric VaR
+    private static final double Z95 = 1.6448536269514722;
+    private static final double Z99 = 2.3263478740408408;
+
+    private final String[] symbols;
+    private final Map<String, Integer> index = new HashMap<>();
+    private final double[][] returns;   // [symbol][day]
+    private final double[] mean;
+    private final double[][] cov;       // daily, sample (T - 1)
+    private final double[] indexReturns; // null when there is no index series
+    private final double indexVariance;
+    private final double[] beta;
+    private final int days;
+    private volatile double[] cholesky;
+
+    private RiskModel(String[] symbols, double[][] returns, double[] mean, double[][] cov,
+                      double[] indexReturns, double indexVariance, double[] beta) {
+        this.symbols = symbols;
+        this.returns = returns;
+        this.mean = mean;
+        this.cov = cov;
+        this.indexReturns = indexReturns;
+        this.indexVariance = indexVariance;
+        this.beta = beta;
+        this.days = returns.length == 0 ? 0 : returns[0].length;
+        for (int i = 0; i < symbols.length; i++) index.put(symbols[i], i);
+    }
+
+    /**
+     * @param returns      one row of daily returns per symbol, all the same length
+     * @param indexReturns the index on the same days, or null
+     */
+    public static RiskModel build(String[] symbols, double[][] returns, double[] indexReturns, ForkJoinPool pool) {
+        int n = symbols.length;
+        int t = n == 0 ? 0 : returns[0].length;
+
+        double[] mean = new double[n];
+        double[][] centered = new double[n][];
+        for (int i = 0; i < n; i++) {
+            double[] r = returns[i];
+            double s = 0;
+            for (int d = 0; d < t; d++) s += r[d];
+            mean[i] = t == 0 ? 0 : s / t;
+            double[] c = new double[t];
+            for (int d = 0; d < t; d++) c[d] = r[d] - mean[i];
+            centered[i] = c;
+        }
+
+        double[][] cov = new double[n][n];
+        if (n > 0 && t > 1) pool.invoke(new CovarianceTask(centered, cov, 0, n, t - 1));
+
+        double indexVariance = 0;
+        double[] beta = new double[n];
+        if (indexReturns != null && t > 1) {
+            double im = 0;
+            for (int d = 0; d < t; d++) im += indexReturns[d];
+            im /= t;
+            double[] ic = new double[t];
+            for (int d = 0; d < t; d++) {
+                ic[d] = indexReturns[d] - im;
+                indexVariance += ic[d] * ic[d];
+            }
+            indexVariance /= (t - 1);
+            for (int i = 0; i < n; i++) {
+                beta[i] = indexVariance > 0 ? dot(centered[i], ic) / (t - 1) / indexVariance : 0;
+            }
+        }
+        return new RiskModel(symbols, returns, mean, cov, indexReturns, indexVariance, beta);
+    }
+
+    /* -----------------------------------------
+       PER SYMBOL
+    ----------------------------------------- */
+
+    public String[] symbols() { return symbols.clone(); }
+
+    public int size() { return symbols.length; }
+
+    public int days() { return days; }
+
+    public boolean hasIndex() { return indexReturns != null; }
+
+    /** Position of the symbol in the matrices, or -1. */
+    public int indexOf(String symbol) {
+        Integer i = index.get(symbol);
+        return i == null ? -1 : i;
+    }
+
+    /** Mean daily log return. */
+    public double mean(int i) { return mean[i]; }
+
+    public double annualizedVolatility(int i) {
+        return Math.sqrt(cov[i][i] * TRADING_DAYS);
+    }
+
+    public double beta(int i) { return beta[i]; }
+
+    public double covariance(int i, int j) { return cov[i][j]; }
+
+    public double correlation(int i, int j) {
+        double d = Math.sqrt(cov[i][i] * cov[j][j]);
+        return d > 0 ? cov[i][j] / d : (i == j ? 1 : 0);
+    }
+
+    /**
+     * Lower-triangular L with L * L' = covariance, row-major in one array
+     * (L[i][k] at i * size() + k). A year of returns on hundreds of symbols
+     * gives a singular matrix, so columns that add no new direction are
+     * left at zero instead of failing. Computed once per model.
+     */
+    public double[] cholesky() {
+        double[] l = cholesky;
+        if (l == null) cholesky = l = factor(cov);
+        return l;
+    }
+
+    private static double[] factor(double[][] a) {
+        int n = a.length;
+        double[] l = new double[n * n];
+        double maxDiag = 0;
+        for (int i = 0; i < n; i++) maxDiag = Math.max(maxDiag, a[i][i]);
+        double tolerance = maxDiag * 1e-12;
+
+        for (int j = 0; j < n; j++) {
+            int rj = j * n;
+            double d = a[j][j];
+            for (int k = 0; k < j; k++) d -= l[rj + k] * l[rj + k];
+            if (d <= tolerance) continue;
+            double ljj = Math.sqrt(d);
+            l[rj + j] = ljj;
+            for (int i = j + 1; i < n; i++) {
+                int ri = i * n;
+                double s = a[i][j];
+                for (int k = 0; k < j; k++) s -= l[ri + k] * l[rj + k];
+                l[ri + j] = s / ljj;
+            }
+        }
+        return l;
+    }
+
+    /* -----------------------------------------
+       PORTFOLIO
+    ----------------------------------------- */
+
+    /**
+     * Risk of a portfolio holding the model's symbols in the given weights
+     * (same order as symbols(), summing to 1). VaR/CVaR are one-day losses
+     * as positive fractions of portfolio value.
+     */
+    public Result evaluate(double[] w) {
+        int n = symbols.length;
+        Result r = new Result();
+
+        double variance = 0, mu = 0;
+        for (int i = 0; i < n; i++) {
+            if (w[i] == 0) continue;
+            mu += w[i] * mean[i];
+            double[] row = cov[i];
+            double s = 0;
+            for (int j = 0; j < n; j++) s += row[j] * w[j];
+            variance += w[i] * s;
+        }
+        double sigma = Math.sqrt(Math.max(variance, 0));
+        r.dailyVolatility = sigma;
+        r.annualizedVolatility = sigma * Math.sqrt(TRADING_DAYS);
+        r.meanDailyReturn = mu;
+
+        // the portfolio's own daily series, for the historical figures and beta
+        double[] p = new double[days];
+        for (int i = 0; i < n; i++) {
+            if (w[i] == 0) continue;
+            double[] ri = returns[i];
+            double wi = w[i];
+            for (int d = 0; d < days; d++) p[d] += wi * ri[d];
+        }
+
+        if (days > 0) {
+            double[] sorted = p.clone();
+            Arrays.sort(sorted);
+            r.var95 = -quantile(sorted, 0.05);
+            r.cvar95 = -tailMean(sorted, 0.05);
+            r.var99 = -quantile(sorted, 0.01);
+            r.cvar99 = -tailMean(sorted, 0.01);
+        }
+        r.parametricVar95 = Z95 * sigma - mu;
+        r.parametricVar99 = Z99 * sigma - mu;
+        r.parametricCvar95 = sigma * normalDensity(Z95) / 0.05 - mu;
+        r.parametricCvar99 = sigma * normalDensity(Z99) / 0.01 - mu;
+
+        if (indexReturns != null && indexVariance > 0) {
+            double b = 0;
+            for (int i = 0; i < n; i++) b += w[i] * beta[i];
+            r.beta = b;
+        } else {
+            r.beta = Double.NaN;
+        }
+        return r;
+    }
+
+    public static class Result {
+        public double dailyVolatility;
+        public double annualizedVolatility;
+        public double meanDailyReturn;
+        public double var95, cvar95, var99, cvar99;
+        public double parametricVar95, parametricCvar95, parametricVar99, parametricCvar99;
+        public double beta;
+    }
+
+    /* -----------------------------------------
+       HELPERS
+    ----------------------------------------- */
+
+    // lower empirical quantile of an ascending array
+    private static double quantile(double[] sorted, double q) {
+        int k = (int) Math.floor(q * (sorted.length - 1));
+        return sorted[k];
+    }
+
+    // mean of the worst q share of days (at least one)
+    private static double tailMean(double[] sorted, double q) {
+        int k = Math.max(1, (int) Math.ceil(q * sorted.length));
+        double s = 0;
+        for (int i = 0; i < k; i++) s += sorted[i];
+        return s / k;
+    }
+
+    private static double normalDensity(double z) {
+        return Math.exp(-0.5 * z * z) / Math.sqrt(2 * Math.PI);
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double s = 0;
+        for (int i = 0; i < a.length; i++) s += a[i] * b[i];
+        return s;
+    }
+
+    /**
+     * Fills cov for rows [lo, hi) against every later column and mirrors it.
+     * Row i costs N - i dot products, so ranges are split on work, not rows.
+     */
+    private static class CovarianceTask extends RecursiveAction {
+        private static final long THRESHOLD = 4096; // dot products per leaf
+
+        private final double[][] centered;
+        private final double[][] cov;
+        private final int lo, hi, dof;
+
+        CovarianceTask(double[][] centered, double[][] cov, int lo, int hi, int dof) {
+            this.centered = centered;
+            this.cov = cov;
+            this.lo = lo;
+            this.hi = hi;
+            this.dof = dof;
+        }
+
+        @Override
+        protected void compute() {
+            int n = cov.length;
+            long work = pairs(lo, hi, n);
+            if (work <= THRESHOLD || hi - lo == 1) {
+                for (int i = lo; i < hi; i++) {
+                    double[] a = centered[i];
+                    for (int j = i; j < n; j++) {
+                        double c = dot(a, centered[j]) / dof;
+                        cov[i][j] = c;
+                        cov[j][i] = c;
+                    }
+                }
+                return;
+            }
+            // split where half the work is done
+            int mid = lo + 1;
+            while (mid < hi - 1 && pairs(lo, mid, n) < work / 2) mid++;
+            invokeAll(new CovarianceTask(centered, cov, lo, mid, dof),
+                      new CovarianceTask(centered, cov, mid, hi, dof));
+        }
+
+        private static long pairs(int lo, int hi, int n) {
+            // sum over i in [lo, hi) of (n - i)
+            long rows = hi - lo;
+            return rows * n - (long) (lo + hi - 1) * rows / 2;
+        }
+    }
+}
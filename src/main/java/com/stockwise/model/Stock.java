@@ -1,5 +1,7 @@
 package com.stockwise.model;
 
+import com.stockwise.service.SymbolMaster;
+
 public class Stock {
 
     private int id;
@@ -13,7 +15,7 @@ public class Stock {
     public Stock() {}
 
     public Stock(String symbol, double quantity, double buyPrice, String buyDate, String sector) {
-        this.symbol = normalize(symbol);
+        this.symbol = SymbolMaster.normalize(symbol);
         this.quantity = quantity;
         this.buyPrice = buyPrice;
         this.buyDate = buyDate;
@@ -22,7 +24,7 @@ public class Stock {
 
     // Constructor used for manual add
     public Stock(String symbol, double quantity, double buyPrice, String buyDate) {
-        this.symbol = normalize(symbol);
+        this.symbol = SymbolMaster.normalize(symbol);
         this.quantity = quantity;
         this.buyPrice = buyPrice;
         this.buyDate = buyDate;
@@ -37,7 +39,7 @@ public class Stock {
     public void setId(int id) { this.id = id; }
 
     public String getSymbol() { return symbol; }
-    public void setSymbol(String symbol) { this.symbol = normalize(symbol); }
+    public void setSymbol(String symbol) { this.symbol = SymbolMaster.normalize(symbol); }
 
     public double getQuantity() { return quantity; }
     public void setQuantity(double quantity) { this.quantity = quantity; }
@@ -84,12 +86,6 @@ public class Stock {
        Helper Methods (New)
     ------------------------ */
 
-    // Normalize symbol input
-    private String normalize(String s) {
-        if (s == null) return "";
-        return s.trim().toUpperCase();
-    }
-
     // Clean sector text (optional but good practice)
     private String normalizeSector(String s) {
         if (s == null || s.isEmpty()) return "Unknown";
@@ -0,0 +1,24 @@
+package com.stockwise.model;
+
+/**
+ * Symbol &lt;-&gt; int id, for code that keeps symbols as ints. The app's is
+ * the SymbolMaster, so a symbol has the same id in every portfolio, column
+ * and snapshot; local() is a private one for holdings built without it
+ * (tests, benchmarks).
+ */
+public interface SymbolIds {
+
+    /** Id of the (normalized) symbol, handed out on first sight; -1 when no id can be had. */
+    int id(String symbol);
+
+    /** Id the symbol already has, -1 if none; assigns nothing. */
+    int find(String symbol);
+
+    /** The symbol an id stands for. */
+    String symbol(int id);
+
+    /** A fresh dictionary of its own, ids 0.. in first-seen order. Not thread-safe. */
+    static SymbolIds local() {
+        return new LocalSymbolIds();
+    }
+}
@@ -0,0 +1,91 @@
+package com.stockwise.model;
+
+/**
+ * Keeps the k best (key, id) pairs offered to it in a bounded binary heap
+ * over primitive arrays: O(log k) per offer, no boxing, no full sort.
+ *
+ * "Best" is the largest key (or smallest, for losers) under Double.compare,
+ * so NaN ranks above everything like it does in Comparator.comparingDouble.
+ * Equal keys go to the lower id, which is what a stable sort of holdings in
+ * id order gives.
+ */
+public class TopK {
+
+    private final boolean largest;
+    private final double[] keys;
+    private final int[] ids;
+    private int size;
+
+    public TopK(int k, boolean largest) {
+        this.largest = largest;
+        this.keys = new double[Math.max(0, k)];
+        this.ids = new int[keys.length];
+    }
+
+    public void offer(double key, int id) {
+        if (keys.length == 0) return;
+        if (size < keys.length) {
+            keys[size] = key;
+            ids[size] = id;
+            siftUp(size++);
+        } else if (better(key, id, keys[0], ids[0])) {
+            // the root is the worst one kept
+            keys[0] = key;
+            ids[0] = id;
+            siftDown(0, size);
+        }
+    }
+
+    public int size() { return size; }
+
+    /** The ids kept, best first. Empties the heap. */
+    public int[] drain() {
+        int[] out = new int[size];
+        while (size > 0) {
+            out[size - 1] = ids[0];
+            size--;
+            keys[0] = keys[size];
+            ids[0] = ids[size];
+            siftDown(0, size);
+        }
+        return out;
+    }
+
+    // ---------------- HEAP (worst at the root) -------------------
+
+    private boolean better(double ka, int ia, double kb, int ib) {
+        int c = Double.compare(ka, kb);
+        if (c != 0) return largest ? c > 0 : c < 0;
+        return ia < ib;
+    }
+
+    private void siftUp(int i) {
+        double k = keys[i];
+        int id = ids[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(keys[parent], ids[parent], k, id)) break;
+            keys[i] = keys[parent];
+            ids[i] = ids[parent];
+            i = parent;
+        }
+        keys[i] = k;
+        ids[i] = id;
+    }
+
+    private void siftDown(int i, int n) {
+        double k = keys[i];
+        int id = ids[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= n) break;
+            if (child + 1 < n && better(keys[child], ids[child], keys[child + 1], ids[child + 1])) child++;
+            if (!better(k, id, keys[child], ids[child])) break;
+            keys[i] = keys[child];
+            ids[i] = ids[child];
+            i = child;
+        }
+        keys[i] = k;
+        ids[i] = id;
+    }
+}
@@ -0,0 +1,70 @@
+package com.stockwise.model;
+
+/**
+ * One row of the trade ledger. The ledger is append-only; the holdings in
+ * portfolio_stock are the positions it adds up to.
+ */
+public class Trade {
+
+    public enum Side {
+        BUY,    // adds to the first open lot of the symbol (blended buy price), or opens one
+        LOT,    // opens a lot of its own, as a CSV import row does
+        SELL,   // reduces the symbol's lots oldest first; buy prices are unchanged
+        CLOSE,  // drops every lot of the symbol
+        RESET   // drops every lot in the portfolio (a CSV import starts with one)
+    }
+
+    private long id;
+    private String portfolioId;
+    private Side side;
+    private String symbol;
+    private double quantity;
+    private double price;
+    private String tradeDate;
+    private String sector;
+    private long recordedAt;
+
+    public Trade() {}
+
+    public Trade(String portfolioId, Side side, String symbol, double quantity, double price, String tradeDate, String sector) {
+        this.portfolioId = portfolioId;
+        this.side = side;
+        this.symbol = symbol;
+        this.quantity = quantity;
+        this.price = price;
+        this.tradeDate = tradeDate;
+        this.sector = sector;
+    }
+
+    /* ------------------------
+       Getters and Setters
+    ------------------------ */
+
+    public long getId() { return id; }
+    public void setId(long id) { this.id = id; }
+
+    public String getPortfolioId() { return portfolioId; }
+    public void setPortfolioId(String portfolioId) { this.portfolioId = portfolioId; }
+
+    public Side getSide() { return side; }
+    public void setSide(Side side) { this.side = side; }
+
+    public String getSymbol() { return symbol; }
+    public void setSymbol(String symbol) { this.symbol = symbol; }
+
+    public double getQuantity() { return quantity; }
+    public void setQuantity(double quantity) { this.quantity = quantity; }
+
+    public double getPrice() { return price; }
+    public void setPrice(double price) { this.price = price; }
+
+    public String getTradeDate() { return tradeDate; }
+    public void setTradeDate(String tradeDate) { this.tradeDate = tradeDate; }
+
+    public String getSector() { return sector; }
+    public void setSector(String sector) { this.sector = sector; }
+
+    // epoch seconds when the row was appended
+    public long getRecordedAt() { return recordedAt; }
+    public void setRecordedAt(long recordedAt) { this.recordedAt = recordedAt; }
+}
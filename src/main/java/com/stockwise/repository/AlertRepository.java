@@ -0,0 +1,136 @@
+package com.stockwise.repository;
+
+import com.stockwise.model.Alert;
+import org.springframework.stereotype.Repository;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * The alerts table. Active alerts live in memory (see AlertService); this
+ * is where they are created, loaded at startup and marked as triggered.
+ */
+@Repository
+public class AlertRepository {
+
+    private static final String COLUMNS =
+            "id, portfolio_id, kind, symbol, direction, threshold, created_at, triggered_at, triggered_value";
+
+    private static final String INSERT =
+            "INSERT INTO alerts(portfolio_id, kind, symbol, direction, threshold, created_at) VALUES(?,?,?,?,?,?)";
+    private static final String LAST_ID = "SELECT last_insert_rowid()";
+    private static final String MARK_TRIGGERED =
+            "UPDATE alerts SET triggered_at = ?, triggered_value = ? WHERE id = ? AND triggered_at IS NULL";
+    private static final String DELETE = "DELETE FROM alerts WHERE id = ? AND portfolio_id = ?";
+
+    private static final String SELECT_ACTIVE = "SELECT " + COLUMNS + " FROM alerts WHERE triggered_at IS NULL";
+    private static final String SELECT_ACTIVE_SYMBOLS =
+            "SELECT DISTINCT symbol FROM alerts WHERE triggered_at IS NULL AND symbol IS NOT NULL";
+    private static final String SELECT_RECENT =
+            "SELECT " + COLUMNS + " FROM alerts WHERE portfolio_id = ? ORDER BY id DESC LIMIT ?";
+    private static final String SELECT_RECENT_ACTIVE =
+            "SELECT " + COLUMNS + " FROM alerts WHERE portfolio_id = ? AND triggered_at IS NULL ORDER BY id DESC LIMIT ?";
+    private static final String SELECT_RECENT_TRIGGERED =
+            "SELECT " + COLUMNS + " FROM alerts WHERE portfolio_id = ? AND triggered_at IS NOT NULL ORDER BY id DESC LIMIT ?";
+
+    private final SqliteDataSource db;
+
+    public AlertRepository(SqliteDataSource db) {
+        this.db = db;
+    }
+
+    // ---------------- WRITES -------------------
+
+    /** Stores a new active alert and sets its id. */
+    public void insert(Alert a) throws SQLException {
+        db.writeInTransaction(session -> {
+            PreparedStatement ps = session.prepare(INSERT);
+            ps.setString(1, a.getPortfolioId());
+            ps.setString(2, a.getKind().name());
+            ps.setString(3, a.getSymbol());
+            ps.setString(4, a.getDirection().name());
+            ps.setDouble(5, a.getThreshold());
+            ps.setLong(6, a.getCreatedAt());
+            ps.executeUpdate();
+            try (ResultSet rs = session.prepare(LAST_ID).executeQuery()) {
+                rs.next();
+                a.setId(rs.getLong(1));
+            }
+            return null;
+        });
+    }
+
+    /** Records the firing of each alert, in one transaction. */
+    public void markTriggered(List<Alert> fired) throws SQLException {
+        if (fired.isEmpty()) return;
+        db.writeInTransaction(session -> {
+            PreparedStatement ps = session.prepare(MARK_TRIGGERED);
+            for (Alert a : fired) {
+                ps.setLong(1, a.getTriggeredAt());
+                ps.setDouble(2, a.getTriggeredValue());
+                ps.setLong(3, a.getId());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            return null;
+        });
+    }
+
+    // false if the portfolio has no such alert
+    public boolean delete(String portfolioId, long id) throws SQLException {
+        return db.write(session -> {
+            PreparedStatement ps = session.prepare(DELETE);
+            ps.setLong(1, id);
+            ps.setString(2, portfolioId);
+            return ps.executeUpdate() > 0;
+        });
+    }
+
+    // ---------------- READS -------------------
+
+    public List<Alert> findActive() throws SQLException {
+        return db.read(session -> {
+            try (ResultSet rs = session.prepare(SELECT_ACTIVE).executeQuery()) {
+                return readAll(rs);
+            }
+        });
+    }
+
+    // Symbols with at least one active price alert, so they are refreshed even when nobody holds them
+    public List<String> findActiveSymbols() throws SQLException {
+        return db.read(session -> {
+            List<String> out = new ArrayList<>();
+            try (ResultSet rs = session.prepare(SELECT_ACTIVE_SYMBOLS).executeQuery()) {
+                while (rs.next()) out.add(rs.getString(1));
+            }
+            return out;
+        });
+    }
+
+    /** Newest first; active true/false for only active/triggered alerts, null for both. */
+    public List<Alert> findRecent(String portfolioId, Boolean active, int limit) throws SQLException {
+        String sql = active == null ? SELECT_RECENT : active ? SELECT_RECENT_ACTIVE : SELECT_RECENT_TRIGGERED;
+        return db.read(session -> {
+            PreparedStatement ps = session.prepare(sql);
+            ps.setString(1, portfolioId);
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                return readAll(rs);
+            }
+        });
+    }
+
+    private static List<Alert> readAll(ResultSet rs) throws SQLException {
+        List<Alert> out = new ArrayList<>();
+        while (rs.next()) {
+            Alert a = new Alert(rs.getString(2), Alert.Kind.valueOf(rs.getString(3)), rs.getString(4),
+                    Alert.Direction.valueOf(rs.getString(5)), rs.getDouble(6));
+            a.setId(rs.getLong(1));
+            a.setCreatedAt(rs.getLong(7));
+            a.setTriggeredAt(rs.getLong(8));
+            a.setTriggeredValue(rs.getDouble(9));
+            out.add(a);
+        }
+        return out;
+    }
+}
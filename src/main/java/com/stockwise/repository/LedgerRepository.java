@@ -0,0 +1,326 @@
+package com.stockwise.repository;
+
+import com.stockwise.model.Stock;
+import com.stockwise.model.Trade;
+import org.springframework.stereotype.Repository;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * The trade ledger and its replay into portfolio_stock.
+ *
+ * PortfolioRepository appends a trade and updates the affected positions in
+ * one transaction, then moves the portfolio's checkpoint to that trade. A
+ * portfolio whose checkpoint trails its ledger (or that has positions but
+ * no ledger yet) is brought up to date by {@link #replay}: from the current
+ * positions plus the newer trades when it can, from the last RESET when it
+ * must. Either way reads never touch the ledger.
+ *
+ * A RESET written by an import names the generation it activated (see
+ * PortfolioRepository); the import's opening lots are in import_lots under
+ * that generation rather than in the ledger, and replay folds them in right
+ * after the RESET.
+ *
+ * Nothing before a portfolio's last checkpointed RESET is ever replayed
+ * again, so {@link #compact} can delete those trades once they have aged
+ * out of the history the caller wants to keep.
+ */
+@Repository
+public class LedgerRepository {
+
+    private static final String INSERT =
+            "INSERT INTO trade_ledger(portfolio_id, side, symbol, quantity, price, trade_date, sector) VALUES(?,?,?,?,?,?,?)";
+    private static final String LAST_ID = "SELECT last_insert_rowid()";
+    private static final String CHECKPOINT = "INSERT OR REPLACE INTO ledger_checkpoint(portfolio_id, last_trade_id) VALUES(?,?)";
+    private static final String INSERT_IMPORT_RESET = "INSERT INTO trade_ledger(portfolio_id, side, generation) VALUES(?,?,?)";
+    private static final String COPY_POSITIONS_AS_LOTS =
+            "INSERT INTO trade_ledger(portfolio_id, side, symbol, quantity, price, trade_date, sector) " +
+            "SELECT portfolio_id, 'LOT', symbol, quantity, buy_price, buy_date, sector FROM portfolio_stock " +
+            "WHERE portfolio_id = ? AND generation = " + PortfolioRepository.ACTIVE_GENERATION + " ORDER BY id";
+
+    private static final String SELECT_RECENT =
+            "SELECT id, portfolio_id, side, symbol, quantity, price, trade_date, sector, recorded_at FROM trade_ledger " +
+            "WHERE portfolio_id = ? ORDER BY id DESC LIMIT ?";
+    private static final String SELECT_HEADS = "SELECT portfolio_id, MAX(id) FROM trade_ledger GROUP BY portfolio_id";
+    private static final String SELECT_HEAD = "SELECT MAX(id) FROM trade_ledger WHERE portfolio_id = ?";
+    private static final String SELECT_CHECKPOINTS = "SELECT portfolio_id, last_trade_id FROM ledger_checkpoint";
+    private static final String SELECT_CHECKPOINT = "SELECT last_trade_id FROM ledger_checkpoint WHERE portfolio_id = ?";
+    private static final String SELECT_UNLEDGERED =
+            "SELECT DISTINCT portfolio_id FROM portfolio_stock WHERE portfolio_id NOT IN (SELECT portfolio_id FROM ledger_checkpoint)";
+    private static final String SELECT_LAST_RESET = "SELECT MAX(id) FROM trade_ledger WHERE portfolio_id = ? AND side = 'RESET'";
+    private static final String SELECT_TRADES_AFTER =
+            "SELECT id, side, symbol, quantity, price, trade_date, sector, generation FROM trade_ledger WHERE portfolio_id = ? AND id > ? ORDER BY id";
+    private static final String SELECT_IMPORT_LOTS =
+            "SELECT symbol, quantity, buy_price, buy_date, sector FROM import_lots WHERE portfolio_id = ? AND generation = ? ORDER BY id";
+    private static final String SELECT_POSITIONS =
+            "SELECT symbol, quantity, buy_price, buy_date, sector FROM portfolio_stock " +
+            "WHERE portfolio_id = ? AND generation = " + PortfolioRepository.ACTIVE_GENERATION + " ORDER BY id";
+    private static final String DELETE_POSITIONS =
+            "DELETE FROM portfolio_stock WHERE portfolio_id = ? AND generation = " + PortfolioRepository.ACTIVE_GENERATION;
+    private static final String INSERT_POSITION =
+            "INSERT INTO portfolio_stock(portfolio_id, symbol, quantity, buy_price, buy_date, sector, generation) " +
+            "VALUES(?,?,?,?,?,?," + PortfolioRepository.ACTIVE_GENERATION + ")";
+
+    // trades before the last RESET the checkpoint has passed, recorded before ?2; ?3 rows at a time
+    private static final String COMPACT =
+            "DELETE FROM trade_ledger WHERE id IN (SELECT id FROM trade_ledger WHERE portfolio_id = ?1 AND id < " +
+            "(SELECT IFNULL(MAX(id), 0) FROM trade_ledger WHERE portfolio_id = ?1 AND side = 'RESET' AND id <= " +
+            "(SELECT IFNULL(MAX(last_trade_id), 0) FROM ledger_checkpoint WHERE portfolio_id = ?1)) " +
+            "AND recorded_at < ?2 LIMIT ?3)";
+    private static final int COMPACT_BATCH = 5000;
+
+    private final SqliteDataSource db;
+
+    public LedgerRepository(SqliteDataSource db) {
+        this.db = db;
+    }
+
+    // ---------------- APPEND (inside the caller's transaction) -------------------
+
+    /** Appends one trade and moves the portfolio's checkpoint to it; returns its id. */
+    static long append(SqliteDataSource.Session session, String portfolioId, Trade.Side side,
+                       String symbol, double qty, double price, String date, String sector) throws SQLException {
+        PreparedStatement ps = session.prepare(INSERT);
+        ps.setString(1, portfolioId);
+        ps.setString(2, side.name());
+        ps.setString(3, symbol);
+        ps.setDouble(4, qty);
+        ps.setDouble(5, price);
+        ps.setString(6, date);
+        ps.setString(7, sector);
+        ps.executeUpdate();
+        return checkpointAtLastInsert(session, portfolioId);
+    }
+
+    /** RESET followed by one LOT per stock, i.e. the ledger side of replaceAll. */
+    static void appendAsLots(SqliteDataSource.Session session, String portfolioId, List<Stock> stocks) throws SQLException {
+        append(session, portfolioId, Trade.Side.RESET, null, 0, 0, null, null);
+        if (stocks.isEmpty()) return;
+        PreparedStatement ps = session.prepare(INSERT);
+        for (Stock s : stocks) {
+            ps.setString(1, portfolioId);
+            ps.setString(2, Trade.Side.LOT.name());
+            ps.setString(3, s.getSymbol());
+            ps.setDouble(4, s.getQuantity());
+            ps.setDouble(5, s.getBuyPrice());
+            ps.setString(6, s.getBuyDate());
+            ps.setString(7, s.getSector());
+            ps.addBatch();
+        }
+        ps.executeBatch();
+        checkpointAtLastInsert(session, portfolioId);
+    }
+
+    /**
+     * The ledger side of activating an imported generation: one RESET that
+     * names it. Its opening lots stay in import_lots, written chunk by chunk
+     * with the rows, so this costs one insert whatever the import's size.
+     */
+    static void appendImportReset(SqliteDataSource.Session session, String portfolioId, long generation) throws SQLException {
+        PreparedStatement ps = session.prepare(INSERT_IMPORT_RESET);
+        ps.setString(1, portfolioId);
+        ps.setString(2, Trade.Side.RESET.name());
+        ps.setLong(3, generation);
+        ps.executeUpdate();
+        checkpointAtLastInsert(session, portfolioId);
+    }
+
+    private static long checkpointAtLastInsert(SqliteDataSource.Session session, String portfolioId) throws SQLException {
+        long id;
+        try (ResultSet rs = session.prepare(LAST_ID).executeQuery()) {
+            rs.next();
+            id = rs.getLong(1);
+        }
+        PreparedStatement cp = session.prepare(CHECKPOINT);
+        cp.setString(1, portfolioId);
+        cp.setLong(2, id);
+        cp.executeUpdate();
+        return id;
+    }
+
+    // ---------------- READS -------------------
+
+    // Newest first
+    public List<Trade> findRecent(String portfolioId, int limit) throws SQLException {
+        return db.read(session -> {
+            List<Trade> out = new ArrayList<>();
+            PreparedStatement ps = session.prepare(SELECT_RECENT);
+            ps.setString(1, portfolioId);
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Trade t = new Trade(rs.getString(2), Trade.Side.valueOf(rs.getString(3)), rs.getString(4),
+                            rs.getDouble(5), rs.getDouble(6), rs.getString(7), rs.getString(8));
+                    t.setId(rs.getLong(1));
+                    t.setRecordedAt(rs.getLong(9));
+                    out.add(t);
+                }
+            }
+            return out;
+        });
+    }
+
+    // ---------------- REPLAY -------------------
+
+    /**
+     * Portfolios whose positions are behind their ledger, plus portfolios
+     * with positions but no ledger at all (databases from before the ledger).
+     */
+    public Set<String> findStalePortfolios() throws SQLException {
+        return db.read(session -> {
+            Map<String, Long> checkpoints = new HashMap<>();
+            try (ResultSet rs = session.prepare(SELECT_CHECKPOINTS).executeQuery()) {
+                while (rs.next()) checkpoints.put(rs.getString(1), rs.getLong(2));
+            }
+            // one index probe per portfolio, whatever the ledger's length
+            Set<String> out = new TreeSet<>();
+            for (Map.Entry<String, Long> e : checkpoints.entrySet()) {
+                if (maxId(session, SELECT_HEAD, e.getKey()) > e.getValue()) out.add(e.getKey());
+            }
+            try (ResultSet rs = session.prepare(SELECT_UNLEDGERED).executeQuery()) {
+                while (rs.next()) out.add(rs.getString(1));
+            }
+            return out;
+        });
+    }
+
+    /** Every portfolio that has a ledger, for a forced full rebuild (scans the whole ledger). */
+    public Set<String> findLedgeredPortfolios() throws SQLException {
+        return db.read(session -> {
+            Set<String> out = new TreeSet<>();
+            try (ResultSet rs = session.prepare(SELECT_HEADS).executeQuery()) {
+                while (rs.next()) out.add(rs.getString(1));
+            }
+            return out;
+        });
+    }
+
+    /**
+     * Brings one portfolio's positions in line with its ledger, in a single
+     * write transaction. With full=false and a checkpoint that has no RESET
+     * after it, only the trades after the checkpoint are folded onto the
+     * current positions; otherwise the positions are rebuilt from the last
+     * RESET. A portfolio with positions but no ledger gets its positions
+     * written to the ledger as opening lots instead. Returns the number of
+     * trades folded.
+     */
+    public long replay(String portfolioId, boolean full) throws SQLException {
+        return db.writeInTransaction(session -> {
+            PreparedStatement cps = session.prepare(SELECT_CHECKPOINT);
+            cps.setString(1, portfolioId);
+            Long checkpoint = null;
+            try (ResultSet rs = cps.executeQuery()) {
+                if (rs.next()) checkpoint = rs.getLong(1);
+            }
+            long head = maxId(session, SELECT_HEAD, portfolioId);
+
+            if (head == 0) {
+                // positions from before the ledger: they become its opening lots
+                append(session, portfolioId, Trade.Side.RESET, null, 0, 0, null, null);
+                PreparedStatement copy = session.prepare(COPY_POSITIONS_AS_LOTS);
+                copy.setString(1, portfolioId);
+                if (copy.executeUpdate() > 0) checkpointAtLastInsert(session, portfolioId);
+                return 0L;
+            }
+
+            long lastReset = maxId(session, SELECT_LAST_RESET, portfolioId);
+            PositionBook book = new PositionBook();
+            long from;
+            if (!full && checkpoint != null && lastReset <= checkpoint) {
+                PreparedStatement ps = session.prepare(SELECT_POSITIONS);
+                ps.setString(1, portfolioId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) book.load(rs.getString(1), rs.getDouble(2), rs.getDouble(3), rs.getString(4), rs.getString(5));
+                }
+                from = checkpoint;
+            } else {
+                // the RESET itself clears nothing here, so start just before it
+                from = Math.max(0, lastReset - 1);
+            }
+
+            long folded = 0, last = from;
+            PreparedStatement ps = session.prepare(SELECT_TRADES_AFTER);
+            ps.setString(1, portfolioId);
+            ps.setLong(2, from);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    last = rs.getLong(1);
+                    Trade.Side side = Trade.Side.valueOf(rs.getString(2));
+                    book.apply(side, rs.getString(3), rs.getDouble(4), rs.getDouble(5), rs.getString(6), rs.getString(7));
+                    long generation = rs.getLong(8);
+                    // an import's RESET: its lots follow it, from import_lots
+                    if (side == Trade.Side.RESET && !rs.wasNull()) applyImportLots(session, book, portfolioId, generation);
+                    folded++;
+                }
+            }
+
+            PreparedStatement del = session.prepare(DELETE_POSITIONS);
+            del.setString(1, portfolioId);
+            del.executeUpdate();
+
+            PreparedStatement ins = session.prepare(INSERT_POSITION);
+            for (PositionBook.Lot lot : book.openLots()) {
+                ins.setString(1, portfolioId);
+                ins.setString(2, lot.symbol);
+                ins.setDouble(3, lot.qty);
+                ins.setDouble(4, lot.price);
+                ins.setString(5, lot.date);
+                ins.setString(6, lot.sector);
+                ins.addBatch();
+            }
+            ins.executeBatch();
+
+            PreparedStatement cp = session.prepare(CHECKPOINT);
+            cp.setString(1, portfolioId);
+            cp.setLong(2, last);
+            cp.executeUpdate();
+            return folded;
+        });
+    }
+
+    // ---------------- COMPACTION -------------------
+
+    /**
+     * Deletes the portfolio's trades that came before its last checkpointed
+     * RESET and were recorded before recordedBefore (epoch seconds),
+     * COMPACT_BATCH rows per transaction so writers are never held up for
+     * long. The RESET itself and everything after it stay, so replay gives
+     * the same positions; only the older trade history is lost. Returns the
+     * number of trades deleted.
+     */
+    public long compact(String portfolioId, long recordedBefore) throws SQLException {
+        long deleted = 0;
+        while (true) {
+            int n = db.write(session -> {
+                PreparedStatement ps = session.prepare(COMPACT);
+                ps.setString(1, portfolioId);
+                ps.setLong(2, recordedBefore);
+                ps.setInt(3, COMPACT_BATCH);
+                return ps.executeUpdate();
+            });
+            deleted += n;
+            if (n < COMPACT_BATCH) return deleted;
+        }
+    }
+
+    private static void applyImportLots(SqliteDataSource.Session session, PositionBook book, String portfolioId, long generation) throws SQLException {
+        PreparedStatement ps = session.prepare(SELECT_IMPORT_LOTS);
+        ps.setString(1, portfolioId);
+        ps.setLong(2, generation);
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                book.apply(Trade.Side.LOT, rs.getString(1), rs.getDouble(2), rs.getDouble(3), rs.getString(4), rs.getString(5));
+            }
+        }
+    }
+
+    // MAX(id) style lookups; 0 when there is no such row
+    private static long maxId(SqliteDataSource.Session session, String sql, String portfolioId) throws SQLException {
+        PreparedStatement ps = session.prepare(sql);
+        ps.setString(1, portfolioId);
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
@@ -1,118 +1,495 @@
 package com.stockwise.repository;
 
+import com.stockwise.model.ColumnarHoldings;
 import com.stockwise.model.Stock;
+import com.stockwise.model.SymbolIds;
+import com.stockwise.model.Trade;
+import com.stockwise.service.SymbolMaster;
+import com.stockwise.util.Meters;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Holdings for every portfolio, one table keyed by portfolio_id.
+ * Every per-portfolio query is served by the (portfolio_id, generation,
+ * symbol) index and sees only the portfolio's live generation (see STAGED
+ * IMPORT), so its cost depends on that portfolio's size, not the table's.
+ *
+ * Each write is also appended to the trade ledger in the same transaction
+ * (see LedgerRepository), so portfolio_stock is the ledger's position view
+ * and reads stay O(positions) however long the ledger grows.
+ *
+ * Every public call is timed as stockwise.repository{method, outcome}.
+ *
+ * Each portfolio has a version that every write to its holdings bumps once
+ * the write is over (committed or not), so anything derived from a read
+ * that started at version v is current for exactly as long as version()
+ * still says v. Versions live in memory and start at 0 with the process.
+ */
 @Repository
 public class PortfolioRepository {
 
-    private final String url = "jdbc:sqlite:data/stockwise.db";
+    /** The portfolio served by the routes without a portfolio id. */
+    public static final String DEFAULT_PORTFOLIO = "default";
 
-    // Save or update a stock
-    public void saveOrUpdate(Stock s) throws SQLException {
-        try (Connection c = DriverManager.getConnection(url)) {
-            String selectSql = "SELECT id, quantity, buy_price FROM portfolio_stock WHERE symbol = ?";
-            PreparedStatement ps = c.prepareStatement(selectSql);
-            ps.setString(1, s.getSymbol());
-            ResultSet rs = ps.executeQuery();
+    // the portfolio's live generation, bound to the first parameter (0 until its first import)
+    static final String ACTIVE_GENERATION =
+            "(SELECT IFNULL(MAX(active), 0) FROM portfolio_generation WHERE portfolio_id = ?1)";
 
-            if (rs.next()) {
-                int id = rs.getInt("id");
-                double oldQty = rs.getDouble("quantity");
-                double oldBuy = rs.getDouble("buy_price");
+    private static final String SELECT_BY_SYMBOL = "SELECT id, quantity, buy_price FROM portfolio_stock WHERE portfolio_id = ? AND generation = " + ACTIVE_GENERATION + " AND symbol = ? ORDER BY id LIMIT 1";
+    private static final String SELECT_LOTS = "SELECT id, quantity FROM portfolio_stock WHERE portfolio_id = ? AND generation = " + ACTIVE_GENERATION + " AND symbol = ? ORDER BY id";
+    private static final String UPDATE_QUANTITY = "UPDATE portfolio_stock SET quantity = ? WHERE id = ?";
+    private static final String DELETE_BY_ID = "DELETE FROM portfolio_stock WHERE id = ?";
+    private static final String UPDATE = "UPDATE portfolio_stock SET quantity = ?, buy_price = ?, buy_date = ?, sector = ? WHERE id = ?";
+    private static final String INSERT = "INSERT INTO portfolio_stock(portfolio_id, symbol, quantity, buy_price, buy_date, sector, generation) VALUES(?,?,?,?,?,?," + ACTIVE_GENERATION + ")";
+    private static final String SELECT_ALL = "SELECT id, symbol, quantity, buy_price, buy_date, sector FROM portfolio_stock WHERE portfolio_id = ? AND generation = " + ACTIVE_GENERATION + " ORDER BY symbol, id";
+    // one forEach() batch: the rows after (symbol, id), walked on idx_portfolio_generation (which ends in the rowid)
+    private static final String SELECT_PAGE =
+            "SELECT id, symbol, quantity, buy_price, buy_date, sector FROM portfolio_stock " +
+            "WHERE portfolio_id = ? AND generation = " + ACTIVE_GENERATION + " AND (symbol, id) > (?, ?) ORDER BY symbol, id LIMIT ?";
+    private static final String LIVE = "portfolio_stock s LEFT JOIN portfolio_generation g ON g.portfolio_id = s.portfolio_id " +
+            "WHERE s.generation = IFNULL(g.active, 0)";
+    private static final String SELECT_SYMBOLS = "SELECT DISTINCT s.symbol FROM " + LIVE;
+    private static final String SELECT_PORTFOLIOS = "SELECT DISTINCT s.portfolio_id FROM " + LIVE + " ORDER BY s.portfolio_id";
+    private static final String DELETE_BY_SYMBOL = "DELETE FROM portfolio_stock WHERE portfolio_id = ? AND generation = " + ACTIVE_GENERATION + " AND symbol = ?";
+    private static final String DELETE_PORTFOLIO = "DELETE FROM portfolio_stock WHERE portfolio_id = ? AND generation = " + ACTIVE_GENERATION;
+    private static final String DELETE_IMPORT_LOTS = "DELETE FROM import_lots WHERE portfolio_id = ? AND generation <= " + ACTIVE_GENERATION;
 
+    // staged imports
+    private static final String ENSURE_GENERATION = "INSERT INTO portfolio_generation(portfolio_id, active, last) VALUES(?, 0, 0) ON CONFLICT(portfolio_id) DO NOTHING";
+    private static final String NEXT_GENERATION = "UPDATE portfolio_generation SET last = last + 1 WHERE portfolio_id = ?";
+    private static final String SELECT_GENERATION = "SELECT active, last FROM portfolio_generation WHERE portfolio_id = ?";
+    private static final String ACTIVATE_GENERATION = "UPDATE portfolio_generation SET active = ? WHERE portfolio_id = ?";
+    private static final String INSERT_GENERATION = "INSERT INTO portfolio_stock(portfolio_id, symbol, quantity, buy_price, buy_date, sector, generation) VALUES(?,?,?,?,?,?,?)";
+    private static final String INSERT_IMPORT_LOT = "INSERT INTO import_lots(portfolio_id, symbol, quantity, buy_price, buy_date, sector, generation) VALUES(?,?,?,?,?,?,?)";
+    private static final String PURGE_OLDER =
+            "DELETE FROM portfolio_stock WHERE id IN (SELECT id FROM portfolio_stock WHERE portfolio_id = ? AND generation < " + ACTIVE_GENERATION + " LIMIT ?)";
+    private static final String PURGE_NEWER =
+            "DELETE FROM portfolio_stock WHERE id IN (SELECT id FROM portfolio_stock WHERE portfolio_id = ? AND generation > " + ACTIVE_GENERATION + " LIMIT ?)";
+    private static final String PURGE_OLDER_LOTS =
+            "DELETE FROM import_lots WHERE id IN (SELECT id FROM import_lots WHERE portfolio_id = ? AND generation < " + ACTIVE_GENERATION + " LIMIT ?)";
+    private static final String PURGE_NEWER_LOTS =
+            "DELETE FROM import_lots WHERE id IN (SELECT id FROM import_lots WHERE portfolio_id = ? AND generation > " + ACTIVE_GENERATION + " LIMIT ?)";
+
+    // rows per forEach() read; the reader is released between batches
+    private static final int FOREACH_BATCH = 500;
+    // rows per purge transaction, so deleting a replaced generation never blocks writers for long
+    private static final int PURGE_BATCH = 5000;
+
+    private final SqliteDataSource db;
+    private final MeterRegistry meters;
+    private final ConcurrentHashMap<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    public PortfolioRepository(SqliteDataSource db) {
+        this(db, Meters.none());
+    }
+
+    @Autowired
+    public PortfolioRepository(SqliteDataSource db, MeterRegistry meters) {
+        this.db = db;
+        this.meters = meters;
+    }
+
+    // A BUY: blended into the symbol's first lot, or a new lot (read-modify-write in one transaction on the writer)
+    public void saveOrUpdate(String portfolioId, Stock s) throws SQLException {
+        timedWrite("saveOrUpdate", portfolioId, () -> db.writeInTransaction(session -> {
+            LedgerRepository.append(session, portfolioId, Trade.Side.BUY, s.getSymbol(), s.getQuantity(),
+                    s.getBuyPrice(), s.getBuyDate(), s.getSector());
+
+            PreparedStatement ps = session.prepare(SELECT_BY_SYMBOL);
+            ps.setString(1, portfolioId);
+            ps.setString(2, s.getSymbol());
+
+            int id = -1;
+            double oldQty = 0, oldBuy = 0;
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    id = rs.getInt("id");
+                    oldQty = rs.getDouble("quantity");
+                    oldBuy = rs.getDouble("buy_price");
+                }
+            }
+
+            if (id >= 0) {
                 double newQty = oldQty + s.getQuantity();
-                double newAvg = ((oldQty * oldBuy) + (s.getQuantity() * s.getBuyPrice())) / newQty;
+                double newAvg = PositionBook.blendedPrice(oldQty, oldBuy, s.getQuantity(), s.getBuyPrice());
 
-                String updateSql = "UPDATE portfolio_stock SET quantity = ?, buy_price = ?, buy_date = ?, sector = ? WHERE id = ?";
-                PreparedStatement ups = c.prepareStatement(updateSql);
+                PreparedStatement ups = session.prepare(UPDATE);
                 ups.setDouble(1, newQty);
                 ups.setDouble(2, newAvg);
                 ups.setString(3, s.getBuyDate());
                 ups.setString(4, s.getSector());
                 ups.setInt(5, id);
                 ups.executeUpdate();
-                ups.close();
             } else {
-                String insertSql = "INSERT INTO portfolio_stock(symbol, quantity, buy_price, buy_date, sector) VALUES(?,?,?,?,?)";
-                PreparedStatement ins = c.prepareStatement(insertSql);
-                ins.setString(1, s.getSymbol());
-                ins.setDouble(2, s.getQuantity());
-                ins.setDouble(3, s.getBuyPrice());
-                ins.setString(4, s.getBuyDate());
-                ins.setString(5, s.getSector());
+                PreparedStatement ins = session.prepare(INSERT);
+                bindInsert(ins, portfolioId, s);
                 ins.executeUpdate();
-                ins.close();
             }
+            return null;
+        }));
+    }
 
-            rs.close();
-            ps.close();
-        }
+    /**
+     * A SELL: takes the quantity off the symbol's lots oldest first, closing
+     * each lot it empties. Buy prices are unchanged. Selling more than is
+     * held is refused with IllegalArgumentException and nothing is written.
+     */
+    public void sell(String portfolioId, String symbol, double quantity, double price, String date) throws SQLException {
+        if (!(quantity > 0)) throw new IllegalArgumentException("Sell quantity must be positive");
+        String sym = SymbolMaster.normalize(symbol);
+
+        timedWrite("sell", portfolioId, () -> db.writeInTransaction(session -> {
+            PreparedStatement ps = session.prepare(SELECT_LOTS);
+            ps.setString(1, portfolioId);
+            ps.setString(2, sym);
+            List<Long> ids = new ArrayList<>();
+            List<Double> qtys = new ArrayList<>();
+            double held = 0;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                    qtys.add(rs.getDouble(2));
+                    held += rs.getDouble(2);
+                }
+            }
+            if (quantity > held + PositionBook.DUST) {
+                throw new IllegalArgumentException("Cannot sell " + quantity + " " + sym + ", only " + held + " held");
+            }
+
+            LedgerRepository.append(session, portfolioId, Trade.Side.SELL, sym, quantity, price, date, null);
+
+            // same steps as PositionBook.apply(SELL) so a replay lands on the same rows
+            double left = quantity;
+            for (int i = 0; i < ids.size() && left > PositionBook.DUST; i++) {
+                double lotQty = qtys.get(i);
+                double take = Math.min(left, lotQty);
+                left -= take;
+                if (lotQty - take <= PositionBook.DUST) {
+                    PreparedStatement del = session.prepare(DELETE_BY_ID);
+                    del.setLong(1, ids.get(i));
+                    del.executeUpdate();
+                } else {
+                    PreparedStatement up = session.prepare(UPDATE_QUANTITY);
+                    up.setDouble(1, lotQty - take);
+                    up.setLong(2, ids.get(i));
+                    up.executeUpdate();
+                }
+            }
+            return null;
+        }));
     }
 
-    public void replaceAll(List<Stock> stocks) throws SQLException {
-        try (Connection c = DriverManager.getConnection(url)) {
-            c.setAutoCommit(false);
-            Statement st = c.createStatement();
-            st.executeUpdate("DELETE FROM portfolio_stock");
-            st.close();
+    // A RESET plus one LOT per stock
+    public void replaceAll(String portfolioId, List<Stock> stocks) throws SQLException {
+        timedWrite("replaceAll", portfolioId, () -> db.writeInTransaction(session -> {
+            LedgerRepository.appendAsLots(session, portfolioId, stocks);
+
+            PreparedStatement del = session.prepare(DELETE_PORTFOLIO);
+            del.setString(1, portfolioId);
+            del.executeUpdate();
 
-            String ins = "INSERT INTO portfolio_stock(symbol,quantity,buy_price,buy_date,sector) VALUES(?,?,?,?,?)";
-            PreparedStatement ps = c.prepareStatement(ins);
+            // the last import's lots: this RESET supersedes them
+            PreparedStatement lots = session.prepare(DELETE_IMPORT_LOTS);
+            lots.setString(1, portfolioId);
+            lots.executeUpdate();
 
+            PreparedStatement ps = session.prepare(INSERT);
             for (Stock s : stocks) {
-                ps.setString(1, s.getSymbol());
-                ps.setDouble(2, s.getQuantity());
-                ps.setDouble(3, s.getBuyPrice());
-                ps.setString(4, s.getBuyDate());
-                ps.setString(5, s.getSector());
+                bindInsert(ps, portfolioId, s);
                 ps.addBatch();
             }
-
             ps.executeBatch();
-            c.commit();
-            ps.close();
+            return null;
+        }));
+    }
+
+    // ---------------- STAGED IMPORT -------------------
+    // Every row of portfolio_stock belongs to a generation, and portfolio_generation
+    // points each portfolio at its live one (0 when it has no row there). An import
+    // writes its chunks straight into portfolio_stock under a new generation, with a
+    // copy of each row in import_lots for the ledger; readers keep seeing the old
+    // generation until activateGeneration() moves the pointer, which touches one row
+    // however big the import. The replaced generation is then deleted in batches.
+
+    /** Reserves a generation for an import into the portfolio; nothing reads it until it is activated. */
+    public long newGeneration(String portfolioId) throws SQLException {
+        return timed("newGeneration", () -> db.writeInTransaction(session -> {
+            PreparedStatement ensure = session.prepare(ENSURE_GENERATION);
+            ensure.setString(1, portfolioId);
+            ensure.executeUpdate();
+            PreparedStatement next = session.prepare(NEXT_GENERATION);
+            next.setString(1, portfolioId);
+            next.executeUpdate();
+            return generation(session, portfolioId)[1];
+        }));
+    }
+
+    // One chunk, one transaction: the rows plus their opening lots
+    public void insertGeneration(String portfolioId, long generation, List<Stock> chunk) throws SQLException {
+        if (chunk.isEmpty()) return;
+        timed("insertGeneration", () -> db.writeInTransaction(session -> {
+            PreparedStatement rows = session.prepare(INSERT_GENERATION);
+            PreparedStatement lots = session.prepare(INSERT_IMPORT_LOT);
+            for (Stock s : chunk) {
+                bindInsert(rows, portfolioId, s);
+                rows.setLong(7, generation);
+                rows.addBatch();
+                bindInsert(lots, portfolioId, s);
+                lots.setLong(7, generation);
+                lots.addBatch();
+            }
+            rows.executeBatch();
+            lots.executeBatch();
+            return null;
+        }));
+    }
+
+    /**
+     * Makes the generation the portfolio's live holdings, in one small
+     * transaction: the pointer moves and the ledger gets a RESET naming the
+     * generation (its lots are in import_lots). The replaced rows stay until
+     * purgeInactive().
+     */
+    public void activateGeneration(String portfolioId, long generation) throws SQLException {
+        timedWrite("activateGeneration", portfolioId, () -> db.writeInTransaction(session -> {
+            long[] g = generation(session, portfolioId);
+            if (g == null || generation <= g[0] || generation > g[1]) {
+                throw new IllegalStateException("Generation " + generation + " of " + portfolioId + " is not pending");
+            }
+            LedgerRepository.appendImportReset(session, portfolioId, generation);
+
+            PreparedStatement ps = session.prepare(ACTIVATE_GENERATION);
+            ps.setLong(1, generation);
+            ps.setString(2, portfolioId);
+            ps.executeUpdate();
+            return null;
+        }));
+    }
+
+    /**
+     * Deletes every generation of the portfolio but the live one (replaced
+     * ones, and pending ones an import left behind), PURGE_BATCH rows per
+     * transaction. Callers make sure no import of the portfolio is running.
+     * Returns the number of holdings rows deleted.
+     */
+    public long purgeInactive(String portfolioId) throws SQLException {
+        return timed("purgeInactive", () -> {
+            long deleted = 0;
+            for (String sql : new String[]{PURGE_OLDER, PURGE_NEWER}) deleted += purge(sql, portfolioId);
+            for (String sql : new String[]{PURGE_OLDER_LOTS, PURGE_NEWER_LOTS}) purge(sql, portfolioId);
+            return deleted;
+        });
+    }
+
+    private long purge(String sql, String portfolioId) throws SQLException {
+        long deleted = 0;
+        while (true) {
+            int n = db.write(session -> {
+                PreparedStatement ps = session.prepare(sql);
+                ps.setString(1, portfolioId);
+                ps.setInt(2, PURGE_BATCH);
+                return ps.executeUpdate();
+            });
+            deleted += n;
+            if (n < PURGE_BATCH) return deleted;
         }
     }
 
-    public List<Stock> findAll() throws SQLException {
-        List<Stock> out = new ArrayList<>();
-
-        try (Connection c = DriverManager.getConnection(url)) {
-            String sql = "SELECT id, symbol, quantity, buy_price, buy_date, sector FROM portfolio_stock ORDER BY symbol";
-            PreparedStatement ps = c.prepareStatement(sql);
-            ResultSet rs = ps.executeQuery();
-
-            while (rs.next()) {
-                Stock s = new Stock();
-                s.setId(rs.getInt("id"));
-                s.setSymbol(rs.getString("symbol"));
-                // FIX: quantity must be double (do not cast to int)
-                s.setQuantity(rs.getDouble("quantity"));
-                s.setBuyPrice(rs.getDouble("buy_price"));
-                s.setBuyDate(rs.getString("buy_date"));
-                s.setSector(rs.getString("sector"));
-                out.add(s);
+    // {active, last reserved} of the portfolio, or null before its first import
+    private static long[] generation(SqliteDataSource.Session session, String portfolioId) throws SQLException {
+        PreparedStatement ps = session.prepare(SELECT_GENERATION);
+        ps.setString(1, portfolioId);
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? new long[]{rs.getLong(1), rs.getLong(2)} : null;
+        }
+    }
+
+    // ---------------- READS -------------------
+
+    public List<Stock> findAll(String portfolioId) throws SQLException {
+        return timed("findAll", () -> db.read(session -> {
+            List<Stock> out = new ArrayList<>();
+            PreparedStatement ps = session.prepare(SELECT_ALL);
+            ps.setString(1, portfolioId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Stock s = new Stock();
+                    s.setId(rs.getInt("id"));
+                    s.setSymbol(rs.getString("symbol"));
+                    // FIX: quantity must be double (do not cast to int)
+                    s.setQuantity(rs.getDouble("quantity"));
+                    s.setBuyPrice(rs.getDouble("buy_price"));
+                    s.setBuyDate(rs.getString("buy_date"));
+                    s.setSector(rs.getString("sector"));
+                    out.add(s);
+                }
             }
+            return out;
+        }));
+    }
+
+    // Same rows as findAll(), loaded into columns instead of Stock objects
+    public ColumnarHoldings findAllColumnar(String portfolioId) throws SQLException {
+        return findAllColumnar(portfolioId, SymbolIds.local());
+    }
 
-            rs.close();
-            ps.close();
+    // ... with symbol ids from the given SymbolIds (the app's SymbolMaster)
+    public ColumnarHoldings findAllColumnar(String portfolioId, SymbolIds ids) throws SQLException {
+        return timed("findAllColumnar", () -> db.read(session -> {
+            ColumnarHoldings out = new ColumnarHoldings(ids, 256);
+            PreparedStatement ps = session.prepare(SELECT_ALL);
+            ps.setString(1, portfolioId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    out.add(rs.getString(2), rs.getDouble(3), rs.getDouble(4), rs.getString(5), rs.getString(6), 0);
+                }
+            }
+            return out;
+        }));
+    }
+
+    /**
+     * Walks every holding in findAll() order without building a list: rows
+     * are read FOREACH_BATCH at a time, keyset-paginated on (symbol, id), and
+     * the reader connection goes back to the pool before the handler sees a
+     * batch. A slow handler (a client download) therefore holds neither a
+     * reader nor a WAL read snapshot, and memory stays at one batch.
+     *
+     * Each batch is consistent on its own; a write landing between two
+     * batches shows in the later ones only, and no row is visited twice.
+     * Stock instances are reused from batch to batch, so the handler must
+     * not keep them.
+     */
+    public long forEach(String portfolioId, StockHandler handler) throws Exception {
+        Stock[] page = new Stock[FOREACH_BATCH];
+        for (int i = 0; i < page.length; i++) page[i] = new Stock();
+
+        long rows = 0;
+        String lastSymbol = "";
+        int lastId = -1;
+        while (true) {
+            String fromSymbol = lastSymbol;
+            int fromId = lastId;
+            int n = timed("forEach", () -> db.read(session -> {
+                PreparedStatement ps = session.prepare(SELECT_PAGE);
+                ps.setString(1, portfolioId);
+                ps.setString(2, fromSymbol);
+                ps.setInt(3, fromId);
+                ps.setInt(4, page.length);
+                int k = 0;
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Stock s = page[k++];
+                        s.setId(rs.getInt(1));
+                        s.setSymbol(rs.getString(2));
+                        s.setQuantity(rs.getDouble(3));
+                        s.setBuyPrice(rs.getDouble(4));
+                        s.setBuyDate(rs.getString(5));
+                        s.setSector(rs.getString(6));
+                        s.setCurrentPrice(0);
+                    }
+                }
+                return k;
+            }));
+
+            for (int i = 0; i < n; i++) handler.accept(page[i]);
+            rows += n;
+            if (n < page.length) return rows;
+            lastSymbol = page[n - 1].getSymbol();
+            lastId = page[n - 1].getId();
         }
+    }
 
-        return out;
+    @FunctionalInterface
+    public interface StockHandler {
+        void accept(Stock s) throws Exception;
     }
 
-    public void deleteBySymbol(String symbol) throws SQLException {
-        try (Connection c = DriverManager.getConnection(url)) {
-            String sql = "DELETE FROM portfolio_stock WHERE symbol = ?";
-            PreparedStatement ps = c.prepareStatement(sql);
-            ps.setString(1, symbol.toUpperCase());
-            ps.executeUpdate();
-            ps.close();
+    // Every distinct symbol held in any portfolio, for the background price refresher
+    public List<String> findSymbols() throws SQLException {
+        return timed("findSymbols", () -> db.read(session -> {
+            List<String> out = new ArrayList<>();
+            try (ResultSet rs = session.prepare(SELECT_SYMBOLS).executeQuery()) {
+                while (rs.next()) out.add(rs.getString(1));
+            }
+            return out;
+        }));
+    }
+
+    // Ids of every portfolio that holds at least one lot
+    public List<String> findPortfolioIds() throws SQLException {
+        return timed("findPortfolioIds", () -> db.read(session -> {
+            List<String> out = new ArrayList<>();
+            try (ResultSet rs = session.prepare(SELECT_PORTFOLIOS).executeQuery()) {
+                while (rs.next()) out.add(rs.getString(1));
+            }
+            return out;
+        }));
+    }
+
+    // A CLOSE: drops every lot of the symbol
+    public void deleteBySymbol(String portfolioId, String symbol) throws SQLException {
+        String sym = SymbolMaster.normalize(symbol);
+        timedWrite("deleteBySymbol", portfolioId, () -> db.writeInTransaction(session -> {
+            LedgerRepository.append(session, portfolioId, Trade.Side.CLOSE, sym, 0, 0, null, null);
+
+            PreparedStatement ps = session.prepare(DELETE_BY_SYMBOL);
+            ps.setString(1, portfolioId);
+            ps.setString(2, sym);
+            return ps.executeUpdate();
+        }));
+    }
+
+    /** Bumped after every write to the portfolio's holdings. */
+    public long version(String portfolioId) {
+        AtomicLong v = versions.get(portfolioId);
+        return v != null ? v.get() : 0;
+    }
+
+    // ---------------- METRICS -------------------
+
+    @FunctionalInterface
+    private interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+
+    private <T> T timed(String method, SqlCall<T> call) throws SQLException {
+        long t0 = System.nanoTime();
+        boolean ok = false;
+        try {
+            T out = call.call();
+            ok = true;
+            return out;
+        } finally {
+            Meters.repository(meters, method, ok).record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // A write to the portfolio's holdings; the version moves only after it's done, so no reader can
+    // pair the new version with the old rows
+    private <T> T timedWrite(String method, String portfolioId, SqlCall<T> call) throws SQLException {
+        try {
+            return timed(method, call);
+        } finally {
+            versions.computeIfAbsent(portfolioId, k -> new AtomicLong()).incrementAndGet();
         }
     }
+
+    private static void bindInsert(PreparedStatement ps, String portfolioId, Stock s) throws SQLException {
+        ps.setString(1, portfolioId);
+        ps.setString(2, s.getSymbol());
+        ps.setDouble(3, s.getQuantity());
+        ps.setDouble(4, s.getBuyPrice());
+        ps.setString(5, s.getBuyDate());
+        ps.setString(6, s.getSector());
+    }
 }
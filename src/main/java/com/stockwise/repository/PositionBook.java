@@ -0,0 +1,102 @@
+package com.stockwise.repository;
+
+import com.stockwise.model.Trade;
+
+import java.util.*;
+
+/**
+ * In-memory fold of ledger trades into position rows, used by the replay.
+ * The rules match the incremental updates in PortfolioRepository exactly
+ * (same arithmetic, same lot order), so a rebuilt portfolio_stock holds
+ * the same numbers as one maintained trade by trade.
+ */
+final class PositionBook {
+
+    // a lot sold down below this is closed
+    static final double DUST = 1e-9;
+
+    private final List<Lot> lots = new ArrayList<>();
+    private final Map<String, ArrayDeque<Lot>> open = new HashMap<>();
+
+    // Shared with PortfolioRepository.saveOrUpdate: a BUY blended into an open lot
+    static double blendedPrice(double oldQty, double oldPrice, double qty, double price) {
+        return ((oldQty * oldPrice) + (qty * price)) / (oldQty + qty);
+    }
+
+    /** Starts from an existing position row (lots must be loaded in id order). */
+    void load(String symbol, double qty, double price, String date, String sector) {
+        openLot(symbol, qty, price, date, sector);
+    }
+
+    void apply(Trade.Side side, String symbol, double qty, double price, String date, String sector) {
+        if (side == Trade.Side.BUY) {
+            ArrayDeque<Lot> q = open.get(symbol);
+            Lot first = q == null ? null : q.peekFirst();
+            if (first == null) {
+                openLot(symbol, qty, price, date, sector);
+            } else {
+                first.price = blendedPrice(first.qty, first.price, qty, price);
+                first.qty = first.qty + qty;
+                first.date = date;
+                first.sector = sector;
+            }
+
+        } else if (side == Trade.Side.LOT) {
+            openLot(symbol, qty, price, date, sector);
+
+        } else if (side == Trade.Side.SELL) {
+            ArrayDeque<Lot> q = open.get(symbol);
+            double left = qty;
+            while (q != null && !q.isEmpty() && left > DUST) {
+                Lot lot = q.peekFirst();
+                double take = Math.min(left, lot.qty);
+                left -= take;
+                if (lot.qty - take <= DUST) {
+                    lot.closed = true;
+                    q.pollFirst();
+                } else {
+                    lot.qty = lot.qty - take;
+                }
+            }
+            if (q != null && q.isEmpty()) open.remove(symbol);
+
+        } else if (side == Trade.Side.CLOSE) {
+            ArrayDeque<Lot> q = open.remove(symbol);
+            if (q != null) for (Lot lot : q) lot.closed = true;
+
+        } else if (side == Trade.Side.RESET) {
+            lots.clear();
+            open.clear();
+        }
+    }
+
+    /** Open lots in the order they were opened, i.e. the order to insert them in. */
+    List<Lot> openLots() {
+        List<Lot> out = new ArrayList<>();
+        for (Lot lot : lots) if (!lot.closed) out.add(lot);
+        return out;
+    }
+
+    private void openLot(String symbol, double qty, double price, String date, String sector) {
+        Lot lot = new Lot(symbol, qty, price, date, sector);
+        lots.add(lot);
+        open.computeIfAbsent(symbol, k -> new ArrayDeque<>()).addLast(lot);
+    }
+
+    static final class Lot {
+        final String symbol;
+        double qty;
+        double price;
+        String date;
+        String sector;
+        boolean closed;
+
+        Lot(String symbol, double qty, double price, String date, String sector) {
+            this.symbol = symbol;
+            this.qty = qty;
+            this.price = price;
+            this.date = date;
+            this.sector = sector;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.stockwise.repository;
+
+import com.stockwise.model.PriceBars;
+import com.stockwise.util.BarCodec;
+import org.springframework.stereotype.Repository;
+
+import java.sql.*;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.*;
+
+/**
+ * Price bars in price_bars, one BarCodec-encoded block per symbol, interval
+ * and period. A range read touches one primary-key range and decodes only
+ * the blocks it overlaps; a write re-encodes only the blocks it changes.
+ */
+@Repository
+public class PriceHistoryRepository {
+
+    public static final String INTRADAY = "1m";
+    public static final String DAILY = "1d";
+
+    private static final String SELECT_BLOCK = "SELECT data FROM price_bars WHERE symbol = ? AND bar_interval = ? AND block_start = ?";
+    private static final String UPSERT_BLOCK =
+            "INSERT OR REPLACE INTO price_bars(symbol, bar_interval, block_start, first_time, last_time, bar_count, data) VALUES(?,?,?,?,?,?,?)";
+    private static final String SELECT_RANGE =
+            "SELECT data FROM price_bars WHERE symbol = ? AND bar_interval = ? AND block_start >= ? AND block_start <= ? ORDER BY block_start";
+    private static final String SELECT_LAST_TIME = "SELECT MAX(last_time) FROM price_bars WHERE symbol = ? AND bar_interval = ?";
+    private static final String DELETE_BEFORE = "DELETE FROM price_bars WHERE bar_interval = ? AND block_start < ?";
+    private static final String STATS =
+            "SELECT bar_interval, COUNT(*), COUNT(DISTINCT symbol), SUM(bar_count), SUM(LENGTH(data)) FROM price_bars GROUP BY bar_interval";
+
+    private final SqliteDataSource db;
+
+    public PriceHistoryRepository(SqliteDataSource db) {
+        this.db = db;
+    }
+
+    /** Start of the block holding time t: the UTC day for 1m bars, the UTC year for 1d bars. */
+    public static long blockStart(String interval, long t) {
+        if (DAILY.equals(interval)) {
+            ZonedDateTime d = Instant.ofEpochSecond(t).atZone(ZoneOffset.UTC);
+            return d.withDayOfYear(1).toLocalDate().atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+        }
+        return Math.floorDiv(t, 86400L) * 86400L;
+    }
+
+    /**
+     * Merges each symbol's bars into its stored blocks (newer bars win on
+     * the same timestamp), all in one transaction.
+     */
+    public void store(String interval, Map<String, PriceBars> bySymbol) throws SQLException {
+        if (bySymbol.isEmpty()) return;
+        db.writeInTransaction(session -> {
+            PreparedStatement sel = session.prepare(SELECT_BLOCK);
+            PreparedStatement up = session.prepare(UPSERT_BLOCK);
+
+            for (Map.Entry<String, PriceBars> e : bySymbol.entrySet()) {
+                PriceBars bars = e.getValue();
+                int i = 0;
+                while (i < bars.size()) {
+                    // the run of bars that falls into one block
+                    long block = blockStart(interval, bars.time(i));
+                    PriceBars part = new PriceBars();
+                    while (i < bars.size() && blockStart(interval, bars.time(i)) == block) {
+                        part.add(bars.time(i), bars.open(i), bars.high(i), bars.low(i), bars.close(i), bars.volume(i));
+                        i++;
+                    }
+
+                    sel.setString(1, e.getKey());
+                    sel.setString(2, interval);
+                    sel.setLong(3, block);
+                    PriceBars existing = null;
+                    try (ResultSet rs = sel.executeQuery()) {
+                        if (rs.next()) existing = BarCodec.decode(rs.getBytes(1));
+                    }
+                    PriceBars merged = PriceBars.merge(existing, part);
+
+                    up.setString(1, e.getKey());
+                    up.setString(2, interval);
+                    up.setLong(3, block);
+                    up.setLong(4, merged.firstTime());
+                    up.setLong(5, merged.lastTime());
+                    up.setInt(6, merged.size());
+                    up.setBytes(7, BarCodec.encode(merged));
+                    up.executeUpdate();
+                }
+            }
+            return null;
+        });
+    }
+
+    /** Bars with from <= time <= to (epoch seconds), oldest first. */
+    public PriceBars find(String symbol, String interval, long from, long to) throws SQLException {
+        return db.read(session -> {
+            PreparedStatement ps = session.prepare(SELECT_RANGE);
+            ps.setString(1, symbol);
+            ps.setString(2, interval);
+            ps.setLong(3, blockStart(interval, from));
+            ps.setLong(4, to);
+            PriceBars out = new PriceBars(256);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.addAll(BarCodec.decode(rs.getBytes(1)).slice(from, to));
+            }
+            return out;
+        });
+    }
+
+    // Time of the newest stored bar, or 0 when there is none
+    public long lastTime(String symbol, String interval) throws SQLException {
+        return db.read(session -> {
+            PreparedStatement ps = session.prepare(SELECT_LAST_TIME);
+            ps.setString(1, symbol);
+            ps.setString(2, interval);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0L;
+            }
+        });
+    }
+
+    // Drops whole blocks that start before the cutoff
+    public int deleteBefore(String interval, long cutoff) throws SQLException {
+        return db.write(session -> {
+            PreparedStatement ps = session.prepare(DELETE_BEFORE);
+            ps.setString(1, interval);
+            ps.setLong(2, blockStart(interval, cutoff));
+            return ps.executeUpdate();
+        });
+    }
+
+    // Per interval: blocks, symbols, bars and encoded bytes
+    public Map<String, Object> stats() throws SQLException {
+        return db.read(session -> {
+            Map<String, Object> out = new LinkedHashMap<>();
+            try (ResultSet rs = session.prepare(STATS).executeQuery()) {
+                while (rs.next()) {
+                    Map<String, Object> m = new LinkedHashMap<>();
+                    long bars = rs.getLong(4), bytes = rs.getLong(5);
+                    m.put("blocks", rs.getLong(2));
+                    m.put("symbols", rs.getLong(3));
+                    m.put("bars", bars);
+                    m.put("bytes", bytes);
+                    m.put("bytesPerBar", bars == 0 ? 0.0 : (double) bytes / bars);
+                    out.put(rs.getString(1), m);
+                }
+            }
+            return out;
+        });
+    }
+}
@@ -0,0 +1,254 @@
+package com.stockwise.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+import org.sqlite.SQLiteConfig;
+
+import jakarta.annotation.PreDestroy;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * SQLite access for the repositories: one writer connection plus a small
+ * pool of read-only connections, all in WAL mode so readers never block
+ * on the writer (and vice versa).
+ *
+ * Connections stay open for the life of the app and each keeps its own
+ * prepared-statement cache, so a repository call is "borrow, bind, run".
+ * Statements handed out by {@link Session#prepare} are owned by the
+ * session: close the ResultSet, never the statement.
+ */
+@Component
+public class SqliteDataSource {
+
+    private final String url;
+    private final int readers;
+    private final long mmapSize;
+    private final int cacheSizeKb;
+    private final int busyTimeoutMs;
+
+    private final ReentrantLock writeLock = new ReentrantLock(true);
+    private final Session writer;
+    private final BlockingQueue<Session> idleReaders;
+    private final AtomicInteger openReaders = new AtomicInteger();
+    private final List<Session> all = Collections.synchronizedList(new ArrayList<>());
+
+    public SqliteDataSource(@Value("${stockwise.db.url:jdbc:sqlite:data/stockwise.db}") String url,
+                            @Value("${stockwise.db.readers:4}") int readers,
+                            @Value("${stockwise.db.mmap-size:268435456}") long mmapSize,
+                            @Value("${stockwise.db.cache-size-kb:16384}") int cacheSizeKb,
+                            @Value("${stockwise.db.busy-timeout-ms:5000}") int busyTimeoutMs) throws Exception {
+        this.url = url;
+        this.readers = Math.max(1, readers);
+        this.mmapSize = mmapSize;
+        this.cacheSizeKb = cacheSizeKb;
+        this.busyTimeoutMs = busyTimeoutMs;
+        this.idleReaders = new ArrayBlockingQueue<>(this.readers);
+
+        boolean needInit = prepareFile();
+        this.writer = open(false);
+        initSchema(needInit);
+    }
+
+    /** Runs read-only work on a pooled reader connection. */
+    public <T> T read(SqlWork<T> work) throws SQLException {
+        Session s = borrowReader();
+        try {
+            return work.run(s);
+        } finally {
+            idleReaders.offer(s);
+        }
+    }
+
+    /** Runs work on the single writer connection, in autocommit mode. */
+    public <T> T write(SqlWork<T> work) throws SQLException {
+        writeLock.lock();
+        try {
+            return work.run(writer);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Runs work on the writer connection inside one transaction. */
+    public <T> T writeInTransaction(SqlWork<T> work) throws SQLException {
+        writeLock.lock();
+        Connection c = writer.connection();
+        boolean committed = false;
+        try {
+            c.setAutoCommit(false);
+            T out = work.run(writer);
+            c.commit();
+            committed = true;
+            return out;
+        } finally {
+            // whatever was thrown (Errors too): turning autocommit back on would commit the half-done work
+            if (!committed) {
+                try { c.rollback(); } catch (SQLException ignored) {}
+            }
+            try { c.setAutoCommit(true); } catch (SQLException ignored) {}
+            writeLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (all) {
+            for (Session s : all) s.close();
+            all.clear();
+        }
+    }
+
+    // ---------------- connections -------------------
+
+    private Session borrowReader() throws SQLException {
+        Session s = idleReaders.poll();
+        if (s != null) return s;
+
+        // grow lazily up to the configured pool size
+        while (true) {
+            int n = openReaders.get();
+            if (n >= readers) break;
+            if (openReaders.compareAndSet(n, n + 1)) {
+                try {
+                    return open(true);
+                } catch (SQLException e) {
+                    openReaders.decrementAndGet();
+                    throw e;
+                }
+            }
+        }
+
+        try {
+            s = idleReaders.poll(busyTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (s == null) throw new SQLException("No SQLite reader connection free after " + busyTimeoutMs + "ms");
+        return s;
+    }
+
+    private Session open(boolean readOnly) throws SQLException {
+        SQLiteConfig cfg = new SQLiteConfig();
+        cfg.setReadOnly(readOnly);
+        cfg.setBusyTimeout(busyTimeoutMs);
+        cfg.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        // NORMAL is durable across app crashes in WAL mode; only an OS crash can lose the last commits
+        cfg.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        cfg.setTempStore(SQLiteConfig.TempStore.MEMORY);
+        cfg.setCacheSize(-cacheSizeKb); // negative = KiB
+        cfg.enforceForeignKeys(true);
+
+        Connection c = DriverManager.getConnection(url, cfg.toProperties());
+        try (Statement st = c.createStatement()) {
+            st.execute("PRAGMA mmap_size=" + mmapSize);
+        }
+
+        Session s = new Session(c);
+        all.add(s);
+        return s;
+    }
+
+    // Creates the data directory if needed; returns true when the DB file is new
+    private boolean prepareFile() throws Exception {
+        String prefix = "jdbc:sqlite:";
+        if (!url.startsWith(prefix)) return false;
+        String file = url.substring(prefix.length());
+        int q = file.indexOf('?');
+        if (q >= 0) file = file.substring(0, q);
+        if (file.isEmpty() || file.startsWith(":memory:") || file.startsWith("file:")) return false;
+
+        Path path = Path.of(file);
+        if (path.getParent() != null) Files.createDirectories(path.getParent());
+        return !Files.exists(path);
+    }
+
+    // schema.sql is idempotent (IF NOT EXISTS / tolerated ADD COLUMN), so it runs on every start
+    private void initSchema(boolean newFile) throws Exception {
+        if (newFile) System.out.println("⏳ Creating new SQLite DB…");
+
+        String sql;
+        try (InputStream in = new ClassPathResource("schema.sql").getInputStream()) {
+            sql = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        try (Statement st = writer.connection().createStatement()) {
+            for (String stmt : splitStatements(sql)) {
+                try {
+                    st.executeUpdate(stmt);
+                } catch (SQLException e) {
+                    // ADD COLUMN has no IF NOT EXISTS; an existing column means the migration already ran
+                    boolean addColumn = stmt.toUpperCase().startsWith("ALTER TABLE") && stmt.toUpperCase().contains("ADD COLUMN");
+                    if (!addColumn || !String.valueOf(e.getMessage()).contains("duplicate column")) throw e;
+                }
+            }
+        }
+
+        if (newFile) System.out.println("✅ SQLite schema created successfully.");
+        else System.out.println("📌 Using existing SQLite DB at: " + url);
+    }
+
+    private static List<String> splitStatements(String sql) {
+        StringBuilder clean = new StringBuilder();
+        for (String line : sql.split("\n")) {
+            String t = line.trim();
+            if (!t.startsWith("--")) clean.append(line).append('\n');
+        }
+        List<String> out = new ArrayList<>();
+        for (String part : clean.toString().split(";")) {
+            if (!part.isBlank()) out.add(part.trim());
+        }
+        return out;
+    }
+
+    // ---------------- session -------------------
+
+    @FunctionalInterface
+    public interface SqlWork<T> {
+        T run(Session s) throws SQLException;
+    }
+
+    /** A pooled connection with its own prepared-statement cache. */
+    public static class Session {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        Session(Connection connection) {
+            this.connection = connection;
+        }
+
+        public Connection connection() {
+            return connection;
+        }
+
+        /** Cached statement for this SQL, parameters cleared. Do not close it. */
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement ps = statements.get(sql);
+            if (ps == null || ps.isClosed()) {
+                ps = connection.prepareStatement(sql);
+                statements.put(sql, ps);
+            } else {
+                ps.clearParameters();
+            }
+            return ps;
+        }
+
+        void close() {
+            for (PreparedStatement ps : statements.values()) {
+                try { ps.close(); } catch (SQLException ignored) {}
+            }
+            statements.clear();
+            try { connection.close(); } catch (SQLException ignored) {}
+        }
+    }
+}
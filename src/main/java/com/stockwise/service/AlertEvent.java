@@ -0,0 +1,21 @@
+package com.stockwise.service;
+
+import com.stockwise.model.Alert;
+
+/**
+ * Published on the application event bus when an alert fires, after its
+ * triggered time and value are set. Listeners run on the alert dispatch
+ * thread, never on the price tick.
+ */
+public class AlertEvent {
+
+    private final Alert alert;
+
+    public AlertEvent(Alert alert) {
+        this.alert = alert;
+    }
+
+    public Alert getAlert() {
+        return alert;
+    }
+}
@@ -0,0 +1,155 @@
+package com.stockwise.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Active alert thresholds by key (a symbol, or a portfolio id for P/L
+ * alerts), in sorted primitive arrays.
+ *
+ * Every active alert is one whose condition the key's last value did not
+ * meet, so the alerts a new value fires are always the nearest thresholds:
+ * "above" alerts at or under it, "below" alerts at or over it. Each side
+ * is kept sorted so those sit at the tail of its arrays, and firing pops
+ * from the tail until the first threshold the value doesn't reach. A value
+ * that fires nothing costs one hash lookup and two comparisons, however
+ * many alerts the key has.
+ *
+ * Not thread-safe; AlertService guards it.
+ */
+public class AlertIndex {
+
+    private final HashMap<String, Book> books = new HashMap<>();
+    private int size;
+
+    public void add(String key, boolean above, double threshold, long id) {
+        books.computeIfAbsent(key, k -> new Book()).side(above).add(above ? threshold : -threshold, id);
+        size++;
+    }
+
+    public boolean remove(String key, boolean above, double threshold, long id) {
+        Book b = books.get(key);
+        if (b == null || !b.side(above).remove(above ? threshold : -threshold, id)) return false;
+        if (b.isEmpty()) books.remove(key);
+        size--;
+        return true;
+    }
+
+    /** Pops every alert of key that value meets into out; returns how many. */
+    public int fire(String key, double value, Fired out) {
+        Book b = books.get(key);
+        if (b == null) return 0;
+        int n = b.above.popUpTo(value, value, out) + b.below.popUpTo(-value, value, out);
+        if (n > 0) {
+            size -= n;
+            if (b.isEmpty()) books.remove(key);
+        }
+        return n;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int size(String key) {
+        Book b = books.get(key);
+        return b == null ? 0 : b.above.n + b.below.n;
+    }
+
+    public int keyCount() {
+        return books.size();
+    }
+
+    /** Ids of fired alerts with the value that fired each; reused between ticks. */
+    public static class Fired {
+        long[] ids = new long[16];
+        double[] values = new double[16];
+        int n;
+
+        void add(long id, double value) {
+            if (n == ids.length) {
+                ids = Arrays.copyOf(ids, n * 2);
+                values = Arrays.copyOf(values, n * 2);
+            }
+            ids[n] = id;
+            values[n++] = value;
+        }
+
+        public int size() { return n; }
+
+        public long id(int i) { return ids[i]; }
+
+        public double value(int i) { return values[i]; }
+
+        public void clear() { n = 0; }
+    }
+
+    private static class Book {
+        final Side above = new Side();
+        final Side below = new Side();
+
+        Side side(boolean isAbove) {
+            return isAbove ? above : below;
+        }
+
+        boolean isEmpty() {
+            return above.n == 0 && below.n == 0;
+        }
+    }
+
+    /**
+     * One direction of one key. Keys are the threshold for "above" alerts
+     * and its negation for "below" ones, so both fire on key <= probe and
+     * both are kept in descending key order, firing from the tail.
+     */
+    private static class Side {
+        double[] keys = new double[4];
+        long[] ids = new long[4];
+        int n;
+
+        void add(double key, long id) {
+            // after equal keys; appending (descending input, e.g. a sorted load) moves nothing
+            int at = n;
+            if (at > 0 && keys[at - 1] <= key) at = insertionPoint(key);
+            if (n == keys.length) {
+                keys = Arrays.copyOf(keys, n * 2);
+                ids = Arrays.copyOf(ids, n * 2);
+            }
+            System.arraycopy(keys, at, keys, at + 1, n - at);
+            System.arraycopy(ids, at, ids, at + 1, n - at);
+            keys[at] = key;
+            ids[at] = id;
+            n++;
+        }
+
+        boolean remove(double key, long id) {
+            int at = insertionPoint(key) - 1;
+            while (at >= 0 && keys[at] == key && ids[at] != id) at--;
+            if (at < 0 || keys[at] != key) return false;
+            System.arraycopy(keys, at + 1, keys, at, n - at - 1);
+            System.arraycopy(ids, at + 1, ids, at, n - at - 1);
+            n--;
+            return true;
+        }
+
+        int popUpTo(double probe, double value, Fired out) {
+            int start = n;
+            while (n > 0 && keys[n - 1] <= probe) {
+                n--;
+                out.add(ids[n], value);
+            }
+            return start - n;
+        }
+
+        // first index whose key is below key (descending order)
+        private int insertionPoint(double key) {
+            int lo = 0, hi = n;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (keys[mid] >= key) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.stockwise.service;
+
+import com.stockwise.model.Alert;
+import com.stockwise.model.PortfolioSnapshot;
+import com.stockwise.repository.AlertRepository;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * User alerts, checked on every price table update.
+ *
+ * Active alerts are held in two {@link AlertIndex}es: price alerts keyed by
+ * symbol, P/L alerts keyed by portfolio. A tick costs one lookup per changed
+ * symbol plus whatever actually fires, never a pass over the alerts. Each
+ * portfolio with P/L alerts keeps a PortfolioSnapshot that ticks re-price
+ * in place, as the live stream does, so its P/L % is always at hand.
+ *
+ * An alert whose condition already holds when it is created (or loaded at
+ * startup) fires right away. Fired alerts are marked in the DB and
+ * published as {@link AlertEvent}s from a dispatch thread, off the tick; a
+ * crash in between means the alert fires again after restart rather than
+ * never.
+ */
+@Service
+public class AlertService {
+
+    private final AlertRepository repo;
+    private final DashboardService dashboard;
+    private final PriceTable priceTable;
+    private final PriceRefreshService priceRefresher;
+    private final ApplicationEventPublisher events;
+
+    // guarded by this
+    private final AlertIndex priceAlerts = new AlertIndex();
+    private final AlertIndex plAlerts = new AlertIndex();
+    private final HashMap<Long, Alert> active = new HashMap<>();
+    private final HashMap<String, Watch> watched = new HashMap<>();
+    private final AlertIndex.Fired fired = new AlertIndex.Fired();
+    private long maxTickNanos;
+    private long lastTickNanos;
+
+    private final LongAdder ticks = new LongAdder();
+    private final LongAdder tickNanos = new LongAdder();
+    private final LongAdder firedCount = new LongAdder();
+
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "alerts");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public AlertService(AlertRepository repo, DashboardService dashboard, PriceTable priceTable,
+                        PriceRefreshService priceRefresher, ApplicationEventPublisher events) {
+        this.repo = repo;
+        this.dashboard = dashboard;
+        this.priceTable = priceTable;
+        this.priceRefresher = priceRefresher;
+        this.events = events;
+        priceTable.addListener(this::onPrices);
+    }
+
+    @PostConstruct
+    public void load() {
+        List<Alert> all;
+        try {
+            all = repo.findActive();
+        } catch (SQLException e) {
+            System.out.println("⚠ Could not load alerts: " + e.getMessage());
+            return;
+        }
+        // in each side's index order, so every add is an append
+        all.sort(Comparator.comparingDouble(a -> a.getDirection() == Alert.Direction.ABOVE ? -a.getThreshold() : a.getThreshold()));
+
+        List<Alert> out;
+        Set<String> reload = new HashSet<>();
+        synchronized (this) {
+            for (Alert a : all) index(a);
+            for (Alert a : all) {
+                if (a.getKind() == Alert.Kind.PRICE) checkPrice(a.getSymbol());
+                else if (watched.putIfAbsent(a.getPortfolioId(), new Watch()) == null) reload.add(a.getPortfolioId());
+            }
+            out = takeFired();
+        }
+        dispatch(out);
+        for (String pid : reload) reload(pid);
+        if (!all.isEmpty()) System.out.println("🔔 Loaded " + all.size() + " active alert(s)");
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        // let pending firings reach the DB
+        dispatcher.shutdown();
+        dispatcher.awaitTermination(2, TimeUnit.SECONDS);
+    }
+
+    // ---------------- ALERTS -------------------
+
+    /** Parses and stores the alert; it comes back already triggered if its condition holds now. */
+    public Alert create(String portfolioId, String text) throws SQLException {
+        Alert a = Alert.parse(portfolioId, text);
+        a.setCreatedAt(System.currentTimeMillis());
+        repo.insert(a);
+
+        List<Alert> out;
+        boolean load = false;
+        synchronized (this) {
+            index(a);
+            if (a.getKind() == Alert.Kind.PRICE) {
+                checkPrice(a.getSymbol());
+            } else {
+                Watch w = watched.get(portfolioId);
+                if (w == null) {
+                    watched.put(portfolioId, new Watch());
+                    load = true;
+                } else {
+                    checkPl(portfolioId, w);
+                }
+            }
+            out = takeFired();
+        }
+        dispatch(out);
+        if (load) reload(portfolioId);
+        // a symbol nobody holds joins the refresh round (see PriceRefreshService)
+        if (a.getKind() == Alert.Kind.PRICE && !priceTable.contains(a.getSymbol())) priceRefresher.requestRefresh();
+        return a;
+    }
+
+    // false if the portfolio has no such alert
+    public boolean delete(String portfolioId, long id) throws SQLException {
+        boolean deleted = repo.delete(portfolioId, id);
+        synchronized (this) {
+            Alert a = active.get(id);
+            if (a != null && a.getPortfolioId().equals(portfolioId)) {
+                active.remove(id);
+                if (a.getKind() == Alert.Kind.PRICE) {
+                    priceAlerts.remove(a.getSymbol(), a.getDirection() == Alert.Direction.ABOVE, a.getThreshold(), id);
+                } else {
+                    plAlerts.remove(portfolioId, a.getDirection() == Alert.Direction.ABOVE, a.getThreshold(), id);
+                    if (plAlerts.size(portfolioId) == 0) watched.remove(portfolioId);
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /** Newest first; status active, triggered or all. */
+    public List<Alert> list(String portfolioId, String status, int limit) throws SQLException {
+        Boolean onlyActive;
+        if ("all".equalsIgnoreCase(status)) onlyActive = null;
+        else if ("active".equalsIgnoreCase(status)) onlyActive = true;
+        else if ("triggered".equalsIgnoreCase(status)) onlyActive = false;
+        else throw new IllegalArgumentException("status must be active, triggered or all");
+        return repo.findRecent(portfolioId, onlyActive, limit);
+    }
+
+    /** Holdings of the portfolio changed: its P/L snapshot is reloaded if it has P/L alerts. */
+    public void portfolioChanged(String portfolioId) {
+        synchronized (this) {
+            if (!watched.containsKey(portfolioId)) return;
+        }
+        reload(portfolioId);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        long tickCount = ticks.sum();
+        synchronized (this) {
+            out.put("active", active.size());
+            out.put("priceAlerts", priceAlerts.size());
+            out.put("symbols", priceAlerts.keyCount());
+            out.put("plAlerts", plAlerts.size());
+            out.put("portfolios", watched.size());
+            out.put("lastTickMicros", lastTickNanos / 1e3);
+            out.put("maxTickMicros", maxTickNanos / 1e3);
+        }
+        out.put("ticks", tickCount);
+        out.put("avgTickMicros", tickCount == 0 ? 0.0 : tickNanos.sum() / 1e3 / tickCount);
+        out.put("fired", firedCount.sum());
+        return out;
+    }
+
+    // ---------------- TICKS -------------------
+
+    private void onPrices(Map<String, Double> changed) {
+        long start = System.nanoTime();
+        List<Alert> out;
+        synchronized (this) {
+            for (Map.Entry<String, Double> e : changed.entrySet()) {
+                priceAlerts.fire(e.getKey(), e.getValue(), fired);
+            }
+            for (Map.Entry<String, Watch> w : watched.entrySet()) {
+                Watch watch = w.getValue();
+                if (watch.snapshot == null) continue;
+                for (Map.Entry<String, Double> e : changed.entrySet()) watch.snapshot.updatePrice(e.getKey(), e.getValue());
+                checkPl(w.getKey(), watch);
+            }
+            out = takeFired();
+
+            long nanos = System.nanoTime() - start;
+            lastTickNanos = nanos;
+            if (nanos > maxTickNanos) maxTickNanos = nanos;
+            ticks.increment();
+            tickNanos.add(nanos);
+        }
+        dispatch(out);
+    }
+
+    // ---------------- HELPERS (callers hold the lock) -------------------
+
+    private void index(Alert a) {
+        boolean above = a.getDirection() == Alert.Direction.ABOVE;
+        if (a.getKind() == Alert.Kind.PRICE) priceAlerts.add(a.getSymbol(), above, a.getThreshold(), a.getId());
+        else plAlerts.add(a.getPortfolioId(), above, a.getThreshold(), a.getId());
+        active.put(a.getId(), a);
+    }
+
+    private void checkPrice(String symbol) {
+        double px = priceTable.get(symbol);
+        if (px > 0) priceAlerts.fire(symbol, px, fired);
+    }
+
+    private void checkPl(String portfolioId, Watch w) {
+        if (w.snapshot == null) return;
+        // a holding without a price yet would read as a 100% loss
+        if (w.unpriced > 0 && (w.unpriced = countUnpriced(w.snapshot)) > 0) return;
+        if (w.snapshot.getTotalInvested() <= 0) return;
+        plAlerts.fire(portfolioId, w.snapshot.getUnrealizedPLPercent(), fired);
+    }
+
+    private static int countUnpriced(PortfolioSnapshot snap) {
+        int n = 0;
+        for (int i = 0; i < snap.size(); i++) if (!(snap.price(i) > 0)) n++;
+        return n;
+    }
+
+    // Resolves what the indexes fired into alerts, stamped with the firing time
+    private List<Alert> takeFired() {
+        if (fired.size() == 0) return Collections.emptyList();
+        long now = System.currentTimeMillis();
+        List<Alert> out = new ArrayList<>(fired.size());
+        for (int i = 0; i < fired.size(); i++) {
+            Alert a = active.remove(fired.id(i));
+            if (a == null) continue;
+            a.setTriggeredAt(now);
+            a.setTriggeredValue(fired.value(i));
+            out.add(a);
+            if (a.getKind() == Alert.Kind.PL && plAlerts.size(a.getPortfolioId()) == 0) watched.remove(a.getPortfolioId());
+        }
+        fired.clear();
+        return out;
+    }
+
+    // ---------------- DISPATCH -------------------
+
+    private void dispatch(List<Alert> out) {
+        if (out.isEmpty()) return;
+        firedCount.add(out.size());
+        dispatcher.execute(() -> {
+            try {
+                repo.markTriggered(out);
+            } catch (SQLException e) {
+                System.out.println("⚠ Could not record " + out.size() + " fired alert(s): " + e.getMessage());
+            }
+            for (Alert a : out) {
+                try {
+                    events.publishEvent(new AlertEvent(a));
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    // Loads the portfolio off the caller's thread, then brings it up to the latest prices and checks it
+    private void reload(String portfolioId) {
+        dispatcher.execute(() -> {
+            PortfolioSnapshot snap = dashboard.loadSnapshot(portfolioId);
+            List<Alert> out;
+            synchronized (this) {
+                Watch w = watched.get(portfolioId);
+                if (w == null) return;
+                for (int i = 0; i < snap.size(); i++) {
+                    double px = priceTable.get(snap.symbol(i));
+                    if (px > 0) snap.updatePrice(i, px);
+                }
+                w.snapshot = snap;
+                w.unpriced = countUnpriced(snap);
+                checkPl(portfolioId, w);
+                out = takeFired();
+            }
+            dispatch(out);
+        });
+    }
+
+    private static class Watch {
+        PortfolioSnapshot snapshot; // null until loaded
+        int unpriced;
+    }
+}
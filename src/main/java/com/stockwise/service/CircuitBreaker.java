@@ -0,0 +1,147 @@
+package com.stockwise.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count-based circuit breaker for upstream calls.
+ *
+ * - CLOSED: calls go through. The outcomes of the last {@code window} calls
+ *   are kept; once at least {@code minCalls} are in and the failing share
+ *   reaches {@code failureRate}, the breaker opens.
+ * - OPEN: calls are refused without touching the network for {@code openMs}.
+ * - HALF_OPEN: one trial call goes through. Success closes the breaker with
+ *   a clean window, failure opens it for another {@code openMs}.
+ *
+ * Callers take a permit with {@link #tryAcquire()} and report it back with
+ * exactly one of onSuccess, onFailure or release (the call never went out).
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int window;
+    private final int minCalls;
+    private final double failureRate;
+    private final long openNanos;
+
+    // guarded by this
+    private State state = State.CLOSED;
+    private final boolean[] failed;
+    private int next;
+    private int recorded;
+    private int failures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+
+    public CircuitBreaker(String name, int window, int minCalls, double failureRate, long openMs) {
+        this.name = name;
+        this.window = Math.max(1, window);
+        this.minCalls = Math.max(1, Math.min(minCalls, this.window));
+        this.failureRate = failureRate;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+        this.failed = new boolean[this.window];
+    }
+
+    public synchronized boolean tryAcquire() {
+        if (state == State.CLOSED) return true;
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                rejected.increment();
+                return false;
+            }
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (trialInFlight) {
+            rejected.increment();
+            return false;
+        }
+        trialInFlight = true;
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            close();
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open("trial call failed");
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (recorded >= minCalls && failures >= failureRate * recorded) {
+                open(failures + " of the last " + recorded + " calls failed");
+            }
+        }
+    }
+
+    // The permit was taken but the call never went out
+    public synchronized void release() {
+        if (state == State.HALF_OPEN) trialInFlight = false;
+    }
+
+    /** True while calls are being refused outright; takes no permit. */
+    public synchronized boolean isOpen() {
+        return state == State.OPEN && System.nanoTime() - openedAt < openNanos;
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        synchronized (this) {
+            out.put("state", state.name());
+            out.put("windowCalls", recorded);
+            out.put("windowFailures", failures);
+            if (state == State.OPEN) {
+                out.put("retryInMs", Math.max(0, TimeUnit.NANOSECONDS.toMillis(openNanos - (System.nanoTime() - openedAt))));
+            }
+        }
+        out.put("timesOpened", opened.sum());
+        out.put("rejected", rejected.sum());
+        return out;
+    }
+
+    // ---------------- HELPERS (callers hold the lock) -------------------
+
+    private void record(boolean failure) {
+        if (recorded == window) {
+            if (failed[next]) failures--;
+        } else {
+            recorded++;
+        }
+        failed[next] = failure;
+        if (failure) failures++;
+        next = (next + 1) % window;
+    }
+
+    private void open(String why) {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        opened.increment();
+        System.out.println("⚠ " + name + " circuit opened (" + why + "), failing fast for "
+                + TimeUnit.NANOSECONDS.toMillis(openNanos) + "ms");
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        trialInFlight = false;
+        next = 0;
+        recorded = 0;
+        failures = 0;
+        System.out.println("✅ " + name + " circuit closed");
+    }
+}
@@ -0,0 +1,375 @@
+package com.stockwise.service;
+
+import com.stockwise.util.Meters;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The MarketDataService everyone gets: spreads a fetchPrices call over the
+ * configured providers (the other MarketDataService beans, by name without
+ * the "MarketDataService" suffix: yahoo, mock).
+ *
+ * Routing: each symbol goes by its exchange, the suffix of the Yahoo symbol
+ * SymbolMaster gives it (NS, BO, ...; INDEX for ^ symbols), to the providers in
+ * stockwise.market.route.&lt;EXCHANGE&gt;, or stockwise.market.providers if
+ * the exchange has no route of its own.
+ *
+ * Picking and hedging: every provider keeps its recent call latencies. Of a
+ * route's providers the one with the lowest median goes first (untried ones
+ * keep their configured order). If it hasn't answered after its own p95
+ * (the hedge percentile), the same symbols go to the runner-up as well and
+ * the first answer wins; the other, when it arrives in time, fills only what
+ * the winner left unpriced. A first answer with gaps sends the gaps to the
+ * runner-up straight away. A call that fails or prices nothing is recorded
+ * at the full deadline, which sinks the provider until it recovers; every
+ * 50th call the runner-up goes first, so a provider that lost the lead keeps
+ * being measured.
+ *
+ * With a single provider on a route the call runs on the caller's thread,
+ * exactly as if that provider were used directly.
+ */
+@Service
+@Primary
+public class CompositeMarketDataService implements MarketDataService {
+
+    private static final String SUFFIX = "MarketDataService";
+    private static final String ROUTE_PREFIX = "stockwise.market.route.";
+    // the providers enforce the deadline themselves; this covers their answer getting back to us
+    private static final long GRACE_MS = 500;
+    // one hedged call in this many is a probe: the runner-up goes first, so a provider that lost the lead is measured again
+    private static final int PROBE_EVERY = 50;
+
+    private final Map<String, Provider> providers = new LinkedHashMap<>();
+    private final List<Provider> defaultRoute;
+    private final Map<String, List<Provider>> routes = new ConcurrentHashMap<>();
+    private final SymbolMaster symbolMaster;
+    private final Environment env;
+    private final double hedgePercentile;
+    private final long minHedgeDelayNanos;
+    private final long deadlineNanos;
+    private final ExecutorService pool;
+    private final MeterRegistry meters;
+
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+    private final LongAdder backupWins = new LongAdder();
+    private final AtomicLong rankings = new AtomicLong();
+
+    public CompositeMarketDataService(
+            Map<String, MarketDataService> beans,
+            Environment env,
+            @Value("${stockwise.market.providers:yahoo}") String providerNames,
+            @Value("${stockwise.market.hedge.percentile:95}") double hedgePercentile,
+            @Value("${stockwise.market.hedge.min-delay-ms:20}") long minHedgeDelayMs,
+            @Value("${stockwise.market.hedge.threads:16}") int threads,
+            @Value("${stockwise.market.deadline-ms:6000}") long deadlineMs,
+            SymbolMaster symbolMaster,
+            MeterRegistry meters) {
+        this.symbolMaster = symbolMaster;
+
+        for (Map.Entry<String, MarketDataService> b : beans.entrySet()) {
+            if (b.getValue() == this) continue;
+            String name = b.getKey().endsWith(SUFFIX) ? b.getKey().substring(0, b.getKey().length() - SUFFIX.length()) : b.getKey();
+            providers.put(name.toLowerCase(), new Provider(name.toLowerCase(), b.getValue()));
+        }
+        this.env = env;
+        this.defaultRoute = route("stockwise.market.providers", providerNames);
+        this.hedgePercentile = Math.max(1, Math.min(100, hedgePercentile));
+        this.minHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(minHedgeDelayMs);
+        this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMs + GRACE_MS);
+        this.meters = meters;
+
+        // a saturated pool runs the call on the caller's thread: no hedge, but still an answer
+        AtomicInteger n = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(0, Math.max(2, threads), 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread t = new Thread(r, "market-hedge-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @Override
+    public Map<String, Double> fetchPrices(String[] symbols) {
+        Map<List<Provider>, List<String>> byRoute = new LinkedHashMap<>();
+        for (String sym : symbols) {
+            if (sym == null) continue;
+            byRoute.computeIfAbsent(routeOf(sym), k -> new ArrayList<>()).add(sym);
+        }
+
+        Map<String, Double> out = new LinkedHashMap<>();
+        if (byRoute.size() == 1 && byRoute.keySet().iterator().next().size() == 1) {
+            Provider only = byRoute.keySet().iterator().next().get(0);
+            out.putAll(only.fetchDirect(byRoute.values().iterator().next()));
+        } else {
+            // every route's first call is under way before we wait on any of them
+            long deadline = System.nanoTime() + deadlineNanos;
+            List<Hedge> hedges = new ArrayList<>();
+            for (Map.Entry<List<Provider>, List<String>> e : byRoute.entrySet()) hedges.add(new Hedge(e.getValue(), rank(e.getKey())));
+            for (Hedge h : hedges) out.putAll(h.await(deadline));
+        }
+
+        // same contract as a single provider: every symbol asked for, 0.0 where nobody had a price
+        Map<String, Double> answer = new LinkedHashMap<>();
+        for (String sym : symbols) {
+            if (sym == null) continue;
+            String s = SymbolMaster.normalize(sym);
+            Double price = out.get(sym);
+            if (price == null) price = out.get(s);
+            answer.put(s, price != null ? price : 0.0);
+        }
+        return answer;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        Map<String, Object> byProvider = new LinkedHashMap<>();
+        for (Provider p : providers.values()) byProvider.put(p.name, p.stats());
+        out.put("providers", byProvider);
+        Map<String, Object> routeNames = new LinkedHashMap<>();
+        routeNames.put("default", names(defaultRoute));
+        routes.forEach((exchange, route) -> routeNames.put(exchange, names(route)));
+        out.put("routes", routeNames);
+        out.put("hedged", hedged.sum());
+        out.put("failovers", failovers.sum());
+        out.put("backupWins", backupWins.sum());
+        return out;
+    }
+
+    // ---------------- ROUTING -------------------
+
+    private List<Provider> routeOf(String symbol) {
+        String yahoo = symbolMaster.yahooSymbol(symbol);
+        int dot = yahoo.lastIndexOf('.');
+        String exchange = yahoo.startsWith("^") ? "INDEX" : dot >= 0 ? yahoo.substring(dot + 1) : "";
+        if (exchange.isEmpty()) return defaultRoute;
+        return routes.computeIfAbsent(exchange, ex -> {
+            String names = env.getProperty(ROUTE_PREFIX + ex);
+            return names == null || names.isBlank() ? defaultRoute : route(ROUTE_PREFIX + ex, names);
+        });
+    }
+
+    private List<Provider> route(String property, String names) {
+        List<Provider> out = new ArrayList<>();
+        for (String name : names.split(",")) {
+            if (name.isBlank()) continue;
+            Provider p = providers.get(name.trim().toLowerCase());
+            if (p == null) {
+                throw new IllegalArgumentException(property + ": no market data provider '" + name.trim() + "' (have " + providers.keySet() + ")");
+            }
+            if (!out.contains(p)) out.add(p);
+        }
+        if (out.isEmpty()) throw new IllegalArgumentException(property + " names no provider");
+        return Collections.unmodifiableList(out);
+    }
+
+    // Fastest median first; untried providers go after the measured ones, in configured order
+    private List<Provider> rank(List<Provider> route) {
+        if (route.size() == 1) return route;
+        List<Provider> ranked = new ArrayList<>(route);
+        Map<Provider, Long> medians = new HashMap<>();
+        for (Provider p : ranked) medians.put(p, p.latency.percentile(50));
+        ranked.sort(Comparator.comparingLong(p -> medians.get(p) < 0 ? Long.MAX_VALUE : medians.get(p)));
+        if (rankings.incrementAndGet() % PROBE_EVERY == 0) Collections.swap(ranked, 0, 1);
+        return ranked;
+    }
+
+    private static List<String> names(List<Provider> route) {
+        List<String> out = new ArrayList<>();
+        for (Provider p : route) out.add(p.name);
+        return out;
+    }
+
+    // ---------------- HEDGING -------------------
+
+    /** One route's symbols: the first choice is called on construction, the runner-up as needed in await. */
+    private class Hedge {
+        private final List<String> symbols;
+        private final Provider first;
+        private final Provider backup;
+        private final long hedgeAt;
+        private final CompletableFuture<Map<String, Double>> firstCall;
+        private CompletableFuture<Map<String, Double>> backupCall;
+
+        Hedge(List<String> symbols, List<Provider> ranked) {
+            this.symbols = symbols;
+            this.first = ranked.get(0);
+            this.backup = ranked.size() > 1 ? ranked.get(1) : null;
+            long p = first.latency.percentile(hedgePercentile);
+            this.hedgeAt = System.nanoTime() + Math.max(minHedgeDelayNanos, p < 0 ? deadlineNanos / 4 : p);
+            this.firstCall = first.fetchAsync(symbols);
+        }
+
+        Map<String, Double> await(long deadline) {
+            Map<String, Double> out = new HashMap<>();
+            boolean firstIn = false;
+
+            Map<String, Double> a = backup == null ? waitFor(firstCall, deadline) : waitFor(firstCall, Math.min(hedgeAt, deadline));
+            if (a != null) {
+                firstIn = true;
+                collect(out, a);
+                List<String> gaps = gaps(out);
+                if (gaps.isEmpty() || backup == null) return out;
+                failovers.increment();
+                Meters.marketHedges(meters, "gaps").increment();
+                backupCall = backup.fetchAsync(gaps);
+            } else if (backup != null) {
+                hedged.increment();
+                Meters.marketHedges(meters, "slow").increment();
+                backupCall = backup.fetchAsync(symbols);
+            } else {
+                return out;
+            }
+
+            // both may be in flight: the first answer wins, the other only fills gaps
+            boolean backupIn = false;
+            while (!(firstIn && backupIn) && !gaps(out).isEmpty()) {
+                List<CompletableFuture<?>> pending = new ArrayList<>();
+                if (!firstIn) pending.add(firstCall);
+                if (!backupIn) pending.add(backupCall);
+                if (waitFor(CompletableFuture.anyOf(pending.toArray(new CompletableFuture<?>[0])), deadline) == null
+                        && !pending.stream().anyMatch(CompletableFuture::isDone)) {
+                    break; // deadline
+                }
+                if (!firstIn && firstCall.isDone()) {
+                    firstIn = true;
+                    collect(out, result(firstCall));
+                }
+                if (!backupIn && backupCall.isDone()) {
+                    backupIn = true;
+                    Map<String, Double> b = result(backupCall);
+                    if (!firstIn && !b.isEmpty()) {
+                        backupWins.increment();
+                        Meters.marketHedgeWins(meters).increment();
+                    }
+                    collect(out, b);
+                }
+            }
+            return out;
+        }
+
+        private List<String> gaps(Map<String, Double> out) {
+            List<String> gaps = new ArrayList<>();
+            for (String s : symbols) {
+                if (!out.containsKey(SymbolMaster.normalize(s))) gaps.add(s);
+            }
+            return gaps;
+        }
+    }
+
+    // null if not done by the deadline; a failed call counts as an empty answer
+    private static <T> T waitFor(CompletableFuture<T> f, long deadline) {
+        try {
+            return f.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, Double> result(CompletableFuture<Map<String, Double>> f) {
+        try {
+            return f.getNow(Collections.emptyMap());
+        } catch (CompletionException | CancellationException e) {
+            return Collections.emptyMap();
+        }
+    }
+
+    private static void collect(Map<String, Double> out, Map<String, Double> answer) {
+        if (answer == null) return;
+        for (Map.Entry<String, Double> e : answer.entrySet()) {
+            if (e.getValue() != null && e.getValue() > 0) out.putIfAbsent(SymbolMaster.normalize(e.getKey()), e.getValue());
+        }
+    }
+
+    // ---------------- PROVIDERS -------------------
+
+    private class Provider {
+        final String name;
+        final MarketDataService service;
+        final LatencyWindow latency = new LatencyWindow(256);
+        final LongAdder calls = new LongAdder();
+        final LongAdder failures = new LongAdder();
+
+        Provider(String name, MarketDataService service) {
+            this.name = name;
+            this.service = service;
+        }
+
+        Map<String, Double> fetchDirect(List<String> symbols) {
+            long t0 = System.nanoTime();
+            Map<String, Double> out = null;
+            try {
+                out = service.fetchPrices(symbols.toArray(new String[0]));
+                return out;
+            } finally {
+                record(t0, out);
+            }
+        }
+
+        CompletableFuture<Map<String, Double>> fetchAsync(List<String> symbols) {
+            return CompletableFuture.supplyAsync(() -> fetchDirect(symbols), pool);
+        }
+
+        private void record(long t0, Map<String, Double> out) {
+            long nanos = System.nanoTime() - t0;
+            boolean priced = out != null && out.values().stream().anyMatch(p -> p != null && p > 0);
+            calls.increment();
+            if (!priced) failures.increment();
+            latency.add(priced ? nanos : Math.max(nanos, deadlineNanos));
+            Meters.marketProvider(meters, name, out == null ? "error" : priced ? "success" : "empty")
+                    .record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        Map<String, Object> stats() {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("calls", calls.sum());
+            out.put("unpriced", failures.sum());
+            long p50 = latency.percentile(50), pHedge = latency.percentile(hedgePercentile);
+            out.put("p50Ms", p50 < 0 ? null : p50 / 1e6);
+            out.put("hedgeAfterMs", pHedge < 0 ? null : Math.max(pHedge, minHedgeDelayNanos) / 1e6);
+            return out;
+        }
+    }
+
+    /** The last {@code size} latencies in nanos; percentiles are read off a sorted copy. */
+    private static class LatencyWindow {
+        private final long[] samples;
+        private int next;
+        private int count;
+
+        LatencyWindow(int size) {
+            this.samples = new long[size];
+        }
+
+        synchronized void add(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            if (count < samples.length) count++;
+        }
+
+        // -1 with no samples yet
+        long percentile(double p) {
+            long[] copy;
+            synchronized (this) {
+                if (count == 0) return -1;
+                copy = Arrays.copyOf(samples, count);
+            }
+            Arrays.sort(copy);
+            int i = (int) Math.ceil(p / 100.0 * copy.length) - 1;
+            return copy[Math.max(0, Math.min(copy.length - 1, i))];
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.stockwise.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.stockwise.model.ColumnarHoldings;
+import com.stockwise.model.CompactPortfolio;
+import com.stockwise.model.Portfolio;
+import com.stockwise.model.PortfolioSnapshot;
+import com.stockwise.model.Stock;
+import com.stockwise.repository.PortfolioRepository;
+import com.stockwise.util.ApiFormat;
+import com.stockwise.util.CsvStreamWriter;
+import com.stockwise.util.Meters;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the priced portfolio and the summary payload shared by the
+ * dashboard endpoints and the live price stream.
+ *
+ * The dashboard routes read them through a per-portfolio cache keyed by
+ * the portfolio's version (see PortfolioRepository.version) and the price
+ * table epoch: an entry is rebuilt only after a write to that portfolio's
+ * holdings or a price change, and until then every request shares the
+ * same priced Portfolio, snapshot and summary. The same key, with a per-
+ * boot prefix so a restart never matches an old copy, is the ETag the
+ * controller answers If-None-Match with.
+ *
+ * Cached objects are shared between requests and must not be modified.
+ * loadPortfolio and loadSnapshot still build fresh ones for callers that
+ * re-price in place (the live stream, alerts).
+ */
+@Service
+public class DashboardService {
+
+    private final PortfolioRepository repo;
+    private final MarketDataService market;
+    private final PriceTable priceTable;
+    private final PortfolioAnalysisService analysis;
+    private final SuggestionService suggestionService;
+    private final SymbolMaster symbols;
+    private final Timer summaryTimer;
+    private final ObjectWriter portfolioJson;
+    private final ObjectWriter compactJson;
+    private final ObjectWriter compactCbor;
+
+    // portfolio id -> last built view, least recently used dropped first
+    private final Map<String, View> views;
+    private final String boot = Long.toString(System.currentTimeMillis(), 36);
+    private final LongAdder viewHits = new LongAdder();
+    private final LongAdder viewMisses = new LongAdder();
+
+    public DashboardService(PortfolioRepository repo, MarketDataService market, PriceTable priceTable,
+                            PortfolioAnalysisService analysis, SuggestionService suggestionService,
+                            SymbolMaster symbols,
+                            @Value("${stockwise.dashboard.cache.max-portfolios:32}") int maxCachedPortfolios,
+                            MeterRegistry meters, ObjectMapper mapper) {
+        this.repo = repo;
+        this.market = market;
+        this.priceTable = priceTable;
+        this.analysis = analysis;
+        this.suggestionService = suggestionService;
+        this.symbols = symbols;
+        this.summaryTimer = Meters.analytics(meters, "summary");
+        this.portfolioJson = mapper.writerFor(Portfolio.class);
+        this.compactJson = mapper.writerFor(CompactPortfolio.class);
+        this.compactCbor = new CBORMapper().writerFor(CompactPortfolio.class);
+
+        int maxViews = Math.max(1, maxCachedPortfolios);
+        this.views = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, View> eldest) {
+                return size() > maxViews;
+            }
+        };
+        String requests = Meters.DASHBOARD_CACHE + ".requests";
+        FunctionCounter.builder(requests, viewHits, LongAdder::sum).tag("result", "hit")
+                .description("Dashboard view lookups").register(meters);
+        FunctionCounter.builder(requests, viewMisses, LongAdder::sum).tag("result", "miss")
+                .description("Dashboard view lookups").register(meters);
+    }
+
+    // ---------------- CACHED VIEWS -------------------
+
+    /** Strong ETag for everything the dashboard shows of the portfolio right now. */
+    public String etag(String portfolioId) {
+        return etag(repo.version(portfolioId), priceTable.epoch());
+    }
+
+    private String etag(long version, long epoch) {
+        return "\"" + boot + "-" + version + "-" + epoch + "\"";
+    }
+
+    /** The priced portfolio, shared: read only. */
+    public Portfolio cachedPortfolio(String portfolioId) throws SQLException {
+        return view(portfolioId).portfolio;
+    }
+
+    /**
+     * The priced portfolio with the ETag of the holdings and prices it was
+     * built from, for work that outlives the request: etag() and
+     * cachedPortfolio() called one after the other can straddle a write or
+     * a tick, this pair cannot.
+     */
+    public Map.Entry<String, Portfolio> cachedPortfolioWithEtag(String portfolioId) throws SQLException {
+        View v = view(portfolioId);
+        return Map.entry(etag(v.version, v.epoch), v.portfolio);
+    }
+
+    /**
+     * The portfolio encoded for /api/portfolio. Each format is encoded once
+     * per view by a writer built at startup; until the next write or tick
+     * every request gets the same bytes.
+     */
+    public byte[] cachedPortfolioBody(String portfolioId, ApiFormat format) throws SQLException, IOException {
+        return view(portfolioId).body(format);
+    }
+
+    /** The summary payload, shared: read only. */
+    public Map<String,Object> cachedSummary(String portfolioId) throws SQLException {
+        return view(portfolioId).summary();
+    }
+
+    /**
+     * Top gainers and losers by P/L %, skipping zero-cost lots. Picked with
+     * bounded heaps and kept with the view, so repeat calls until the next
+     * write or tick cost only a copy of the first {@code limit}.
+     */
+    public Map<String,List<Stock>> cachedTopMovers(String portfolioId, int limit) throws SQLException {
+        if (limit < 0) throw new IllegalArgumentException("limit must not be negative");
+        View v = view(portfolioId);
+        PortfolioSnapshot.Movers m = v.movers(limit);
+        List<Stock> stocks = v.portfolio.getStocks();
+        Map<String,List<Stock>> out = new HashMap<>();
+        out.put("gainers", pick(stocks, m.gainers, limit));
+        out.put("losers", pick(stocks, m.losers, limit));
+        return out;
+    }
+
+    // A failed read throws rather than leaving an empty portfolio in the cache
+    private View view(String portfolioId) throws SQLException {
+        // read before the build: a write or tick during it makes the next request rebuild
+        long version = repo.version(portfolioId);
+        long epoch = priceTable.epoch();
+        View v;
+        synchronized (views) {
+            v = views.get(portfolioId);
+        }
+        if (v != null && v.version == version && v.epoch == epoch) {
+            viewHits.increment();
+            return v;
+        }
+        viewMisses.increment();
+        List<Stock> stocks = repo.findAll(portfolioId);
+        fillCurrentPricesSafely(stocks);
+        Portfolio p = new Portfolio(portfolioId);
+        p.setStocks(Collections.unmodifiableList(stocks));
+        v = new View(version, epoch, p, analysis.snapshot(p));
+        synchronized (views) {
+            views.put(portfolioId, v);
+        }
+        return v;
+    }
+
+    // All holdings of the portfolio with current prices filled in
+    public Portfolio loadPortfolio(String portfolioId) {
+        List<Stock> stocks = new ArrayList<>();
+        try {
+            stocks = repo.findAll(portfolioId);
+        } catch (SQLException e) { e.printStackTrace(); }
+
+        fillCurrentPricesSafely(stocks);
+
+        Portfolio p = new Portfolio(portfolioId);
+        p.setStocks(stocks);
+        return p;
+    }
+
+    // Same holdings and prices as loadPortfolio(), kept in columns, symbols as SymbolMaster ids
+    public ColumnarHoldings loadHoldings(String portfolioId) {
+        ColumnarHoldings h = new ColumnarHoldings(symbols, 16);
+        try {
+            h = repo.findAllColumnar(portfolioId, symbols);
+        } catch (SQLException e) { e.printStackTrace(); }
+
+        ensurePrices(h.symbols());
+        h.applyPrices(priceTable::get);
+        return h;
+    }
+
+    public PortfolioSnapshot loadSnapshot(String portfolioId) {
+        return analysis.snapshot(loadHoldings(portfolioId));
+    }
+
+    // Prices come from the in-memory table kept warm by PriceRefreshService.
+    // Only symbols it has never seen (e.g. just added) go to the network here.
+    public void fillCurrentPricesSafely(List<Stock> stocks) {
+        ensurePrices(stocks.stream().map(Stock::getSymbol).collect(Collectors.toList()));
+
+        for (Stock s : stocks) {
+            s.setCurrentPrice(priceTable.get(s.getSymbol()));
+        }
+    }
+
+    // Fetches (synchronously) any symbol the price table has never seen
+    public void ensurePrices(Collection<String> symbols) {
+        try {
+            String[] unknown = symbols.stream()
+                    .filter(sym -> !priceTable.contains(sym))
+                    .distinct()
+                    .toArray(String[]::new);
+            if (unknown.length > 0) {
+                priceTable.update(market.fetchPrices(unknown));
+            }
+        } catch (Exception e) {
+            System.out.println("⚠ Price fetch failed, using last known prices: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Streams the /export/csv file: rows come from the DB in keyset batches
+     * (see PortfolioRepository.forEach) and go through the price table into
+     * the output buffer, so memory stays flat whatever the portfolio size and
+     * a slow download never holds a reader connection. Prices are whatever the table holds (it
+     * is kept warm in the background); nothing is fetched on this path.
+     * Returns the number of rows written.
+     */
+    public long writeCsv(String portfolioId, OutputStream out) throws IOException {
+        CsvStreamWriter w = new CsvStreamWriter(out);
+        w.writeHeader();
+        long rows;
+        try {
+            rows = repo.forEach(portfolioId, s -> {
+                s.setCurrentPrice(priceTable.get(s.getSymbol()));
+                w.writeRow(s);
+            });
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("CSV export failed: " + e.getMessage(), e);
+        }
+        w.flush();
+        return rows;
+    }
+
+    public Map<String,Object> summary(Portfolio p) {
+        return summary(analysis.snapshot(p));
+    }
+
+    // Everything comes from one snapshot: no aggregate is computed twice
+    public Map<String,Object> summary(PortfolioSnapshot snap) {
+        return summaryTimer.record(() -> buildSummary(snap));
+    }
+
+    private Map<String,Object> buildSummary(PortfolioSnapshot snap) {
+        double totalInvested = analysis.totalInvested(snap);
+        double currentValue = analysis.currentValue(snap);
+        double unrealized = analysis.unrealizedPL(snap);
+        double volatility = analysis.volatilityScore(snap);
+
+        Map<String,Object> out = new HashMap<>();
+        out.put("totalInvested", totalInvested);
+        out.put("currentValue", currentValue);
+        out.put("unrealized", unrealized);
+        out.put("unrealizedPercent", totalInvested==0?0:(unrealized/totalInvested)*100);
+        out.put("volatility", volatility);
+        out.put("diversification", analysis.diversificationIndex(snap));
+        out.put("allocation", analysis.allocationPercent(snap));
+        out.put("suggestions", suggestionService.generateSuggestions(snap));
+        out.put("riskRating", computeRiskRating(volatility));
+
+        return out;
+    }
+
+    public String computeRiskRating(double volatility) {
+        if (Double.isNaN(volatility)) return "Unknown";
+        if (volatility < 30) return "Low";
+        if (volatility < 60) return "Medium";
+        return "High";
+    }
+
+    private static List<Stock> pick(List<Stock> stocks, int[] idx, int limit) {
+        int n = Math.min(limit, idx.length);
+        List<Stock> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) out.add(stocks.get(idx[i]));
+        return out;
+    }
+
+    private class View {
+        final long version;
+        final long epoch;
+        final Portfolio portfolio;
+        final PortfolioSnapshot snapshot; // never re-priced
+        private Map<String,Object> summary;
+        private PortfolioSnapshot.Movers movers;
+        private int moversLimit;
+        private final byte[][] bodies = new byte[ApiFormat.values().length][];
+
+        View(long version, long epoch, Portfolio portfolio, PortfolioSnapshot snapshot) {
+            this.version = version;
+            this.epoch = epoch;
+            this.portfolio = portfolio;
+            this.snapshot = snapshot;
+        }
+
+        synchronized Map<String,Object> summary() {
+            if (summary == null) summary = Collections.unmodifiableMap(DashboardService.this.summary(snapshot));
+            return summary;
+        }
+
+        // the widest selection so far; a narrower one is its prefix
+        synchronized PortfolioSnapshot.Movers movers(int limit) {
+            if (movers == null || limit > moversLimit) {
+                movers = snapshot.topMovers(limit, true);
+                moversLimit = limit;
+            }
+            return movers;
+        }
+
+        synchronized byte[] body(ApiFormat format) throws IOException {
+            byte[] b = bodies[format.ordinal()];
+            if (b == null) {
+                b = format == ApiFormat.JSON
+                        ? portfolioJson.writeValueAsBytes(portfolio)
+                        : (format == ApiFormat.CBOR ? compactCbor : compactJson).writeValueAsBytes(CompactPortfolio.of(portfolio));
+                bodies[format.ordinal()] = b;
+            }
+            return b;
+        }
+    }
+}
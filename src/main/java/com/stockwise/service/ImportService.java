@@ -0,0 +1,176 @@
+package com.stockwise.service;
+
+import com.stockwise.model.Stock;
+import com.stockwise.repository.PortfolioRepository;
+import com.stockwise.util.CSVUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Streaming CSV upload: parse -> validate -> insert in fixed-size chunks.
+ *
+ * Only one chunk of rows is ever held in memory. Chunks are committed into
+ * portfolio_stock under a new generation, which readers don't see until the
+ * end, when one small transaction makes it the live one (see
+ * PortfolioRepository). Readers therefore see either the old portfolio or the
+ * complete new one, and the switch costs the same whatever the file's size.
+ * The replaced rows are deleted afterwards in small batches. A bad row aborts
+ * the import and leaves the live portfolio untouched.
+ */
+@Service
+public class ImportService {
+
+    private final PortfolioRepository repo;
+    private final int chunkSize;
+
+    // one import at a time per portfolio: each one purges the generations it doesn't own
+    private final ConcurrentHashMap<String, ReentrantLock> importLocks = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Progress> progress = new ConcurrentHashMap<>();
+
+    public ImportService(PortfolioRepository repo,
+                         @Value("${stockwise.import.chunk-size:5000}") int chunkSize) {
+        this.repo = repo;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Replaces the given portfolio with the CSV's rows. totalBytes is only used for
+     * progress reporting (pass -1 if unknown). Returns the number of rows imported.
+     */
+    public long importCsv(String portfolioId, InputStream in, long totalBytes) throws Exception {
+        ReentrantLock importLock = importLocks.computeIfAbsent(portfolioId, k -> new ReentrantLock());
+        if (!importLock.tryLock()) {
+            throw new IllegalStateException("Another import into " + portfolioId + " is already running");
+        }
+
+        Progress p = new Progress(totalBytes, "RUNNING");
+        progress.put(portfolioId, p);
+        try {
+            // whatever an interrupted import left behind
+            repo.purgeInactive(portfolioId);
+            long generation = repo.newGeneration(portfolioId);
+
+            CountingInputStream counted = new CountingInputStream(in);
+            List<Stock> chunk = new ArrayList<>(chunkSize);
+
+            CSVUtil.readPortfolioCSV(counted, s -> {
+                chunk.add(s);
+                p.rowsRead++;
+                if (chunk.size() >= chunkSize) {
+                    flush(portfolioId, generation, chunk, p, counted);
+                }
+            });
+            flush(portfolioId, generation, chunk, p, counted);
+
+            p.state = "SWAPPING";
+            repo.activateGeneration(portfolioId, generation);
+
+            p.state = "DONE";
+            purgeQuietly(portfolioId);
+            return p.rowsCommitted;
+
+        } catch (Exception e) {
+            p.state = "FAILED";
+            p.error = e.getMessage();
+            purgeQuietly(portfolioId);
+            throw e;
+
+        } finally {
+            p.finishedAt = System.currentTimeMillis();
+            importLock.unlock();
+        }
+    }
+
+    private void flush(String portfolioId, long generation, List<Stock> chunk, Progress p, CountingInputStream counted) throws Exception {
+        repo.insertGeneration(portfolioId, generation, chunk);
+        p.rowsCommitted += chunk.size();
+        p.bytesRead = counted.count;
+        chunk.clear();
+    }
+
+    // The next import purges again, so a failure here only delays the cleanup
+    private void purgeQuietly(String portfolioId) {
+        try {
+            repo.purgeInactive(portfolioId);
+        } catch (Exception e) {
+            System.out.println("⚠ Could not purge replaced holdings of " + portfolioId + ": " + e.getMessage());
+        }
+    }
+
+    // Current (or last finished) import into the portfolio, for /api/import/progress
+    public Map<String, Object> progress(String portfolioId) {
+        return progress.getOrDefault(portfolioId, IDLE).toMap();
+    }
+
+    /* -----------------------------------------
+       PROGRESS
+    ----------------------------------------- */
+
+    private static final Progress IDLE = new Progress(-1, "IDLE");
+
+    private static class Progress {
+        final long totalBytes;
+        final long startedAt;
+        volatile String state;
+        volatile long rowsRead;
+        volatile long rowsCommitted;
+        volatile long bytesRead;
+        volatile long finishedAt;
+        volatile String error;
+
+        Progress(long totalBytes, String state) {
+            this.totalBytes = totalBytes;
+            this.startedAt = System.currentTimeMillis();
+            this.state = state;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("state", state);
+            out.put("rowsRead", rowsRead);
+            out.put("rowsCommitted", rowsCommitted);
+            out.put("bytesRead", bytesRead);
+            out.put("totalBytes", totalBytes);
+            out.put("percent", "DONE".equals(state) ? 100.0
+                    : totalBytes > 0 ? Math.min(99.0, bytesRead * 100.0 / totalBytes) : 0.0);
+            if (!"IDLE".equals(state)) {
+                long end = finishedAt > 0 ? finishedAt : System.currentTimeMillis();
+                out.put("elapsedMs", end - startedAt);
+            }
+            if (error != null) out.put("error", error);
+            return out;
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = super.read(buf, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+}
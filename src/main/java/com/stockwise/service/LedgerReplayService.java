@@ -0,0 +1,100 @@
+package com.stockwise.service;
+
+import com.stockwise.repository.LedgerRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Brings portfolio_stock in line with the trade ledger at startup, before
+ * the web server takes requests.
+ *
+ * Normally there is nothing to do: every write updates the positions and
+ * the checkpoint in the same transaction as its ledger row, so the check is
+ * one index probe per portfolio. Portfolios that are behind (ledger rows
+ * written by another tool, a restored ledger) are replayed from their
+ * checkpoint; databases from before the ledger get their current holdings
+ * recorded as opening lots. With stockwise.ledger.rebuild-on-start every
+ * portfolio is rebuilt from its last RESET instead.
+ *
+ * After that, and every compact-interval-minutes, trades that no replay can
+ * reach any more (those before a portfolio's last checkpointed RESET) are
+ * deleted once they are older than retention-days, so the ledger holds the
+ * trades since the last reset plus that much history instead of growing
+ * for good. A negative retention keeps everything.
+ */
+@Service
+public class LedgerReplayService {
+
+    private final LedgerRepository ledger;
+    private final boolean rebuildOnStart;
+    private final long retentionSeconds;
+    private final long compactIntervalMinutes;
+    private final ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ledger-compact");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public LedgerReplayService(LedgerRepository ledger,
+                               @Value("${stockwise.ledger.rebuild-on-start:false}") boolean rebuildOnStart,
+                               @Value("${stockwise.ledger.retention-days:90}") int retentionDays,
+                               @Value("${stockwise.ledger.compact-interval-minutes:360}") long compactIntervalMinutes) {
+        this.ledger = ledger;
+        this.rebuildOnStart = rebuildOnStart;
+        this.retentionSeconds = retentionDays < 0 ? -1 : retentionDays * 86400L;
+        this.compactIntervalMinutes = Math.max(1, compactIntervalMinutes);
+    }
+
+    @PreDestroy
+    public void stop() {
+        compactor.shutdownNow();
+    }
+
+    @PostConstruct
+    public void catchUp() {
+        try {
+            long start = System.currentTimeMillis();
+            Set<String> ids = rebuildOnStart ? ledger.findLedgeredPortfolios() : ledger.findStalePortfolios();
+            long trades = 0;
+            for (String id : ids) trades += ledger.replay(id, rebuildOnStart);
+            if (!ids.isEmpty()) {
+                System.out.println("✅ Ledger replay: " + ids.size() + " portfolio(s), " + trades + " trade(s) in "
+                        + (System.currentTimeMillis() - start) + "ms");
+            }
+        } catch (Exception e) {
+            // positions stay as they were; the next start tries again
+            System.out.println("⚠ Ledger replay failed: " + e.getMessage());
+            e.printStackTrace();
+        }
+        if (retentionSeconds >= 0) {
+            compactor.scheduleWithFixedDelay(this::compact, 0, compactIntervalMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    /** Deletes the trades every portfolio has checkpointed past and kept for the retention period. */
+    public long compact() {
+        if (retentionSeconds < 0) return 0;
+        try {
+            long start = System.currentTimeMillis();
+            long cutoff = start / 1000 - retentionSeconds;
+            long deleted = 0;
+            for (String id : ledger.findLedgeredPortfolios()) deleted += ledger.compact(id, cutoff);
+            if (deleted > 0) {
+                System.out.println("✅ Ledger compaction: " + deleted + " trade(s) in "
+                        + (System.currentTimeMillis() - start) + "ms");
+            }
+            return deleted;
+        } catch (Exception e) {
+            // nothing is lost by waiting; the next round tries again
+            System.out.println("⚠ Ledger compaction failed: " + e.getMessage());
+            return 0;
+        }
+    }
+}
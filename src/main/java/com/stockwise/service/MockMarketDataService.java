@@ -5,7 +5,8 @@ import org.springframework.stereotype.Service;
 import java.util.*;
 
 /**
- * Mock fallback provider. Does NOT have @Primary.
+ * Mock fallback provider ("mock" in stockwise.market.providers). Does NOT have @Primary.
+ * Prices are made up: never list it for production.
  */
 @Service
 public class MockMarketDataService implements MarketDataService {
@@ -19,7 +20,7 @@ public class MockMarketDataService implements MarketDataService {
 
         for (String sym : symbols) {
             if (sym == null) continue;
-            String s = sym.toUpperCase().trim();
+            String s = SymbolMaster.normalize(sym);
 
             double base = deterministicBase(s);
             double last = lastPrice.getOrDefault(s, base);
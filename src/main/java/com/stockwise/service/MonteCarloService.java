@@ -0,0 +1,167 @@
+package com.stockwise.service;
+
+import com.stockwise.model.MonteCarloSimulation;
+import com.stockwise.util.Meters;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Projected value distribution of a portfolio: Monte Carlo paths over the
+ * risk model's correlated daily returns (see {@link RiskService}), reported
+ * as percentile bands per step and drawdown probabilities.
+ *
+ * Every simulation costs paths * steps * simulated symbols units of work
+ * and must fit in max-work together with the ones already running; when it
+ * doesn't, simulate() throws RejectedExecutionException (the controller
+ * answers 503) rather than queueing behind them on the shared pool.
+ */
+@Service
+public class MonteCarloService {
+
+    private static final String[] BAND_NAMES = {"p1", "p5", "p25", "p50", "p75", "p95", "p99"};
+
+    private final RiskService risk;
+    private final int defaultPaths;
+    private final int maxPaths;
+    private final int maxSteps;
+    private final int maxHorizonDays;
+    private final ForkJoinPool pool;
+    private final WorkBudget work;
+    private final Timer timer;
+    private final Counter rejected;
+
+    public MonteCarloService(RiskService risk,
+                             @Value("${stockwise.montecarlo.default-paths:100000}") int defaultPaths,
+                             @Value("${stockwise.montecarlo.max-paths:1000000}") int maxPaths,
+                             @Value("${stockwise.montecarlo.max-steps:52}") int maxSteps,
+                             @Value("${stockwise.montecarlo.max-horizon-days:2520}") int maxHorizonDays,
+                             @Value("${stockwise.montecarlo.parallelism:0}") int parallelism,
+                             @Value("${stockwise.montecarlo.max-work:2000000000}") long maxWork,
+                             MeterRegistry meters) {
+        this.risk = risk;
+        this.maxPaths = Math.max(1, maxPaths);
+        this.defaultPaths = Math.max(1, Math.min(defaultPaths, this.maxPaths));
+        this.maxSteps = Math.max(1, maxSteps);
+        this.maxHorizonDays = Math.max(1, maxHorizonDays);
+        this.pool = new ForkJoinPool(
+                parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(),
+                p -> {
+                    ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                    t.setName("montecarlo-" + t.getPoolIndex());
+                    return t;
+                },
+                null, false);
+        this.work = new WorkBudget(maxWork);
+        this.timer = Meters.analytics(meters, "montecarlo");
+        this.rejected = Meters.analyticsRejected(meters, "montecarlo");
+        Gauge.builder(Meters.ANALYTICS + ".work", work, WorkBudget::inUse)
+                .description("Units of Monte Carlo work (paths * steps * symbols) running now")
+                .tag("computation", "montecarlo")
+                .register(meters);
+    }
+
+    @PreDestroy
+    public void stop() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * @param horizonDays trading days to project
+     * @param paths       null for the configured default
+     * @param steps       observation points, null for one per trading day up to max-steps
+     * @param seed        null for a fresh seed; the same seed gives the same answer
+     * @param drift       historical mean returns, or none (zero drift)
+     * @throws RejectedExecutionException when the simulations already running leave no room for this one
+     */
+    public Map<String, Object> simulate(String portfolioId, int horizonDays, Integer paths, Integer steps,
+                                        Long seed, String drift) {
+        if (horizonDays < 1 || horizonDays > maxHorizonDays) {
+            throw new IllegalArgumentException("horizon must be between 1 and " + maxHorizonDays + " trading days");
+        }
+        int n = paths != null ? paths : defaultPaths;
+        if (n < 1 || n > maxPaths) throw new IllegalArgumentException("paths must be between 1 and " + maxPaths);
+        int s = steps != null ? steps : Math.min(horizonDays, maxSteps);
+        if (s < 1 || s > Math.min(horizonDays, maxSteps)) {
+            throw new IllegalArgumentException("steps must be between 1 and " + Math.min(horizonDays, maxSteps));
+        }
+        boolean historical;
+        if ("historical".equalsIgnoreCase(drift)) historical = true;
+        else if ("none".equalsIgnoreCase(drift)) historical = false;
+        else throw new IllegalArgumentException("drift must be historical or none");
+        long useSeed = seed != null ? seed : new SplittableRandom().nextLong();
+
+        RiskService.Exposure e = risk.exposure(portfolioId);
+        long cost = (long) n * s * Math.max(1, e.model.size());
+        if (!work.tryAcquire(cost)) {
+            rejected.increment();
+            throw new RejectedExecutionException("Monte Carlo is at capacity (" + work.inUse() + " of "
+                    + work.budget() + " work units running, this run needs " + cost + ")");
+        }
+        long start = System.nanoTime();
+        MonteCarloSimulation.Result r;
+        try {
+            MonteCarloSimulation sim = new MonteCarloSimulation(e.model, e.values, e.excludedValue, historical);
+            r = sim.run(n, s, (double) horizonDays / s, useSeed, pool);
+        } finally {
+            work.release(cost);
+        }
+        long elapsed = System.nanoTime() - start;
+        timer.record(elapsed, TimeUnit.NANOSECONDS);
+        long elapsedMs = elapsed / 1_000_000;
+
+        double value = e.value + e.excludedValue;
+
+        List<Double> days = new ArrayList<>(s + 1);
+        for (int i = 0; i <= s; i++) days.add((double) i * horizonDays / s);
+        Map<String, Object> bands = new LinkedHashMap<>();
+        bands.put("day", days);
+        for (int p = 0; p < BAND_NAMES.length; p++) {
+            List<Double> band = new ArrayList<>(s + 1);
+            for (int i = 0; i <= s; i++) band.add(r.bands[p][i] * value);
+            bands.put(BAND_NAMES[p], band);
+        }
+
+        Map<String, Object> fin = new LinkedHashMap<>();
+        fin.put("mean", r.meanFinal * value);
+        for (int p = 0; p < BAND_NAMES.length; p++) fin.put(BAND_NAMES[p], r.bands[p][s] * value);
+        fin.put("lossProbability", r.lossProbability);
+
+        Map<String, Object> hit = new LinkedHashMap<>();
+        for (int d = 0; d < MonteCarloSimulation.DRAWDOWNS.length; d++) {
+            hit.put(Math.round(MonteCarloSimulation.DRAWDOWNS[d] * 100) + "%", r.drawdownProbability[d]);
+        }
+        Map<String, Object> drawdown = new LinkedHashMap<>();
+        drawdown.put("median", r.medianDrawdown);
+        drawdown.put("p95", r.p95Drawdown);
+        drawdown.put("probability", hit);
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("portfolioId", portfolioId);
+        out.put("asOf", e.asOf.toString());
+        out.put("value", value);
+        out.put("simulatedSymbols", e.model.size());
+        out.put("heldFlat", e.excluded);
+        out.put("observations", e.model.days());
+        out.put("horizonDays", horizonDays);
+        out.put("paths", n);
+        out.put("steps", s);
+        out.put("drift", historical ? "historical" : "none");
+        out.put("seed", useSeed);
+        out.put("elapsedMs", elapsedMs);
+        out.put("bands", bands);
+        out.put("final", fin);
+        out.put("drawdown", drawdown);
+        return out;
+    }
+}
@@ -1,6 +1,8 @@
 package com.stockwise.service;
 
+import com.stockwise.model.ColumnarHoldings;
 import com.stockwise.model.Portfolio;
+import com.stockwise.model.PortfolioSnapshot;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -47,4 +49,46 @@ public class PortfolioAnalysisService {
     public java.util.List<com.stockwise.model.Stock> topLosers(Portfolio p, int n) {
         return p.getTopLosers(n);
     }
+
+    // ---- SNAPSHOT: compute everything once, read many times ----
+
+    public PortfolioSnapshot snapshot(Portfolio p) {
+        return p.snapshot();
+    }
+
+    public PortfolioSnapshot snapshot(ColumnarHoldings h) {
+        return PortfolioSnapshot.of(h);
+    }
+
+    public double totalInvested(PortfolioSnapshot s) {
+        return s.getTotalInvested();
+    }
+
+    public double currentValue(PortfolioSnapshot s) {
+        return s.getCurrentValue();
+    }
+
+    public double unrealizedPL(PortfolioSnapshot s) {
+        return s.getUnrealizedPL();
+    }
+
+    public double unrealizedPLPercent(PortfolioSnapshot s) {
+        return s.getUnrealizedPLPercent();
+    }
+
+    public double volatilityScore(PortfolioSnapshot s) {
+        return s.getVolatilityScore();
+    }
+
+    public double diversificationIndex(PortfolioSnapshot s) {
+        return s.getDiversificationScore();
+    }
+
+    public String riskRating(PortfolioSnapshot s) {
+        return s.getRiskRating();
+    }
+
+    public java.util.Map<String, Double> allocationPercent(PortfolioSnapshot s) {
+        return s.getAllocationPercent();
+    }
 }
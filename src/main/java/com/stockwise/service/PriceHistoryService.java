@@ -0,0 +1,144 @@
+package com.stockwise.service;
+
+import com.stockwise.model.PriceBars;
+import com.stockwise.repository.PriceHistoryRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Local price history: the 1m bars that arrive with every Yahoo quote are
+ * kept instead of thrown away, and daily bars are backfilled from the chart
+ * endpoint the first time a range is asked for. Charts, returns and risk
+ * read bars from here rather than from upstream.
+ *
+ * Incoming bars are buffered per symbol and written in one transaction
+ * every flushMs, so a refresh round of N quotes costs one DB write, not N.
+ * Intraday blocks older than the retention window are dropped.
+ */
+@Service
+public class PriceHistoryService {
+
+    // a daily series counts as complete if its ends are this close to the range asked for (weekends, holidays)
+    private static final long DAILY_SLACK_SECONDS = 4 * 86400L;
+
+    private final PriceHistoryRepository repo;
+    private final YahooMarketDataService yahoo;
+    private final long intradayRetentionSeconds;
+    private final long backfillRetryMs;
+
+    private final ConcurrentHashMap<String, PriceBars> pending = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> lastBackfill = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "price-history");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile long lastPruneAt = 0;
+
+    public PriceHistoryService(PriceHistoryRepository repo, YahooMarketDataService yahoo,
+                               @Value("${stockwise.history.flush-ms:5000}") long flushMs,
+                               @Value("${stockwise.history.intraday-retention-days:30}") int intradayRetentionDays,
+                               @Value("${stockwise.history.backfill-retry-ms:21600000}") long backfillRetryMs) {
+        this.repo = repo;
+        this.yahoo = yahoo;
+        this.intradayRetentionSeconds = intradayRetentionDays * 86400L;
+        this.backfillRetryMs = backfillRetryMs;
+
+        yahoo.addBarListener((symbol, interval, bars) -> {
+            if (PriceHistoryRepository.INTRADAY.equals(interval)) pending.merge(symbol, bars, PriceBars::merge);
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushMs, flushMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        flusher.shutdownNow();
+        flush();
+    }
+
+    /**
+     * Bars with from <= time <= to (epoch seconds). Daily ranges the store
+     * doesn't cover yet are fetched from upstream once, stored, and served
+     * from the store after that; intraday ranges are local only.
+     */
+    public PriceBars bars(String symbol, String interval, long from, long to) throws SQLException {
+        String sym = SymbolMaster.normalize(symbol);
+        if (!PriceHistoryRepository.INTRADAY.equals(interval) && !PriceHistoryRepository.DAILY.equals(interval)) {
+            throw new IllegalArgumentException("Unsupported interval: " + interval);
+        }
+
+        PriceBars local = repo.find(sym, interval, from, to);
+        if (PriceHistoryRepository.DAILY.equals(interval) && !covers(local, from, to) && backfillDue(sym)) {
+            PriceBars fetched = yahoo.fetchHistory(sym, interval, from, to);
+            if (!fetched.isEmpty()) {
+                repo.store(interval, Map.of(sym, fetched));
+                local = repo.find(sym, interval, from, to);
+            }
+        }
+        return local;
+    }
+
+    /** Closing prices in time order, bars without a close skipped. */
+    public double[] closes(String symbol, String interval, long from, long to) throws SQLException {
+        PriceBars b = bars(symbol, interval, from, to);
+        double[] out = new double[b.size()];
+        int n = 0;
+        for (int i = 0; i < b.size(); i++) {
+            if (!Double.isNaN(b.close(i))) out[n++] = b.close(i);
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    public Map<String, Object> stats() throws SQLException {
+        Map<String, Object> out = new LinkedHashMap<>(repo.stats());
+        out.put("pendingSymbols", pending.size());
+        return out;
+    }
+
+    // ---------------- write-behind -------------------
+
+    private void flush() {
+        Map<String, PriceBars> batch = new HashMap<>();
+        try {
+            for (String sym : new ArrayList<>(pending.keySet())) {
+                PriceBars b = pending.remove(sym);
+                if (b != null) batch.put(sym, b);
+            }
+            repo.store(PriceHistoryRepository.INTRADAY, batch);
+            batch.clear();
+
+            long now = System.currentTimeMillis();
+            if (now - lastPruneAt > 3600_000L) {
+                lastPruneAt = now;
+                repo.deleteBefore(PriceHistoryRepository.INTRADAY, now / 1000 - intradayRetentionSeconds);
+            }
+        } catch (Exception e) {
+            // keep the bars for the next round
+            for (Map.Entry<String, PriceBars> b : batch.entrySet()) {
+                pending.merge(b.getKey(), b.getValue(), (newer, older) -> PriceBars.merge(older, newer));
+            }
+            System.out.println("⚠ Price history flush failed: " + e.getMessage());
+        }
+    }
+
+    // ---------------- backfill -------------------
+
+    private static boolean covers(PriceBars bars, long from, long to) {
+        if (bars.isEmpty()) return false;
+        long end = Math.min(to, System.currentTimeMillis() / 1000);
+        return bars.firstTime() - from <= DAILY_SLACK_SECONDS && end - bars.lastTime() <= DAILY_SLACK_SECONDS;
+    }
+
+    // at most one upstream attempt per symbol per backfillRetryMs, whatever it returned
+    private boolean backfillDue(String symbol) {
+        long now = System.currentTimeMillis();
+        Long last = lastBackfill.get(symbol);
+        if (last == null) return lastBackfill.putIfAbsent(symbol, now) == null;
+        return now - last >= backfillRetryMs && lastBackfill.replace(symbol, last, now);
+    }
+}
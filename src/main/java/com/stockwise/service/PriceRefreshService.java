@@ -0,0 +1,138 @@
+package com.stockwise.service;
+
+import com.stockwise.repository.AlertRepository;
+import com.stockwise.repository.PortfolioRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Keeps {@link PriceTable} warm for every symbol held in portfolio_stock
+ * or watched by an active price alert, so pages and APIs read prices from
+ * memory instead of the network.
+ *
+ * - refreshes every marketIntervalMs while the exchange is open,
+ *   every offHoursIntervalMs otherwise
+ * - after a failed round backs off exponentially up to maxBackoffMs
+ * - requestRefresh() pulls the next round forward (e.g. after an upload)
+ */
+@Service
+public class PriceRefreshService {
+
+    private final PortfolioRepository repo;
+    private final AlertRepository alerts;
+    private final MarketDataService market;
+    private final PriceTable table;
+
+    private final long marketIntervalMs;
+    private final long offHoursIntervalMs;
+    private final long maxBackoffMs;
+    private final ZoneId zone;
+    private final LocalTime open;
+    private final LocalTime close;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "price-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private ScheduledFuture<?> next;
+    private long backoffMs = 0;
+    private volatile long lastSuccessAt = 0;
+
+    public PriceRefreshService(PortfolioRepository repo, AlertRepository alerts, MarketDataService market, PriceTable table,
+                               @Value("${stockwise.refresh.market-interval-ms:15000}") long marketIntervalMs,
+                               @Value("${stockwise.refresh.off-hours-interval-ms:300000}") long offHoursIntervalMs,
+                               @Value("${stockwise.refresh.max-backoff-ms:300000}") long maxBackoffMs,
+                               @Value("${stockwise.refresh.zone:Asia/Kolkata}") String zone,
+                               @Value("${stockwise.refresh.market-open:09:15}") String open,
+                               @Value("${stockwise.refresh.market-close:15:30}") String close) {
+        this.repo = repo;
+        this.alerts = alerts;
+        this.market = market;
+        this.table = table;
+        this.marketIntervalMs = marketIntervalMs;
+        this.offHoursIntervalMs = offHoursIntervalMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.zone = ZoneId.of(zone);
+        this.open = LocalTime.parse(open);
+        this.close = LocalTime.parse(close);
+    }
+
+    // Start only once the app is ready, the schema is created by the startup runner
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        schedule(0);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /** Runs a refresh round as soon as possible instead of waiting for the next tick. */
+    public void requestRefresh() {
+        schedule(0);
+    }
+
+    public long getLastSuccessAt() {
+        return lastSuccessAt;
+    }
+
+    private synchronized void schedule(long delayMs) {
+        if (scheduler.isShutdown()) return;
+        if (next != null && !next.isDone()) {
+            if (next.getDelay(TimeUnit.MILLISECONDS) <= delayMs) return;
+            next.cancel(false);
+        }
+        next = scheduler.schedule(this::refresh, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void refresh() {
+        long delay;
+        try {
+            Set<String> symbols = new LinkedHashSet<>(repo.findSymbols());
+            symbols.addAll(alerts.findActiveSymbols());
+            if (!symbols.isEmpty()) {
+                Map<String, Double> fetched = market.fetchPrices(symbols.toArray(new String[0]));
+                table.update(fetched);
+
+                boolean anyPriced = fetched.values().stream().anyMatch(p -> p != null && p > 0);
+                if (!anyPriced) throw new IllegalStateException("upstream returned no prices for " + symbols.size() + " symbol(s)");
+            }
+            lastSuccessAt = System.currentTimeMillis();
+            backoffMs = 0;
+            delay = isMarketOpen(ZonedDateTime.now(zone)) ? marketIntervalMs : offHoursIntervalMs;
+
+        } catch (Exception e) {
+            backoffMs = backoffMs == 0 ? Math.min(marketIntervalMs, maxBackoffMs) : Math.min(backoffMs * 2, maxBackoffMs);
+            delay = backoffMs;
+            System.out.println("⚠ Price refresh failed (" + e.getMessage() + "), retrying in " + delay + "ms");
+        }
+
+        synchronized (this) {
+            next = null;
+        }
+        schedule(delay);
+    }
+
+    boolean isMarketOpen(ZonedDateTime now) {
+        DayOfWeek d = now.getDayOfWeek();
+        if (d == DayOfWeek.SATURDAY || d == DayOfWeek.SUNDAY) return false;
+        LocalTime t = now.toLocalTime();
+        return !t.isBefore(open) && t.isBefore(close);
+    }
+}
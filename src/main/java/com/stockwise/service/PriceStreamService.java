@@ -0,0 +1,441 @@
+package com.stockwise.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stockwise.model.Alert;
+import com.stockwise.model.PortfolioSnapshot;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Server-Sent Events fan-out of price and summary changes.
+ *
+ * One producer turns price table updates into numbered frames. It keeps a
+ * PortfolioSnapshot and re-prices only the ticked holdings, reloading from
+ * the DB only when the holdings themselves change. Each frame
+ * is serialized once, as a delta against the previous frame and as a full
+ * snapshot, and the same strings go to every subscriber. A subscriber that
+ * is exactly one frame behind gets the delta. One that fell further behind
+ * (slow network, busy sender) skips the frames in between and gets the
+ * latest full snapshot instead, so a slow client never builds up a backlog.
+ *
+ * Each portfolio with at least one subscriber has its own channel (snapshot,
+ * frame sequence, subscribers); all channels share the producer thread and
+ * the sender pool, and a channel is dropped once its last subscriber leaves.
+ * Alerts that fire for a portfolio go to its subscribers as "alert" events,
+ * queued per subscriber and sent by the same busy-flagged sender as its
+ * ticks, ahead of the next tick. Unlike ticks they are not coalesced; a
+ * client that falls 64 alerts behind loses the oldest.
+ *
+ * SseEmitter.send blocks while the client's socket buffer is full. A send
+ * still running after send-timeout-ms marks its subscriber stalled: it is
+ * taken off its channel, the sender pool gets a thread in place of the one
+ * stuck on it, and the emitter is completed with an error once the write
+ * returns (the connector's own write timeout ends it at the latest). So a
+ * stalled client costs one parked thread, never the healthy subscribers'
+ * senders.
+ */
+@Service
+public class PriceStreamService {
+
+    private final DashboardService dashboard;
+    private final ObjectMapper mapper;
+    private final long emitterTimeoutMs;
+    private final long coalesceMs;
+    private final long sendTimeoutNanos;
+
+    private final ConcurrentHashMap<String, Channel> channels = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService producer = Executors.newSingleThreadScheduledExecutor(daemonThreads("price-stream"));
+    private final ThreadPoolExecutor senders;
+    private final LongAdder stalled = new LongAdder();
+
+    public PriceStreamService(DashboardService dashboard, PriceTable priceTable, ObjectMapper mapper,
+                              @Value("${stockwise.stream.timeout-ms:1800000}") long emitterTimeoutMs,
+                              @Value("${stockwise.stream.coalesce-ms:250}") long coalesceMs,
+                              @Value("${stockwise.stream.sender-threads:4}") int senderThreads,
+                              @Value("${stockwise.stream.heartbeat-ms:20000}") long heartbeatMs,
+                              @Value("${stockwise.stream.send-timeout-ms:5000}") long sendTimeoutMs) {
+        this.dashboard = dashboard;
+        this.mapper = mapper;
+        this.emitterTimeoutMs = emitterTimeoutMs;
+        this.coalesceMs = coalesceMs;
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, sendTimeoutMs));
+        int n = Math.max(1, senderThreads);
+        this.senders = new ThreadPoolExecutor(n, n, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), daemonThreads("price-stream-send"));
+
+        priceTable.addListener(changed -> {
+            for (Channel ch : channels.values()) {
+                if (ch.subscribers.isEmpty()) continue;
+                if (ch.offer(changed)) requestFrame(ch);
+            }
+        });
+        producer.scheduleWithFixedDelay(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+        long sweepMs = Math.max(1, Math.min(1000, sendTimeoutMs / 2));
+        producer.scheduleWithFixedDelay(this::sweepStalled, sweepMs, sweepMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        producer.shutdownNow();
+        senders.shutdownNow();
+        for (Channel ch : channels.values()) {
+            for (Subscriber s : ch.subscribers) s.emitter.complete();
+        }
+    }
+
+    public SseEmitter subscribe(String portfolioId) {
+        return subscribe(portfolioId, new SseEmitter(emitterTimeoutMs));
+    }
+
+    SseEmitter subscribe(String portfolioId, SseEmitter emitter) {
+        // atomic with the producer dropping an idle channel (see produce)
+        Subscriber[] added = new Subscriber[1];
+        Channel ch = channels.compute(portfolioId, (id, existing) -> {
+            Channel c = existing != null ? existing : new Channel(id);
+            added[0] = new Subscriber(c, emitter);
+            c.subscribers.add(added[0]);
+            return c;
+        });
+        Subscriber sub = added[0];
+
+        emitter.onCompletion(() -> ch.subscribers.remove(sub));
+        emitter.onTimeout(() -> ch.subscribers.remove(sub));
+        emitter.onError(ex -> ch.subscribers.remove(sub));
+
+        // a warm stream can answer right away, a cold one produces its first frame now
+        if (ch.latest.full != null) dispatch(sub);
+        else requestFrame(ch);
+
+        return emitter;
+    }
+
+    /** Holdings were added/removed/replaced: push a frame telling the portfolio's clients to reload. */
+    public void portfolioChanged(String portfolioId) {
+        Channel ch = channels.get(portfolioId);
+        if (ch == null) return;
+        ch.reloadPending.set(true);
+        requestFrame(ch);
+    }
+
+    /** Sends a fired alert to the portfolio's subscribers, outside the tick frame sequence. */
+    @EventListener
+    public void onAlert(AlertEvent event) {
+        Alert a = event.getAlert();
+        Channel ch = channels.get(a.getPortfolioId());
+        if (ch == null || ch.subscribers.isEmpty()) return;
+        String data;
+        try {
+            data = mapper.writeValueAsString(a);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return;
+        }
+        // queued on each subscriber and sent by its own sender, never beside a tick to the same emitter
+        for (Subscriber sub : ch.subscribers) {
+            if (sub.alerts.size() >= MAX_PENDING_ALERTS) sub.alerts.poll();
+            sub.alerts.offer(data);
+            dispatch(sub);
+        }
+    }
+
+    public int subscriberCount() {
+        int n = 0;
+        for (Channel ch : channels.values()) n += ch.subscribers.size();
+        return n;
+    }
+
+    /** Subscribers dropped because a send to them ran past send-timeout-ms. */
+    public long stalledCount() {
+        return stalled.sum();
+    }
+
+    // ---------------- producer -------------------
+
+    private void requestFrame(Channel ch) {
+        if (ch.subscribers.isEmpty()) return;
+        if (ch.produceScheduled.compareAndSet(false, true)) {
+            try {
+                producer.schedule(() -> produce(ch), coalesceMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                ch.produceScheduled.set(false);
+            }
+        }
+    }
+
+    private void produce(Channel ch) {
+        ch.produceScheduled.set(false);
+        try {
+            if (ch.subscribers.isEmpty()) {
+                // nobody listening: drop the channel so the next subscriber starts from a fresh frame
+                channels.computeIfPresent(ch.portfolioId, (id, c) -> c == ch && c.subscribers.isEmpty() ? null : c);
+                return;
+            }
+
+            boolean reload = ch.reloadPending.getAndSet(false);
+            PortfolioSnapshot snapshot = ch.snapshot;
+            if (snapshot == null || reload) {
+                ch.pendingPrices.clear();
+                snapshot = dashboard.loadSnapshot(ch.portfolioId);
+                ch.setSnapshot(snapshot);
+            } else {
+                // O(1) per ticked holding, no DB read
+                for (String sym : new ArrayList<>(ch.pendingPrices.keySet())) {
+                    Double px = ch.pendingPrices.remove(sym);
+                    if (px != null) snapshot.updatePrice(sym, px);
+                }
+            }
+
+            Map<String, Double> prices = new LinkedHashMap<>();
+            for (int i = 0; i < snapshot.size(); i++) prices.put(snapshot.symbol(i), snapshot.price(i));
+            Map<String, Object> summary = dashboard.summary(snapshot);
+
+            Map<String, Object> priceDelta = diff(ch.lastPrices, prices);
+            Map<String, Object> summaryDelta = diff(ch.lastSummary, summary);
+
+            Frame latest = ch.latest;
+            if (latest.full != null && !reload && priceDelta.isEmpty() && summaryDelta.isEmpty()) return;
+
+            long seq = latest.seq + 1;
+            String delta = mapper.writeValueAsString(payload(seq, false, reload, priceDelta, summaryDelta));
+            String full = mapper.writeValueAsString(payload(seq, true, reload, prices, summary));
+
+            ch.lastPrices = prices;
+            ch.lastSummary = summary;
+            ch.latest = new Frame(seq, delta, full);
+
+            for (Subscriber s : ch.subscribers) dispatch(s);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private Map<String, Object> payload(long seq, boolean full, boolean reload, Map<String, ?> prices, Map<String, ?> summary) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("seq", seq);
+        out.put("full", full);
+        out.put("reload", reload);
+        out.put("prices", prices);
+        out.put("summary", summary);
+        return out;
+    }
+
+    private static Map<String, Object> diff(Map<String, ?> before, Map<String, ?> after) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        for (Map.Entry<String, ?> e : after.entrySet()) {
+            if (before == null || !Objects.equals(before.get(e.getKey()), e.getValue())) {
+                out.put(e.getKey(), e.getValue());
+            }
+        }
+        return out;
+    }
+
+    // ---------------- per-subscriber delivery -------------------
+
+    private void dispatch(Subscriber sub) {
+        if (!sub.busy.compareAndSet(false, true)) return; // its sender will pick up the newest frame
+        try {
+            senders.execute(() -> drain(sub));
+        } catch (RejectedExecutionException e) {
+            sub.busy.set(false);
+        }
+    }
+
+    private void drain(Subscriber sub) {
+        try {
+            while (true) {
+                String alert = sub.alerts.poll();
+                if (alert != null) {
+                    send(sub, SseEmitter.event().name("alert").data(alert));
+                    continue;
+                }
+                Frame f = sub.channel.latest;
+                if (f.full == null || f.seq == sub.lastSentSeq) break;
+
+                String data = sub.lastSentSeq == f.seq - 1 ? f.delta : f.full;
+                send(sub, SseEmitter.event().id(Long.toString(f.seq)).name("tick").data(data));
+                sub.lastSentSeq = f.seq;
+            }
+        } catch (Exception e) {
+            sub.channel.subscribers.remove(sub);
+            sub.emitter.completeWithError(e);
+            return;
+        } finally {
+            sub.busy.set(false);
+        }
+        redispatchIfBehind(sub);
+    }
+
+    // Every write to a subscriber goes through here, so sweepStalled() can see how long it has been at it
+    private void send(Subscriber sub, SseEmitter.SseEventBuilder event) throws IOException {
+        long started = System.nanoTime();
+        sub.sendingSince.set(started);
+        try {
+            sub.emitter.send(event);
+        } finally {
+            if (!sub.sendingSince.compareAndSet(started, 0)) {
+                // declared stalled meanwhile: hand back the thread that stood in for this one
+                resizeSenders(-1);
+                throw new IOException("SSE send took longer than " + TimeUnit.NANOSECONDS.toMillis(sendTimeoutNanos) + " ms");
+            }
+        }
+    }
+
+    // Subscribers whose send has been blocked past the timeout stop getting anything and their
+    // thread is replaced; the emitter is completed by that thread once the write gives up
+    // (completing it here would wait on the emitter's lock, which the blocked send holds)
+    private void sweepStalled() {
+        long now = System.nanoTime();
+        for (Channel ch : channels.values()) {
+            for (Subscriber sub : ch.subscribers) {
+                long since = sub.sendingSince.get();
+                if (since == 0 || since == STALLED || now - since < sendTimeoutNanos) continue;
+                if (!sub.sendingSince.compareAndSet(since, STALLED)) continue;
+                ch.subscribers.remove(sub);
+                stalled.increment();
+                resizeSenders(1);
+                System.out.println("⚠ Dropped a stalled price stream client of " + ch.portfolioId);
+            }
+        }
+    }
+
+    private void resizeSenders(int delta) {
+        synchronized (senders) {
+            if (delta > 0) {
+                senders.setMaximumPoolSize(senders.getMaximumPoolSize() + delta);
+                senders.setCorePoolSize(senders.getCorePoolSize() + delta);
+            } else {
+                senders.setCorePoolSize(senders.getCorePoolSize() + delta);
+                senders.setMaximumPoolSize(senders.getMaximumPoolSize() + delta);
+            }
+        }
+    }
+
+    // A frame or an alert may have landed while the sender was busy and been skipped by dispatch()
+    private void redispatchIfBehind(Subscriber sub) {
+        Frame f = sub.channel.latest;
+        boolean behind = !sub.alerts.isEmpty() || f.full != null && f.seq != sub.lastSentSeq;
+        if (behind && sub.channel.subscribers.contains(sub)) dispatch(sub);
+    }
+
+    // Keeps proxies from closing idle connections and flushes out dead clients
+    // (also sweeps channels whose last subscriber left without another frame being produced)
+    private void heartbeat() {
+        for (Channel ch : channels.values()) {
+            if (ch.subscribers.isEmpty()) {
+                channels.computeIfPresent(ch.portfolioId, (id, c) -> c == ch && c.subscribers.isEmpty() ? null : c);
+                continue;
+            }
+            for (Subscriber sub : ch.subscribers) heartbeat(sub);
+        }
+    }
+
+    private void heartbeat(Subscriber sub) {
+        if (!sub.busy.compareAndSet(false, true)) return;
+        try {
+            senders.execute(() -> {
+                try {
+                    send(sub, SseEmitter.event().comment("hb"));
+                } catch (Exception e) {
+                    sub.channel.subscribers.remove(sub);
+                    sub.emitter.completeWithError(e);
+                } finally {
+                    sub.busy.set(false);
+                }
+                redispatchIfBehind(sub);
+            });
+        } catch (RejectedExecutionException e) {
+            sub.busy.set(false);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private static class Frame {
+        final long seq;
+        final String delta;
+        final String full;
+
+        Frame(long seq, String delta, String full) {
+            this.seq = seq;
+            this.delta = delta;
+            this.full = full;
+        }
+    }
+
+    /** One portfolio's stream state. Fields without volatile are touched by the producer thread only. */
+    private static class Channel {
+        final String portfolioId;
+        final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+        final AtomicBoolean produceScheduled = new AtomicBoolean();
+        final AtomicBoolean reloadPending = new AtomicBoolean();
+        final ConcurrentHashMap<String, Double> pendingPrices = new ConcurrentHashMap<>();
+        volatile Frame latest = new Frame(0, null, null);
+        volatile Set<String> symbols; // null until the first snapshot: accept every tick
+
+        PortfolioSnapshot snapshot;
+        Map<String, Double> lastPrices;
+        Map<String, Object> lastSummary;
+
+        Channel(String portfolioId) {
+            this.portfolioId = portfolioId;
+        }
+
+        void setSnapshot(PortfolioSnapshot snap) {
+            Set<String> syms = new HashSet<>();
+            for (int i = 0; i < snap.size(); i++) syms.add(snap.symbol(i));
+            this.snapshot = snap;
+            this.symbols = syms;
+        }
+
+        // queues the ticks this portfolio holds; true if any
+        boolean offer(Map<String, Double> changed) {
+            Set<String> syms = symbols;
+            boolean any = false;
+            for (Map.Entry<String, Double> e : changed.entrySet()) {
+                if (syms == null || syms.contains(e.getKey())) {
+                    pendingPrices.put(e.getKey(), e.getValue());
+                    any = true;
+                }
+            }
+            return any;
+        }
+    }
+
+    // sendingSince of a subscriber whose send ran past the timeout
+    private static final long STALLED = -1;
+    // alerts queued for a subscriber that isn't keeping up; the oldest go first
+    private static final int MAX_PENDING_ALERTS = 64;
+
+    private static class Subscriber {
+        final Channel channel;
+        final SseEmitter emitter;
+        final AtomicBoolean busy = new AtomicBoolean();
+        final AtomicLong sendingSince = new AtomicLong(); // start of the send in progress, 0 when idle
+        final Queue<String> alerts = new ConcurrentLinkedQueue<>(); // serialized alerts not sent yet
+        volatile long lastSentSeq = -1;
+
+        Subscriber(Channel channel, SseEmitter emitter) {
+            this.channel = channel;
+            this.emitter = emitter;
+        }
+    }
+}
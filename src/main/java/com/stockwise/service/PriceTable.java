@@ -0,0 +1,95 @@
+package com.stockwise.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Shared in-memory table of the latest known price per symbol.
+ *
+ * Written by {@link PriceRefreshService}, read by every request. A zero
+ * price never replaces a good one: when upstream fails we keep serving the
+ * last price we had. Symbols that were tried but never priced are kept
+ * with 0.0 so the request path doesn't go to the network for them again.
+ */
+@Component
+public class PriceTable {
+
+    private final ConcurrentHashMap<String, Quote> quotes = new ConcurrentHashMap<>();
+    private final AtomicLong epoch = new AtomicLong();
+    private final List<Consumer<Map<String, Double>>> listeners = new CopyOnWriteArrayList<>();
+
+    public double get(String symbol) {
+        Quote q = quotes.get(symbol);
+        return q != null ? q.price : 0.0;
+    }
+
+    public boolean contains(String symbol) {
+        return quotes.containsKey(symbol);
+    }
+
+    public Quote getQuote(String symbol) {
+        return quotes.get(symbol);
+    }
+
+    /**
+     * Merges freshly fetched prices in and returns the ones that actually
+     * changed. Listeners are told about the changes, if there were any.
+     */
+    public Map<String, Double> update(Map<String, Double> fetched) {
+        Map<String, Double> changed = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+
+        for (Map.Entry<String, Double> e : fetched.entrySet()) {
+            String sym = e.getKey();
+            double price = e.getValue() != null ? e.getValue() : 0.0;
+            Quote old = quotes.get(sym);
+
+            if (price > 0) {
+                quotes.put(sym, new Quote(price, now));
+                if (old == null || old.price != price) changed.put(sym, price);
+            } else if (old == null) {
+                quotes.put(sym, new Quote(0.0, now));
+            }
+        }
+
+        if (!changed.isEmpty()) {
+            epoch.incrementAndGet();
+            for (Consumer<Map<String, Double>> l : listeners) {
+                try {
+                    l.accept(changed);
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+        return changed;
+    }
+
+    // Bumped every time at least one price changes
+    public long epoch() {
+        return epoch.get();
+    }
+
+    public int size() {
+        return quotes.size();
+    }
+
+    public void addListener(Consumer<Map<String, Double>> listener) {
+        listeners.add(listener);
+    }
+
+    public static class Quote {
+        public final double price;
+        public final long updatedAt;
+
+        Quote(double price, long updatedAt) {
+            this.price = price;
+            this.updatedAt = updatedAt;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.stockwise.service;
+
+import com.stockwise.util.Meters;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Concurrent, size-bounded symbol -> price cache.
+ *
+ * - fresh entries (younger than ttl) are served directly
+ * - stale entries (younger than ttl + staleWindow) are served as-is while
+ *   one background reload runs
+ * - on a miss, concurrent callers asking for the same symbol share one
+ *   upstream load instead of each doing their own
+ * - when the cache grows past maxSize the least recently used entries go
+ */
+public class QuoteCache implements MeterBinder {
+
+    private final long ttlMs;
+    private final long staleWindowMs;
+    private final int maxSize;
+    private final long maxWaitMs;
+    private final Executor refresher;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<Double>> inFlight = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    // ---- counters ----
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder loadTimeNanos = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public QuoteCache(long ttlMs, long staleWindowMs, int maxSize, long maxWaitMs, Executor refresher) {
+        this.ttlMs = ttlMs;
+        this.staleWindowMs = staleWindowMs;
+        this.maxSize = Math.max(1, maxSize);
+        this.maxWaitMs = maxWaitMs;
+        this.refresher = refresher;
+    }
+
+    /**
+     * Returns a price for every symbol that has one. Misses are loaded with a
+     * single loader call; the loader returns only the symbols it could price.
+     */
+    public Map<String, Double> getAll(Collection<String> symbols, Function<List<String>, Map<String, Double>> loader) {
+        Map<String, Double> out = new HashMap<>();
+        List<String> stale = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        for (String sym : symbols) {
+            Entry e = entries.get(sym);
+            if (e != null && now - e.loadedAt < ttlMs) {
+                hits.increment();
+                e.lastAccess = now;
+                out.put(sym, e.price);
+            } else if (e != null && e.price > 0 && now - e.loadedAt < ttlMs + staleWindowMs) {
+                staleHits.increment();
+                e.lastAccess = now;
+                out.put(sym, e.price);
+                stale.add(sym);
+            } else {
+                misses.increment();
+                missing.add(sym);
+            }
+        }
+
+        if (!stale.isEmpty()) refreshInBackground(stale, loader);
+        if (!missing.isEmpty()) out.putAll(loadCoalesced(missing, loader));
+
+        return out;
+    }
+
+    public Optional<Double> getIfPresent(String symbol) {
+        Entry e = entries.get(symbol);
+        return e != null && e.price > 0 ? Optional.of(e.price) : Optional.empty();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        long loadCount = loads.sum();
+        out.put("size", entries.size());
+        out.put("hits", hits.sum());
+        out.put("staleHits", staleHits.sum());
+        out.put("misses", misses.sum());
+        out.put("coalescedMisses", coalesced.sum());
+        out.put("loads", loadCount);
+        out.put("loadFailures", loadFailures.sum());
+        out.put("loadTimeMs", TimeUnit.NANOSECONDS.toMillis(loadTimeNanos.sum()));
+        out.put("avgLoadTimeMs", loadCount == 0 ? 0.0 : loadTimeNanos.sum() / 1e6 / loadCount);
+        out.put("evictions", evictions.sum());
+        return out;
+    }
+
+    /** Publishes the counters above, read straight from the adders at scrape time. */
+    @Override
+    public void bindTo(MeterRegistry r) {
+        String requests = Meters.QUOTE_CACHE + ".requests";
+        String byResult = "Symbol lookups, by how the cache answered";
+        FunctionCounter.builder(requests, hits, LongAdder::sum).tag("result", "hit")
+                .description(byResult).register(r);
+        FunctionCounter.builder(requests, staleHits, LongAdder::sum).tag("result", "stale")
+                .description(byResult).register(r);
+        FunctionCounter.builder(requests, misses, LongAdder::sum).tag("result", "miss")
+                .description(byResult).register(r);
+        FunctionCounter.builder(Meters.QUOTE_CACHE + ".coalesced", coalesced, LongAdder::sum)
+                .description("Misses that joined another caller's load").register(r);
+        FunctionTimer.builder(Meters.QUOTE_CACHE + ".loads", this, c -> c.loads.sum(), c -> c.loadTimeNanos.sum(), TimeUnit.NANOSECONDS)
+                .description("Upstream loads").register(r);
+        FunctionCounter.builder(Meters.QUOTE_CACHE + ".load.failures", loadFailures, LongAdder::sum).register(r);
+        FunctionCounter.builder(Meters.QUOTE_CACHE + ".evictions", evictions, LongAdder::sum).register(r);
+        Gauge.builder(Meters.QUOTE_CACHE + ".size", entries, Map::size).register(r);
+    }
+
+    // ---------------- loading -------------------
+
+    private Map<String, Double> loadCoalesced(List<String> missing, Function<List<String>, Map<String, Double>> loader) {
+        Map<String, CompletableFuture<Double>> owned = new LinkedHashMap<>();
+        Map<String, CompletableFuture<Double>> joined = new HashMap<>();
+
+        for (String sym : missing) {
+            CompletableFuture<Double> mine = new CompletableFuture<>();
+            CompletableFuture<Double> existing = inFlight.putIfAbsent(sym, mine);
+            if (existing == null) {
+                owned.put(sym, mine);
+            } else {
+                coalesced.increment();
+                joined.put(sym, existing);
+            }
+        }
+
+        Map<String, Double> out = new HashMap<>();
+        if (!owned.isEmpty()) out.putAll(load(owned, loader));
+
+        long waitUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        for (Map.Entry<String, CompletableFuture<Double>> j : joined.entrySet()) {
+            try {
+                Double price = j.getValue().get(Math.max(0, waitUntil - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (price != null && price > 0) out.put(j.getKey(), price);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException | TimeoutException e) {
+                // the owning caller deals with the failure, we just go without
+            }
+        }
+        return out;
+    }
+
+    private void refreshInBackground(List<String> stale, Function<List<String>, Map<String, Double>> loader) {
+        Map<String, CompletableFuture<Double>> owned = new LinkedHashMap<>();
+        for (String sym : stale) {
+            CompletableFuture<Double> mine = new CompletableFuture<>();
+            if (inFlight.putIfAbsent(sym, mine) == null) owned.put(sym, mine);
+        }
+        if (owned.isEmpty()) return;
+
+        try {
+            refresher.execute(() -> load(owned, loader));
+        } catch (RejectedExecutionException e) {
+            // refresher is saturated: release the claims, the next caller will retry
+            owned.forEach((sym, f) -> {
+                inFlight.remove(sym, f);
+                f.complete(null);
+            });
+        }
+    }
+
+    // Runs the loader for symbols this thread has claimed and publishes the results.
+    // The claims are released whatever the loader does, Errors included, so no caller waits on a dead future.
+    private Map<String, Double> load(Map<String, CompletableFuture<Double>> owned, Function<List<String>, Map<String, Double>> loader) {
+        Map<String, Double> loaded = null;
+        boolean ok = false;
+        long t0 = System.nanoTime();
+        try {
+            loaded = loader.apply(new ArrayList<>(owned.keySet()));
+            ok = true;
+        } catch (Exception e) {
+            // counted below; symbols get negative entries like any unpriced ones
+        } finally {
+            loads.increment();
+            loadTimeNanos.add(System.nanoTime() - t0);
+            if (!ok) loadFailures.increment();
+            if (loaded == null) loaded = Collections.emptyMap();
+            publish(owned, loaded);
+        }
+        return loaded;
+    }
+
+    private void publish(Map<String, CompletableFuture<Double>> owned, Map<String, Double> loaded) {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, CompletableFuture<Double>> o : owned.entrySet()) {
+            String sym = o.getKey();
+            Double price = loaded.get(sym);
+
+            if (price != null && price > 0) {
+                entries.put(sym, new Entry(price, now));
+            } else if (!entries.containsKey(sym)) {
+                // negative entry: don't hammer upstream for a symbol it can't price
+                entries.put(sym, new Entry(0.0, now));
+            }
+            // otherwise keep the last good price so it can still be served stale
+
+            inFlight.remove(sym, o.getValue());
+            o.getValue().complete(price);
+        }
+
+        if (entries.size() > maxSize) evict();
+    }
+
+    // Drops the least recently used entries, leaving 10% headroom so this doesn't run on every insert
+    private void evict() {
+        if (!evictionLock.tryLock()) return;
+        try {
+            int target = maxSize - maxSize / 10;
+            int excess = entries.size() - target;
+            if (excess <= 0) return;
+
+            List<Map.Entry<String, Entry>> all = new ArrayList<>(entries.entrySet());
+            all.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+
+            for (int i = 0; i < excess && i < all.size(); i++) {
+                Map.Entry<String, Entry> e = all.get(i);
+                if (entries.remove(e.getKey(), e.getValue())) evictions.increment();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static class Entry {
+        final double price;
+        final long loadedAt;
+        volatile long lastAccess;
+
+        Entry(double price, long loadedAt) {
+            this.price = price;
+            this.loadedAt = loadedAt;
+            this.lastAccess = loadedAt;
+        }
+    }
+}
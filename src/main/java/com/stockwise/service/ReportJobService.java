@@ -0,0 +1,317 @@
+package com.stockwise.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stockwise.model.Portfolio;
+import com.stockwise.model.ReportJob;
+import com.stockwise.util.Meters;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Report exports as background jobs.
+ *
+ * submit() queues a report for a portfolio and returns at once; a bounded
+ * pool writes it into the artifact directory, and clients poll the job and
+ * download the file by id. A full queue refuses the job rather than piling
+ * up work (the controller answers 503).
+ *
+ * Jobs are deduplicated on portfolio, format and snapshot, the dashboard
+ * ETag: until a write or a price change moves the ETag, asking again gets
+ * the queued, running or finished job back. Failed jobs are not reused.
+ * The job renders the priced portfolio taken at submit time together with
+ * that ETag, so the report is of the snapshot it is filed under, however
+ * long it waits in the queue.
+ *
+ * Artifacts are written through a buffered UTF-8 writer on a FileChannel
+ * to a ".part" file and moved into place when complete, next to a small
+ * JSON file with the job, so finished reports survive a restart. Finished
+ * jobs are dropped with their files after retention-minutes, or oldest
+ * first once there are more than max-jobs.
+ */
+@Service
+public class ReportJobService {
+
+    public static final List<String> FORMATS = List.of("txt", "csv");
+
+    private final DashboardService dashboard;
+    private final ReportService reports;
+    private final ObjectMapper mapper;
+    private final MeterRegistry meters;
+    private final Path dir;
+    private final long retentionMs;
+    private final int maxJobs;
+    private final ThreadPoolExecutor workers;
+
+    // guarded by this; job id -> job in submit order, and dedup key -> job
+    private final LinkedHashMap<String, ReportJob> jobs = new LinkedHashMap<>();
+    private final HashMap<String, ReportJob> byKey = new HashMap<>();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public ReportJobService(DashboardService dashboard, ReportService reports, ObjectMapper mapper, MeterRegistry meters,
+                            @Value("${stockwise.reports.dir:data/reports}") String dir,
+                            @Value("${stockwise.reports.threads:2}") int threads,
+                            @Value("${stockwise.reports.queue-size:32}") int queueSize,
+                            @Value("${stockwise.reports.retention-minutes:1440}") long retentionMinutes,
+                            @Value("${stockwise.reports.max-jobs:500}") int maxJobs) {
+        this.dashboard = dashboard;
+        this.reports = reports;
+        this.mapper = mapper;
+        this.meters = meters;
+        this.dir = Path.of(dir);
+        this.retentionMs = TimeUnit.MINUTES.toMillis(retentionMinutes);
+        this.maxJobs = Math.max(1, maxJobs);
+
+        int n = Math.max(1, threads);
+        AtomicInteger count = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(n, n, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)), r -> {
+                    Thread t = new Thread(r, "report-job-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder(Meters.REPORT_JOBS + ".queued", workers, w -> w.getQueue().size())
+                .description("Report jobs waiting for a thread")
+                .register(meters);
+    }
+
+    // Finished reports from earlier runs stay downloadable; half-written ones are removed
+    @PostConstruct
+    public void load() {
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            System.out.println("⚠ Could not create report directory " + dir + ": " + e.getMessage());
+            return;
+        }
+        List<ReportJob> found = new ArrayList<>();
+        List<Path> artifacts = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                if (name.endsWith(".part")) {
+                    Files.deleteIfExists(f);
+                } else if (name.endsWith(".json")) {
+                    ReportJob job = readMeta(f);
+                    if (job != null && job.getStatus() == ReportJob.Status.DONE && Files.exists(artifact(job))) {
+                        found.add(job);
+                    } else {
+                        Files.deleteIfExists(f);
+                    }
+                } else {
+                    artifacts.add(f);
+                }
+            }
+            // reports whose job file never got written
+            Set<Path> kept = new HashSet<>();
+            for (ReportJob job : found) kept.add(artifact(job));
+            for (Path f : artifacts) {
+                if (!kept.contains(f)) Files.deleteIfExists(f);
+            }
+        } catch (IOException e) {
+            System.out.println("⚠ Could not read report directory " + dir + ": " + e.getMessage());
+        }
+        found.sort(Comparator.comparingLong(ReportJob::getSubmittedAt));
+        synchronized (this) {
+            for (ReportJob job : found) jobs.put(job.getId(), job);
+            prune();
+        }
+        if (!found.isEmpty()) System.out.println("📄 Loaded " + found.size() + " finished report(s)");
+    }
+
+    @PreDestroy
+    public void stop() {
+        workers.shutdownNow();
+    }
+
+    // ---------------- JOBS -------------------
+
+    /**
+     * Queues a report of the portfolio, or returns the job already covering
+     * the same snapshot. Throws IllegalArgumentException for an unknown
+     * format and RejectedExecutionException when the queue is full.
+     */
+    public ReportJob submit(String portfolioId, String format) throws SQLException {
+        String fmt = format == null ? "txt" : format.toLowerCase(Locale.ROOT);
+        if (!FORMATS.contains(fmt)) throw new IllegalArgumentException("format must be one of " + FORMATS);
+
+        Map.Entry<String, Portfolio> view = dashboard.cachedPortfolioWithEtag(portfolioId);
+        Portfolio portfolio = view.getValue();
+        String snapshot = view.getKey();
+        snapshot = snapshot.substring(1, snapshot.length() - 1);
+        String key = portfolioId + "|" + fmt + "|" + snapshot;
+
+        ReportJob job;
+        synchronized (this) {
+            ReportJob existing = byKey.get(key);
+            if (existing != null && existing.getStatus() != ReportJob.Status.FAILED && jobs.containsKey(existing.getId())) {
+                deduplicated.increment();
+                return existing;
+            }
+            job = new ReportJob(UUID.randomUUID().toString(), portfolioId, fmt, snapshot);
+            jobs.put(job.getId(), job);
+            byKey.put(key, job);
+            prune();
+        }
+
+        try {
+            workers.execute(() -> run(job, portfolio));
+        } catch (RejectedExecutionException e) {
+            job.setError("report queue is full");
+            job.setStatus(ReportJob.Status.FAILED);
+            synchronized (this) {
+                jobs.remove(job.getId());
+                byKey.remove(key, job);
+            }
+            rejected.increment();
+            throw e;
+        }
+        submitted.increment();
+        return job;
+    }
+
+    public synchronized ReportJob get(String id) {
+        return jobs.get(id);
+    }
+
+    /** Jobs of the portfolio, newest first. */
+    public synchronized List<ReportJob> list(String portfolioId) {
+        List<ReportJob> out = new ArrayList<>();
+        for (ReportJob job : jobs.values()) {
+            if (job.getPortfolioId().equals(portfolioId)) out.add(job);
+        }
+        Collections.reverse(out);
+        return out;
+    }
+
+    /** The finished artifact of the job, or null while it isn't DONE. */
+    public Path artifact(String id) {
+        ReportJob job = get(id);
+        if (job == null || job.getStatus() != ReportJob.Status.DONE) return null;
+        Path f = artifact(job);
+        return Files.exists(f) ? f : null;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        Map<String, Integer> byStatus = new LinkedHashMap<>();
+        for (ReportJob.Status s : ReportJob.Status.values()) byStatus.put(s.name().toLowerCase(Locale.ROOT), 0);
+        synchronized (this) {
+            for (ReportJob job : jobs.values()) byStatus.merge(job.getStatus().name().toLowerCase(Locale.ROOT), 1, Integer::sum);
+        }
+        out.put("jobs", byStatus);
+        out.put("queued", workers.getQueue().size());
+        out.put("running", workers.getActiveCount());
+        out.put("submitted", submitted.sum());
+        out.put("deduplicated", deduplicated.sum());
+        out.put("rejected", rejected.sum());
+        out.put("directory", dir.toAbsolutePath().toString());
+        return out;
+    }
+
+    // ---------------- WORKER -------------------
+
+    // p is the shared, read-only portfolio the job's snapshot was taken from
+    private void run(ReportJob job, Portfolio p) {
+        job.setStartedAt(System.currentTimeMillis());
+        job.setStatus(ReportJob.Status.RUNNING);
+        long t0 = System.nanoTime();
+        Path target = artifact(job);
+        Path part = target.resolveSibling(target.getFileName() + ".part");
+        boolean ok = false;
+        try {
+            try (Writer w = ReportService.openUtf8(part)) {
+                if (job.getFormat().equals("csv")) reports.writeCsvReport(p, w);
+                else reports.writeTextReport(p, w);
+            }
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            job.setBytes(Files.size(target));
+            job.setFinishedAt(System.currentTimeMillis());
+            job.setStatus(ReportJob.Status.DONE);
+            writeMeta(job);
+            ok = true;
+        } catch (Exception e) {
+            System.out.println("⚠ Report job " + job.getId() + " for " + job.getPortfolioId() + " failed: " + e.getMessage());
+            job.setError(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+            job.setFinishedAt(System.currentTimeMillis());
+            job.setStatus(ReportJob.Status.FAILED);
+            deleteQuietly(part);
+            deleteQuietly(target);
+        } finally {
+            Meters.reportJob(meters, job.getFormat(), ok).record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // ---------------- ARTIFACT STORE -------------------
+
+    private Path artifact(ReportJob job) {
+        return dir.resolve(job.getId() + "." + job.getFormat());
+    }
+
+    private Path meta(ReportJob job) {
+        return dir.resolve(job.getId() + ".json");
+    }
+
+    private void writeMeta(ReportJob job) throws IOException {
+        Path part = dir.resolve(job.getId() + ".json.part");
+        try (Writer w = ReportService.openUtf8(part)) {
+            mapper.writeValue(w, job);
+        }
+        Files.move(part, meta(job), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private ReportJob readMeta(Path f) {
+        try {
+            ReportJob job = mapper.readValue(f.toFile(), ReportJob.class);
+            String name = f.getFileName().toString();
+            if (job.getId() == null || !name.equals(job.getId() + ".json") || !FORMATS.contains(job.getFormat())) return null;
+            return job;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // callers hold the lock; unfinished jobs are never dropped
+    private void prune() {
+        long cutoff = System.currentTimeMillis() - retentionMs;
+        int excess = jobs.size() - maxJobs;
+        Iterator<ReportJob> it = jobs.values().iterator();
+        while (it.hasNext()) {
+            ReportJob job = it.next();
+            if (!job.isFinished()) continue;
+            if (excess <= 0 && job.getFinishedAt() >= cutoff) continue;
+            it.remove();
+            excess--;
+            byKey.values().remove(job);
+            deleteQuietly(artifact(job));
+            deleteQuietly(meta(job));
+        }
+    }
+
+    private static void deleteQuietly(Path f) {
+        try {
+            Files.deleteIfExists(f);
+        } catch (IOException e) {
+            System.out.println("⚠ Could not delete " + f + ": " + e.getMessage());
+        }
+    }
+}
@@ -1,13 +1,22 @@
 package com.stockwise.service;
 
 import com.stockwise.model.Portfolio;
+import com.stockwise.model.PortfolioSnapshot;
 import com.stockwise.model.Stock;
 import org.springframework.stereotype.Service;
 
-import java.io.FileWriter;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
-import java.util.List;
 import java.util.Map;
 
 @Service
@@ -20,46 +29,70 @@ public class ReportService {
     }
 
     public String generateTextReport(Portfolio p) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("StockWise - Portfolio Report\n");
-        sb.append("Generated: ").append(LocalDateTime.now()).append("\n\n");
+        StringWriter sw = new StringWriter();
+        try {
+            writeTextReport(p, sw);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringWriter doesn't throw
+        }
+        return sw.toString();
+    }
+
+    public void writeTextReport(Portfolio p, Writer w) throws IOException {
+        w.write("StockWise - Portfolio Report\n");
+        w.write("Generated: " + LocalDateTime.now() + "\n\n");
 
-        sb.append(String.format("Total Invested: %.2f INR\n", analysis.totalInvested(p)));
-        sb.append(String.format("Current Value: %.2f INR\n", analysis.currentValue(p)));
-        sb.append(String.format("Unrealized P/L: %.2f INR (%.2f%%)\n\n", analysis.unrealizedPL(p),
-                (analysis.totalInvested(p) == 0 ? 0.0 : (analysis.unrealizedPL(p) / analysis.totalInvested(p) * 100.0))));
+        PortfolioSnapshot snap = analysis.snapshot(p);
+        double invested = analysis.totalInvested(snap);
+        double unrealized = analysis.unrealizedPL(snap);
 
-        sb.append("Per-stock details:\n");
+        w.write(String.format("Total Invested: %.2f INR\n", invested));
+        w.write(String.format("Current Value: %.2f INR\n", analysis.currentValue(snap)));
+        w.write(String.format("Unrealized P/L: %.2f INR (%.2f%%)\n\n", unrealized,
+                (invested == 0 ? 0.0 : (unrealized / invested * 100.0))));
+
+        w.write("Per-stock details:\n");
         for (Stock s : p.getStocks()) {
-            sb.append(String.format("%s — Qty: %.2f, BuyPrice: %.2f, CurrPrice: %.2f, Invested: %.2f, CurrValue: %.2f, P/L: %.2f (%.2f%%)\n",
+            w.write(String.format("%s — Qty: %.2f, BuyPrice: %.2f, CurrPrice: %.2f, Invested: %.2f, CurrValue: %.2f, P/L: %.2f (%.2f%%)\n",
                     s.getSymbol(), s.getQuantity(), s.getBuyPrice(), s.getCurrentPrice(), s.investedAmount(), s.currentValue(), s.unrealizedPL(), s.unrealizedPLPercent()));
         }
 
-        sb.append("\nAllocation (%):\n");
-        for (Map.Entry<String, Double> e : analysis.allocationPercent(p).entrySet()) {
-            sb.append(String.format("%s : %.2f%%\n", e.getKey(), e.getValue()));
+        w.write("\nAllocation (%):\n");
+        for (Map.Entry<String, Double> e : analysis.allocationPercent(snap).entrySet()) {
+            w.write(String.format("%s : %.2f%%\n", e.getKey(), e.getValue()));
         }
 
-        sb.append("\nVolatility score: ").append(String.format("%.2f", analysis.volatilityScore(p))).append("\n");
-        sb.append("Diversification index: ").append(String.format("%.2f", analysis.diversificationIndex(p))).append("\n");
-
-        return sb.toString();
+        w.write("\nVolatility score: " + String.format("%.2f", analysis.volatilityScore(snap)) + "\n");
+        w.write("Diversification index: " + String.format("%.2f", analysis.diversificationIndex(snap)) + "\n");
     }
 
     public void exportTxt(Portfolio p, String path) throws IOException {
-        try (FileWriter fw = new FileWriter(path)) {
-            fw.write(generateTextReport(p));
+        try (Writer w = openUtf8(Path.of(path))) {
+            writeTextReport(p, w);
         }
     }
 
     public void exportCsv(Portfolio p, String path) throws IOException {
-        try (FileWriter fw = new FileWriter(path)) {
-            fw.write("symbol,quantity,buy_price,buy_date,current_price,invested,current_value,unrealized_pl,unrealized_pl_percent,sector\n");
-            for (Stock s : p.getStocks()) {
-                fw.write(String.format("%s,%.2f,%.2f,%s,%.2f,%.2f,%.2f,%.2f,%.2f,%s\n",
-                        s.getSymbol(), s.getQuantity(), s.getBuyPrice(), s.getBuyDate(), s.getCurrentPrice(),
-                        s.investedAmount(), s.currentValue(), s.unrealizedPL(), s.unrealizedPLPercent(), s.getSector()));
-            }
+        try (Writer w = openUtf8(Path.of(path))) {
+            writeCsvReport(p, w);
         }
     }
+
+    public void writeCsvReport(Portfolio p, Writer w) throws IOException {
+        w.write("symbol,quantity,buy_price,buy_date,current_price,invested,current_value,unrealized_pl,unrealized_pl_percent,sector\n");
+        for (Stock s : p.getStocks()) {
+            w.write(String.format("%s,%.2f,%.2f,%s,%.2f,%.2f,%.2f,%.2f,%.2f,%s\n",
+                    s.getSymbol(), s.getQuantity(), s.getBuyPrice(), s.getBuyDate(), s.getCurrentPrice(),
+                    s.investedAmount(), s.currentValue(), s.unrealizedPL(), s.unrealizedPLPercent(), s.getSector()));
+        }
+    }
+
+    /** UTF-8 whatever the platform charset, through one 64 KiB buffer onto a FileChannel. */
+    static Writer openUtf8(Path path) throws IOException {
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        return new BufferedWriter(Channels.newWriter(ch, StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE), 64 * 1024), 64 * 1024);
+    }
 }
@@ -0,0 +1,402 @@
+package com.stockwise.service;
+
+import com.stockwise.model.ColumnarHoldings;
+import com.stockwise.model.PriceBars;
+import com.stockwise.model.RiskModel;
+import com.stockwise.repository.PriceHistoryRepository;
+import com.stockwise.util.Meters;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Portfolio risk from daily price history: annualized volatility,
+ * covariance and correlation, one-day VaR/CVaR and beta against an index.
+ *
+ * Everything that only depends on the market is cached for the trading
+ * day: the calendar (the index's sessions over the lookback window), each
+ * symbol's aligned returns, and the covariance model of each distinct set
+ * of symbols. Today's session is left out until it has closed, so the
+ * cache stays valid until the date changes. A request then only weighs the
+ * cached model with the portfolio's current values.
+ */
+@Service
+public class RiskService {
+
+    private final DashboardService dashboard;
+    private final PriceHistoryService history;
+    private final String indexSymbol;
+    private final int lookbackDays;
+    private final int minObservations;
+    private final int modelCacheSize;
+    private final ZoneId zone;
+
+    private final ExecutorService loader;
+    private final ForkJoinPool covariancePool;
+    private final Timer riskTimer;
+    private final Timer matrixTimer;
+    private final AtomicReference<DayData> today = new AtomicReference<>();
+
+    public RiskService(DashboardService dashboard, PriceHistoryService history,
+                       @Value("${stockwise.risk.index-symbol:^NSEI}") String indexSymbol,
+                       @Value("${stockwise.risk.lookback-days:252}") int lookbackDays,
+                       @Value("${stockwise.risk.min-observations:20}") int minObservations,
+                       @Value("${stockwise.risk.model-cache-size:64}") int modelCacheSize,
+                       @Value("${stockwise.risk.history-threads:8}") int historyThreads,
+                       @Value("${stockwise.risk.parallelism:0}") int parallelism,
+                       @Value("${stockwise.refresh.zone:Asia/Kolkata}") String zone,
+                       MeterRegistry meters) {
+        this.dashboard = dashboard;
+        this.history = history;
+        this.indexSymbol = SymbolMaster.normalize(indexSymbol);
+        this.lookbackDays = Math.max(2, lookbackDays);
+        this.minObservations = Math.max(2, minObservations);
+        this.modelCacheSize = Math.max(1, modelCacheSize);
+        this.zone = ZoneId.of(zone);
+        this.riskTimer = Meters.analytics(meters, "risk");
+        this.matrixTimer = Meters.analytics(meters, "risk-matrix");
+
+        this.loader = Executors.newFixedThreadPool(Math.max(1, historyThreads), r -> {
+            Thread t = new Thread(r, "risk-history");
+            t.setDaemon(true);
+            return t;
+        });
+        this.covariancePool = new ForkJoinPool(
+                parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(),
+                pool -> {
+                    ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    t.setName("risk-covariance-" + t.getPoolIndex());
+                    return t;
+                },
+                null, false);
+    }
+
+    @PreDestroy
+    public void stop() {
+        loader.shutdownNow();
+        covariancePool.shutdownNow();
+    }
+
+    // ---------------- API -------------------
+
+    /** Portfolio and per-symbol risk figures of one portfolio. */
+    public Map<String, Object> risk(String portfolioId) {
+        return riskTimer.record(() -> computeRisk(portfolioId));
+    }
+
+    private Map<String, Object> computeRisk(String portfolioId) {
+        Exposure p = exposure(portfolioId);
+        RiskModel m = p.model;
+        RiskModel.Result r = m.evaluate(p.weights);
+
+        Map<String, Object> portfolio = new LinkedHashMap<>();
+        portfolio.put("value", p.value);
+        portfolio.put("dailyVolatility", r.dailyVolatility);
+        portfolio.put("annualizedVolatility", r.annualizedVolatility);
+        portfolio.put("beta", orNull(r.beta));
+        portfolio.put("var", figures(r.var95, r.var99, r.parametricVar95, r.parametricVar99, 1));
+        portfolio.put("cvar", figures(r.cvar95, r.cvar99, r.parametricCvar95, r.parametricCvar99, 1));
+        portfolio.put("varAmount", figures(r.var95, r.var99, r.parametricVar95, r.parametricVar99, p.value));
+        portfolio.put("cvarAmount", figures(r.cvar95, r.cvar99, r.parametricCvar95, r.parametricCvar99, p.value));
+
+        List<Map<String, Object>> symbols = new ArrayList<>(m.size());
+        for (int i = 0; i < m.size(); i++) {
+            Map<String, Object> s = new LinkedHashMap<>();
+            s.put("symbol", p.symbols[i]);
+            s.put("value", p.values[i]);
+            s.put("weight", p.weights[i]);
+            s.put("annualizedVolatility", m.annualizedVolatility(i));
+            s.put("beta", m.hasIndex() ? m.beta(i) : null);
+            symbols.add(s);
+        }
+
+        Map<String, Object> out = header(p);
+        out.put("portfolio", portfolio);
+        out.put("symbols", symbols);
+        return out;
+    }
+
+    /** Daily covariance, or correlation, of the portfolio's symbols. */
+    public Map<String, Object> matrix(String portfolioId, boolean correlation) {
+        return matrixTimer.record(() -> computeMatrix(portfolioId, correlation));
+    }
+
+    private Map<String, Object> computeMatrix(String portfolioId, boolean correlation) {
+        Exposure p = exposure(portfolioId);
+        RiskModel m = p.model;
+        int n = m.size();
+
+        List<List<Double>> rows = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            List<Double> row = new ArrayList<>(n);
+            for (int j = 0; j < n; j++) row.add(correlation ? m.correlation(i, j) : m.covariance(i, j));
+            rows.add(row);
+        }
+
+        Map<String, Object> out = header(p);
+        out.put("symbols", Arrays.asList(p.symbols));
+        out.put(correlation ? "correlation" : "covariance", rows);
+        return out;
+    }
+
+    private Map<String, Object> header(Exposure p) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("portfolioId", p.portfolioId);
+        out.put("asOf", p.asOf.toString());
+        out.put("observations", p.model.days());
+        out.put("index", p.day.indexReturns != null ? indexSymbol : null);
+        out.put("excluded", p.excluded);
+        return out;
+    }
+
+    // 95/99 historical and parametric, scaled (1 for fractions, the portfolio value for amounts)
+    private static Map<String, Object> figures(double h95, double h99, double p95, double p99, double scale) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("historical95", h95 * scale);
+        m.put("historical99", h99 * scale);
+        m.put("parametric95", p95 * scale);
+        m.put("parametric99", p99 * scale);
+        return m;
+    }
+
+    private static Double orNull(double v) {
+        return Double.isNaN(v) ? null : v;
+    }
+
+    // ---------------- weights -------------------
+
+    // The portfolio's symbols with enough history, their values and the model over them
+    static class Exposure {
+        String portfolioId;
+        DayData day;
+        LocalDate asOf;
+        RiskModel model;
+        String[] symbols;
+        double[] values;
+        double[] weights;
+        double value;
+        List<String> excluded;
+        double excludedValue;   // holdings left out of the model, at current value
+    }
+
+    Exposure exposure(String portfolioId) {
+        // current value per symbol; invested amount where there's no price yet
+        ColumnarHoldings h = dashboard.loadHoldings(portfolioId);
+        Map<String, Double> bySymbol = new TreeMap<>();
+        for (int i = 0; i < h.size(); i++) {
+            double price = h.currentPrice(i) > 0 ? h.currentPrice(i) : h.buyPrice(i);
+            bySymbol.merge(h.symbol(i), h.quantity(i) * price, Double::sum);
+        }
+
+        DayData day = day();
+        Map<String, Series> series = day.series(bySymbol.keySet());
+
+        Exposure w = new Exposure();
+        List<String> included = new ArrayList<>();
+        List<String> excluded = new ArrayList<>();
+        for (String sym : bySymbol.keySet()) {
+            Series s = series.get(sym);
+            if (s != null && s.observations >= minObservations && bySymbol.get(sym) > 0) {
+                included.add(sym);
+            } else {
+                excluded.add(sym);
+                w.excludedValue += Math.max(0, bySymbol.get(sym));
+            }
+        }
+
+        w.portfolioId = portfolioId;
+        w.day = day;
+        w.asOf = LocalDate.ofEpochDay(day.lastSession);
+        w.symbols = included.toArray(new String[0]);
+        w.model = day.model(w.symbols, series);
+        w.excluded = excluded;
+        w.values = new double[w.symbols.length];
+        w.weights = new double[w.symbols.length];
+        for (int i = 0; i < w.symbols.length; i++) {
+            w.values[i] = bySymbol.get(w.symbols[i]);
+            w.value += w.values[i];
+        }
+        for (int i = 0; i < w.symbols.length; i++) w.weights[i] = w.values[i] / w.value;
+        return w;
+    }
+
+    // ---------------- per trading day -------------------
+
+    // Built outside any lock (the index may be backfilled from upstream) and
+    // published with a CAS: callers racing at a date change may each build
+    // one, the first to land is kept and the others are dropped.
+    private DayData day() {
+        LocalDate date = LocalDate.now(zone);
+        DayData d = today.get();
+        if (d != null && d.date.equals(date)) return d;
+        DayData built = new DayData(date);
+        if (today.compareAndSet(d, built)) return built;
+        DayData won = today.get();
+        return won != null && won.date.equals(date) ? won : built;
+    }
+
+    // A symbol's returns on the day's calendar; missing sessions count as flat
+    private static class Series {
+        final double[] returns;
+        final int observations;
+
+        Series(double[] returns, int observations) {
+            this.returns = returns;
+            this.observations = observations;
+        }
+    }
+
+    private class DayData {
+        final LocalDate date;
+        final long[] sessions;        // epoch days, oldest first, lookbackDays + 1 of them at most
+        final long lastSession;
+        final double[] indexReturns;  // null when the index has too little history
+        final long from, to;
+        final ConcurrentHashMap<String, Series> series = new ConcurrentHashMap<>();
+        final Map<String, RiskModel> models = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RiskModel> eldest) {
+                return size() > modelCacheSize;
+            }
+        };
+
+        DayData(LocalDate date) {
+            this.date = date;
+            // enough calendar days for lookbackDays sessions through holidays
+            LocalDate start = date.minusDays(lookbackDays * 7L / 5 + 14);
+            this.from = start.atStartOfDay(zone).toEpochSecond();
+            this.to = date.atStartOfDay(zone).toEpochSecond() - 1;
+
+            PriceBars indexBars = load(indexSymbol);
+            long[] indexDays = sessionsOf(indexBars);
+            long[] days;
+            if (indexDays.length > minObservations) {
+                days = tail(indexDays, lookbackDays + 1);
+            } else {
+                days = weekdays(start, date.minusDays(1));
+                System.out.println("⚠ Risk: no history for index " + indexSymbol + ", using weekdays as sessions");
+            }
+            this.sessions = days;
+            this.lastSession = days.length == 0 ? date.minusDays(1).toEpochDay() : days[days.length - 1];
+            Series index = indexDays.length > minObservations ? align(indexBars) : null;
+            this.indexReturns = index != null && index.observations >= minObservations ? index.returns : null;
+        }
+
+        // Aligned returns of the symbols, loading those not seen today in parallel
+        Map<String, Series> series(Collection<String> symbols) {
+            Map<String, Series> out = new ConcurrentHashMap<>();
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (String sym : symbols) {
+                Series cached = series.get(sym);
+                if (cached != null) {
+                    out.put(sym, cached);
+                    continue;
+                }
+                tasks.add(() -> {
+                    Series s = align(load(sym));
+                    out.put(sym, s);
+                    // short series aren't kept: they may be backfilled later today
+                    if (s.observations >= minObservations) series.put(sym, s);
+                    return null;
+                });
+            }
+            if (!tasks.isEmpty()) {
+                try {
+                    loader.invokeAll(tasks);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return out;
+        }
+
+        // The covariance model of exactly these symbols (sorted), built once per day
+        RiskModel model(String[] symbols, Map<String, Series> bySymbol) {
+            String key = String.join(",", symbols);
+            synchronized (models) {
+                RiskModel m = models.get(key);
+                if (m != null) return m;
+            }
+            double[][] returns = new double[symbols.length][];
+            for (int i = 0; i < symbols.length; i++) returns[i] = bySymbol.get(symbols[i]).returns;
+            RiskModel m = RiskModel.build(symbols, returns, indexReturns, covariancePool);
+            synchronized (models) {
+                models.put(key, m);
+            }
+            return m;
+        }
+
+        // Log returns session over session, with the last close carried over missing sessions
+        Series align(PriceBars bars) {
+            int n = sessions.length;
+            double[] returns = new double[Math.max(0, n - 1)];
+            int observations = 0;
+            int b = 0;
+            double prev = Double.NaN;
+            for (int d = 0; d < n; d++) {
+                double close = Double.NaN;
+                while (b < bars.size() && sessionOf(bars.time(b)) <= sessions[d]) {
+                    if (!Double.isNaN(bars.close(b)) && bars.close(b) > 0) close = bars.close(b);
+                    b++;
+                }
+                if (d > 0 && !Double.isNaN(close) && !Double.isNaN(prev)) {
+                    returns[d - 1] = Math.log(close / prev);
+                    observations++;
+                }
+                if (!Double.isNaN(close)) prev = close;
+            }
+            return new Series(returns, observations);
+        }
+
+        PriceBars load(String symbol) {
+            try {
+                return history.bars(symbol, PriceHistoryRepository.DAILY, from, to);
+            } catch (Exception e) {
+                System.out.println("⚠ Risk: history unavailable for " + symbol + ": " + e.getMessage());
+                return new PriceBars();
+            }
+        }
+    }
+
+    // ---------------- calendar -------------------
+
+    private long sessionOf(long epochSecond) {
+        return Instant.ofEpochSecond(epochSecond).atZone(zone).toLocalDate().toEpochDay();
+    }
+
+    // Distinct session days of the bars, oldest first
+    private long[] sessionsOf(PriceBars bars) {
+        long[] out = new long[bars.size()];
+        int n = 0;
+        for (int i = 0; i < bars.size(); i++) {
+            if (Double.isNaN(bars.close(i))) continue;
+            long d = sessionOf(bars.time(i));
+            if (n == 0 || out[n - 1] != d) out[n++] = d;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static long[] tail(long[] a, int count) {
+        return a.length <= count ? a : Arrays.copyOfRange(a, a.length - count, a.length);
+    }
+
+    private long[] weekdays(LocalDate from, LocalDate to) {
+        List<Long> days = new ArrayList<>();
+        for (LocalDate d = from; !d.isAfter(to); d = d.plusDays(1)) {
+            if (d.getDayOfWeek() != DayOfWeek.SATURDAY && d.getDayOfWeek() != DayOfWeek.SUNDAY) days.add(d.toEpochDay());
+        }
+        long[] out = new long[days.size()];
+        for (int i = 0; i < out.length; i++) out[i] = days.get(i);
+        return tail(out, lookbackDays + 1);
+    }
+}
@@ -0,0 +1,186 @@
+package com.stockwise.service;
+
+import com.stockwise.util.Fixed2;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One suggestion rule, compiled from its one-line definition:
+ *
+ *   scope metric op number [and metric op number]... : message
+ *
+ * e.g. "holding weight > 25 : {symbol} is Overweight ({value}%)".
+ *
+ * - scope: holding (each lot), sector or portfolio
+ * - metrics: holding  weight, pl, value, price, quantity
+ *            sector   weight, value
+ *            portfolio volatility, pl, value, diversification
+ *   weight and pl are percentages
+ * - op: &gt; &gt;= &lt; &lt;=
+ * - message: {symbol}, {sector} and {value} (the first condition's
+ *   metric, two decimals) are filled in
+ *
+ * Parsing resolves metric names to codes and splits the message into
+ * literal and placeholder parts, so evaluating is comparisons on doubles
+ * and formatting happens only for rules that fire.
+ */
+public class SuggestionRule {
+
+    public enum Scope { HOLDING, SECTOR, PORTFOLIO }
+
+    static final int WEIGHT = 0, PL = 1, VALUE = 2, PRICE = 3, QUANTITY = 4, VOLATILITY = 5, DIVERSIFICATION = 6;
+    private static final String[] METRICS = {"weight", "pl", "value", "price", "quantity", "volatility", "diversification"};
+
+    private static final int GT = 0, GE = 1, LT = 2, LE = 3;
+    private static final String[] OPS = {">", ">=", "<", "<="};
+
+    private static final int SYMBOL = -1, SECTOR = -2, NUMBER = -3;
+
+    final String name;
+    final String definition;
+    final Scope scope;
+    final int[] metric;
+    private final int[] op;
+    private final double[] threshold;
+    // literal text, or one of SYMBOL/SECTOR/NUMBER at the same index in parts
+    private final String[] text;
+    private final int[] parts;
+
+    // per-rule timing, see SuggestionService.ruleStats()
+    final LongAdder runs = new LongAdder();
+    final LongAdder evaluated = new LongAdder();
+    final LongAdder nanos = new LongAdder();
+    final LongAdder fired = new LongAdder();
+    volatile long lastNanos;
+
+    private SuggestionRule(String name, String definition, Scope scope, int[] metric, int[] op, double[] threshold,
+                           String[] text, int[] parts) {
+        this.name = name;
+        this.definition = definition;
+        this.scope = scope;
+        this.metric = metric;
+        this.op = op;
+        this.threshold = threshold;
+        this.text = text;
+        this.parts = parts;
+    }
+
+    public static SuggestionRule parse(String name, String definition) {
+        int colon = definition.indexOf(':');
+        if (colon < 0) throw new IllegalArgumentException("Rule " + name + ": missing ': message'");
+        String[] tokens = definition.substring(0, colon).trim().split("\\s+");
+        String message = definition.substring(colon + 1).trim();
+
+        Scope scope;
+        try {
+            scope = Scope.valueOf(tokens[0].toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Rule " + name + ": unknown scope '" + tokens[0] + "'");
+        }
+
+        // metric op number (and metric op number)*
+        if ((tokens.length - 1) % 4 != 3) throw new IllegalArgumentException("Rule " + name + ": expected 'metric op number'");
+        int conditions = tokens.length / 4;
+        int[] metric = new int[conditions], op = new int[conditions];
+        double[] threshold = new double[conditions];
+        for (int c = 0; c < conditions; c++) {
+            int at = 1 + c * 4;
+            if (c > 0 && !tokens[at - 1].equalsIgnoreCase("and")) {
+                throw new IllegalArgumentException("Rule " + name + ": expected 'and' before '" + tokens[at] + "'");
+            }
+            metric[c] = indexOf(METRICS, tokens[at].toLowerCase(), name, "metric");
+            if (!allowed(scope, metric[c])) {
+                throw new IllegalArgumentException("Rule " + name + ": no " + tokens[at] + " for scope " + tokens[0]);
+            }
+            op[c] = indexOf(OPS, tokens[at + 1], name, "operator");
+            try {
+                threshold[c] = Double.parseDouble(tokens[at + 2]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Rule " + name + ": bad number '" + tokens[at + 2] + "'");
+            }
+        }
+
+        // message template
+        List<String> text = new ArrayList<>();
+        List<Integer> parts = new ArrayList<>();
+        int i = 0;
+        while (i < message.length()) {
+            int open = message.indexOf('{', i);
+            int close = open < 0 ? -1 : message.indexOf('}', open);
+            if (close < 0) {
+                text.add(message.substring(i));
+                parts.add(0);
+                break;
+            }
+            if (open > i) {
+                text.add(message.substring(i, open));
+                parts.add(0);
+            }
+            String key = message.substring(open + 1, close);
+            int code;
+            if (key.equals("symbol")) code = SYMBOL;
+            else if (key.equals("sector")) code = SECTOR;
+            else if (key.equals("value")) code = NUMBER;
+            else throw new IllegalArgumentException("Rule " + name + ": unknown placeholder {" + key + "}");
+            text.add(null);
+            parts.add(code);
+            i = close + 1;
+        }
+
+        int[] p = new int[parts.size()];
+        for (int k = 0; k < p.length; k++) p[k] = parts.get(k);
+        return new SuggestionRule(name, definition, scope, metric, op, threshold, text.toArray(new String[0]), p);
+    }
+
+    /** True when every condition holds for the metric values (indexed by metric code). */
+    boolean matches(double[] values) {
+        for (int c = 0; c < metric.length; c++) {
+            double v = values[metric[c]];
+            double t = threshold[c];
+            boolean ok;
+            if (op[c] == GT) ok = v > t;
+            else if (op[c] == GE) ok = v >= t;
+            else if (op[c] == LT) ok = v < t;
+            else ok = v <= t;
+            if (!ok) return false;
+        }
+        return true;
+    }
+
+    boolean uses(int m) {
+        for (int x : metric) if (x == m) return true;
+        return false;
+    }
+
+    /** The value {value} shows: the first condition's metric. */
+    double shown(double[] values) {
+        return values[metric[0]];
+    }
+
+    String format(String symbol, String sector, double value) {
+        StringBuilder sb = new StringBuilder(64);
+        for (int k = 0; k < parts.length; k++) {
+            if (parts[k] == 0) sb.append(text[k]);
+            else if (parts[k] == SYMBOL) sb.append(symbol);
+            else if (parts[k] == SECTOR) sb.append(sector);
+            else Fixed2.append(sb, value);
+        }
+        return sb.toString();
+    }
+
+    /* -----------------------------------------
+       HELPERS
+    ----------------------------------------- */
+
+    private static boolean allowed(Scope scope, int m) {
+        if (scope == Scope.HOLDING) return m <= QUANTITY;
+        if (scope == Scope.SECTOR) return m == WEIGHT || m == VALUE;
+        return m == VOLATILITY || m == PL || m == VALUE || m == DIVERSIFICATION;
+    }
+
+    private static int indexOf(String[] names, String s, String rule, String what) {
+        for (int i = 0; i < names.length; i++) if (names[i].equals(s)) return i;
+        throw new IllegalArgumentException("Rule " + rule + ": unknown " + what + " '" + s + "'");
+    }
+}
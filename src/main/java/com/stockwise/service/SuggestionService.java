@@ -1,58 +1,331 @@
 package com.stockwise.service;
 
 import com.stockwise.model.Portfolio;
-import com.stockwise.model.Stock;
+import com.stockwise.model.PortfolioSnapshot;
+import com.stockwise.util.Fixed2;
+import com.stockwise.util.Meters;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
 
+/**
+ * Suggestions from configurable rules (see {@link SuggestionRule}).
+ *
+ * The built-in rules are DEFAULT_RULES, in that order. A property
+ * stockwise.suggestions.rule.&lt;name&gt; redefines the rule of that name
+ * or defines a new one, and stockwise.suggestions.rules, when set, lists
+ * the rules to run and their order. Rules are compiled once into a plan: runs of
+ * consecutive rules with the same scope, evaluated against one snapshot.
+ * Within a run of holding rules the output goes holding by holding, so
+ * "overweight" and "underweight" of one holding sit together.
+ *
+ * A snapshot that gets re-priced in place (the live stream keeps one per
+ * portfolio) also keeps its results: the next call re-evaluates only the
+ * holdings whose price changed since, plus every holding for weight rules
+ * when the total moved. Messages are re-formatted only when the number
+ * they show changes at two decimals.
+ */
 @Service
 public class SuggestionService {
 
+    static final String[][] DEFAULT_RULES = {
+            {"overweight", "holding weight > 25 : {symbol} is Overweight ({value}%)"},
+            {"underweight", "holding weight < 1 : {symbol} is Underweight ({value}%)"},
+            {"volatility-high", "portfolio volatility > 30 : Portfolio volatility is High ({value})"},
+            {"volatility-medium", "portfolio volatility > 15 and volatility <= 30 : Portfolio volatility is Medium ({value})"},
+            {"volatility-low", "portfolio volatility <= 15 : Portfolio volatility is Low ({value})"},
+            {"take-profit", "holding pl > 20 : {symbol}: P/L {value}% — Consider booking profits"},
+            {"review-loss", "holding pl < -10 : {symbol}: P/L {value}% — Review holding"},
+            {"sector-concentration", "sector weight > 60 : Sector concentration: {sector} at {value}% — Diversify"},
+    };
+
+    private static final String BALANCED = "No strong suggestions: portfolio appears balanced.";
+
     private final PortfolioAnalysisService analysisService;
+    private final SuggestionRule[] rules;
+    private final int[][] plan; // runs of rule indexes sharing a scope, in rule order
+    private final Timer timer;
+
+    // results of snapshots that are re-priced in place; weak so dropped snapshots take theirs along
+    private final Map<PortfolioSnapshot, State> states = Collections.synchronizedMap(new WeakHashMap<>());
 
     public SuggestionService(PortfolioAnalysisService analysisService) {
+        this(analysisService, defaults(), Meters.none());
+    }
+
+    @Autowired
+    public SuggestionService(PortfolioAnalysisService analysisService, Environment env,
+                             @Value("${stockwise.suggestions.rules:}") String names, MeterRegistry meters) {
+        this(analysisService, configured(env, names), meters);
+    }
+
+    private SuggestionService(PortfolioAnalysisService analysisService, List<SuggestionRule> rules, MeterRegistry meters) {
         this.analysisService = analysisService;
+        this.rules = rules.toArray(new SuggestionRule[0]);
+        this.timer = Meters.analytics(meters, "suggestions");
+
+        List<int[]> runs = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i <= this.rules.length; i++) {
+            if (i == this.rules.length || this.rules[i].scope != this.rules[start].scope) {
+                int[] run = new int[i - start];
+                for (int k = 0; k < run.length; k++) run[k] = start + k;
+                runs.add(run);
+                start = i;
+            }
+        }
+        this.plan = runs.toArray(new int[0][]);
+    }
+
+    private static List<SuggestionRule> defaults() {
+        List<SuggestionRule> out = new ArrayList<>();
+        for (String[] r : DEFAULT_RULES) out.add(SuggestionRule.parse(r[0], r[1]));
+        return out;
+    }
+
+    private static List<SuggestionRule> configured(Environment env, String names) {
+        List<String> listed = new ArrayList<>();
+        if (names == null || names.isBlank()) {
+            for (String[] r : DEFAULT_RULES) listed.add(r[0]);
+        } else {
+            for (String name : names.split(",")) {
+                if (!name.isBlank()) listed.add(name.trim());
+            }
+        }
+        List<SuggestionRule> out = new ArrayList<>();
+        for (String name : listed) {
+            String def = env.getProperty("stockwise.suggestions.rule." + name, builtIn(name));
+            if (def == null) throw new IllegalArgumentException("No definition for suggestion rule " + name);
+            out.add(SuggestionRule.parse(name, def));
+        }
+        return out;
+    }
+
+    private static String builtIn(String name) {
+        for (String[] r : DEFAULT_RULES) if (r[0].equals(name)) return r[1];
+        return null;
     }
 
     public List<String> generateSuggestions(Portfolio p) {
-        List<String> out = new ArrayList<>();
-        Map<String, Double> alloc = analysisService.allocationPercent(p);
-        double vol = analysisService.volatilityScore(p);
+        return generateSuggestions(analysisService.snapshot(p));
+    }
+
+    public List<String> generateSuggestions(PortfolioSnapshot snap) {
+        return timer.record(() -> suggest(snap));
+    }
 
-        // overweight
-        for (Map.Entry<String, Double> e : alloc.entrySet()) {
-            if (e.getValue() > 25.0) {
-                out.add(e.getKey() + " is Overweight (" + String.format("%.2f", e.getValue()) + "%)");
-            } else if (e.getValue() < 1.0) {
-                out.add(e.getKey() + " is Underweight (" + String.format("%.2f", e.getValue()) + "%)");
+    private List<String> suggest(PortfolioSnapshot snap) {
+        // a snapshot nobody re-prices is evaluated once: don't keep anything for it
+        if (snap.version() == 0) return evaluate(snap, new State(false));
+
+        State st;
+        synchronized (states) {
+            st = states.get(snap);
+            if (st == null) {
+                st = new State(true);
+                states.put(snap, st);
             }
         }
+        synchronized (st) {
+            return evaluate(snap, st);
+        }
+    }
+
+    /** Per rule: how often it ran, on how many holdings/sectors, and how long it took. */
+    public List<Map<String, Object>> ruleStats() {
+        List<Map<String, Object>> out = new ArrayList<>(rules.length);
+        for (SuggestionRule r : rules) {
+            long runs = r.runs.sum(), nanos = r.nanos.sum();
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("name", r.name);
+            m.put("scope", r.scope.name().toLowerCase());
+            m.put("rule", r.definition);
+            m.put("runs", runs);
+            m.put("evaluated", r.evaluated.sum());
+            m.put("fired", r.fired.sum());
+            m.put("totalMicros", nanos / 1000);
+            m.put("avgMicros", runs == 0 ? 0.0 : nanos / 1000.0 / runs);
+            m.put("lastMicros", r.lastNanos / 1000.0);
+            out.add(m);
+        }
+        return out;
+    }
+
+    /* -----------------------------------------
+       EVALUATION
+    ----------------------------------------- */
 
-        // volatility threshold rules
-        if (vol > 30.0) out.add("Portfolio volatility is High (" + String.format("%.2f", vol) + ")");
-        else if (vol > 15.0) out.add("Portfolio volatility is Medium (" + String.format("%.2f", vol) + ")");
-        else out.add("Portfolio volatility is Low (" + String.format("%.2f", vol) + ")");
+    // What the last evaluation of one snapshot produced
+    private static class State {
+        final boolean keep;        // false: one-shot, nothing carries over
+        long version = -1;         // snapshot version last evaluated, -1 = never
+        double total;
+        String[][] messages;       // [rule][holding or sector], null where the rule didn't fire
+        double[][] shown;          // the number each message shows
+        BitSet[] firing;           // per run of holding rules: holdings with any message
+        int[] dirty = new int[16];
 
-        // per-stock P/L
-        for (Stock s : p.getStocks()) {
-            double pl = s.unrealizedPLPercent();
-            if (pl > 20.0) out.add(s.getSymbol() + ": P/L " + String.format("%.2f", pl) + "% — Consider booking profits");
-            if (pl < -10.0) out.add(s.getSymbol() + ": P/L " + String.format("%.2f", pl) + "% — Review holding");
+        State(boolean keep) {
+            this.keep = keep;
         }
+    }
+
+    private List<String> evaluate(PortfolioSnapshot snap, State st) {
+        int n = snap.size();
+        if (st.messages == null) {
+            st.messages = new String[rules.length][];
+            st.shown = new double[rules.length][];
+            st.firing = new BitSet[plan.length];
+        }
+
+        double total = analysisService.currentValue(snap);
+        boolean totalChanged = st.version < 0 || Double.compare(total, st.total) != 0;
 
-        // sector concentration
-        Map<String, Double> sectorAlloc = new HashMap<>();
-        double total = analysisService.currentValue(p);
-        if (total > 0) {
-            for (Stock s : p.getStocks()) sectorAlloc.put(s.getSector(), sectorAlloc.getOrDefault(s.getSector(), 0.0) + s.currentValue());
-            for (Map.Entry<String, Double> e : sectorAlloc.entrySet()) {
-                double pct = (e.getValue() / total) * 100.0;
-                if (pct > 60.0) out.add("Sector concentration: " + e.getKey() + " at " + String.format("%.2f", pct) + "% — Diversify");
+        // holdings re-priced since the last run; -1 means all of them
+        int dirtyCount = -1;
+        if (st.version >= 0) {
+            dirtyCount = 0;
+            for (int i = 0; i < n; i++) {
+                if (snap.changedAt(i) > st.version) {
+                    if (dirtyCount == st.dirty.length) st.dirty = Arrays.copyOf(st.dirty, dirtyCount * 2);
+                    st.dirty[dirtyCount++] = i;
+                }
+            }
+        }
+
+        List<String> out = new ArrayList<>();
+        double[] values = new double[7];
+        for (int g = 0; g < plan.length; g++) {
+            int[] run = plan[g];
+            SuggestionRule.Scope scope = rules[run[0]].scope;
+            if (scope == SuggestionRule.Scope.HOLDING) {
+                holdings(snap, st, g, total, totalChanged, dirtyCount, values, out);
+            } else if (scope == SuggestionRule.Scope.SECTOR) {
+                if (total > 0) sectors(snap, st, run, total, values, out);
+            } else {
+                portfolio(snap, st, run, total, values, out);
             }
         }
 
-        if (out.isEmpty()) out.add("No strong suggestions: portfolio appears balanced.");
+        st.version = snap.version();
+        st.total = total;
+        if (out.isEmpty()) out.add(BALANCED);
         return out;
     }
+
+    private void holdings(PortfolioSnapshot snap, State st, int g, double total, boolean totalChanged,
+                          int dirtyCount, double[] values, List<String> out) {
+        int n = snap.size();
+        int[] run = plan[g];
+        if (st.firing[g] == null) st.firing[g] = new BitSet(n);
+        BitSet firing = st.firing[g];
+        boolean anyAll = false;
+
+        for (int r : run) {
+            SuggestionRule rule = rules[r];
+            boolean all = dirtyCount < 0 || (totalChanged && rule.uses(SuggestionRule.WEIGHT));
+            anyAll |= all;
+            int count = all ? n : dirtyCount;
+            long t0 = System.nanoTime();
+            long fired = 0;
+            for (int k = 0; k < count; k++) {
+                int i = all ? k : st.dirty[k];
+                holdingValues(snap, i, total, values);
+                if (rule.matches(values)) {
+                    fired++;
+                    remember(st, r, i, n, rule, snap.symbol(i), snap.sector(i), rule.shown(values));
+                } else if (st.messages[r] != null) {
+                    st.messages[r][i] = null;
+                }
+            }
+            record(rule, t0, count, fired);
+        }
+
+        // refresh which holdings have something to say, then emit them holding by holding
+        int count = anyAll ? n : dirtyCount;
+        for (int k = 0; k < count; k++) {
+            int i = anyAll ? k : st.dirty[k];
+            boolean any = false;
+            for (int r : run) any |= st.messages[r] != null && st.messages[r][i] != null;
+            firing.set(i, any);
+        }
+        for (int i = firing.nextSetBit(0); i >= 0; i = firing.nextSetBit(i + 1)) {
+            for (int r : run) {
+                if (st.messages[r] != null && st.messages[r][i] != null) out.add(st.messages[r][i]);
+            }
+        }
+    }
+
+    private void sectors(PortfolioSnapshot snap, State st, int[] run, double total, double[] values, List<String> out) {
+        int sectors = snap.sectorCount();
+        for (int r : run) {
+            SuggestionRule rule = rules[r];
+            long t0 = System.nanoTime();
+            long fired = 0;
+            for (int k = 0; k < sectors; k++) {
+                values[SuggestionRule.VALUE] = snap.sectorValue(k);
+                values[SuggestionRule.WEIGHT] = snap.sectorValue(k) / total * 100;
+                if (rule.matches(values)) {
+                    fired++;
+                    out.add(remember(st, r, k, sectors, rule, null, snap.sectorName(k), rule.shown(values)));
+                }
+            }
+            record(rule, t0, sectors, fired);
+        }
+    }
+
+    private void portfolio(PortfolioSnapshot snap, State st, int[] run, double total, double[] values, List<String> out) {
+        values[SuggestionRule.VOLATILITY] = analysisService.volatilityScore(snap);
+        values[SuggestionRule.PL] = analysisService.unrealizedPLPercent(snap);
+        values[SuggestionRule.VALUE] = total;
+        values[SuggestionRule.DIVERSIFICATION] = analysisService.diversificationIndex(snap);
+        for (int r : run) {
+            SuggestionRule rule = rules[r];
+            long t0 = System.nanoTime();
+            boolean hit = rule.matches(values);
+            if (hit) out.add(remember(st, r, 0, 1, rule, null, null, rule.shown(values)));
+            record(rule, t0, 1, hit ? 1 : 0);
+        }
+    }
+
+    private static void holdingValues(PortfolioSnapshot snap, int i, double total, double[] values) {
+        double value = snap.value(i);
+        // rounded like the allocation view, so a rule agrees with the percentage shown next to it
+        double pct = total > 0 ? value / total * 100 : 0;
+        values[SuggestionRule.WEIGHT] = Math.round(pct * 100.0) / 100.0;
+        values[SuggestionRule.PL] = snap.plPercent(i);
+        values[SuggestionRule.VALUE] = value;
+        values[SuggestionRule.PRICE] = snap.price(i);
+        values[SuggestionRule.QUANTITY] = snap.quantity(i);
+    }
+
+    // the message for rule r at slot i, formatted again only if its number reads differently
+    private static String remember(State st, int r, int i, int slots, SuggestionRule rule,
+                                   String symbol, String sector, double shown) {
+        if (st.messages[r] == null || st.messages[r].length != slots) {
+            st.messages[r] = new String[slots];
+            if (st.keep) st.shown[r] = new double[slots];
+        }
+        String msg = st.messages[r][i];
+        if (msg == null || !st.keep || !Fixed2.sameText(st.shown[r][i], shown)) {
+            msg = rule.format(symbol, sector, shown);
+            st.messages[r][i] = msg;
+        }
+        if (st.keep) st.shown[r][i] = shown;
+        return msg;
+    }
+
+    private static void record(SuggestionRule rule, long t0, long evaluated, long fired) {
+        long took = System.nanoTime() - t0;
+        rule.runs.increment();
+        rule.evaluated.add(evaluated);
+        rule.fired.add(fired);
+        rule.nanos.add(took);
+        rule.lastNanos = took;
+    }
 }
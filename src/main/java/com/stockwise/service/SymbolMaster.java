@@ -0,0 +1,311 @@
+package com.stockwise.service;
+
+import com.stockwise.model.SymbolIds;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Instrument dictionary: every symbol the app knows gets one int id, one
+ * canonical String and its exchange and Yahoo symbol worked out once.
+ *
+ * The instrument list comes from stockwise.symbols.file when that exists,
+ * else from the copy bundled at /symbols/instruments.csv (column layout is
+ * described there). Listed instruments take ids 0..n-1 in file order, so
+ * ids are the same from run to run while the file is. Symbols, aliases and
+ * ISINs all resolve through one sorted key array searched by binary search;
+ * the same array answers prefix searches.
+ *
+ * Symbols outside the list (portfolios hold whatever users typed) follow
+ * the old default rule: indices (^NSEI) and suffixed symbols (TCS.BO) go to
+ * Yahoo as they are, anything else is an NSE symbol. Lookups (find, resolve,
+ * yahooSymbol, exchange, canonical) never assign anything. Only id(), for
+ * code that keeps the symbol around as an int, gives an unlisted symbol the
+ * next free id, at most max-unlisted of them: holdings loaded in columns
+ * (ColumnarHoldings) and the snapshots built from them are keyed this way.
+ *
+ * Only listed ids are stable. Unlisted ids depend on the order id() first
+ * sees the symbols and last only as long as the process, so they must not
+ * be written to the DB or handed out as identifiers; store the symbol.
+ */
+@Service
+public class SymbolMaster implements SymbolIds {
+
+    public static final String NSE = "NSE";
+    public static final String BSE = "BSE";
+    public static final String INDEX = "INDEX";
+
+    private static final String BUNDLED = "/symbols/instruments.csv";
+
+    // listed instruments, by id; never change after load
+    private final int listed;
+    private final String[] isin;
+    private final String[] name;
+
+    // all ids (listed, then unlisted); grown under the lock, published through the volatile fields
+    private volatile String[] symbol;
+    private volatile String[] yahoo;
+    private volatile String[] exchange;
+    private int size;
+
+    // symbols, aliases and ISINs of listed instruments, sorted; keyIds[k] is the id keys[k] resolves to
+    private final String[] keys;
+    private final int[] keyIds;
+
+    private final ConcurrentHashMap<String, Integer> unlisted = new ConcurrentHashMap<>();
+    private final int maxUnlisted;
+    private final String source;
+
+    public SymbolMaster(@Value("${stockwise.symbols.file:data/instruments.csv}") String file,
+                        @Value("${stockwise.symbols.max-unlisted:100000}") int maxUnlisted) {
+        this.maxUnlisted = Math.max(0, maxUnlisted);
+
+        List<String[]> rows = new ArrayList<>();
+        Path path = file == null || file.isBlank() ? null : Path.of(file);
+        String from = BUNDLED;
+        try {
+            if (path != null && Files.isRegularFile(path)) {
+                try (Reader r = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                    read(r, rows);
+                }
+                from = path.toString();
+            } else {
+                try (Reader r = new InputStreamReader(SymbolMaster.class.getResourceAsStream(BUNDLED), StandardCharsets.UTF_8)) {
+                    read(r, rows);
+                }
+            }
+        } catch (Exception e) {
+            System.out.println("⚠ Could not load instrument list " + from + ": " + e.getMessage());
+            rows.clear();
+        }
+        this.source = from;
+
+        int n = rows.size();
+        this.listed = n;
+        this.isin = new String[n];
+        this.name = new String[n];
+        String[] sym = new String[Math.max(16, n * 2)];
+        String[] yh = new String[sym.length];
+        String[] ex = new String[sym.length];
+
+        // key -> id; the first row claiming a key keeps it
+        TreeMap<String, Integer> index = new TreeMap<>();
+        for (int id = 0; id < n; id++) {
+            String[] row = rows.get(id);
+            sym[id] = row[0];
+            ex[id] = row[1];
+            isin[id] = row[2];
+            name[id] = row[3];
+            yh[id] = row[5] != null ? row[5] : yahooFor(row[0], row[1]);
+            index.putIfAbsent(row[0], id);
+            if (row[2] != null) index.putIfAbsent(row[2], id);
+            if (row[4] != null) {
+                for (String alias : row[4].split(";")) {
+                    String a = normalize(alias);
+                    if (!a.isEmpty()) index.putIfAbsent(a, id);
+                }
+            }
+        }
+        this.symbol = sym;
+        this.yahoo = yh;
+        this.exchange = ex;
+        this.size = n;
+        this.keys = index.keySet().toArray(new String[0]);
+        this.keyIds = new int[keys.length];
+        int k = 0;
+        for (int id : index.values()) keyIds[k++] = id;
+
+        System.out.println("🔤 Loaded " + n + " instrument(s) from " + from);
+    }
+
+    // ---------------- LOOKUPS -------------------
+
+    /** Trimmed and upper-cased; the same instance when it already is (no allocation). */
+    public static String normalize(String s) {
+        if (s == null) return "";
+        int len = s.length();
+        boolean clean = len > 0 && s.charAt(0) > ' ' && s.charAt(len - 1) > ' ';
+        for (int i = 0; clean && i < len; i++) {
+            char c = s.charAt(i);
+            if (c >= 'a' && c <= 'z' || c >= 0x80) clean = false;
+        }
+        return clean ? s : s.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /** Id of a listed symbol, alias or ISIN, or of an unlisted symbol id() has seen; -1 otherwise. Assigns nothing. */
+    @Override
+    public int find(String symbol) {
+        String s = normalize(symbol);
+        int k = Arrays.binarySearch(keys, s);
+        if (k >= 0) return keyIds[k];
+        Integer id = unlisted.get(s);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Id of the symbol; unlisted symbols get one on first sight (-1 once
+     * max-unlisted is reached). For callers that keep the symbol; lookups use find().
+     */
+    @Override
+    public int id(String symbol) {
+        int id = find(symbol);
+        if (id >= 0) return id;
+        String s = normalize(symbol);
+        if (s.isEmpty()) return -1;
+        return assign(s);
+    }
+
+    @Override
+    public String symbol(int id) { return symbol[id]; }
+
+    public String yahooSymbol(int id) { return yahoo[id]; }
+
+    public String exchange(int id) { return exchange[id]; }
+
+    public boolean isListed(int id) { return id >= 0 && id < listed; }
+
+    /** The canonical symbol: aliases and ISINs become the listed symbol. */
+    public String canonical(String symbol) {
+        int id = find(symbol);
+        return id >= 0 ? this.symbol[id] : normalize(symbol);
+    }
+
+    /** What to ask Yahoo for: HDFC -> HDFCBANK.NS, ^NSEI -> ^NSEI, ITC -> ITC.NS. */
+    public String yahooSymbol(String symbol) {
+        int id = find(symbol);
+        if (id >= 0) return yahoo[id];
+        String s = normalize(symbol);
+        return yahooFor(s, exchangeOf(s));
+    }
+
+    /** NSE, BSE, INDEX, or the Yahoo suffix of symbols on other exchanges. */
+    public String exchange(String symbol) {
+        int id = find(symbol);
+        return id >= 0 ? exchange[id] : exchangeOf(normalize(symbol));
+    }
+
+    /** Everything known about a symbol, alias or ISIN; id only when it has one. */
+    public Map<String, Object> resolve(String query) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        String q = normalize(query);
+        int id = q.isEmpty() ? -1 : find(q);
+        out.put("query", q);
+        out.put("listed", isListed(id));
+        if (q.isEmpty()) return out;
+        if (id >= 0) out.put("id", id);
+        String exch = id >= 0 ? exchange[id] : exchangeOf(q);
+        out.put("symbol", id >= 0 ? symbol[id] : q);
+        out.put("exchange", exch);
+        out.put("yahoo", id >= 0 ? yahoo[id] : yahooFor(q, exch));
+        if (isListed(id)) {
+            out.put("isin", isin[id]);
+            out.put("name", name[id]);
+        }
+        return out;
+    }
+
+    /** Listed instruments with a symbol, alias or ISIN starting with prefix, in key order. */
+    public List<Map<String, Object>> search(String prefix, int limit) {
+        String p = normalize(prefix);
+        List<Map<String, Object>> out = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        int k = Arrays.binarySearch(keys, p);
+        if (k < 0) k = -k - 1;
+        for (; k < keys.length && out.size() < limit && keys[k].startsWith(p); k++) {
+            int id = keyIds[k];
+            if (seen.add(id)) out.add(resolve(symbol[id]));
+        }
+        return out;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("source", source);
+        out.put("listed", listed);
+        out.put("keys", keys.length);
+        out.put("unlisted", unlisted.size());
+        out.put("maxUnlisted", maxUnlisted);
+        return out;
+    }
+
+    // ---------------- HELPERS -------------------
+
+    private synchronized int assign(String s) {
+        Integer id = unlisted.get(s);
+        if (id != null) return id;
+        if (unlisted.size() >= maxUnlisted) return -1;
+
+        int next = size;
+        String[] sym = symbol, yh = yahoo, ex = exchange;
+        if (next == sym.length) {
+            int cap = sym.length * 2;
+            sym = Arrays.copyOf(sym, cap);
+            yh = Arrays.copyOf(yh, cap);
+            ex = Arrays.copyOf(ex, cap);
+        }
+        String exch = exchangeOf(s);
+        sym[next] = s;
+        yh[next] = yahooFor(s, exch);
+        ex[next] = exch;
+        // arrays first, then the map entry readers find the id through
+        symbol = sym;
+        yahoo = yh;
+        exchange = ex;
+        size = next + 1;
+        unlisted.put(s, next);
+        return next;
+    }
+
+    // exchange of an unlisted symbol, from its form
+    private static String exchangeOf(String s) {
+        if (s.startsWith("^")) return INDEX;
+        int dot = s.lastIndexOf('.');
+        if (dot < 0) return NSE;
+        String suffix = s.substring(dot + 1);
+        if (suffix.equals("NS")) return NSE;
+        if (suffix.equals("BO")) return BSE;
+        return suffix;
+    }
+
+    private static String yahooFor(String s, String exchange) {
+        if (s.startsWith("^") || s.contains(".")) return s;
+        if (exchange.equals(NSE)) return s + ".NS";
+        if (exchange.equals(BSE)) return s + ".BO";
+        return s;
+    }
+
+    // rows as [symbol, exchange, isin, name, aliases, yahoo], blanks as null
+    private static void read(Reader in, List<String[]> rows) throws IOException {
+        Iterable<CSVRecord> records = CSVFormat.DEFAULT.builder()
+                .setHeader().setSkipHeaderRecord(true)
+                .setCommentMarker('#')
+                .setIgnoreEmptyLines(true)
+                .setTrim(true)
+                .build()
+                .parse(in);
+        for (CSVRecord rec : records) {
+            String sym = normalize(column(rec, "symbol"));
+            if (sym.isEmpty()) continue;
+            String ex = column(rec, "exchange");
+            ex = ex == null ? exchangeOf(sym) : normalize(ex);
+            String isin = column(rec, "isin");
+            String yahoo = column(rec, "yahoo");
+            rows.add(new String[]{sym, ex, isin == null ? null : normalize(isin), column(rec, "name"),
+                    column(rec, "aliases"), yahoo == null ? null : normalize(yahoo)});
+        }
+    }
+
+    private static String column(CSVRecord rec, String name) {
+        if (!rec.isMapped(name) || !rec.isSet(name)) return null;
+        String v = rec.get(name);
+        return v == null || v.isBlank() ? null : v.trim();
+    }
+}
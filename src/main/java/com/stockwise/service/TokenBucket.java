@@ -0,0 +1,42 @@
+package com.stockwise.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token-bucket rate limiter: {@code perSecond} tokens a second, at most
+ * {@code burst} saved up. Callers reserve a token and are told how long to
+ * wait before using it, so nobody blocks a thread here; a reservation that
+ * would have to wait longer than the caller can afford is refused and
+ * costs nothing. A rate of 0 or less means no limit.
+ */
+public class TokenBucket {
+
+    private final double nanosPerToken;
+    private final double burst;
+
+    // guarded by this; goes negative while reservations are queued up
+    private double tokens;
+    private long refilledAt;
+
+    public TokenBucket(double perSecond, int burst) {
+        this.nanosPerToken = perSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / perSecond : 0;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /** Nanos to wait before the call may go out, or -1 if that would be longer than maxWaitNanos. */
+    public synchronized long reserve(long maxWaitNanos) {
+        if (nanosPerToken == 0) return 0;
+
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilledAt) / nanosPerToken);
+        refilledAt = now;
+
+        double left = tokens - 1;
+        long wait = left >= 0 ? 0 : (long) Math.ceil(-left * nanosPerToken);
+        if (wait > maxWaitNanos) return -1;
+        tokens = left;
+        return wait;
+    }
+}
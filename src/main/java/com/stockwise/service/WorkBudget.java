@@ -0,0 +1,37 @@
+package com.stockwise.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control by cost: requests declare what they will cost up front
+ * and run only while the costs of everything running stay within the
+ * budget; the rest are refused at once instead of queueing for CPU. A
+ * request costing more than the whole budget is let in only when nothing
+ * else is running, so it can never be starved nor run beside others.
+ */
+public class WorkBudget {
+
+    private final long budget;
+    private final AtomicLong inUse = new AtomicLong();
+
+    public WorkBudget(long budget) {
+        this.budget = Math.max(1, budget);
+    }
+
+    /** True if the cost was admitted; pair every admitted call with release(cost). */
+    public boolean tryAcquire(long cost) {
+        while (true) {
+            long used = inUse.get();
+            if (used > 0 && used + cost > budget) return false;
+            if (inUse.compareAndSet(used, used + cost)) return true;
+        }
+    }
+
+    public void release(long cost) {
+        inUse.addAndGet(-cost);
+    }
+
+    public long inUse() { return inUse.get(); }
+
+    public long budget() { return budget; }
+}
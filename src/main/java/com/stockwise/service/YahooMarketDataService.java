@@ -2,115 +2,569 @@ package com.stockwise.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.stockwise.util.YahooSymbolMapper;
+import com.stockwise.model.PriceBars;
+import com.stockwise.repository.PriceHistoryRepository;
+import com.stockwise.util.Meters;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 
 
-import org.springframework.context.annotation.Primary;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.time.Instant;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
- * Fetches REAL stock prices from Yahoo Finance.
- * This class is @Primary so Spring will use this FIRST.
+ * Fetches REAL stock prices from Yahoo Finance: the "yahoo" provider of
+ * {@link CompositeMarketDataService}, which is what callers get.
+ *
+ * Symbols are fetched concurrently: cache misses are grouped into
+ * multi-symbol "spark" requests, anything the batch does not answer falls
+ * back to a per-symbol chart request, and at most {@code maxConcurrency}
+ * HTTP calls are in flight at once. A whole fetchPrices call never waits
+ * longer than {@code deadlineMs}; symbols still outstanding then get 0.0.
+ * Results go through a {@link QuoteCache}.
+ *
+ * The 1m bars that come back with every quote are handed to the bar
+ * listeners (see PriceHistoryService) instead of being dropped.
+ *
+ * Upstream protection, so a throttling or dead Yahoo costs milliseconds
+ * rather than the full deadline on every call:
+ * - every HTTP request takes a token from a {@link TokenBucket} sized to the
+ *   upstream quota; one that can't get a token before its deadline is refused
+ * - a {@link CircuitBreaker} trips on timeouts, connection errors and HTTP
+ *   429/5xx, and while open requests fail without going out
+ * - at most {@code maxCallers} threads wait on upstream for quotes at once
+ *   (the bulkhead); any others get what the cache has right away, so Tomcat
+ *   threads can't all end up parked on a dead upstream
+ * A symbol that gets no fresh price falls back to its last known good one
+ * from the cache, however old, and only gets 0.0 if it never had one.
+ *
+ * Metrics: each upstream request is timed as stockwise.market.fetch
+ * {request, outcome}, each symbol a fetchPrices call had to load is counted
+ * in stockwise.market.prices{outcome}, refused calls in
+ * stockwise.market.rejected{reason}, last-known-good answers in
+ * stockwise.market.fallback, the breaker state is a gauge, and the cache
+ * publishes its counters.
  */
 @Service
-@Primary
 public class YahooMarketDataService implements MarketDataService {
 
     private final ObjectMapper mapper = new ObjectMapper();
-    private final Map<String, CacheEntry> cache = new HashMap<>();
-    private final long CACHE_TTL_MS = 4000; // 4 seconds
+    private final QuoteCache cache;
+
+    private final String baseUrl;
+    private final long deadlineMs;
+    private final int batchSize;
+    private final HttpClient http;
+    private final AsyncLimiter limiter;
+    private final TokenBucket rateLimit;
+    private final CircuitBreaker breaker;
+    private final Semaphore bulkhead;
+    private final long bulkheadWaitMs;
+    private final List<BarListener> barListeners = new CopyOnWriteArrayList<>();
+    private final MeterRegistry meters;
+    private final SymbolMaster symbols;
+
+    public YahooMarketDataService(
+            @Value("${stockwise.market.yahoo.base-url:https://query1.finance.yahoo.com}") String baseUrl,
+            @Value("${stockwise.market.max-concurrency:8}") int maxConcurrency,
+            @Value("${stockwise.market.deadline-ms:6000}") long deadlineMs,
+            @Value("${stockwise.market.batch-size:20}") int batchSize,
+            @Value("${stockwise.market.cache.ttl-ms:4000}") long cacheTtlMs,
+            @Value("${stockwise.market.cache.stale-ms:60000}") long cacheStaleMs,
+            @Value("${stockwise.market.cache.max-size:10000}") int cacheMaxSize,
+            @Value("${stockwise.market.rate-limit.per-second:10}") double ratePerSecond,
+            @Value("${stockwise.market.rate-limit.burst:20}") int rateBurst,
+            @Value("${stockwise.market.breaker.window:20}") int breakerWindow,
+            @Value("${stockwise.market.breaker.minimum-calls:10}") int breakerMinCalls,
+            @Value("${stockwise.market.breaker.failure-rate-percent:50}") double breakerFailurePercent,
+            @Value("${stockwise.market.breaker.open-ms:30000}") long breakerOpenMs,
+            @Value("${stockwise.market.bulkhead.max-callers:8}") int bulkheadMaxCallers,
+            @Value("${stockwise.market.bulkhead.max-wait-ms:0}") long bulkheadWaitMs,
+            SymbolMaster symbols,
+            MeterRegistry meters) {
+
+        this.symbols = symbols;
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.deadlineMs = deadlineMs;
+        this.batchSize = Math.max(1, batchSize);
+        this.limiter = new AsyncLimiter(Math.max(1, maxConcurrency));
+        this.rateLimit = new TokenBucket(ratePerSecond, rateBurst);
+        this.breaker = new CircuitBreaker("Market data", breakerWindow, breakerMinCalls, breakerFailurePercent / 100.0, breakerOpenMs);
+        this.bulkhead = new Semaphore(Math.max(1, bulkheadMaxCallers));
+        this.bulkheadWaitMs = bulkheadWaitMs;
+        this.http = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(4000))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(Executors.newFixedThreadPool(Math.max(1, maxConcurrency), daemonThreads("yahoo-http")))
+                .build();
+
+        // stale entries are reloaded here, off the request thread
+        ThreadPoolExecutor refresher = new ThreadPoolExecutor(1, 2, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(64), daemonThreads("quote-refresh"), new ThreadPoolExecutor.AbortPolicy());
+        this.cache = new QuoteCache(cacheTtlMs, cacheStaleMs, cacheMaxSize, deadlineMs, refresher);
+        this.meters = meters;
+        cache.bindTo(meters);
+        for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+            Gauge.builder(Meters.MARKET_BREAKER + ".state", breaker, b -> b.state() == state ? 1 : 0)
+                    .description("1 for the state the upstream circuit breaker is in")
+                    .tag("state", state.name().toLowerCase())
+                    .register(meters);
+        }
+    }
 
     @Override
     public Map<String, Double> fetchPrices(String[] symbols) {
+        Set<String> clean = new LinkedHashSet<>();
+        for (String sym : symbols) {
+            if (sym != null) clean.add(SymbolMaster.normalize(sym));
+        }
+
+        // Cache first; misses are fetched from Yahoo in parallel
+        Map<String, Double> prices = cache.getAll(clean, this::fetchGuarded);
+
         Map<String, Double> out = new LinkedHashMap<>();
+        int fallbacks = 0;
+        for (String s : clean) {
+            Double price = prices.get(s);
+            if (price == null) {
+                // upstream failed, timed out or was skipped: last known good beats 0.0
+                price = cache.getIfPresent(s).orElse(0.0);
+                if (price > 0) fallbacks++;
+            }
+            out.put(s, price);
+        }
+        if (fallbacks > 0) Meters.marketFallback(meters).increment(fallbacks);
+        return out;
+    }
 
+    public Map<String, Object> cacheStats() {
+        return cache.stats();
+    }
+
+    public Map<String, Object> resilienceStats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("breaker", breaker.stats());
+        out.put("bulkheadAvailable", bulkhead.availablePermits());
+        return out;
+    }
+
+    public void addBarListener(BarListener l) {
+        barListeners.add(l);
+    }
+
+    /**
+     * Bars for one symbol between two epoch seconds, straight from the chart
+     * endpoint (no cache, no listeners). Waits at most the fetch deadline;
+     * returns no bars when upstream doesn't answer in time.
+     */
+    public PriceBars fetchHistory(String symbol, String interval, long from, long to) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+        String urlStr = baseUrl + "/v8/finance/chart/" + URLEncoder.encode(symbols.yahooSymbol(symbol), StandardCharsets.UTF_8) +
+                "?period1=" + from + "&period2=" + to + "&interval=" + URLEncoder.encode(interval, StandardCharsets.UTF_8);
+
+        try {
+            return send(urlStr, deadline).thenApply(is -> {
+                try (is) {
+                    JsonNode result = mapper.readTree(is).path("chart").path("result");
+                    return result.isArray() && !result.isEmpty() ? parseBars(result.get(0)) : new PriceBars();
+                } catch (Exception ex) {
+                    throw new CompletionException(ex);
+                }
+            }).get(deadlineMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.out.println("⚠ History fetch failed for " + symbol + ": " + e.getMessage());
+        }
+        return new PriceBars();
+    }
+
+    // The bulkhead: a caller that can't get a slot fails the load, and fetchPrices falls back to the cache.
+    // With the breaker open the whole load is refused at once rather than request by request.
+    private Map<String, Double> fetchGuarded(List<String> symbols) {
+        if (breaker.isOpen()) {
+            Meters.marketRejected(meters, "circuit-open").increment();
+            throw new RejectedExecutionException("market data circuit open");
+        }
+        boolean entered;
+        try {
+            entered = bulkhead.tryAcquire(bulkheadWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            entered = false;
+        }
+        if (!entered) {
+            Meters.marketRejected(meters, "bulkhead").increment();
+            throw new RejectedExecutionException("market data bulkhead full");
+        }
+        try {
+            return fetchConcurrently(symbols);
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * Fans the symbols out over batched and per-symbol requests and waits
+     * until every one is answered or the deadline passes, whichever is first.
+     * Whatever arrived in time is returned; late answers are dropped.
+     */
+    private Map<String, Double> fetchConcurrently(List<String> symbols) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+        Map<String, Double> results = new ConcurrentHashMap<>();
+        Set<String> settled = ConcurrentHashMap.newKeySet(); // answered by a per-symbol request, priced or not
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+
+        for (int from = 0; from < symbols.size(); from += batchSize) {
+            List<String> batch = symbols.subList(from, Math.min(symbols.size(), from + batchSize));
+            pending.add(fetchBatch(batch, results, settled, deadline));
+        }
+
+        try {
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]))
+                    .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            System.out.println("⚠ Yahoo fetch deadline hit, " + (symbols.size() - results.size()) + " symbol(s) unanswered");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // individual failures are already mapped to "no price"
+        }
+
+        Map<String, Double> out = new HashMap<>(results);
+        int timedOut = 0;
         for (String sym : symbols) {
-            if (sym == null) continue;
+            if (!out.containsKey(sym) && !settled.contains(sym)) timedOut++;
+        }
+        Meters.marketPrices(meters, "success").increment(out.size());
+        Meters.marketPrices(meters, "zero").increment(symbols.size() - out.size() - timedOut);
+        Meters.marketPrices(meters, "timeout").increment(timedOut);
+        return out;
+    }
 
-            String clean = sym.toUpperCase().trim();
+    // One multi-symbol request; whatever it does not answer is retried per symbol
+    private CompletableFuture<Void> fetchBatch(List<String> batch, Map<String, Double> results, Set<String> settled, long deadline) {
+        CompletableFuture<Map<String, Double>> spark = batch.size() == 1
+                ? CompletableFuture.completedFuture(Collections.emptyMap())
+                : fetchSpark(batch, deadline).exceptionally(ex -> Collections.emptyMap());
 
-            // 1) Check cache
-            CacheEntry ce = cache.get(clean);
-            if (ce != null && (Instant.now().toEpochMilli() - ce.ts) < CACHE_TTL_MS) {
-                out.put(clean, ce.price);
-                continue;
-            }
+        return spark.thenCompose(found -> {
+            results.putAll(found);
 
-            // 2) Fetch from Yahoo
-            double price = 0;
-            try {
-                price = fetchPrice(clean);
-            } catch (Exception ex) {
-                price = 0.0;
+            List<CompletableFuture<Void>> singles = new ArrayList<>();
+            for (String sym : batch) {
+                if (found.containsKey(sym)) continue;
+                singles.add(fetchPrice(sym, deadline)
+                        .thenAccept(price -> { if (price > 0) results.put(sym, price); })
+                        .whenComplete((v, ex) -> settled.add(sym))
+                        .exceptionally(ex -> null));
             }
+            return CompletableFuture.allOf(singles.toArray(new CompletableFuture<?>[0]));
+        });
+    }
+
+    private CompletableFuture<Map<String, Double>> fetchSpark(List<String> batch, long deadline) {
 
-            cache.put(clean, new CacheEntry(price, Instant.now().toEpochMilli()));
-            out.put(clean, price);
+        // Yahoo symbol -> the caller's symbols asking for it (HDFC and HDFCBANK share one)
+        Map<String, List<String>> byYahoo = new LinkedHashMap<>();
+        for (String sym : batch) {
+            byYahoo.computeIfAbsent(symbols.yahooSymbol(sym), k -> new ArrayList<>()).add(sym);
         }
-        return out;
+
+        String urlStr = baseUrl + "/v8/finance/spark?symbols=" +
+                URLEncoder.encode(String.join(",", byYahoo.keySet()), StandardCharsets.UTF_8) +
+                "&range=1d&interval=1m";
+
+        long t0 = System.nanoTime();
+        return send(urlStr, deadline).thenApply(is -> {
+            Map<String, Double> out = new HashMap<>();
+            try (is) {
+                JsonNode root = mapper.readTree(is);
+
+                // Two response shapes are in the wild: {"spark":{"result":[...]}} and {"SYM":{...}}
+                JsonNode result = root.path("spark").path("result");
+                if (result.isArray()) {
+                    for (JsonNode r : result) {
+                        JsonNode resp = r.path("response");
+                        double price = resp.isArray() && resp.size() > 0 ? parseChartResult(resp.get(0)) : 0;
+                        collect(out, byYahoo.get(r.path("symbol").asText()), price);
+                        if (resp.isArray() && resp.size() > 0) publishBars(byYahoo.get(r.path("symbol").asText()), parseBars(resp.get(0)));
+                    }
+                } else {
+                    Iterator<Map.Entry<String, JsonNode>> it = root.fields();
+                    while (it.hasNext()) {
+                        Map.Entry<String, JsonNode> e = it.next();
+                        collect(out, byYahoo.get(e.getKey()), lastNumber(e.getValue().path("close")));
+                        publishBars(byYahoo.get(e.getKey()), parseCloses(e.getValue()));
+                    }
+                }
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+            return out;
+        }).whenComplete((found, ex) -> record("spark", t0, found == null || found.isEmpty() ? 0 : 1, ex));
     }
 
-    private double fetchPrice(String symbol) throws Exception {
+    private CompletableFuture<Double> fetchPrice(String symbol, long deadline) {
 
-        // If no exchange is provided → assume Indian NSE → append .NS
-        String yahooSymbol = YahooSymbolMapper.map(symbol);
+        // listed instruments map as listed; anything else without an exchange suffix is NSE
+        String yahooSymbol = symbols.yahooSymbol(symbol);
 
 
         String urlStr =
-                "https://query1.finance.yahoo.com/v8/finance/chart/" + yahooSymbol +
+                baseUrl + "/v8/finance/chart/" + URLEncoder.encode(yahooSymbol, StandardCharsets.UTF_8) +
                         "?range=1d&interval=1m";
 
-        URL url = new URL(urlStr);
-        HttpURLConnection con = (HttpURLConnection) url.openConnection();
-        con.setRequestMethod("GET");
-        con.setRequestProperty("User-Agent", "Mozilla/5.0");
-        con.setConnectTimeout(4000);
-        con.setReadTimeout(4000);
+        long t0 = System.nanoTime();
+        return send(urlStr, deadline).thenApply(is -> {
+            try (is) {
+                JsonNode root = mapper.readTree(is);
 
-        try (InputStream is = con.getInputStream()) {
-            JsonNode root = mapper.readTree(is);
+                JsonNode result = root.path("chart").path("result");
+                if (!result.isArray() || result.isEmpty()) return 0.0;
 
-            JsonNode result = root.path("chart").path("result");
-            if (!result.isArray() || result.isEmpty()) return 0;
+                publishBars(List.of(symbol), parseBars(result.get(0)));
+                return parseChartResult(result.get(0));
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+        }).whenComplete((price, ex) -> record("chart", t0, price == null ? 0 : price, ex));
+    }
 
-            JsonNode meta = result.get(0).path("meta");
+    // One upstream request: success, zero (answered without a price), timeout, rejected or error
+    private void record(String request, long t0, double price, Throwable ex) {
+        String outcome;
+        if (ex == null) outcome = price > 0 ? "success" : "zero";
+        else if (isTimeout(ex)) outcome = "timeout";
+        else outcome = rootCause(ex) instanceof RejectedExecutionException ? "rejected" : "error";
+        Meters.marketFetch(meters, request, outcome).record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+    }
 
-            // 1) Try regularMarketPrice
-            if (meta.has("regularMarketPrice")) {
-                return meta.get("regularMarketPrice").asDouble();
-            }
+    private static boolean isTimeout(Throwable ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof TimeoutException || t instanceof HttpTimeoutException) return true;
+        }
+        return false;
+    }
 
-            // 2) Try last close
-            JsonNode indicators = result.get(0).path("indicators").path("quote");
-            if (indicators.isArray() && indicators.size() > 0) {
-                JsonNode closeArr = indicators.get(0).path("close");
-                if (closeArr.isArray()) {
-                    for (int i = closeArr.size() - 1; i >= 0; i--) {
-                        JsonNode val = closeArr.get(i);
-                        if (val != null && val.isNumber()) {
-                            return val.asDouble();
-                        }
-                    }
+    private static Throwable rootCause(Throwable ex) {
+        while ((ex instanceof CompletionException || ex instanceof ExecutionException) && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+        return ex;
+    }
+
+    private double parseChartResult(JsonNode result) {
+        JsonNode meta = result.path("meta");
+
+        // 1) Try regularMarketPrice
+        if (meta.has("regularMarketPrice")) {
+            return meta.get("regularMarketPrice").asDouble();
+        }
+
+        // 2) Try last close
+        JsonNode indicators = result.path("indicators").path("quote");
+        if (indicators.isArray() && indicators.size() > 0) {
+            return lastNumber(indicators.get(0).path("close"));
+        }
+
+        return 0.0;
+    }
+
+    // OHLCV bars of a chart result; minutes without a close are skipped
+    private static PriceBars parseBars(JsonNode result) {
+        JsonNode ts = result.path("timestamp");
+        JsonNode quotes = result.path("indicators").path("quote");
+        JsonNode q = quotes.isArray() && quotes.size() > 0 ? quotes.get(0) : null;
+        PriceBars bars = new PriceBars(Math.max(1, ts.size()));
+        if (!ts.isArray() || q == null) return bars;
+
+        JsonNode o = q.path("open"), h = q.path("high"), l = q.path("low"), c = q.path("close"), v = q.path("volume");
+        for (int i = 0; i < ts.size(); i++) {
+            JsonNode close = c.get(i);
+            if (close == null || !close.isNumber()) continue;
+            bars.add(ts.get(i).asLong(), num(o, i), num(h, i), num(l, i), close.asDouble(),
+                     v.get(i) != null && v.get(i).isNumber() ? v.get(i).asLong() : 0);
+        }
+        return bars;
+    }
+
+    // Spark's {"timestamp":[...],"close":[...]} shape: closes only
+    private static PriceBars parseCloses(JsonNode node) {
+        JsonNode ts = node.path("timestamp"), c = node.path("close");
+        PriceBars bars = new PriceBars(Math.max(1, ts.size()));
+        if (!ts.isArray()) return bars;
+        for (int i = 0; i < ts.size(); i++) {
+            JsonNode close = c.get(i);
+            if (close == null || !close.isNumber()) continue;
+            bars.add(ts.get(i).asLong(), Double.NaN, Double.NaN, Double.NaN, close.asDouble(), 0);
+        }
+        return bars;
+    }
+
+    private static double num(JsonNode arr, int i) {
+        JsonNode n = arr.get(i);
+        return n != null && n.isNumber() ? n.asDouble() : Double.NaN;
+    }
+
+    private void publishBars(List<String> symbols, PriceBars bars) {
+        if (symbols == null || bars.isEmpty()) return;
+        for (BarListener l : barListeners) {
+            for (String s : symbols) {
+                try {
+                    l.onBars(s, PriceHistoryRepository.INTRADAY, bars);
+                } catch (Exception ex) {
+                    ex.printStackTrace();
                 }
             }
         }
+    }
 
+    private double lastNumber(JsonNode closeArr) {
+        if (closeArr.isArray()) {
+            for (int i = closeArr.size() - 1; i >= 0; i--) {
+                JsonNode val = closeArr.get(i);
+                if (val != null && val.isNumber()) {
+                    return val.asDouble();
+                }
+            }
+        }
         return 0.0;
     }
 
-    // Cache entry
-    private static class CacheEntry {
-        double price;
-        long ts;
-        CacheEntry(double price, long ts) {
-            this.price = price;
-            this.ts = ts;
+    private void collect(Map<String, Double> out, List<String> symbols, double price) {
+        if (symbols == null || price <= 0) return;
+        for (String s : symbols) out.put(s, price);
+    }
+
+    /**
+     * One upstream GET. The breaker permit is taken first, then a rate-limit
+     * token (waiting for it off-thread if need be), then an in-flight slot.
+     * Timeouts, connection errors and HTTP 429/5xx count against the breaker;
+     * other statuses (a 404 for an unknown symbol) are upstream working fine.
+     */
+    private CompletableFuture<InputStream> send(String urlStr, long deadline) {
+        if (!breaker.tryAcquire()) {
+            Meters.marketRejected(meters, "circuit-open").increment();
+            return CompletableFuture.failedFuture(new RejectedExecutionException("market data circuit open"));
+        }
+        long wait = rateLimit.reserve(deadline - System.nanoTime());
+        if (wait < 0) {
+            breaker.release();
+            Meters.marketRejected(meters, "rate-limit").increment();
+            return CompletableFuture.failedFuture(new RejectedExecutionException("market data rate limit"));
+        }
+        if (wait == 0) return sendPermitted(urlStr, deadline);
+
+        Executor later = CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS);
+        return CompletableFuture.runAsync(() -> {}, later).thenCompose(v -> sendPermitted(urlStr, deadline));
+    }
+
+    private CompletableFuture<InputStream> sendPermitted(String urlStr, long deadline) {
+        return limiter.submit(() -> {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                breaker.release();
+                return CompletableFuture.failedFuture(new TimeoutException("deadline passed before request was sent"));
+            }
+
+            CompletableFuture<HttpResponse<InputStream>> sent;
+            try {
+                HttpRequest req = HttpRequest.newBuilder(URI.create(urlStr))
+                        .GET()
+                        .header("User-Agent", "Mozilla/5.0")
+                        .timeout(Duration.ofNanos(Math.min(remaining, TimeUnit.SECONDS.toNanos(4))))
+                        .build();
+                sent = http.sendAsync(req, HttpResponse.BodyHandlers.ofInputStream());
+            } catch (RuntimeException e) {
+                // a bad URL or a client that won't take the request: nothing went out, hand the permit back
+                breaker.release();
+                return CompletableFuture.failedFuture(e);
+            }
+
+            return sent.whenComplete((resp, ex) -> {
+                if (ex != null || resp.statusCode() == 429 || resp.statusCode() >= 500) breaker.onFailure();
+                else breaker.onSuccess();
+            }).thenApply(resp -> {
+                if (resp.statusCode() != 200) {
+                    try { resp.body().close(); } catch (Exception ignored) {}
+                    throw new CompletionException(new IllegalStateException("HTTP " + resp.statusCode() + " for " + urlStr));
+                }
+                return resp.body();
+            });
+        });
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /** Receives the bars that came back with a quote request. */
+    @FunctionalInterface
+    public interface BarListener {
+        void onBars(String symbol, String interval, PriceBars bars);
+    }
+
+    /**
+     * Caps the number of in-flight async calls without blocking the caller:
+     * tasks over the limit wait in a queue and start as earlier ones finish.
+     */
+    private static class AsyncLimiter {
+        private final Semaphore permits;
+        private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+
+        AsyncLimiter(int maxInFlight) {
+            this.permits = new Semaphore(maxInFlight);
+        }
+
+        <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> task) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            waiting.add(() -> {
+                CompletableFuture<T> f;
+                try {
+                    f = task.get();
+                } catch (Throwable t) {
+                    f = CompletableFuture.failedFuture(t);
+                }
+                f.whenComplete((v, ex) -> {
+                    permits.release();
+                    drain();
+                    if (ex != null) result.completeExceptionally(ex);
+                    else result.complete(v);
+                });
+            });
+            drain();
+            return result;
+        }
+
+        private void drain() {
+            while (!waiting.isEmpty() && permits.tryAcquire()) {
+                Runnable next = waiting.poll();
+                if (next == null) {
+                    permits.release();
+                    return;
+                }
+                next.run();
+            }
         }
     }
 }
@@ -0,0 +1,42 @@
+package com.stockwise.util;
+
+import java.util.Locale;
+
+/**
+ * Accept-Encoding negotiation (RFC 9110 12.5.3): a coding is acceptable
+ * when it, or failing that "*", is listed with a q-value above 0. "x-gzip"
+ * counts as gzip. Malformed q-values make their entry unacceptable.
+ */
+public final class AcceptEncoding {
+
+    private AcceptEncoding() {}
+
+    public static boolean accepts(String header, String coding) {
+        if (header == null || header.isBlank()) return false;
+        double named = -1, any = -1;
+        for (String entry : header.split(",")) {
+            int semi = entry.indexOf(';');
+            String name = (semi < 0 ? entry : entry.substring(0, semi)).trim().toLowerCase(Locale.ROOT);
+            if (name.startsWith("x-")) name = name.substring(2);
+            double q = semi < 0 ? 1 : quality(entry.substring(semi + 1));
+            if (name.equals(coding)) named = Math.max(named, q);
+            else if (name.equals("*")) any = Math.max(any, q);
+        }
+        return (named >= 0 ? named : any) > 0;
+    }
+
+    // q from the parameters after the coding; 1 when absent, 0 when unreadable
+    private static double quality(String params) {
+        for (String p : params.split(";")) {
+            int eq = p.indexOf('=');
+            if (eq < 0 || !p.substring(0, eq).trim().equalsIgnoreCase("q")) continue;
+            try {
+                double q = Double.parseDouble(p.substring(eq + 1).trim());
+                return q >= 0 && q <= 1 ? q : 0;
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return 1;
+    }
+}
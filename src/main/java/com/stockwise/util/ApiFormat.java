@@ -0,0 +1,53 @@
+package com.stockwise.util;
+
+import java.util.Locale;
+
+/**
+ * Response formats of /api/portfolio, picked by ?format= or else the Accept
+ * header. Plain application/json (and anything unrecognized) keeps the full
+ * Portfolio payload the dashboard uses.
+ */
+public enum ApiFormat {
+
+    // every Stock with its derived getters, plus the Portfolio aggregates
+    JSON("json", "application/json"),
+    // CompactPortfolio: stored fields only, column by column
+    COMPACT("compact", "application/vnd.stockwise.compact+json"),
+    // CompactPortfolio as CBOR: numbers in binary, no text to parse
+    CBOR("cbor", "application/cbor");
+
+    private final String param;
+    private final String mediaType;
+
+    ApiFormat(String param, String mediaType) {
+        this.param = param;
+        this.mediaType = mediaType;
+    }
+
+    public String mediaType() { return mediaType; }
+
+    // appended inside the quotes of the portfolio ETag, so each format caches separately
+    public String etag(String etag) {
+        if (this == JSON) return etag;
+        return etag.substring(0, etag.length() - 1) + "-" + param + "\"";
+    }
+
+    /** format wins when given (IllegalArgumentException if unknown); otherwise the first match in Accept. */
+    public static ApiFormat negotiate(String format, String accept) {
+        if (format != null && !format.isBlank()) {
+            String f = format.trim().toLowerCase(Locale.ROOT);
+            for (ApiFormat a : values()) {
+                if (a.param.equals(f)) return a;
+            }
+            throw new IllegalArgumentException("format must be json, compact or cbor");
+        }
+        if (accept != null) {
+            String a = accept.toLowerCase(Locale.ROOT);
+            int cbor = a.indexOf(CBOR.mediaType);
+            int compact = a.indexOf(COMPACT.mediaType);
+            if (cbor >= 0 && (compact < 0 || cbor < compact)) return CBOR;
+            if (compact >= 0) return COMPACT;
+        }
+        return JSON;
+    }
+}
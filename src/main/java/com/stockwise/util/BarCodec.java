@@ -0,0 +1,313 @@
+package com.stockwise.util;
+
+import com.stockwise.model.PriceBars;
+
+import java.util.Arrays;
+
+/**
+ * Compact binary form of a {@link PriceBars} block, column by column.
+ *
+ * - time: first value, first delta, then delta-of-deltas as zigzag varints.
+ *   Evenly spaced bars (every 60s, every trading day) cost one byte each.
+ * - open/high/low/close: exchange prices are short decimals, so a column
+ *   whose every value survives a round trip through value * 10^d (d <= 4)
+ *   is stored as zigzag varint deltas of those scaled integers, about a
+ *   byte per tick-sized move. Any other column (NaN gaps, odd values)
+ *   falls back to Gorilla-style XOR against the previous value, bit-packed:
+ *   an unchanged value is one bit.
+ * - volume: zigzag varint deltas.
+ *
+ * Lossless: decode(encode(b)) has the same bits as b, NaN included.
+ */
+public final class BarCodec {
+
+    private static final int VERSION = 1;
+    private static final int MAX_DECIMALS = 4;
+    private static final double[] POW10 = {1, 10, 100, 1000, 10000};
+    private static final int XOR = 0xFF;
+
+    private BarCodec() {}
+
+    public static byte[] encode(PriceBars bars) {
+        int n = bars.size();
+        Out out = new Out(16 + n * 24);
+        out.writeByte(VERSION);
+        out.writeVarLong(n);
+        if (n == 0) return out.toByteArray();
+
+        // time
+        long prev = bars.time(0), prevDelta = 0;
+        out.writeVarLong(zigzag(prev));
+        for (int i = 1; i < n; i++) {
+            long delta = bars.time(i) - prev;
+            out.writeVarLong(zigzag(i == 1 ? delta : delta - prevDelta));
+            prevDelta = delta;
+            prev = bars.time(i);
+        }
+
+        // prices
+        for (int col = 0; col < 4; col++) writePrices(out, bars, col);
+
+        // volume
+        long pv = 0;
+        for (int i = 0; i < n; i++) {
+            out.writeVarLong(zigzag(bars.volume(i) - pv));
+            pv = bars.volume(i);
+        }
+        return out.toByteArray();
+    }
+
+    public static PriceBars decode(byte[] data) {
+        In in = new In(data);
+        int version = in.readByte();
+        if (version != VERSION) throw new IllegalArgumentException("Unknown bar block version " + version);
+        int n = (int) in.readVarLong();
+        PriceBars bars = new PriceBars(n);
+        if (n == 0) return bars;
+
+        long[] time = new long[n];
+        time[0] = unzigzag(in.readVarLong());
+        long delta = 0;
+        for (int i = 1; i < n; i++) {
+            long v = unzigzag(in.readVarLong());
+            delta = i == 1 ? v : delta + v;
+            time[i] = time[i - 1] + delta;
+        }
+
+        double[] o = readPrices(in, n), h = readPrices(in, n), l = readPrices(in, n), c = readPrices(in, n);
+
+        long pv = 0;
+        for (int i = 0; i < n; i++) {
+            pv += unzigzag(in.readVarLong());
+            bars.add(time[i], o[i], h[i], l[i], c[i], pv);
+        }
+        return bars;
+    }
+
+    /* -----------------------------------------
+       PRICE COLUMNS
+    ----------------------------------------- */
+
+    // one mode byte: the decimal count of a scaled column, or XOR
+    private static void writePrices(Out out, PriceBars bars, int col) {
+        int d = decimals(bars, col);
+        if (d < 0) {
+            out.writeByte(XOR);
+            writeXor(out, bars, col);
+            return;
+        }
+        out.writeByte(d);
+        long prev = 0;
+        for (int i = 0; i < bars.size(); i++) {
+            long v = Math.round(column(bars, col, i) * POW10[d]);
+            out.writeVarLong(zigzag(v - prev));
+            prev = v;
+        }
+    }
+
+    private static double[] readPrices(In in, int n) {
+        int mode = in.readByte();
+        if (mode == XOR) return readXor(in, n);
+
+        double[] out = new double[n];
+        long v = 0;
+        for (int i = 0; i < n; i++) {
+            v += unzigzag(in.readVarLong());
+            out[i] = v / POW10[mode];
+        }
+        return out;
+    }
+
+    // Fewest decimals every value of the column round-trips with (bit for bit), or -1
+    private static int decimals(PriceBars bars, int col) {
+        for (int d = 0; d <= MAX_DECIMALS; d++) {
+            int i = 0;
+            while (i < bars.size() && roundTrips(column(bars, col, i), d)) i++;
+            if (i == bars.size()) return d;
+        }
+        return -1;
+    }
+
+    private static boolean roundTrips(double v, int d) {
+        double scaled = v * POW10[d];
+        if (!(Math.abs(scaled) < 1e15)) return false; // NaN, infinities, too big for exact longs
+        return Double.doubleToRawLongBits(Math.round(scaled) / POW10[d]) == Double.doubleToRawLongBits(v);
+    }
+
+    private static double column(PriceBars b, int col, int i) {
+        if (col == 0) return b.open(i);
+        if (col == 1) return b.high(i);
+        if (col == 2) return b.low(i);
+        return b.close(i);
+    }
+
+    private static void writeXor(Out out, PriceBars bars, int col) {
+        long prev = Double.doubleToRawLongBits(column(bars, col, 0));
+        out.writeBits(prev, 64);
+        int prevLead = Integer.MAX_VALUE, prevTrail = 0;
+
+        for (int i = 1; i < bars.size(); i++) {
+            long cur = Double.doubleToRawLongBits(column(bars, col, i));
+            long x = cur ^ prev;
+            if (x == 0) {
+                out.writeBits(0, 1);
+            } else {
+                int lead = Math.min(Long.numberOfLeadingZeros(x), 31);
+                int trail = Long.numberOfTrailingZeros(x);
+                if (prevLead != Integer.MAX_VALUE && lead >= prevLead && trail >= prevTrail) {
+                    // fits the previous window
+                    out.writeBits(0b10, 2);
+                    out.writeBits(x >>> prevTrail, 64 - prevLead - prevTrail);
+                } else {
+                    int len = 64 - lead - trail;
+                    out.writeBits(0b11, 2);
+                    out.writeBits(lead, 5);
+                    out.writeBits(len - 1, 6);
+                    out.writeBits(x >>> trail, len);
+                    prevLead = lead;
+                    prevTrail = trail;
+                }
+            }
+            prev = cur;
+        }
+        out.alignToByte();
+    }
+
+    private static double[] readXor(In in, int n) {
+        double[] out = new double[n];
+        long prev = in.readBits(64);
+        out[0] = Double.longBitsToDouble(prev);
+        int lead = 0, trail = 0;
+
+        for (int i = 1; i < n; i++) {
+            if (in.readBits(1) != 0) {
+                if (in.readBits(1) != 0) {
+                    lead = (int) in.readBits(5);
+                    int len = (int) in.readBits(6) + 1;
+                    trail = 64 - lead - len;
+                }
+                long x = in.readBits(64 - lead - trail) << trail;
+                prev ^= x;
+            }
+            out[i] = Double.longBitsToDouble(prev);
+        }
+        in.alignToByte();
+        return out;
+    }
+
+    /* -----------------------------------------
+       HELPERS
+    ----------------------------------------- */
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    // byte and bit writer over one growing array
+    private static final class Out {
+        private byte[] buf;
+        private int pos;
+        private long bits;     // pending bits, left-aligned in the low `nbits`
+        private int nbits;
+
+        Out(int capacity) {
+            buf = new byte[Math.max(16, capacity)];
+        }
+
+        void writeByte(int b) {
+            if (pos == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            buf[pos++] = (byte) b;
+        }
+
+        void writeVarLong(long v) {
+            while ((v & ~0x7FL) != 0) {
+                writeByte((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            writeByte((int) v);
+        }
+
+        // the low `count` bits of v, most significant first
+        void writeBits(long v, int count) {
+            if (count == 0) return;
+            if (count > 32) {
+                writeBits(v >>> 32, count - 32);
+                writeBits(v & 0xFFFFFFFFL, 32);
+                return;
+            }
+            bits = (bits << count) | (v & ((1L << count) - 1));
+            nbits += count;
+            while (nbits >= 8) {
+                nbits -= 8;
+                writeByte((int) (bits >>> nbits));
+            }
+            bits &= (1L << nbits) - 1;
+        }
+
+        void alignToByte() {
+            if (nbits > 0) {
+                writeByte((int) (bits << (8 - nbits)));
+                bits = 0;
+                nbits = 0;
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    private static final class In {
+        private final byte[] buf;
+        private int pos;
+        private int bitPos; // bits already consumed from buf[pos]
+
+        In(byte[] buf) {
+            this.buf = buf;
+        }
+
+        int readByte() {
+            return buf[pos++] & 0xFF;
+        }
+
+        long readVarLong() {
+            long v = 0;
+            int shift = 0;
+            while (true) {
+                int b = readByte();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+                shift += 7;
+            }
+        }
+
+        long readBits(int count) {
+            long v = 0;
+            while (count > 0) {
+                int avail = 8 - bitPos;
+                int take = Math.min(avail, count);
+                int b = buf[pos] & 0xFF;
+                int chunk = (b >>> (avail - take)) & ((1 << take) - 1);
+                v = (v << take) | chunk;
+                count -= take;
+                bitPos += take;
+                if (bitPos == 8) {
+                    bitPos = 0;
+                    pos++;
+                }
+            }
+            return v;
+        }
+
+        void alignToByte() {
+            if (bitPos > 0) {
+                bitPos = 0;
+                pos++;
+            }
+        }
+    }
+}
@@ -8,6 +8,7 @@ import java.io.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Flexible CSV parser:
@@ -20,8 +21,19 @@ import java.util.List;
 public class CSVUtil {
 
     public static List<Stock> parsePortfolioCSV(InputStream in) throws Exception {
+        List<Stock> list = new ArrayList<>();
+        readPortfolioCSV(in, list::add);
+        return list;
+    }
 
-        Reader reader = new InputStreamReader(in);
+    /**
+     * Streams the CSV one row at a time: each valid row is handed to the
+     * handler as soon as it is parsed, so memory stays flat however big
+     * the file is. Stops at the first bad row.
+     */
+    public static long readPortfolioCSV(InputStream in, RowHandler handler) throws Exception {
+
+        Reader reader = new BufferedReader(new InputStreamReader(in), 64 * 1024);
 
         Iterable<CSVRecord> records = CSVFormat.DEFAULT
                 .withFirstRecordAsHeader()
@@ -29,11 +41,13 @@ public class CSVUtil {
                 .withTrim()
                 .parse(reader);
 
-        List<Stock> list = new ArrayList<>();
+        String today = LocalDate.now().toString();
+        long rows = 0;
         int line = 1;
 
         for (CSVRecord rec : records) {
             line++;
+            Stock s;
 
             try {
                 String symbol = safe(rec, "symbol");
@@ -45,27 +59,53 @@ public class CSVUtil {
 
                 String date = safe(rec, "buy_date");
                 if (date.isEmpty()) {
-                    date = LocalDate.now().toString(); // auto date
+                    date = today; // auto date
                 } else {
                     try {
                         LocalDate.parse(date); // validate
                     } catch (Exception e) {
-                        date = LocalDate.now().toString(); // fix invalid date
+                        date = today; // fix invalid date
                     }
                 }
 
                 String sector = safe(rec, "sector");
                 if (sector.isEmpty()) sector = "Unknown";
 
-                Stock s = new Stock(symbol.toUpperCase(), qty, bp, date, sector);
-                list.add(s);
+                s = new Stock(symbol, qty, bp, date, sector); // Stock normalizes the symbol
 
             } catch (Exception ex) {
                 throw new Exception("CSV error at line " + line + ": " + ex.getMessage());
             }
+
+            handler.accept(s);
+            rows++;
         }
 
-        return list;
+        return rows;
+    }
+
+    @FunctionalInterface
+    public interface RowHandler {
+        void accept(Stock s) throws Exception;
+    }
+
+    public static final String EXPORT_HEADER =
+            "symbol,quantity,buy_price,buy_date,current_price,invested,current_value,unrealized_pl,unrealized_pl_percent,sector\n";
+
+    // Export format used by /export/csv
+    public static String formatPortfolioCSV(List<Stock> stocks) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(EXPORT_HEADER);
+
+        for (Stock s : stocks) {
+            sb.append(String.format(Locale.US,
+                    "%s,%.2f,%.2f,%s,%.2f,%.2f,%.2f,%.2f,%.2f,%s\n",
+                    s.getSymbol(), s.getQuantity(), s.getBuyPrice(), s.getBuyDate(),
+                    s.getCurrentPrice(), s.investedAmount(), s.currentValue(),
+                    s.unrealizedPL(), s.unrealizedPLPercent(), s.getSector()
+            ));
+        }
+        return sb.toString();
     }
 
     // safely get value from CSV
@@ -0,0 +1,149 @@
+package com.stockwise.util;
+
+import com.stockwise.model.Stock;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Writes the /export/csv format straight to an OutputStream through one
+ * fixed byte buffer: no per-row Strings, no String.format.
+ *
+ * Output is byte-for-byte what CSVUtil.formatPortfolioCSV produces.
+ */
+public class CsvStreamWriter {
+
+    private static final byte[] HEADER = CSVUtil.EXPORT_HEADER.getBytes(StandardCharsets.UTF_8);
+
+    private final OutputStream out;
+    private final byte[] buf;
+    private int pos;
+
+    public CsvStreamWriter(OutputStream out) {
+        this(out, 64 * 1024);
+    }
+
+    public CsvStreamWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buf = new byte[Math.max(bufferSize, 1024)];
+    }
+
+    public void writeHeader() throws IOException {
+        writeBytes(HEADER);
+    }
+
+    // symbol,quantity,buy_price,buy_date,current_price,invested,current_value,unrealized_pl,unrealized_pl_percent,sector
+    public void writeRow(Stock s) throws IOException {
+        writeText(s.getSymbol()); writeByte(',');
+        writeFixed2(s.getQuantity()); writeByte(',');
+        writeFixed2(s.getBuyPrice()); writeByte(',');
+        writeText(s.getBuyDate()); writeByte(',');
+        writeFixed2(s.getCurrentPrice()); writeByte(',');
+        writeFixed2(s.investedAmount()); writeByte(',');
+        writeFixed2(s.currentValue()); writeByte(',');
+        writeFixed2(s.unrealizedPL()); writeByte(',');
+        writeFixed2(s.unrealizedPLPercent()); writeByte(',');
+        writeText(s.getSector()); writeByte('\n');
+    }
+
+    public void flush() throws IOException {
+        if (pos > 0) {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+        out.flush();
+    }
+
+    /* -----------------------------------------
+       NUMBERS
+    ----------------------------------------- */
+
+    /** Same text as String.format(Locale.US, "%.2f", v); see Fixed2. */
+    public void writeFixed2(double v) throws IOException {
+        if (!Fixed2.fast(v)) {
+            writeText(String.format(Locale.US, "%.2f", v));
+            return;
+        }
+
+        long cents = Fixed2.cents(v);
+        ensure(24);
+        if (Fixed2.negative(v)) buf[pos++] = '-';
+        writeLong(cents / 100);
+        buf[pos++] = '.';
+        int c = (int) (cents % 100);
+        buf[pos++] = (byte) ('0' + c / 10);
+        buf[pos++] = (byte) ('0' + c % 10);
+    }
+
+    private void writeLong(long x) {
+        if (x == 0) {
+            buf[pos++] = '0';
+            return;
+        }
+        int start = pos;
+        while (x > 0) {
+            buf[pos++] = (byte) ('0' + (x % 10));
+            x /= 10;
+        }
+        // digits went in backwards
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            byte t = buf[i]; buf[i] = buf[j]; buf[j] = t;
+        }
+    }
+
+    /* -----------------------------------------
+       BYTES
+    ----------------------------------------- */
+
+    private void writeText(String s) throws IOException {
+        if (s == null) {
+            writeText("null"); // what %s / StringBuilder print
+            return;
+        }
+        int n = s.length();
+        if (n > buf.length) {
+            writeBytes(s.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        ensure(n);
+        for (int i = 0; i < n; i++) {
+            char ch = s.charAt(i);
+            if (ch >= 0x80) {
+                // rare: non-ASCII name, encode the remainder properly
+                writeBytes(s.substring(i).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            buf[pos++] = (byte) ch;
+        }
+    }
+
+    private void writeByte(char c) throws IOException {
+        ensure(1);
+        buf[pos++] = (byte) c;
+    }
+
+    private void writeBytes(byte[] b) throws IOException {
+        if (b.length > buf.length) {
+            flushBuffer();
+            out.write(b);
+            return;
+        }
+        ensure(b.length);
+        System.arraycopy(b, 0, buf, pos, b.length);
+        pos += b.length;
+    }
+
+    // makes room for n bytes; callers never ask for more than the buffer holds
+    private void ensure(int n) throws IOException {
+        if (pos + n > buf.length) flushBuffer();
+    }
+
+    private void flushBuffer() throws IOException {
+        if (pos > 0) {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.stockwise.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Locale;
+
+/**
+ * Two-decimal number text without String.format: the same output as
+ * String.format(Locale.US, "%.2f", v), i.e. HALF_UP on the shortest decimal
+ * form of v (so 1.005 -> "1.01"), "-0.00" for small negatives. Values the
+ * fast path can't take exactly (NaN, infinities, huge magnitudes) are left
+ * to String.format.
+ */
+public final class Fixed2 {
+
+    // fast path is exact below this; larger magnitudes fall back to String.format
+    private static final double FAST_LIMIT = 1e9;
+
+    private Fixed2() {}
+
+    /** True if cents() and negative() give v's text; false for NaN, infinities and huge values. */
+    public static boolean fast(double v) {
+        return Math.abs(v) < FAST_LIMIT;
+    }
+
+    /** |v| in cents, rounded as the text is. Only for fast(v). */
+    public static long cents(double v) {
+        double a = Math.abs(v);
+        double scaled = a * 100;
+        double floor = Math.floor(scaled);
+        double frac = scaled - floor;
+        if (Math.abs(frac - 0.5) < 1e-3) {
+            // too close to a tie to trust the binary product
+            return new BigDecimal(Double.toString(a)).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+        }
+        return (long) floor + (frac > 0.5 ? 1 : 0);
+    }
+
+    /** True if the text of v starts with '-', which includes -0.0 and small negatives. */
+    public static boolean negative(double v) {
+        return v < 0 || (v == 0 && 1 / v < 0);
+    }
+
+    public static void append(StringBuilder sb, double v) {
+        if (!fast(v)) {
+            sb.append(String.format(Locale.US, "%.2f", v));
+            return;
+        }
+        long c = cents(v);
+        if (negative(v)) sb.append('-');
+        sb.append(c / 100).append('.');
+        long r = c % 100;
+        if (r < 10) sb.append('0');
+        sb.append(r);
+    }
+
+    /** True when both values print the same; values off the fast path only match themselves. */
+    public static boolean sameText(double a, double b) {
+        if (Double.doubleToLongBits(a) == Double.doubleToLongBits(b)) return true;
+        if (!fast(a) || !fast(b)) return false;
+        return cents(a) == cents(b) && negative(a) == negative(b);
+    }
+}
@@ -0,0 +1,138 @@
+package com.stockwise.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+/**
+ * Names and tags of the app's own meters, published on /actuator/prometheus
+ * next to Spring's http.server.requests. Percentile histograms for every
+ * "stockwise." timer are switched on in application.properties.
+ *
+ * Meters with per-call tags are looked up on each use (a map hit in the
+ * registry), which is noise next to the DB and HTTP work they measure.
+ */
+public final class Meters {
+
+    public static final String REPOSITORY = "stockwise.repository";
+    public static final String MARKET_FETCH = "stockwise.market.fetch";
+    public static final String MARKET_PRICES = "stockwise.market.prices";
+    public static final String MARKET_REJECTED = "stockwise.market.rejected";
+    public static final String MARKET_FALLBACK = "stockwise.market.fallback";
+    public static final String MARKET_BREAKER = "stockwise.market.breaker";
+    public static final String MARKET_PROVIDER = "stockwise.market.provider";
+    public static final String MARKET_HEDGES = "stockwise.market.hedges";
+    public static final String QUOTE_CACHE = "stockwise.quote.cache";
+    public static final String ANALYTICS = "stockwise.analytics";
+    public static final String DASHBOARD_CACHE = "stockwise.dashboard.cache";
+    public static final String REPORT_JOBS = "stockwise.report.jobs";
+    public static final String VIEW_RENDER = "stockwise.view.render";
+
+    private Meters() {}
+
+    /** For classes built outside Spring (benchmarks): every meter on it is a no-op. */
+    public static MeterRegistry none() {
+        return new CompositeMeterRegistry();
+    }
+
+    // method: the PortfolioRepository method; outcome: success or error
+    public static Timer repository(MeterRegistry r, String method, boolean ok) {
+        return Timer.builder(REPOSITORY)
+                .description("PortfolioRepository calls")
+                .tag("method", method)
+                .tag("outcome", ok ? "success" : "error")
+                .register(r);
+    }
+
+    // request: chart (one symbol) or spark (a batch); outcome: success, zero, timeout or error
+    public static Timer marketFetch(MeterRegistry r, String request, String outcome) {
+        return Timer.builder(MARKET_FETCH)
+                .description("Upstream quote requests")
+                .tag("request", request)
+                .tag("outcome", outcome)
+                .register(r);
+    }
+
+    // symbols a fetchPrices call went upstream for; outcome: success, zero (fallback price) or timeout
+    public static Counter marketPrices(MeterRegistry r, String outcome) {
+        return Counter.builder(MARKET_PRICES)
+                .description("Symbols fetched from upstream, by what the caller got")
+                .tag("outcome", outcome)
+                .register(r);
+    }
+
+    // calls refused before reaching upstream; reason: circuit-open, rate-limit or bulkhead
+    public static Counter marketRejected(MeterRegistry r, String reason) {
+        return Counter.builder(MARKET_REJECTED)
+                .description("Upstream calls refused by the resilience layer")
+                .tag("reason", reason)
+                .register(r);
+    }
+
+    // symbols fetchPrices answered with a last known good price after upstream failed them
+    public static Counter marketFallback(MeterRegistry r) {
+        return Counter.builder(MARKET_FALLBACK)
+                .description("Symbols served their last known good price")
+                .register(r);
+    }
+
+    // one provider's fetchPrices call; outcome: success, empty (nothing priced) or error
+    public static Timer marketProvider(MeterRegistry r, String provider, String outcome) {
+        return Timer.builder(MARKET_PROVIDER)
+                .description("fetchPrices calls per market data provider")
+                .tag("provider", provider)
+                .tag("outcome", outcome)
+                .register(r);
+    }
+
+    // backup requests sent; reason: slow (first choice past its hedge delay) or gaps (it left symbols unpriced)
+    public static Counter marketHedges(MeterRegistry r, String reason) {
+        return Counter.builder(MARKET_HEDGES)
+                .description("Backup requests sent to a second provider")
+                .tag("reason", reason)
+                .register(r);
+    }
+
+    // backup requests that answered before the first choice
+    public static Counter marketHedgeWins(MeterRegistry r) {
+        return Counter.builder(MARKET_HEDGES + ".won")
+                .description("Backup requests that answered first")
+                .register(r);
+    }
+
+    // computation: summary, suggestions, portfolio-page, risk, risk-matrix, montecarlo
+    public static Timer analytics(MeterRegistry r, String computation) {
+        return Timer.builder(ANALYTICS)
+                .description("Portfolio analytics")
+                .tag("computation", computation)
+                .register(r);
+    }
+
+    // analytics requests refused by admission control before any work was done
+    public static Counter analyticsRejected(MeterRegistry r, String computation) {
+        return Counter.builder(ANALYTICS + ".rejected")
+                .description("Analytics requests refused for lack of capacity")
+                .tag("computation", computation)
+                .register(r);
+    }
+
+    // a report job from its thread picking it up to the artifact in place; format: txt or csv
+    public static Timer reportJob(MeterRegistry r, String format, boolean ok) {
+        return Timer.builder(REPORT_JOBS)
+                .description("Background report exports")
+                .tag("format", format)
+                .tag("outcome", ok ? "success" : "error")
+                .register(r);
+    }
+
+    // uri: the route pattern; view: the template
+    public static Timer viewRender(MeterRegistry r, String uri, String view, boolean ok) {
+        return Timer.builder(VIEW_RENDER)
+                .description("Template rendering, after the handler returned")
+                .tag("uri", uri)
+                .tag("view", view)
+                .tag("outcome", ok ? "success" : "error")
+                .register(r);
+    }
+}
@@ -1,6 +1,7 @@
 -- Create table for stocks in portfolio
 CREATE TABLE IF NOT EXISTS portfolio_stock (
     id INTEGER PRIMARY KEY AUTOINCREMENT,
+    portfolio_id TEXT NOT NULL DEFAULT 'default',
     symbol TEXT NOT NULL,
     quantity REAL NOT NULL,
     buy_price REAL NOT NULL,
@@ -8,5 +9,100 @@ CREATE TABLE IF NOT EXISTS portfolio_stock (
     sector TEXT
 );
 
+-- Databases from before portfolio ids get the column here (skipped when it exists)
+ALTER TABLE portfolio_stock ADD COLUMN portfolio_id TEXT NOT NULL DEFAULT 'default';
+
 -- Simple index for symbol lookups
 CREATE INDEX IF NOT EXISTS idx_symbol ON portfolio_stock(symbol);
+
+-- Rows belong to a generation; a portfolio's live one is in portfolio_generation (0 when it has no row).
+-- An import writes a new generation beside the live one and flips the pointer when complete.
+ALTER TABLE portfolio_stock ADD COLUMN generation INTEGER NOT NULL DEFAULT 0;
+
+CREATE TABLE IF NOT EXISTS portfolio_generation (
+    portfolio_id TEXT PRIMARY KEY,
+    active INTEGER NOT NULL,
+    last INTEGER NOT NULL
+);
+
+-- Per-portfolio reads and lookups touch only the live generation's rows, already in symbol order
+CREATE INDEX IF NOT EXISTS idx_portfolio_generation ON portfolio_stock(portfolio_id, generation, symbol);
+DROP INDEX IF EXISTS idx_portfolio_symbol;
+
+-- Imports used to be staged in a table of their own
+DROP TABLE IF EXISTS portfolio_stock_staging;
+
+-- Opening lots of each imported generation, in file order: the ledger's RESET for the import names
+-- the generation instead of carrying one LOT per row
+CREATE TABLE IF NOT EXISTS import_lots (
+    id INTEGER PRIMARY KEY AUTOINCREMENT,
+    portfolio_id TEXT NOT NULL,
+    generation INTEGER NOT NULL,
+    symbol TEXT NOT NULL,
+    quantity REAL NOT NULL,
+    buy_price REAL NOT NULL,
+    buy_date TEXT,
+    sector TEXT
+);
+
+CREATE INDEX IF NOT EXISTS idx_import_lots ON import_lots(portfolio_id, generation, id);
+
+-- Append-only trade ledger (sides: BUY, LOT, SELL, CLOSE, RESET; see Trade.Side).
+-- portfolio_stock is the position view of it, updated in the same transaction as each append.
+CREATE TABLE IF NOT EXISTS trade_ledger (
+    id INTEGER PRIMARY KEY AUTOINCREMENT,
+    portfolio_id TEXT NOT NULL,
+    side TEXT NOT NULL,
+    symbol TEXT,
+    quantity REAL NOT NULL DEFAULT 0,
+    price REAL NOT NULL DEFAULT 0,
+    trade_date TEXT,
+    sector TEXT,
+    recorded_at INTEGER NOT NULL DEFAULT (strftime('%s', 'now'))
+);
+
+CREATE INDEX IF NOT EXISTS idx_ledger_portfolio ON trade_ledger(portfolio_id, id);
+
+-- Set on the RESET of an import: the generation it activated, whose lots are in import_lots
+ALTER TABLE trade_ledger ADD COLUMN generation INTEGER;
+
+-- Replay starts from a portfolio's last RESET, found without scanning its trades
+CREATE INDEX IF NOT EXISTS idx_ledger_reset ON trade_ledger(portfolio_id, id) WHERE side = 'RESET';
+
+-- Last ledger id reflected in portfolio_stock, per portfolio
+CREATE TABLE IF NOT EXISTS ledger_checkpoint (
+    portfolio_id TEXT PRIMARY KEY,
+    last_trade_id INTEGER NOT NULL
+);
+
+-- Price history: one compressed block of bars (see BarCodec) per symbol, interval and period
+-- (a UTC day for 1m bars, a UTC year for 1d bars)
+CREATE TABLE IF NOT EXISTS price_bars (
+    symbol TEXT NOT NULL,
+    bar_interval TEXT NOT NULL,
+    block_start INTEGER NOT NULL,
+    first_time INTEGER NOT NULL,
+    last_time INTEGER NOT NULL,
+    bar_count INTEGER NOT NULL,
+    data BLOB NOT NULL,
+    PRIMARY KEY (symbol, bar_interval, block_start)
+) WITHOUT ROWID;
+
+-- User alerts (kinds: PRICE on a symbol, PL on the portfolio's unrealized P/L %; see Alert).
+-- triggered_at is NULL while the alert is active; times are epoch millis
+CREATE TABLE IF NOT EXISTS alerts (
+    id INTEGER PRIMARY KEY AUTOINCREMENT,
+    portfolio_id TEXT NOT NULL,
+    kind TEXT NOT NULL,
+    symbol TEXT,
+    direction TEXT NOT NULL,
+    threshold REAL NOT NULL,
+    created_at INTEGER NOT NULL,
+    triggered_at INTEGER,
+    triggered_value REAL
+);
+
+CREATE INDEX IF NOT EXISTS idx_alerts_portfolio ON alerts(portfolio_id, id);
+
+-- Active alerts are loaded at startup and their symbols kept in the price refresh
+CREATE INDEX IF NOT EXISTS idx_alerts_active ON alerts(symbol) WHERE triggered_at IS NULL;
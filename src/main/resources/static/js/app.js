@@ -14,6 +14,10 @@ document.addEventListener('DOMContentLoaded', () => {
 
   let pieChart, lineChart, barChart;
 
+  // set by portfolio.html; the default portfolio when missing
+  const API = (typeof apiBase !== 'undefined' && apiBase) ? apiBase : '/api';
+  const PAGE = (typeof pageBase !== 'undefined' && pageBase) ? pageBase : '';
+
   // -------------------------------------------------------------------
   // UPDATED DOUGHNUT LABEL PLUGIN (labels outside, readable)
   // -------------------------------------------------------------------
@@ -196,16 +200,65 @@ document.addEventListener('DOMContentLoaded', () => {
   // -------------------------------------------------------------------
   // MAIN REFRESH FUNCTION
   // -------------------------------------------------------------------
+  let state = { summary: null, portfolio: { stocks: [] } };
+
   async function refreshAll() {
     try {
       const [summaryResp, portfolioResp] = await Promise.all([
-        fetch('/api/summary'),
-        fetch('/api/portfolio')
+        fetch(API + '/summary'),
+        fetch(API + '/portfolio')
       ]);
 
       const summary = summaryResp.ok ? await summaryResp.json() : null;
       const portfolio = portfolioResp.ok ? await portfolioResp.json() : { stocks: [] };
 
+      state = { summary, portfolio };
+      render(summary, portfolio);
+    } catch (err) {
+      console.error('dashboard refresh error', err);
+    }
+  }
+
+  // -------------------------------------------------------------------
+  // LIVE UPDATES (SSE) — server pushes only changed prices / summary fields
+  // -------------------------------------------------------------------
+  function applyTick(msg) {
+    const stocks = state.portfolio.stocks || [];
+    const prices = msg.prices || {};
+
+    // holdings changed on the server (upload/add/delete): fetch them again
+    const structureChanged = msg.full &&
+      (Object.keys(prices).length !== stocks.length || stocks.some(s => !(s.symbol in prices)));
+    if (msg.reload || structureChanged) {
+      refreshAll();
+      return;
+    }
+
+    stocks.forEach(s => {
+      if (prices[s.symbol] !== undefined) s.currentPrice = prices[s.symbol];
+    });
+    state.summary = Object.assign(state.summary || {}, msg.summary || {});
+    render(state.summary, state.portfolio);
+  }
+
+  function connectStream() {
+    if (!window.EventSource) return false;
+
+    const es = new EventSource(API + '/stream');
+    es.addEventListener('tick', ev => {
+      try {
+        applyTick(JSON.parse(ev.data));
+      } catch (err) {
+        console.error('stream update error', err);
+      }
+    });
+    // EventSource reconnects by itself; the first frame after a reconnect is a full snapshot
+    es.onerror = () => console.warn('price stream interrupted, reconnecting…');
+    return true;
+  }
+
+  function render(summary, portfolio) {
+    try {
       if (summary) {
         document.getElementById('sumInvested').innerText = fmt(summary.totalInvested, true);
         document.getElementById('sumCurrent').innerText = fmt(summary.currentValue, true);
@@ -245,7 +298,14 @@ document.addEventListener('DOMContentLoaded', () => {
           <td>${fmt(value,false)}</td>
           <td class="${plClass}">${plPct.toFixed(2)}%</td>
           <td>
-            <form action="/delete" method="post" onsubmit="return confirm('Delete ${sanitize(s.symbol)}?');">
+            <form action="${PAGE}/sell" method="post" class="d-inline-flex mb-1">
+              <input type="hidden" name="symbol" value="${sanitize(s.symbol)}"/>
+              <input type="hidden" name="price" value="${Number(s.currentPrice || 0)}"/>
+              <input type="number" name="quantity" min="0" step="any" placeholder="Qty"
+                     class="form-control form-control-sm me-1" style="width:5rem" required/>
+              <button class="btn btn-sm btn-outline-secondary">Sell</button>
+            </form>
+            <form action="${PAGE}/delete" method="post" onsubmit="return confirm('Delete ${sanitize(s.symbol)}?');">
               <input type="hidden" name="symbol" value="${sanitize(s.symbol)}"/>
               <button class="btn btn-sm btn-outline-danger">Delete</button>
             </form>
@@ -355,10 +415,10 @@ document.addEventListener('DOMContentLoaded', () => {
       if (barLabels.length) drawBar(barLabels, barData);
 
     } catch (err) {
-      console.error('dashboard refresh error', err);
+      console.error('dashboard render error', err);
     }
   }
 
   refreshAll();
-  setInterval(refreshAll, 60000);
+  if (!connectStream()) setInterval(refreshAll, 60000);
 });
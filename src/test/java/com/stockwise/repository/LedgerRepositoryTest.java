@@ -0,0 +1,105 @@
+package com.stockwise.repository;
+
+import com.stockwise.model.Stock;
+import com.stockwise.model.Trade;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LedgerRepository compaction on a throwaway SQLite file.
+ */
+class LedgerRepositoryTest {
+
+    private static final String PORTFOLIO = "test";
+    private static final long NOW = System.currentTimeMillis() / 1000;
+
+    @TempDir
+    Path dir;
+
+    private SqliteDataSource db;
+    private PortfolioRepository repo;
+    private LedgerRepository ledger;
+
+    @BeforeEach
+    void open() throws Exception {
+        db = new SqliteDataSource("jdbc:sqlite:" + dir.resolve("test.db"), 1, 0, 2048, 1000);
+        repo = new PortfolioRepository(db);
+        ledger = new LedgerRepository(db);
+    }
+
+    @AfterEach
+    void close() {
+        db.close();
+    }
+
+    @Test
+    void compactionKeepsEverythingFromTheLastResetAndReplaysTheSame() throws Exception {
+        repo.replaceAll(PORTFOLIO, List.of(new Stock("OLD", 5, 50, "2023-01-01", "IT")));
+        for (int i = 0; i < 20; i++) repo.saveOrUpdate(PORTFOLIO, new Stock("OLD" + (i % 3), 1, 10 + i, "2023-02-02", "IT"));
+
+        // an import is the last RESET; its lots live outside the ledger
+        long generation = repo.newGeneration(PORTFOLIO);
+        repo.insertGeneration(PORTFOLIO, generation, List.of(
+                new Stock("TCS", 10, 3000, "2024-01-01", "IT"), new Stock("ITC", 40, 400, "2024-01-01", "FMCG")));
+        repo.activateGeneration(PORTFOLIO, generation);
+        repo.saveOrUpdate(PORTFOLIO, new Stock("TCS", 5, 3100, "2024-02-02", "IT"));
+        repo.sell(PORTFOLIO, "ITC", 15, 420, "2024-03-03");
+        List<String> live = describe(repo.findAll(PORTFOLIO));
+
+        // still inside the retention window: nothing goes
+        assertEquals(0, ledger.compact(PORTFOLIO, NOW - 86400));
+        assertEquals(25, ledger.findRecent(PORTFOLIO, 100).size());
+
+        // RESET + LOT + 20 BUYs before the import's RESET
+        assertEquals(22, ledger.compact(PORTFOLIO, NOW + 86400));
+        List<Trade> kept = ledger.findRecent(PORTFOLIO, 100);
+        assertEquals(3, kept.size());
+        assertEquals(Trade.Side.RESET, kept.get(2).getSide());
+        assertEquals(0, ledger.compact(PORTFOLIO, NOW + 86400));
+
+        assertEquals(live, describe(repo.findAll(PORTFOLIO)));
+        ledger.replay(PORTFOLIO, true);
+        assertEquals(live, describe(repo.findAll(PORTFOLIO)));
+    }
+
+    @Test
+    void aResetTheCheckpointHasNotReachedKeepsWhatCameBeforeIt() throws Exception {
+        repo.replaceAll(PORTFOLIO, List.of(new Stock("OLD", 5, 50, "2023-01-01", "IT")));
+        repo.saveOrUpdate(PORTFOLIO, new Stock("OLD", 1, 60, "2023-02-02", "IT"));
+        // a RESET written behind the positions' back, e.g. by another tool
+        db.write(session -> {
+            LedgerRepository.append(session, PORTFOLIO, Trade.Side.RESET, null, 0, 0, null, null);
+            session.prepare("UPDATE ledger_checkpoint SET last_trade_id = last_trade_id - 1").executeUpdate();
+            return null;
+        });
+
+        // the replaceAll's RESET is the last one checkpointed: nothing before it
+        assertEquals(0, ledger.compact(PORTFOLIO, NOW + 86400));
+        assertEquals(4, ledger.findRecent(PORTFOLIO, 100).size());
+    }
+
+    @Test
+    void aPortfolioWithoutAResetIsLeftAlone() throws Exception {
+        repo.saveOrUpdate(PORTFOLIO, new Stock("TCS", 1, 3000, "2024-01-01", "IT"));
+        repo.saveOrUpdate(PORTFOLIO, new Stock("TCS", 1, 3100, "2024-01-02", "IT"));
+        assertEquals(0, ledger.compact(PORTFOLIO, NOW + 86400));
+        assertEquals(2, ledger.findRecent(PORTFOLIO, 100).size());
+    }
+
+    // everything but the row id, which a rebuild reassigns
+    private static List<String> describe(List<Stock> stocks) {
+        List<String> out = new ArrayList<>();
+        for (Stock s : stocks) {
+            out.add(s.getSymbol() + " " + s.getQuantity() + " @" + s.getBuyPrice() + " " + s.getBuyDate() + " " + s.getSector());
+        }
+        return out;
+    }
+}
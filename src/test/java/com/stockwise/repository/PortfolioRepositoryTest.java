@@ -0,0 +1,216 @@
+package com.stockwise.repository;
+
+import com.stockwise.model.Stock;
+import com.stockwise.model.Trade;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PortfolioRepository on a throwaway SQLite file.
+ */
+class PortfolioRepositoryTest {
+
+    private static final String PORTFOLIO = "test";
+
+    @TempDir
+    Path dir;
+
+    private SqliteDataSource db;
+    private PortfolioRepository repo;
+
+    @BeforeEach
+    void open() throws Exception {
+        // one reader, so anything holding it on to the handler would starve findAll below
+        db = new SqliteDataSource("jdbc:sqlite:" + dir.resolve("test.db"), 1, 0, 2048, 1000);
+        repo = new PortfolioRepository(db);
+    }
+
+    @AfterEach
+    void close() {
+        db.close();
+    }
+
+    @Test
+    void forEachVisitsEveryRowInFindAllOrderAndFreesTheReader() throws Exception {
+        List<Stock> stocks = new ArrayList<>();
+        for (int i = 0; i < 1234; i++) {
+            // repeated symbols: ties on symbol are broken by id across batch edges
+            stocks.add(new Stock("SYM" + (i % 300), 1 + i, 100 + i, "2024-01-01", "IT"));
+        }
+        repo.replaceAll(PORTFOLIO, stocks);
+        List<Stock> expected = repo.findAll(PORTFOLIO);
+
+        List<Integer> seen = new ArrayList<>();
+        long rows = repo.forEach(PORTFOLIO, s -> {
+            seen.add(s.getId());
+            // the reader must be back in the pool while the handler runs
+            if (seen.size() % 500 == 1) assertEquals(expected.size(), repo.findAll(PORTFOLIO).size());
+        });
+
+        assertEquals(expected.size(), rows);
+        List<Integer> ids = new ArrayList<>();
+        for (Stock s : expected) ids.add(s.getId());
+        assertEquals(ids, seen);
+    }
+
+    @Test
+    void importedGenerationGoesLiveOnActivationAndReplaysFromItsLots() throws Exception {
+        repo.replaceAll(PORTFOLIO, List.of(new Stock("OLD", 5, 50, "2023-01-01", "IT")));
+
+        long generation = repo.newGeneration(PORTFOLIO);
+        List<Stock> imported = new ArrayList<>();
+        for (int i = 0; i < 40; i++) imported.add(new Stock("NEW" + (i % 7), 1 + i, 10 + i, "2024-02-02", "Bank"));
+        repo.insertGeneration(PORTFOLIO, generation, imported.subList(0, 25));
+        repo.insertGeneration(PORTFOLIO, generation, imported.subList(25, 40));
+
+        // not live yet: reads and writes still go to the old rows
+        assertEquals(List.of("OLD"), symbols(repo.findAll(PORTFOLIO)));
+        long before = repo.version(PORTFOLIO);
+
+        repo.activateGeneration(PORTFOLIO, generation);
+        assertTrue(repo.version(PORTFOLIO) > before);
+        assertEquals(40, repo.findAll(PORTFOLIO).size());
+        assertFalse(symbols(repo.findAll(PORTFOLIO)).contains("OLD"));
+        assertThrows(IllegalStateException.class, () -> repo.activateGeneration(PORTFOLIO, generation));
+
+        repo.saveOrUpdate(PORTFOLIO, new Stock("NEW3", 2, 99, "2024-03-03", "Bank"));
+        assertEquals(1, repo.purgeInactive(PORTFOLIO));
+        List<Stock> live = repo.findAll(PORTFOLIO);
+
+        // a full rebuild from the ledger lands on the same rows
+        new LedgerRepository(db).replay(PORTFOLIO, true);
+        assertEquals(describe(live), describe(repo.findAll(PORTFOLIO)));
+    }
+
+    @Test
+    void purgeDropsAnAbandonedGeneration() throws Exception {
+        repo.replaceAll(PORTFOLIO, List.of(new Stock("OLD", 5, 50, "2023-01-01", "IT")));
+        long generation = repo.newGeneration(PORTFOLIO);
+        repo.insertGeneration(PORTFOLIO, generation, List.of(new Stock("NEW", 1, 10, "2024-02-02", "IT")));
+
+        assertEquals(1, repo.purgeInactive(PORTFOLIO));
+        assertEquals(List.of("OLD"), symbols(repo.findAll(PORTFOLIO)));
+        assertEquals(List.of("OLD"), repo.findSymbols());
+    }
+
+    @Test
+    void readersRunAlongsideTheWriterWithoutBusyErrorsOrTornReads() throws Exception {
+        // a pool of four readers shared by eight threads, as in the app
+        db.close();
+        db = new SqliteDataSource("jdbc:sqlite:" + dir.resolve("concurrent.db"), 4, 0, 2048, 1000);
+        repo = new PortfolioRepository(db);
+        List<Stock> base = new ArrayList<>();
+        for (int i = 0; i < 500; i++) base.add(new Stock("BASE" + i, 1, 10, "2024-01-01", "IT"));
+        repo.replaceAll(PORTFOLIO, base);
+
+        int writes = 2000;
+        ExecutorService pool = Executors.newFixedThreadPool(9);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        try {
+            // each BUY adds one unit, blended into one of 50 symbols
+            Future<?> writer = pool.submit(() -> {
+                try {
+                    for (int i = 0; i < writes; i++) {
+                        repo.saveOrUpdate(PORTFOLIO, new Stock("W" + (i % 50), 1, 100 + i % 7, "2024-02-02", "Bank"));
+                    }
+                } catch (Throwable t) {
+                    errors.add(t);
+                } finally {
+                    writing.set(false);
+                }
+            });
+
+            // every read is one committed state: whole units, never fewer than the last read saw
+            List<Future<Integer>> readers = new ArrayList<>();
+            for (int r = 0; r < 8; r++) {
+                readers.add(pool.submit(() -> {
+                    int reads = 0;
+                    double last = 0;
+                    try {
+                        while (writing.get() || reads == 0) {
+                            List<Stock> rows = repo.findAll(PORTFOLIO);
+                            double total = 0;
+                            for (Stock s : rows) total += s.getQuantity();
+                            assertEquals(Math.rint(total), total, 1e-9, "torn read");
+                            assertTrue(total >= last, "went back from " + last + " to " + total);
+                            assertTrue(total >= 500 && total <= 500 + writes);
+                            assertEquals(500 + Math.min(50, (int) total - 500), rows.size());
+                            last = total;
+                            reads++;
+                        }
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    }
+                    return reads;
+                }));
+            }
+
+            writer.get(120, TimeUnit.SECONDS);
+            for (Future<Integer> f : readers) assertTrue(f.get(30, TimeUnit.SECONDS) > 0);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertTrue(errors.isEmpty(), () -> "first error: " + errors.get(0));
+        double total = 0;
+        for (Stock s : repo.findAll(PORTFOLIO)) total += s.getQuantity();
+        assertEquals(500 + writes, total, 1e-9);
+    }
+
+    @Test
+    void aTransactionEndedByAnErrorIsRolledBack() throws Exception {
+        repo.saveOrUpdate(PORTFOLIO, new Stock("TCS", 1, 3000, "2024-01-01", "IT"));
+        assertThrows(StackOverflowError.class, () -> db.writeInTransaction(session -> {
+            LedgerRepository.append(session, PORTFOLIO, Trade.Side.RESET, null, 0, 0, null, null);
+            session.prepare("DELETE FROM portfolio_stock").executeUpdate();
+            throw new StackOverflowError();
+        }));
+
+        assertEquals(List.of("TCS"), symbols(repo.findAll(PORTFOLIO)));
+        assertEquals(1, new LedgerRepository(db).findRecent(PORTFOLIO, 10).size());
+        // the writer is back in autocommit and usable
+        repo.saveOrUpdate(PORTFOLIO, new Stock("INFY", 1, 1500, "2024-01-01", "IT"));
+        assertEquals(2, repo.findAll(PORTFOLIO).size());
+    }
+
+    @Test
+    void deleteBySymbolTakesTheSymbolAsTyped() throws Exception {
+        repo.replaceAll(PORTFOLIO, List.of(new Stock("TCS", 1, 3000, "2024-01-01", "IT"),
+                new Stock("ITC", 2, 400, "2024-01-01", "FMCG")));
+        repo.deleteBySymbol(PORTFOLIO, " tcs ");
+        List<Stock> left = repo.findAll(PORTFOLIO);
+        assertEquals(1, left.size());
+        assertEquals("ITC", left.get(0).getSymbol());
+    }
+
+    @Test
+    void forEachOnAnEmptyPortfolio() throws Exception {
+        assertEquals(0, repo.forEach(PORTFOLIO, s -> fail("no rows expected")));
+    }
+
+    private static List<String> symbols(List<Stock> stocks) {
+        List<String> out = new ArrayList<>();
+        for (Stock s : stocks) out.add(s.getSymbol());
+        return out;
+    }
+
+    // everything but the row id, which a rebuild reassigns
+    private static List<String> describe(List<Stock> stocks) {
+        List<String> out = new ArrayList<>();
+        for (Stock s : stocks) {
+            out.add(s.getSymbol() + " " + s.getQuantity() + " @" + s.getBuyPrice() + " " + s.getBuyDate() + " " + s.getSector());
+        }
+        return out;
+    }
+}
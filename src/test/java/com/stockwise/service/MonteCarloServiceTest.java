@@ -0,0 +1,116 @@
+package com.stockwise.service;
+
+import com.stockwise.model.RiskModel;
+import com.stockwise.util.Meters;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MonteCarloService over a fixed risk model built from MockMarketDataService
+ * price walks, so nothing touches the network or the DB.
+ */
+class MonteCarloServiceTest {
+
+    private static final String[] SYMBOLS = {"TCS", "INFY", "HDFCBANK", "ITC", "RELIANCE", "SBIN", "WIPRO", "LT"};
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final ForkJoinPool modelPool = new ForkJoinPool(2);
+    private MonteCarloService monteCarlo;
+
+    @AfterEach
+    void stop() {
+        if (monteCarlo != null) monteCarlo.stop();
+        modelPool.shutdownNow();
+    }
+
+    @Test
+    void sameSeedGivesTheSameBands() {
+        monteCarlo = service(exposure(), 2_000_000_000L);
+
+        Map<String, Object> a = monteCarlo.simulate("default", 252, 50_000, 12, 42L, "historical");
+        Map<String, Object> b = monteCarlo.simulate("default", 252, 50_000, 12, 42L, "historical");
+        Map<String, Object> c = monteCarlo.simulate("default", 252, 50_000, 12, 43L, "historical");
+
+        assertEquals(a.get("bands"), b.get("bands"));
+        assertEquals(a.get("final"), b.get("final"));
+        assertEquals(a.get("drawdown"), b.get("drawdown"));
+        assertNotEquals(a.get("bands"), c.get("bands"));
+    }
+
+    @Test
+    void runsBeyondTheWorkBudgetAreRefusedWhileOthersRun() throws Exception {
+        // the first run alone is over budget: it goes because nothing else is running
+        monteCarlo = service(exposure(), 1_000_000L);
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<Map<String, Object>> big = caller.submit(() ->
+                    monteCarlo.simulate("default", 252, 300_000, 52, 1L, "historical"));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (work() == 0 && !big.isDone() && System.nanoTime() < deadline) Thread.sleep(1);
+            assertTrue(work() > 0, "the big run never started");
+
+            assertThrows(RejectedExecutionException.class,
+                    () -> monteCarlo.simulate("default", 21, 1_000, 3, 2L, "none"));
+            assertEquals(1.0, meters.get(Meters.ANALYTICS + ".rejected").counter().count());
+
+            big.get(60, TimeUnit.SECONDS);
+            assertEquals(0.0, work());
+            assertNotNull(monteCarlo.simulate("default", 21, 1_000, 3, 2L, "none").get("bands"));
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+
+    private double work() {
+        return meters.get(Meters.ANALYTICS + ".work").gauge().value();
+    }
+
+    private MonteCarloService service(RiskService.Exposure exposure, long maxWork) {
+        RiskService risk = new RiskService(null, null, "^NSEI", 252, 20, 8, 1, 1, "Asia/Kolkata", meters) {
+            @Override
+            Exposure exposure(String portfolioId) {
+                return exposure;
+            }
+        };
+        return new MonteCarloService(risk, 100_000, 1_000_000, 52, 2520, 2, maxWork, meters);
+    }
+
+    // a year of daily returns from the mock provider's random walk
+    private RiskService.Exposure exposure() {
+        MockMarketDataService mock = new MockMarketDataService();
+        int days = RiskModel.TRADING_DAYS;
+        double[][] returns = new double[SYMBOLS.length][days];
+        Map<String, Double> last = mock.fetchPrices(SYMBOLS);
+        for (int d = 0; d < days; d++) {
+            Map<String, Double> next = mock.fetchPrices(SYMBOLS);
+            for (int i = 0; i < SYMBOLS.length; i++) {
+                returns[i][d] = Math.log(next.get(SYMBOLS[i]) / last.get(SYMBOLS[i]));
+            }
+            last = next;
+        }
+
+        RiskService.Exposure e = new RiskService.Exposure();
+        e.portfolioId = "default";
+        e.asOf = LocalDate.of(2024, 6, 28);
+        e.model = RiskModel.build(SYMBOLS, returns, null, modelPool);
+        e.symbols = SYMBOLS;
+        e.values = new double[SYMBOLS.length];
+        e.weights = new double[SYMBOLS.length];
+        for (int i = 0; i < SYMBOLS.length; i++) {
+            e.values[i] = 10_000 * (i + 1);
+            e.value += e.values[i];
+        }
+        for (int i = 0; i < SYMBOLS.length; i++) e.weights[i] = e.values[i] / e.value;
+        e.excluded = List.of();
+        return e;
+    }
+}
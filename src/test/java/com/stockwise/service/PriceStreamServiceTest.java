@@ -0,0 +1,116 @@
+package com.stockwise.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stockwise.model.Alert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Delivery to subscribers, driven by heartbeats so no frames (and no
+ * DashboardService) are involved: frames are coalesced for an hour.
+ */
+class PriceStreamServiceTest {
+
+    private PriceStreamService stream;
+
+    @AfterEach
+    void stop() {
+        if (stream != null) stream.stop();
+    }
+
+    @Test
+    void aStalledClientIsDroppedAndDoesNotStarveTheOthers() throws Exception {
+        // one sender thread: without the timeout the stalled client would hold it for good
+        stream = new PriceStreamService(null, new PriceTable(), new ObjectMapper(), 60_000, 3_600_000, 1, 50, 200);
+
+        CountDownLatch unblock = new CountDownLatch(1);
+        AtomicInteger stalledSends = new AtomicInteger();
+        stream.subscribe("p", new SseEmitter(60_000L) {
+            @Override
+            public void send(SseEventBuilder builder) throws IOException {
+                stalledSends.incrementAndGet();
+                try {
+                    unblock.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        CountingEmitter healthy = new CountingEmitter();
+        stream.subscribe("p", healthy);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (stream.stalledCount() == 0 && System.nanoTime() < deadline) Thread.sleep(10);
+        assertEquals(1, stream.stalledCount());
+        assertEquals(1, stream.subscriberCount());
+
+        int before = healthy.sends.get();
+        Thread.sleep(500);
+        assertTrue(healthy.sends.get() > before, "the healthy client stopped getting heartbeats");
+
+        unblock.countDown();
+        Thread.sleep(200);
+        assertEquals(1, stalledSends.get());
+    }
+
+    @Test
+    void alertsShareTheSubscribersSenderAndArriveInOrder() throws Exception {
+        stream = new PriceStreamService(null, new PriceTable(), new ObjectMapper(), 60_000, 3_600_000, 4, 5, 5_000);
+
+        AtomicInteger inSend = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        List<String> alerts = Collections.synchronizedList(new ArrayList<>());
+        stream.subscribe("p", new SseEmitter(60_000L) {
+            @Override
+            public void send(SseEventBuilder builder) {
+                if (inSend.incrementAndGet() > 1) overlaps.incrementAndGet();
+                try {
+                    Thread.sleep(1);
+                    StringBuilder event = new StringBuilder();
+                    for (DataWithMediaType part : builder.build()) event.append(part.getData());
+                    if (event.indexOf("event:alert") >= 0) alerts.add(event.toString());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inSend.decrementAndGet();
+                }
+            }
+        });
+
+        for (int i = 0; i < 50; i++) {
+            Alert a = new Alert("p", Alert.Kind.PRICE, "TCS", Alert.Direction.ABOVE, 1000 + i);
+            a.setId(i);
+            stream.onAlert(new AlertEvent(a));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (alerts.size() < 50 && System.nanoTime() < deadline) Thread.sleep(10);
+        assertEquals(50, alerts.size());
+        assertEquals(0, overlaps.get(), "two sends ran on the same emitter at once");
+        for (int i = 0; i < 50; i++) assertTrue(alerts.get(i).contains("\"threshold\":" + (1000 + i) + ".0"), alerts.get(i));
+    }
+
+    static class CountingEmitter extends SseEmitter {
+        final AtomicInteger sends = new AtomicInteger();
+
+        CountingEmitter() {
+            super(60_000L);
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            sends.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.stockwise.service;
+
+import com.stockwise.model.ColumnarHoldings;
+import com.stockwise.model.PortfolioSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SymbolMaster over the bundled instrument list.
+ */
+class SymbolMasterTest {
+
+    private final SymbolMaster symbols = new SymbolMaster("", 10);
+
+    @Test
+    void lookupsOfUnlistedSymbolsAssignNothing() {
+        assertEquals("ZZTOP.NS", symbols.yahooSymbol(" zztop "));
+        assertEquals(SymbolMaster.NSE, symbols.exchange("ZZTOP"));
+        assertEquals("ZZTOP", symbols.canonical("zztop"));
+        Map<String, Object> r = symbols.resolve("zztop.bo");
+        assertEquals(false, r.get("listed"));
+        assertEquals(SymbolMaster.BSE, r.get("exchange"));
+        assertEquals("ZZTOP.BO", r.get("yahoo"));
+        assertFalse(r.containsKey("id"));
+        assertEquals(-1, symbols.find("ZZTOP"));
+        assertEquals(0, symbols.stats().get("unlisted"));
+
+        int id = symbols.id("zztop");
+        assertTrue(id >= 0);
+        assertEquals(id, symbols.find("ZZTOP"));
+        assertEquals(id, symbols.resolve("ZZTOP").get("id"));
+        assertEquals(1, symbols.stats().get("unlisted"));
+    }
+
+    @Test
+    void aliasesAndIsinsResolveToTheListedInstrument() {
+        int id = symbols.find("HDFCBANK");
+        assertTrue(symbols.isListed(id));
+        assertEquals(id, symbols.find("hdfc"));
+        assertEquals(id, symbols.find("INE040A01034"));
+        assertEquals("HDFCBANK", symbols.canonical("HDFC"));
+        assertEquals("HDFCBANK.NS", symbols.yahooSymbol("HDFC"));
+    }
+
+    @Test
+    void normalizeReturnsCleanSymbolsAsTheyAre() {
+        String clean = "TCS.NS";
+        assertSame(clean, SymbolMaster.normalize(clean));
+        assertEquals("TCS.NS", SymbolMaster.normalize(" tcs.ns "));
+        assertEquals("", SymbolMaster.normalize(null));
+    }
+
+    @Test
+    void holdingsKeyedOnMasterIdsShareThemAndKeepTheSymbolAsHeld() {
+        ColumnarHoldings a = new ColumnarHoldings(symbols, 4);
+        ColumnarHoldings b = new ColumnarHoldings(symbols, 4);
+        a.add("hdfcbank", 1, 100, "2024-01-01", "Banking", 0);
+        a.add(" hdfc ", 2, 100, "2024-01-01", "Banking", 0);
+        a.add("zztop", 1, 10, null, null, 0);
+        b.add("ZZTOP", 3, 10, null, null, 0);
+
+        assertEquals(symbols.find("HDFCBANK"), a.symbolId(0));
+        assertEquals(a.symbolId(0), a.symbolId(1));
+        assertEquals("HDFC", a.symbol(1));
+        assertEquals(a.symbolId(2), b.symbolId(0));
+        assertEquals(List.of("HDFCBANK", "HDFC", "ZZTOP"), a.symbols());
+
+        // past max-unlisted a symbol has no id but is still held as typed
+        for (int i = 0; symbols.id("FILL" + i) >= 0; i++) { }
+        b.add("late", 1, 5, null, null, 0);
+        assertEquals(-1, b.symbolId(1));
+        assertEquals("LATE", b.symbol(1));
+
+        // a tick for the listed symbol re-prices the alias lot too
+        PortfolioSnapshot snap = PortfolioSnapshot.of(a);
+        snap.updatePrice("HDFCBANK", 110);
+        assertEquals(110, snap.price(1));
+        assertEquals("HDFC", snap.symbol(1));
+        PortfolioSnapshot late = PortfolioSnapshot.of(b);
+        late.updatePrice("LATE", 6);
+        assertEquals(6, late.price(1));
+    }
+}
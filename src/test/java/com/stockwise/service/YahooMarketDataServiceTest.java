@@ -0,0 +1,197 @@
+package com.stockwise.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * fetchPrices against a local chart endpoint that holds each symbol back
+ * for its own delay: the requests run side by side, so a fetch takes about
+ * as long as the slowest symbol, and symbols past the deadline come back 0.0.
+ *
+ * The same endpoint injects faults (HTTP 5xx/429, requests held until
+ * released) for the upstream protection: the circuit breaker, the bulkhead
+ * and the last-known-good fallback from the QuoteCache.
+ */
+class YahooMarketDataServiceTest {
+
+    // Yahoo symbol -> how long the stub sits on the request
+    private final Map<String, Long> delayMs = new ConcurrentHashMap<>();
+    // Yahoo symbol -> held until counted down
+    private final Map<String, CountDownLatch> holds = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile int failWith;  // HTTP status to answer with instead of a quote; 0 answers
+    private volatile double price = 101.0;
+    private HttpServer server;
+    private ExecutorService handlers;
+
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+        handlers = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "quote-stub");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(handlers);
+        server.createContext("/v8/finance/chart/", this::chart);
+        server.start();
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    @Test
+    void fetchTakesTheSlowestSymbolNotTheSum() {
+        delayMs.put("AAA.NS", 400L);
+        delayMs.put("BBB.NS", 800L);
+        delayMs.put("CCC.NS", 1200L);
+        YahooMarketDataService market = market(5000);
+
+        long t0 = System.nanoTime();
+        Map<String, Double> prices = market.fetchPrices(new String[]{"AAA", "BBB", "CCC"});
+        long tookMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+
+        assertEquals(Map.of("AAA", 101.0, "BBB", 101.0, "CCC", 101.0), prices);
+        assertTrue(tookMs >= 1200, "finished before the slowest symbol was answered: " + tookMs + " ms");
+        assertTrue(tookMs < 2000, "took " + tookMs + " ms; sequential would be 2400 ms");
+    }
+
+    @Test
+    void symbolsPastTheDeadlineComeBackZero() {
+        delayMs.put("FAST.NS", 100L);
+        delayMs.put("SLOW.NS", 4000L);
+        YahooMarketDataService market = market(1000);
+
+        long t0 = System.nanoTime();
+        Map<String, Double> prices = market.fetchPrices(new String[]{"FAST", "SLOW"});
+        long tookMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+
+        assertEquals(101.0, prices.get("FAST"));
+        assertEquals(0.0, prices.get("SLOW"));
+        assertTrue(tookMs < 2000, "waited " + tookMs + " ms past a 1000 ms deadline");
+    }
+
+    @Test
+    void breakerOpensOnUpstreamErrorsServesLastKnownGoodAndClosesAfterATrial() throws Exception {
+        // nothing is fresh after 1 ms and nothing is served stale: every fetch is a load
+        YahooMarketDataService market = market(2000, 1, 4, 300, 8);
+        assertEquals(101.0, market.fetchPrices(new String[]{"AAA"}).get("AAA"));
+
+        // 5xx and 429 count against the breaker; each caller still gets the last good price
+        for (int status : new int[]{500, 503, 429, 429}) {
+            failWith = status;
+            Thread.sleep(2);
+            assertEquals(101.0, market.fetchPrices(new String[]{"AAA"}).get("AAA"));
+        }
+        assertEquals("OPEN", breakerState(market));
+
+        // open: no request goes out, the answer comes straight from the cache
+        int sent = requests.get();
+        long t0 = System.nanoTime();
+        assertEquals(101.0, market.fetchPrices(new String[]{"AAA"}).get("AAA"));
+        assertEquals(0.0, market.fetchPrices(new String[]{"NEVERSEEN"}).get("NEVERSEEN"));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0) < 200, "an open breaker should fail fast");
+        assertEquals(sent, requests.get());
+
+        // after open-ms one trial goes out; its success closes the breaker
+        failWith = 0;
+        price = 202.0;
+        Thread.sleep(350);
+        assertEquals(202.0, market.fetchPrices(new String[]{"AAA"}).get("AAA"));
+        assertEquals(sent + 1, requests.get());
+        assertEquals("CLOSED", breakerState(market));
+        Thread.sleep(2);
+        assertEquals(202.0, market.fetchPrices(new String[]{"AAA"}).get("AAA"));
+    }
+
+    @Test
+    void aCallerFindingTheBulkheadFullGetsCachedPricesAtOnce() throws Exception {
+        YahooMarketDataService market = market(5000, 1, 20, 30000, 1);
+        assertEquals(101.0, market.fetchPrices(new String[]{"AAA"}).get("AAA"));
+
+        // the only bulkhead slot goes to a caller stuck on upstream
+        CountDownLatch release = new CountDownLatch(1);
+        holds.put("SLOW.NS", release);
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            int sent = requests.get();
+            Future<Map<String, Double>> stuck = caller.submit(() -> market.fetchPrices(new String[]{"SLOW"}));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (requests.get() == sent && System.nanoTime() < deadline) Thread.sleep(5);
+            assertEquals(sent + 1, requests.get(), "the stuck caller never reached upstream");
+
+            Thread.sleep(2);
+            long t0 = System.nanoTime();
+            assertEquals(101.0, market.fetchPrices(new String[]{"AAA"}).get("AAA"));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0) < 200, "waited on a full bulkhead");
+            assertEquals(sent + 1, requests.get());
+
+            release.countDown();
+            assertEquals(101.0, stuck.get(5, TimeUnit.SECONDS).get("SLOW"));
+        } finally {
+            release.countDown();
+            caller.shutdownNow();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String breakerState(YahooMarketDataService market) {
+        return (String) ((Map<String, Object>) market.resilienceStats().get("breaker")).get("state");
+    }
+
+    // batch-size 1: one chart request per symbol, no spark batching
+    private YahooMarketDataService market(long deadlineMs) {
+        return market(deadlineMs, 4000, 20, 30000, 8);
+    }
+
+    // breaker: window and minimum calls both breakerCalls, opens at 50% failures; no stale serving
+    private YahooMarketDataService market(long deadlineMs, long ttlMs, int breakerCalls, long openMs, int maxCallers) {
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+        return new YahooMarketDataService(base, 8, deadlineMs, 1,
+                ttlMs, ttlMs >= 4000 ? 60000 : 0, 100,
+                1000, 1000,
+                breakerCalls, breakerCalls, 50, openMs,
+                maxCallers, 0,
+                new SymbolMaster("", 100), new SimpleMeterRegistry());
+    }
+
+    private void chart(HttpExchange ex) throws IOException {
+        requests.incrementAndGet();
+        String path = ex.getRequestURI().getPath();
+        String sym = path.substring(path.lastIndexOf('/') + 1);
+        try {
+            Thread.sleep(delayMs.getOrDefault(sym, 0L));
+            CountDownLatch hold = holds.get(sym);
+            if (hold != null) hold.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int status = failWith;
+        byte[] body = (status != 0 ? "{}" : "{\"chart\":{\"result\":[{\"meta\":{\"regularMarketPrice\":" + price + "}}]}}")
+                .getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        try (OutputStream out = ex.getResponseBody()) {
+            ex.sendResponseHeaders(status != 0 ? status : 200, body.length);
+            out.write(body);
+        } catch (IOException e) {
+            // the client gave up on it (deadline); nothing to answer
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.stockwise.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AcceptEncoding q-value handling.
+ */
+class AcceptEncodingTest {
+
+    @Test
+    void gzipNeedsAPositiveQuality() {
+        assertTrue(AcceptEncoding.accepts("gzip, deflate, br", "gzip"));
+        assertTrue(AcceptEncoding.accepts("br;q=1.0, GZIP;q=0.5", "gzip"));
+        assertTrue(AcceptEncoding.accepts("x-gzip", "gzip"));
+        assertTrue(AcceptEncoding.accepts("*", "gzip"));
+        assertFalse(AcceptEncoding.accepts("gzip;q=0", "gzip"));
+        assertFalse(AcceptEncoding.accepts("gzip; q=0.000, deflate", "gzip"));
+        assertFalse(AcceptEncoding.accepts("*;q=0.3, gzip;q=0", "gzip"));
+        assertFalse(AcceptEncoding.accepts("gzip;q=abc", "gzip"));
+        assertFalse(AcceptEncoding.accepts("identity", "gzip"));
+        assertFalse(AcceptEncoding.accepts("gzipped", "gzip"));
+        assertFalse(AcceptEncoding.accepts(null, "gzip"));
+    }
+}
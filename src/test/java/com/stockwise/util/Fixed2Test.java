@@ -0,0 +1,56 @@
+package com.stockwise.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Fixed2 and CsvStreamWriter.writeFixed2 against String.format.
+ */
+class Fixed2Test {
+
+    private static final double[] EDGES = {
+            0, -0.0, 1.005, -1.005, 2.675, 0.125, 0.004, -0.004, 0.005, 99.995, 1e9 - 0.005, 1e9, -1e12,
+            Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.MIN_VALUE, 123456.785
+    };
+
+    @Test
+    void printsWhatStringFormatPrints() throws Exception {
+        Random rnd = new Random(7);
+        double[] values = new double[EDGES.length + 20_000];
+        System.arraycopy(EDGES, 0, values, 0, EDGES.length);
+        for (int i = EDGES.length; i < values.length; i++) {
+            // whole cents plus a half cent hit the ties; the rest are anywhere
+            values[i] = i % 2 == 0 ? (rnd.nextInt(2_000_000) - 1_000_000) / 100.0 + 0.005 : (rnd.nextDouble() - 0.5) * 1e7;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CsvStreamWriter csv = new CsvStreamWriter(bytes);
+        StringBuilder expected = new StringBuilder();
+        for (double v : values) {
+            String text = String.format(Locale.US, "%.2f", v);
+            StringBuilder sb = new StringBuilder();
+            Fixed2.append(sb, v);
+            assertEquals(text, sb.toString(), () -> "append(" + v + ")");
+            csv.writeFixed2(v);
+            expected.append(text);
+        }
+        csv.flush();
+        assertEquals(expected.toString(), bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void sameTextMeansTheSameTwoDecimals() {
+        assertTrue(Fixed2.sameText(1.004, 1.0));
+        assertTrue(Fixed2.sameText(1.005, 1.01));
+        assertFalse(Fixed2.sameText(1.004, 1.005));
+        assertFalse(Fixed2.sameText(-0.001, 0.001));
+        assertTrue(Fixed2.sameText(Double.NaN, Double.NaN));
+        assertFalse(Fixed2.sameText(2e12, 2e12 + 0.001));
+    }
+}